@@ -85,6 +85,15 @@ public final class Configuration {
     /** Outline colour of a carriage in the selected state. */
     private static final Color DEFAULT_SELECTED_OUTLINE_COLOR = new Color(105, 186, 128);
 
+    /** The default vertical scale of the strong temporal layout. */
+    private static final double DEFAULT_PIXELS_PER_SECOND = 20.0;
+
+    /** The default minimum cell height of the strong temporal layout. */
+    private static final int DEFAULT_MIN_CELL_HEIGHT = 20;
+
+    /** The default number of media files to transcode at once. */
+    private static final int DEFAULT_TRANSCODE_WORKERS = 1;
+
     /** The configuration properties. */
     private ConfigProperties properties;
 
@@ -442,6 +451,78 @@ public final class Configuration {
         save();
     }
 
+    /**
+     * @return The number of pixels used to represent a second in the strong
+     * temporal spreadsheet layout.
+     */
+    public double getSSPixelsPerSecond() {
+        if (properties.getSSPixelsPerSecond() == null) {
+            return DEFAULT_PIXELS_PER_SECOND;
+        }
+
+        return properties.getSSPixelsPerSecond();
+    }
+
+    /**
+     * Sets and saves (to the config file) the vertical scale of the strong
+     * temporal spreadsheet layout.
+     *
+     * @param pixels
+     *            The number of pixels used to represent a second.
+     */
+    public void setSSPixelsPerSecond(final double pixels) {
+        properties.setSSPixelsPerSecond(pixels);
+        save();
+    }
+
+    /**
+     * @return The minimum height in pixels of a cell in the strong temporal
+     * spreadsheet layout.
+     */
+    public int getSSMinCellHeight() {
+        if (properties.getSSMinCellHeight() == null) {
+            return DEFAULT_MIN_CELL_HEIGHT;
+        }
+
+        return properties.getSSMinCellHeight();
+    }
+
+    /**
+     * Sets and saves (to the config file) the minimum height of a cell in the
+     * strong temporal spreadsheet layout.
+     *
+     * @param height
+     *            The minimum height in pixels of a cell.
+     */
+    public void setSSMinCellHeight(final int height) {
+        properties.setSSMinCellHeight(height);
+        save();
+    }
+
+    /**
+     * @return The number of media files to transcode at once in the
+     * background.
+     */
+    public int getTranscodeWorkers() {
+        if (properties.getTranscodeWorkers() == null) {
+            return DEFAULT_TRANSCODE_WORKERS;
+        }
+
+        return Math.max(1, properties.getTranscodeWorkers());
+    }
+
+    /**
+     * Sets and saves (to the config file) the number of media files to
+     * transcode at once. Takes effect the next time OpenSHAPA starts.
+     *
+     * @param workers
+     *            The number of media files to transcode at once.
+     */
+    public void setTranscodeWorkers(final int workers) {
+        properties.setTranscodeWorkers(workers);
+        save();
+    }
+
     /**
      * Saves the configuration properties do disk. This is stored in local
      * storage of the swing application framework.
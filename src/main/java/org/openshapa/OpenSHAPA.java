@@ -41,6 +41,9 @@ import org.openshapa.plugins.PluginManager;
 import org.openshapa.undoableedits.SpreadsheetUndoManager;
 import org.openshapa.util.MacHandler;
 import org.openshapa.util.NativeLoader;
+import org.openshapa.util.StartupTasks;
+import org.openshapa.util.TranscodeQueue;
+import org.openshapa.util.VLCDiscovery;
 import org.openshapa.util.WindowsKeyChar;
 import org.openshapa.views.*;
 
@@ -64,6 +67,16 @@ implements KeyEventDispatcher, TitleNotifier {
         }
     }
 
+    /** The number of startup tasks run at once. */
+    private static final int STARTUP_THREADS = 3;
+
+    /** The steps of starting up, run in parallel where they can be. */
+    private static final StartupTasks STARTUP = new StartupTasks(
+            STARTUP_THREADS);
+
+    /** Starts the mongo process, null until begun. */
+    private static StartupTasks.Task mongoTask;
+
     /** The desired minimum initial width. */
     private static final int INITMINX = 600;
 
@@ -131,6 +144,12 @@ implements KeyEventDispatcher, TitleNotifier {
     
     private VideoConverterV videoConverter;
 
+    /** Creates the scripting engine. */
+    private StartupTasks.Task scriptingTask;
+
+    /** Creates the project, which the main view is built around. */
+    private StartupTasks.Task projectTask;
+
     /**
      * Dispatches the keystroke to the correct action.
      *
@@ -335,6 +354,12 @@ implements KeyEventDispatcher, TitleNotifier {
         if ((evt.getID() == KeyEvent.KEY_RELEASED)
                 && (evt.getKeyLocation() == KeyEvent.KEY_LOCATION_NUMPAD)) {
             numKeyDown = false;
+
+            // Stop jogging on the last frame asked for.
+            if ((evt.getKeyCode() == KeyEvent.VK_NUMPAD1)
+                    || (evt.getKeyCode() == KeyEvent.VK_NUMPAD3)) {
+                dataController.jogReleased();
+            }
         }
 
         if (!numKeyDown) {
@@ -714,6 +739,53 @@ implements KeyEventDispatcher, TitleNotifier {
                 .getCanSendLogs());
         }
 
+        // Everything below can happen at once - only the project needs
+        // mongo, and only the main view needs the project.
+        startMongo();
+        scriptingTask = STARTUP.add("scripting", new Runnable() {
+                    @Override public void run() {
+                        initScripting();
+                    }
+                });
+        STARTUP.add("plugins", new Runnable() {
+                @Override public void run() {
+                    // Only finds where plugins come from - they are loaded
+                    // when first asked for.
+                    PluginManager.getInstance();
+                }
+            });
+        STARTUP.add("vlc", new Runnable() {
+                @Override public void run() {
+                    VLCDiscovery.discover();
+                }
+            });
+        projectTask = STARTUP.add("project", new Runnable() {
+                    @Override public void run() {
+                        projectController = new ProjectController();
+                    }
+                }, mongoTask);
+    }
+
+    /**
+     * Starts the mongo process in the background, unless it has already been
+     * started.
+     */
+    private static synchronized void startMongo() {
+
+        if (mongoTask == null) {
+            mongoTask = STARTUP.add("mongo", new Runnable() {
+                        @Override public void run() {
+                            MongoDatastore.startMongo();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Creates the scripting engine.
+     */
+    private void initScripting() {
+
         // Initalise scripting engine
         rubyEngine = null;
 
@@ -731,12 +803,6 @@ implements KeyEventDispatcher, TitleNotifier {
         } else {
             rubyEngine = m.getEngineByName("jruby");
         }
-
-        // Initialize plugin manager
-        PluginManager.getInstance();
-
-        // Make a new project
-        projectController = new ProjectController();
     }
 
     /**
@@ -744,9 +810,16 @@ implements KeyEventDispatcher, TitleNotifier {
      */
     @Override protected void startup() {
 
+        // The main view is built around the project.
+        STARTUP.await(projectTask);
+
         // Make view the new view so we can keep track of it for hotkeys.
-        VIEW = new OpenSHAPAView(this);
-        show(VIEW);
+        STARTUP.run("main view", new Runnable() {
+                @Override public void run() {
+                    VIEW = new OpenSHAPAView(OpenSHAPA.this);
+                    show(VIEW);
+                }
+            });
 
         // Now that openshapa is up - we may need to ask the user if can send
         // gather logs.
@@ -768,6 +841,21 @@ implements KeyEventDispatcher, TitleNotifier {
         addExitListener(new ExitListenerImpl());
 
         // Create video controller.
+        STARTUP.run("data controller", new Runnable() {
+                @Override public void run() {
+                    showDataControllerAtStartup();
+                }
+            });
+        VIEW.checkForAutosavedFile();
+
+        // The DB we create by default doesn't really have any unsaved changes.
+        projectController.getDB().markAsUnchanged();
+    }
+
+    /**
+     * Creates the data controller and shows it below the main window.
+     */
+    private void showDataControllerAtStartup() {
         dataController = new DataControllerV(getMainFrame(), false);
 
         final Dimension screenSize = Toolkit.getDefaultToolkit()
@@ -781,13 +869,13 @@ implements KeyEventDispatcher, TitleNotifier {
                     screenSize.getHeight() - dataController.getHeight()), 0);
         dataController.setLocation(x, y);
         show(dataController);
-        VIEW.checkForAutosavedFile();
-
-        // The DB we create by default doesn't really have any unsaved changes.
-        projectController.getDB().markAsUnchanged();
     }
 
     @Override protected void ready() {
+        TranscodeQueue.resume();
+
+        // Nothing more is started - report once the last task is done.
+        STARTUP.seal();
 
         if (commandLineFile != null) {
             getView().open(new File(commandLineFile));
@@ -799,6 +887,11 @@ implements KeyEventDispatcher, TitleNotifier {
      * Clean up after ourselves.
      */
     @Override protected void shutdown() {
+
+        if (dataController != null) {
+            dataController.dispose();
+        }
+
         MongoDatastore.stopMongo();
         NativeLoader.cleanAllTmpFiles();
         super.shutdown();
@@ -856,7 +949,10 @@ implements KeyEventDispatcher, TitleNotifier {
      *         OpenSHAPA.
      */
     public static ScriptEngine getScriptingEngine() {
-        return OpenSHAPA.getApplication().rubyEngine;
+        OpenSHAPA app = OpenSHAPA.getApplication();
+        STARTUP.await(app.scriptingTask);
+
+        return app.rubyEngine;
     }
 
     /**
@@ -926,8 +1022,8 @@ implements KeyEventDispatcher, TitleNotifier {
      */
     public static void main(final String[] args) {
 
-        // Spin up the mongo process
-        MongoDatastore.startMongo();
+        // Spin up the mongo process while the application launches.
+        startMongo();
 
         // If we are running on a MAC set some additional properties:
         if (OpenSHAPA.getPlatform() == Platform.MAC) {
@@ -967,6 +1063,7 @@ implements KeyEventDispatcher, TitleNotifier {
     }
 
     public void resetApp() {
+        ProjectController.cancelLoading();
         closeOpenedWindows();
         this.dataController.dispose();
         this.dataController = new DataControllerV(OpenSHAPA.getApplication()
@@ -89,7 +89,7 @@ public final class CreateNewCellC {
      * @param v The variable we are adding a cell to the end of.
      */
     public void createDefaultCell(final Variable v) {
-        model.deselectAll();
+        view.deselectAll();
         createCell(v);
 
         // record the effect
@@ -117,7 +117,7 @@ public final class CreateNewCellC {
         }
 
         if (newCell != null) {
-            model.deselectAll();
+            view.deselectAll();
             newCell.setHighlighted(true);
         }
     }
@@ -174,7 +174,7 @@ public final class CreateNewCellC {
             }
         }
 
-        model.deselectAll();
+        view.deselectAll();
         newCell.setHighlighted(true);
     }
 
@@ -279,7 +279,7 @@ public final class CreateNewCellC {
         }
 
         if (!newcelladded) {
-            for (Cell cell : model.getSelectedCells()) {
+            for (Cell cell : view.getSelectedCells()) {
                 LOGGER.event("create cell below selected cell");
 
                 // reget the selected cell from the database using its id
@@ -348,7 +348,7 @@ public final class CreateNewCellC {
             OpenSHAPA.getView().getUndoSupport().postEdit(edit);
         }
 
-        model.deselectAll();
+        view.deselectAll();
         newCell.setHighlighted(true);
     }
 }
@@ -0,0 +1,438 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openshapa.plugins.DataViewer;
+
+
+/**
+ * Keeps data viewers in sync with the master clock while they play. The
+ * drift of each viewer (its current time minus the master clock time) is
+ * sampled periodically and smoothed. Small drift is corrected gradually by
+ * nudging the playback speed of the viewer above or below the clock rate, in
+ * the manner of a phase locked loop - the proportional term pulls the viewer
+ * back into line, while the integral term learns any constant difference
+ * between the viewer's own clock and the master clock. Viewers are only
+ * re-seeked when they have drifted by a large amount (i.e. after a stall),
+ * as seeking makes video playback stutter.
+ */
+public final class DriftController {
+
+    /** How often to correct each viewer, in milliseconds. */
+    private static final long CONTROL_PERIOD = 100;
+
+    /** Drift beyond which a viewer is seeked (augmented by rate). */
+    private static final long SEEK_THRESH = 500;
+
+    /** Drift below which only the integral correction is applied, in ms. */
+    private static final double DEAD_BAND = 8;
+
+    /** Proportional gain - fraction of speed change per ms of drift. */
+    private static final double KP = 0.0005;
+
+    /** Integral gain - fraction of speed change per ms of drift per second. */
+    private static final double KI = 0.0001;
+
+    /** Largest fraction the playback speed may be nudged by. */
+    private static final double MAX_NUDGE = 0.05;
+
+    /** Weight given to each new drift sample when smoothing. */
+    private static final double SMOOTHING = 0.3;
+
+    /** Smallest fraction of the rate worth changing the playback speed by. */
+    private static final double MIN_SPEED_CHANGE = 0.002;
+
+    /** Used to convert between nanoseconds and milliseconds. */
+    private static final long NANO_IN_MILLI = 1000000L;
+
+    /** The synchronisation state of each viewer. */
+    private final Map<DataViewer, ViewerState> states =
+        new ConcurrentHashMap<DataViewer, ViewerState>();
+
+    /**
+     * Corrects the drift of a viewer that is playing.
+     *
+     * @param viewer The viewer to synchronise.
+     * @param time The current master clock time in milliseconds.
+     * @param rate The current master clock rate.
+     *
+     * @throws Exception If the current time of the viewer can't be read.
+     */
+    public void synchronise(final DataViewer viewer, final long time,
+        final float rate) throws Exception {
+
+        if (rate == 0) {
+            return;
+        }
+
+        ViewerState state = states.get(viewer);
+
+        if (state == null) {
+            state = new ViewerState();
+            states.put(viewer, state);
+        }
+
+        synchronized (state) {
+            long now = System.nanoTime();
+
+            if (state.lastControl != 0
+                    && (now - state.lastControl)
+                    < (CONTROL_PERIOD * NANO_IN_MILLI)) {
+                return;
+            }
+
+            double elapsed = (state.lastControl == 0)
+                ? 0 : (now - state.lastControl) / (1000.0 * NANO_IN_MILLI);
+            state.lastControl = now;
+
+            long target = time - viewer.getOffset();
+            double drift = viewer.getCurrentTime() - target;
+            state.record(drift);
+
+            // Too far out to catch up smoothly - jump straight there.
+            if (Math.abs(drift) > (SEEK_THRESH * Math.max(1, Math.abs(rate)))) {
+                viewer.seekTo(target);
+                state.seeks++;
+                state.resetLoop();
+                applySpeed(viewer, state, rate, 0);
+
+                return;
+            }
+
+            state.filteredDrift = state.primed
+                ? state.filteredDrift
+                    + (SMOOTHING * (drift - state.filteredDrift))
+                : drift;
+            state.primed = true;
+
+            // A viewer that is behind (negative drift) needs to speed up.
+            double error = -state.filteredDrift;
+            double integralLimit = MAX_NUDGE / KI;
+            state.integral = clamp(state.integral + (error * elapsed),
+                    integralLimit);
+
+            double correction = KI * state.integral;
+
+            if (Math.abs(state.filteredDrift) >= DEAD_BAND) {
+                correction += KP * error;
+            }
+
+            applySpeed(viewer, state, rate, clamp(correction, MAX_NUDGE));
+        }
+    }
+
+    /**
+     * Sets the playback speed of a viewer, if it differs enough from the
+     * speed already applied to be worth changing.
+     *
+     * @param viewer The viewer to adjust.
+     * @param state The synchronisation state of the viewer.
+     * @param rate The master clock rate.
+     * @param correction The fraction to adjust the rate by.
+     */
+    private void applySpeed(final DataViewer viewer, final ViewerState state,
+        final float rate, final double correction) {
+        float speed = (float) (rate * (1 + correction));
+
+        if (Float.isNaN(state.appliedSpeed)
+                || (Math.abs(speed - state.appliedSpeed)
+                    >= (MIN_SPEED_CHANGE * Math.abs(rate)))) {
+            viewer.setPlaybackSpeed(speed);
+            state.appliedSpeed = speed;
+            state.correction = correction;
+
+            if (correction != 0) {
+                state.speedAdjustments++;
+            }
+        }
+    }
+
+    /**
+     * @param value The value to clamp.
+     * @param limit The largest magnitude permitted.
+     *
+     * @return The value clamped to the range -limit..limit.
+     */
+    private static double clamp(final double value, final double limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+
+    /**
+     * Resets the synchronisation loops of all viewers, i.e. when the clock is
+     * started, stopped, stepped or changes rate. Statistics are kept.
+     */
+    public void reset() {
+
+        for (ViewerState state : states.values()) {
+
+            synchronized (state) {
+                state.resetLoop();
+            }
+        }
+    }
+
+    /**
+     * Stops tracking a viewer.
+     *
+     * @param viewer The viewer that has been removed.
+     */
+    public void remove(final DataViewer viewer) {
+        states.remove(viewer);
+    }
+
+    /**
+     * @return A snapshot of the drift statistics of each viewer.
+     */
+    public Map<DataViewer, Statistics> getStatistics() {
+        Map<DataViewer, Statistics> result =
+            new HashMap<DataViewer, Statistics>();
+
+        for (Map.Entry<DataViewer, ViewerState> entry : states.entrySet()) {
+
+            synchronized (entry.getValue()) {
+                result.put(entry.getKey(),
+                    new Statistics(entry.getValue()));
+            }
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Discards the drift statistics gathered so far.
+     */
+    public void resetStatistics() {
+
+        for (ViewerState state : states.values()) {
+
+            synchronized (state) {
+                state.resetStatistics();
+            }
+        }
+    }
+
+    /**
+     * The synchronisation state of a single viewer.
+     */
+    private static final class ViewerState {
+
+        /** System.nanoTime() of the last correction, 0 if none. */
+        long lastControl;
+
+        /** Has the smoothed drift been initialised? */
+        boolean primed;
+
+        /** The smoothed drift in milliseconds. */
+        double filteredDrift;
+
+        /** The integral of the drift error, in millisecond seconds. */
+        double integral;
+
+        /** The playback speed last given to the viewer, NaN if not set. */
+        float appliedSpeed = Float.NaN;
+
+        /** The fraction the rate was last adjusted by. */
+        double correction;
+
+        /** The number of drift samples taken. */
+        long samples;
+
+        /** The most recent drift sample in milliseconds. */
+        double lastDrift;
+
+        /** The sum of the absolute drift samples. */
+        double totalAbsDrift;
+
+        /** The sum of the squared drift samples. */
+        double totalSqDrift;
+
+        /** The largest absolute drift sample. */
+        double maxAbsDrift;
+
+        /** The number of times the viewer has been seeked to correct drift. */
+        long seeks;
+
+        /** The number of times the playback speed has been nudged. */
+        long speedAdjustments;
+
+        /**
+         * @param drift A drift sample in milliseconds.
+         */
+        void record(final double drift) {
+            samples++;
+            lastDrift = drift;
+            totalAbsDrift += Math.abs(drift);
+            totalSqDrift += drift * drift;
+            maxAbsDrift = Math.max(maxAbsDrift, Math.abs(drift));
+        }
+
+        /**
+         * Resets the control loop, the clock rate has changed so the speed of
+         * the viewer will have been reset.
+         */
+        void resetLoop() {
+            lastControl = 0;
+            primed = false;
+            filteredDrift = 0;
+            integral = 0;
+            appliedSpeed = Float.NaN;
+            correction = 0;
+        }
+
+        /**
+         * Discards the statistics gathered so far.
+         */
+        void resetStatistics() {
+            samples = 0;
+            lastDrift = 0;
+            totalAbsDrift = 0;
+            totalSqDrift = 0;
+            maxAbsDrift = 0;
+            seeks = 0;
+            speedAdjustments = 0;
+        }
+    }
+
+    /**
+     * Drift statistics for a single viewer.
+     */
+    public static final class Statistics {
+
+        /** The number of drift samples taken. */
+        private final long samples;
+
+        /** The most recent drift sample in milliseconds. */
+        private final double lastDrift;
+
+        /** The mean absolute drift in milliseconds. */
+        private final double meanAbsDrift;
+
+        /** The root mean square drift in milliseconds. */
+        private final double rmsDrift;
+
+        /** The largest absolute drift in milliseconds. */
+        private final double maxAbsDrift;
+
+        /** The number of times the viewer has been seeked. */
+        private final long seeks;
+
+        /** The number of times the playback speed has been nudged. */
+        private final long speedAdjustments;
+
+        /** The fraction the rate is currently adjusted by. */
+        private final double correction;
+
+        /** The integral of the drift error, in millisecond seconds. */
+        private final double integral;
+
+        /**
+         * Constructor.
+         *
+         * @param state The state to take a snapshot of.
+         */
+        private Statistics(final ViewerState state) {
+            samples = state.samples;
+            lastDrift = state.lastDrift;
+            meanAbsDrift = (samples == 0) ? 0 : state.totalAbsDrift / samples;
+            rmsDrift = (samples == 0)
+                ? 0 : Math.sqrt(state.totalSqDrift / samples);
+            maxAbsDrift = state.maxAbsDrift;
+            seeks = state.seeks;
+            speedAdjustments = state.speedAdjustments;
+            correction = state.correction;
+            integral = state.integral;
+        }
+
+        /**
+         * @return The number of drift samples taken.
+         */
+        public long getSamples() {
+            return samples;
+        }
+
+        /**
+         * @return The most recent drift in milliseconds, positive if the
+         * viewer is ahead of the master clock.
+         */
+        public double getLastDrift() {
+            return lastDrift;
+        }
+
+        /**
+         * @return The mean absolute drift in milliseconds.
+         */
+        public double getMeanAbsDrift() {
+            return meanAbsDrift;
+        }
+
+        /**
+         * @return The root mean square drift in milliseconds.
+         */
+        public double getRmsDrift() {
+            return rmsDrift;
+        }
+
+        /**
+         * @return The largest absolute drift in milliseconds.
+         */
+        public double getMaxAbsDrift() {
+            return maxAbsDrift;
+        }
+
+        /**
+         * @return The number of times the viewer has been seeked to correct
+         * drift.
+         */
+        public long getSeeks() {
+            return seeks;
+        }
+
+        /**
+         * @return The number of times the playback speed has been nudged.
+         */
+        public long getSpeedAdjustments() {
+            return speedAdjustments;
+        }
+
+        /**
+         * @return The fraction the playback speed is currently adjusted by,
+         * i.e. 0.01 if playing 1% faster than the clock.
+         */
+        public double getCorrection() {
+            return correction;
+        }
+
+        /**
+         * @return The integral of the drift error, in millisecond seconds -
+         * positive while the viewer has been behind the master clock.
+         */
+        public double getIntegral() {
+            return integral;
+        }
+
+        @Override public String toString() {
+            return String.format(
+                    "samples=%d last=%.1fms mean=%.1fms rms=%.1fms "
+                    + "max=%.1fms seeks=%d nudges=%d correction=%.3f%%",
+                    samples, lastDrift, meanAbsDrift, rmsDrift, maxAbsDrift,
+                    seeks, speedAdjustments, correction * 100);
+        }
+    }
+}
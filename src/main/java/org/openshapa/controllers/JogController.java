@@ -0,0 +1,563 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.openshapa.plugins.DataViewer;
+import org.openshapa.plugins.FrameListener;
+import org.openshapa.util.ClockTimer;
+
+
+/**
+ * Sits between the jog and shuttle actions and the master clock. Holding down
+ * a jog key fires an action at the keyboard repeat rate, faster than the
+ * viewers can seek; rather than queueing a step of the clock for every action,
+ * the actions are merged into a single pending position (and shuttle rate)
+ * which is handed to the clock once the viewers have shown the previous one.
+ * Whatever is asked for last is always shown, so letting go of the key stops
+ * on exactly the last frame requested rather than playing out a backlog.
+ *
+ * A position counts as shown once every viewer that seeks in the background
+ * has told us it has displayed the frame (see
+ * {@link org.openshapa.plugins.FrameNotifier}).
+ */
+public final class JogController implements FrameListener {
+
+    /** Marks that no position is waiting. */
+    private static final long NONE = Long.MIN_VALUE;
+
+    /** Shortest interval between two positions being shown, in ms. */
+    private static final long MIN_INTERVAL = 15;
+
+    /** Longest time to wait for the viewers to show a position, in ms. */
+    private static final long SHOW_TIMEOUT = 500;
+
+    /** Weight given to each new latency sample when smoothing. */
+    private static final double SMOOTHING = 0.2;
+
+    /** Used to convert between nanoseconds and milliseconds. */
+    private static final long NANO_IN_MILLI = 1000000L;
+
+    /** The logger for this class. */
+    private static Logger LOGGER = UserMetrix.getLogger(JogController.class);
+
+    /** The clock being driven. */
+    private final ClockTimer clock;
+
+    /** Hands positions to the clock - a single task at most. */
+    private final ExecutorService executor;
+
+    /** Guards the pending commands, and is notified as positions are shown. */
+    private final Object lock = new Object();
+
+    /** The latest position requested and not yet handed to the clock. */
+    private long pendingTime = NONE;
+
+    /** The latest rate requested and not yet handed to the clock, or NaN. */
+    private float pendingRate = Float.NaN;
+
+    /** System.nanoTime() of the oldest request merged into those pending. */
+    private long inputAt = NONE;
+
+    /** System.nanoTime() at which the jog key was released, or NONE. */
+    private long releasedAt = NONE;
+
+    /** Is a position being handed to the clock? */
+    private boolean showing;
+
+    /** Is a task handing commands to the clock? */
+    private boolean active;
+
+    /** The position most recently shown by the viewers. */
+    private long shownTime = NONE;
+
+    /** The position the viewers have been seeked to and are showing. */
+    private long seekedTime = NONE;
+
+    /** The viewers still to display the frame for seekedTime, and the
+        position each was seeked to. */
+    private final Map<DataViewer, Long> awaiting =
+        new HashMap<DataViewer, Long>();
+
+    /** System.nanoTime() at which the last position was handed over. */
+    private long lastShow;
+
+    /** The number of jog and shuttle requests. */
+    private long requested;
+
+    /** The number of requests replaced by a later one. */
+    private long coalesced;
+
+    /** The number of positions shown. */
+    private long shown;
+
+    /** The number of positions not shown in time. */
+    private long timedOut;
+
+    /** The smoothed input to frame latency in milliseconds. */
+    private double latency;
+
+    /** The worst input to frame latency in milliseconds. */
+    private double maxLatency;
+
+    /** Time from releasing the jog key to the last frame, in milliseconds. */
+    private double releaseLatency;
+
+    /**
+     * Constructor.
+     *
+     * @param clockTimer The master clock to drive.
+     */
+    public JogController(final ClockTimer clockTimer) {
+        clock = clockTimer;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override public Thread newThread(final Runnable r) {
+                        Thread t = new Thread(r, "JogController");
+                        t.setDaemon(true);
+
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * @return The position the clock will be at once the pending requests
+     * have been shown, i.e. the position further jogs should step from.
+     */
+    public long getTarget() {
+
+        synchronized (lock) {
+
+            if (pendingTime != NONE) {
+                return pendingTime;
+            }
+        }
+
+        return clock.getTime();
+    }
+
+    /**
+     * Requests that the clock stops at the supplied position. Replaces any
+     * position or rate still waiting.
+     *
+     * @param time The position to show in milliseconds.
+     */
+    public void jogTo(final long time) {
+
+        synchronized (lock) {
+            requested++;
+
+            if ((pendingTime != NONE) || !Float.isNaN(pendingRate)) {
+                coalesced++;
+            }
+
+            pendingTime = Math.max(0, time);
+            pendingRate = Float.NaN;
+            request();
+        }
+    }
+
+    /**
+     * Requests that the clock plays at the supplied rate, from the pending
+     * position if there is one. Replaces any rate still waiting.
+     *
+     * @param rate The rate to play at.
+     */
+    public void shuttleAt(final float rate) {
+
+        synchronized (lock) {
+            requested++;
+
+            if (!Float.isNaN(pendingRate)) {
+                coalesced++;
+            }
+
+            pendingRate = rate;
+            request();
+        }
+    }
+
+    /**
+     * Discards any rate still waiting, i.e. when the clock has been stopped
+     * directly. A pending position is still shown.
+     */
+    public void hold() {
+
+        synchronized (lock) {
+            pendingRate = Float.NaN;
+
+            if (pendingTime == NONE) {
+                inputAt = NONE;
+            }
+        }
+    }
+
+    /**
+     * Discards everything still waiting, i.e. when the clock has been moved
+     * directly.
+     */
+    public void cancel() {
+
+        synchronized (lock) {
+            pendingTime = NONE;
+            pendingRate = Float.NaN;
+            inputAt = NONE;
+            releasedAt = NONE;
+        }
+    }
+
+    /**
+     * Called when the jog key is released. The last position requested is
+     * shown without waiting for the interval between positions.
+     */
+    public void release() {
+
+        synchronized (lock) {
+
+            if ((pendingTime != NONE) || showing) {
+                releasedAt = System.nanoTime();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Called once the viewers have been moved to a position of the clock.
+     *
+     * @param time The position shown in milliseconds.
+     */
+    public void shown(final long time) {
+
+        synchronized (lock) {
+            awaiting.clear();
+            seekedTime = NONE;
+            shownTime = time;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Called just before the viewers are asked to seek to a position of the
+     * clock. The position is shown once each of the supplied viewers has
+     * displayed its frame. If there are none, {@link #shown(long)} is called
+     * once the viewers have been seeked instead.
+     *
+     * @param time The position being seeked to in milliseconds.
+     * @param pending The viewers that seek in the background, and the
+     * position (relative to the viewer) each is seeked to.
+     */
+    public void seeking(final long time, final Map<DataViewer, Long> pending) {
+
+        synchronized (lock) {
+            awaiting.clear();
+            awaiting.putAll(pending);
+            seekedTime = time;
+        }
+    }
+
+    @Override public void frameShown(final DataViewer viewer,
+        final long position) {
+
+        synchronized (lock) {
+            Long expected = awaiting.get(viewer);
+
+            if ((expected == null) || (expected != position)) {
+                return;
+            }
+
+            awaiting.remove(viewer);
+
+            if (awaiting.isEmpty()) {
+                shownTime = seekedTime;
+                seekedTime = NONE;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return A snapshot of how quickly jogs have been shown.
+     */
+    public Statistics getStatistics() {
+
+        synchronized (lock) {
+            return new Statistics(this);
+        }
+    }
+
+    /**
+     * Stops the thread used for driving the clock.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Notes the time of a request and starts a task to hand it over if there
+     * isn't one already. Must hold the lock.
+     */
+    private void request() {
+
+        if (inputAt == NONE) {
+            inputAt = System.nanoTime();
+        }
+
+        if (!active) {
+            active = true;
+            executor.execute(new Runnable() {
+                    @Override public void run() {
+                        drain();
+                    }
+                });
+        }
+    }
+
+    /**
+     * Hands the pending commands to the clock until there are none left.
+     */
+    private void drain() {
+
+        try {
+
+            while (true) {
+                long time;
+                float rate;
+                long input;
+
+                synchronized (lock) {
+
+                    // Don't show positions faster than the interface can
+                    // draw them, unless the key has been let go.
+                    long wait = MIN_INTERVAL
+                        - ((System.nanoTime() - lastShow) / NANO_IN_MILLI);
+
+                    while ((wait > 0) && (releasedAt == NONE)) {
+                        lock.wait(wait);
+                        wait = MIN_INTERVAL
+                            - ((System.nanoTime() - lastShow) / NANO_IN_MILLI);
+                    }
+
+                    if ((pendingTime == NONE) && Float.isNaN(pendingRate)) {
+                        active = false;
+
+                        return;
+                    }
+
+                    time = pendingTime;
+                    rate = pendingRate;
+                    input = inputAt;
+                    pendingTime = NONE;
+                    pendingRate = Float.NaN;
+                    inputAt = NONE;
+                    showing = time != NONE;
+                    shownTime = NONE;
+                    lastShow = System.nanoTime();
+                }
+
+                if (time != NONE) {
+                    show(time, input);
+                }
+
+                if (!Float.isNaN(rate)) {
+                    clock.setRate(rate);
+                    clock.start();
+                }
+            }
+        } catch (InterruptedException e) {
+
+            synchronized (lock) {
+                active = false;
+                showing = false;
+            }
+
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to jog", e);
+
+            synchronized (lock) {
+                active = false;
+                showing = false;
+            }
+        }
+    }
+
+    /**
+     * Stops the clock at a position and waits for the viewers to show it.
+     *
+     * @param time The position to show.
+     * @param input System.nanoTime() of the oldest request for the position.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void show(final long time, final long input)
+        throws InterruptedException {
+        clock.stop();
+
+        if (clock.getRate() != 0) {
+            clock.setRate(0);
+        }
+
+        clock.setTime(time);
+
+        synchronized (lock) {
+            long deadline = System.nanoTime() + (SHOW_TIMEOUT * NANO_IN_MILLI);
+
+            while (shownTime != time) {
+                long wait = (deadline - System.nanoTime()) / NANO_IN_MILLI;
+
+                if (wait <= 0) {
+                    timedOut++;
+                    break;
+                }
+
+                lock.wait(wait);
+            }
+
+            long now = System.nanoTime();
+
+            if (shownTime == time) {
+                shown++;
+
+                double ms = (now - input) / (double) NANO_IN_MILLI;
+
+                if (shown == 1) {
+                    latency = ms;
+                } else {
+                    latency = latency + (SMOOTHING * (ms - latency));
+                }
+
+                maxLatency = Math.max(maxLatency, ms);
+            }
+
+            if ((releasedAt != NONE) && (pendingTime == NONE)) {
+                releaseLatency = (now - releasedAt) / (double) NANO_IN_MILLI;
+                releasedAt = NONE;
+            }
+
+            showing = false;
+        }
+    }
+
+    /**
+     * Jog statistics.
+     */
+    public static final class Statistics {
+
+        /** The number of jog and shuttle requests. */
+        private final long requested;
+
+        /** The number of requests replaced by a later one. */
+        private final long coalesced;
+
+        /** The number of positions shown. */
+        private final long shown;
+
+        /** The number of positions not shown in time. */
+        private final long timedOut;
+
+        /** The smoothed input to frame latency in milliseconds. */
+        private final double latency;
+
+        /** The worst input to frame latency in milliseconds. */
+        private final double maxLatency;
+
+        /** Time from the last key release to the last frame, in ms. */
+        private final double releaseLatency;
+
+        /**
+         * Constructor.
+         *
+         * @param jog The controller to take a snapshot of.
+         */
+        private Statistics(final JogController jog) {
+            requested = jog.requested;
+            coalesced = jog.coalesced;
+            shown = jog.shown;
+            timedOut = jog.timedOut;
+            latency = jog.latency;
+            maxLatency = jog.maxLatency;
+            releaseLatency = jog.releaseLatency;
+        }
+
+        /**
+         * @return The number of jog and shuttle requests.
+         */
+        public long getRequested() {
+            return requested;
+        }
+
+        /**
+         * @return The number of requests that were replaced by a later one
+         * before they could be handed to the clock.
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * @return The number of positions the viewers showed.
+         */
+        public long getShown() {
+            return shown;
+        }
+
+        /**
+         * @return The number of positions the viewers did not show in time.
+         */
+        public long getTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return The smoothed time from a jog being requested to the viewers
+         * showing it, in milliseconds.
+         */
+        public double getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return The worst time from a jog being requested to the viewers
+         * showing it, in milliseconds.
+         */
+        public double getMaxLatency() {
+            return maxLatency;
+        }
+
+        /**
+         * @return The time from the jog key last being released to the
+         * viewers showing the last position requested, in milliseconds.
+         */
+        public double getReleaseLatency() {
+            return releaseLatency;
+        }
+
+        @Override public String toString() {
+            return String.format(
+                    "requested=%d coalesced=%d shown=%d timedOut=%d "
+                    + "latency=%.1fms max=%.1fms release=%.1fms", requested,
+                    coalesced, shown, timedOut, latency, maxLatency,
+                    releaseLatency);
+        }
+    }
+}
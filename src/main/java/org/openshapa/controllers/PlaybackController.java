@@ -20,13 +20,10 @@ import java.beans.PropertyChangeListener;
 
 import java.io.File;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.SimpleTimeZone;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -66,9 +63,11 @@ import org.openshapa.models.id.Identifier;
 
 import org.openshapa.plugins.PluginManager;
 
+import org.openshapa.util.ClockText;
 import org.openshapa.util.ClockTimer;
 import org.openshapa.util.ClockTimer.ClockListener;
 import org.openshapa.util.FloatUtils;
+import org.openshapa.util.LatestTimeDispatcher;
 
 import org.openshapa.views.LinuxJFC;
 import org.openshapa.views.MacOSJFC;
@@ -106,16 +105,6 @@ public final class PlaybackController implements PlaybackListener,
     /** Sequence of allowable shuttle rates. */
     private static final float[] SHUTTLE_RATES;
 
-    /**
-     * The threshold to use while synchronising viewers (augmented by rate).
-     */
-    private static final long SYNC_THRESH = 200;
-
-    /**
-     * How often to synchronise the viewers with the master clock.
-     */
-    private static final long SYNC_PULSE = 500;
-
     // Initialize SHUTTLE_RATES
     // values: [ (2^-5), ..., (2^0), ..., (2^5) ]
 
@@ -141,15 +130,6 @@ public final class PlaybackController implements PlaybackListener,
     /** The jump multiplier for ctrl-shift-jogging. */
     private static final int CTRLSHIFTJOG = 10;
 
-    /** Format for representing time. */
-    private static final DateFormat CLOCK_FORMAT;
-
-    // initialize standard date format for clock display.
-    static {
-        CLOCK_FORMAT = new SimpleDateFormat("HH:mm:ss:SSS");
-        CLOCK_FORMAT.setTimeZone(new SimpleTimeZone(0, "NO_ZONE"));
-    }
-
     /**
      * Enumeration of shuttle directions.
      */
@@ -201,6 +181,18 @@ public final class PlaybackController implements PlaybackListener,
     /** Clock timer. */
     private final ClockTimer clock;
 
+    /** Keeps the playing viewers in sync with the clock. */
+    private final DriftController driftController = new DriftController();
+
+    /** Seeks the viewers while playback is being faked. */
+    private final ScrubController scrubController = new ScrubController();
+
+    /** Restarts the drift and scrub controllers when playback changes. */
+    private final PlaybackSync sync;
+
+    /** Merges jog requests into what the viewers can show. */
+    private final JogController jogController;
+
     /** Is the tracks panel currently shown? */
     private boolean tracksPanelEnabled = false;
 
@@ -216,6 +208,22 @@ public final class PlaybackController implements PlaybackListener,
     /** Executor for running tasks outside of the EDT. */
     private final ExecutorService executor;
 
+    /** Formats the time for the timestamp label. */
+    private final ClockText clockText = ClockText.plain();
+
+    /**
+     * Updates the timestamp label and needle on the EDT with the latest time,
+     * however quickly the clock ticks.
+     */
+    private final LatestTimeDispatcher timeUpdater = new LatestTimeDispatcher(
+            new LatestTimeDispatcher.Listener() {
+                @Override public void timeChanged(final long time) {
+                    playbackView.setTimestampLabelText(clockText.format(time));
+                    mixerController.getMixerModel().getNeedleModel()
+                        .setCurrentTime(time);
+                }
+            });
+
     /**
      * Constructor. Creates a new DataControllerV.
      */
@@ -224,6 +232,7 @@ public final class PlaybackController implements PlaybackListener,
 
         clock = new ClockTimer();
         clock.registerListener(this);
+        jogController = new JogController(clock);
 
         viewers = new HashSet<DataViewer>();
 
@@ -231,6 +240,8 @@ public final class PlaybackController implements PlaybackListener,
         playbackModel.setPauseRate(0);
         playbackModel.setLastSync(0);
         playbackModel.setMaxDuration(ViewportStateImpl.MINIMUM_MAX_END);
+        sync = new PlaybackSync(playbackModel, driftController,
+                scrubController);
 
         playbackModel.setWindowPlayStart(0);
         playbackModel.setWindowPlayEnd(MixerConstants.DEFAULT_DURATION);
@@ -397,11 +408,13 @@ public final class PlaybackController implements PlaybackListener,
                     long nextTime = (long) (mul * (-ONE_SECOND)
                             / playbackModel.getCurrentFPS());
 
-                    if ((clock.getTime() + nextTime)
+                    long time = jogController.getTarget();
+
+                    if ((time + nextTime)
                             > playbackModel.getWindowPlayStart()) {
-                        jump(nextTime);
+                        jog(time + nextTime);
                     } else {
-                        jumpTo(playbackModel.getWindowPlayStart());
+                        jog(playbackModel.getWindowPlayStart());
                     }
                 }
             };
@@ -439,11 +452,13 @@ public final class PlaybackController implements PlaybackListener,
                     long nextTime = (long) (mul * (ONE_SECOND)
                             / playbackModel.getCurrentFPS());
 
-                    if ((clock.getTime() + nextTime)
+                    long time = jogController.getTarget();
+
+                    if ((time + nextTime)
                             < playbackModel.getWindowPlayEnd()) {
-                        jump(nextTime);
+                        jog(time + nextTime);
                     } else {
-                        jumpTo(playbackModel.getWindowPlayEnd());
+                        jog(playbackModel.getWindowPlayEnd());
                     }
                 }
             };
@@ -767,7 +782,7 @@ public final class PlaybackController implements PlaybackListener,
     public void clockStart(final long time) {
         assert !SwingUtilities.isEventDispatchThread();
 
-        resetSync();
+        sync.restart();
 
         long playTime = time;
         final long windowPlayStart = playbackModel.getWindowPlayStart();
@@ -804,48 +819,36 @@ public final class PlaybackController implements PlaybackListener,
                 for (DataViewer v : viewers) {
 
                     if (isWithinPlayRange(time, v)) {
-                        v.seekTo(time - v.getOffset());
+                        scrubController.scrubTo(v, time - v.getOffset());
                     }
                 }
 
                 // DataViewer is responsible for playing video.
             } else {
 
-                // Synchronise viewers only if we have exceded our pulse time.
-                if ((time - playbackModel.getLastSync())
-                        > (SYNC_PULSE * clock.getRate())) {
-                    long thresh = (long) (SYNC_THRESH
-                            * Math.abs(clock.getRate()));
-                    playbackModel.setLastSync(time);
+                float rate = clock.getRate();
 
-                    for (DataViewer v : viewers) {
+                for (DataViewer v : viewers) {
 
-                        /*
-                         * Use offsets to determine if the video file should
-                         * start playing.
-                         */
+                    /*
+                     * Use offsets to determine if the video file should
+                     * start playing.
+                     */
 
-                        if (!v.isPlaying() && isWithinPlayRange(time, v)) {
-                            v.seekTo(time - v.getOffset());
-                            v.play();
-                        }
+                    if (!v.isPlaying() && isWithinPlayRange(time, v)) {
+                        v.seekTo(time - v.getOffset());
+                        v.play();
+                    }
 
-                        // BugzID:1797 - Viewers who are "playing" outside their
-                        // timeframe should be asked to stop.
-                        if (v.isPlaying() && !isWithinPlayRange(time, v)) {
-                            v.stop();
-                        }
+                    // BugzID:1797 - Viewers who are "playing" outside their
+                    // timeframe should be asked to stop.
+                    if (v.isPlaying() && !isWithinPlayRange(time, v)) {
+                        v.stop();
+                    }
 
-                        /*
-                         * Only synchronise the data viewers if we have a
-                         * noticable drift.
-                         */
-                        if (v.isPlaying()
-                                && (Math.abs(
-                                        v.getCurrentTime()
-                                        - (time - v.getOffset())) > thresh)) {
-                            v.seekTo(time - v.getOffset());
-                        }
+                    // Keep playing viewers in line with the master clock.
+                    if (v.isPlaying()) {
+                        driftController.synchronise(v, time, rate);
                     }
                 }
             }
@@ -898,7 +901,7 @@ public final class PlaybackController implements PlaybackListener,
     public void clockStop(final long time) {
         assert !SwingUtilities.isEventDispatchThread();
 
-        resetSync();
+        sync.restart();
         setCurrentTime(time);
 
         for (DataViewer viewer : viewers) {
@@ -917,7 +920,7 @@ public final class PlaybackController implements PlaybackListener,
     public void clockRate(final float rate) {
         assert !SwingUtilities.isEventDispatchThread();
 
-        resetSync();
+        sync.restart();
 
         Runnable edtTask = new Runnable() {
                 public void run() {
@@ -967,7 +970,7 @@ public final class PlaybackController implements PlaybackListener,
     public void clockStep(final long time) {
         assert !SwingUtilities.isEventDispatchThread();
 
-        resetSync();
+        sync.restart();
         setCurrentTime(time);
 
         for (DataViewer viewer : viewers) {
@@ -976,10 +979,14 @@ public final class PlaybackController implements PlaybackListener,
                 viewer.seekTo(time - viewer.getOffset());
             }
         }
+
+        jogController.shown(time);
     }
 
     public void dispose() {
         executor.shutdown();
+        scrubController.shutdown();
+        jogController.shutdown();
         mixerController.removeAll();
     }
 
@@ -999,17 +1006,8 @@ public final class PlaybackController implements PlaybackListener,
     public void setCurrentTime(final long milliseconds) {
         assert !SwingUtilities.isEventDispatchThread();
 
-        resetSync();
-
-        Runnable edtTask = new Runnable() {
-                public void run() {
-                    playbackView.setTimestampLabelText(CLOCK_FORMAT.format(milliseconds));
-                    mixerController.getMixerModel().getNeedleModel().setCurrentTime(milliseconds);
-                }
-            };
-
-        SwingUtilities.invokeLater(edtTask);
-
+        sync.timeChanged();
+        timeUpdater.publish(milliseconds);
     }
 
     /**
@@ -1023,6 +1021,8 @@ public final class PlaybackController implements PlaybackListener,
 
         // Was the viewer removed.
         final boolean removed = viewers.remove(viewer);
+        driftController.remove(viewer);
+        scrubController.remove(viewer);
 
         Runnable task = new Runnable() {
 
@@ -1161,6 +1161,9 @@ public final class PlaybackController implements PlaybackListener,
 
                     if (fps > playbackModel.getCurrentFPS()) {
                         playbackModel.setCurrentFPS(fps);
+
+                        // Tick the clock once per frame of the fastest media.
+                        clock.alignToFrameRate(fps);
                     }
 
                     final ViewportState viewport = mixerController.getMixerModel().getViewportModel().getViewport();
@@ -1429,6 +1432,20 @@ public final class PlaybackController implements PlaybackListener,
         clock.stepTime(step);
     }
 
+    /**
+     * Stops the clock at a position once the viewers have caught up with any
+     * earlier jogs.
+     *
+     * @param time
+     *            Absolute time to jog to.
+     */
+    private void jog(final long time) {
+        playbackModel.setShuttleRate(0);
+        playbackModel.setPauseRate(0);
+        shuttleDirection = ShuttleDirection.UNDEFINED;
+        jogController.jogTo(time);
+    }
+
     /**
      * @param time
      *            Absolute time to jump to.
@@ -1478,12 +1495,26 @@ public final class PlaybackController implements PlaybackListener,
     }
 
     /**
-     * Reset the sync.
+     * @return A snapshot of how closely each playing viewer has been kept in
+     * sync with the master clock.
      */
-    private void resetSync() {
-        assert !SwingUtilities.isEventDispatchThread();
+    public Map<DataViewer, DriftController.Statistics> getDriftStatistics() {
+        return driftController.getStatistics();
+    }
 
-        playbackModel.setLastSync(0);
+    /**
+     * @return A snapshot of how quickly each viewer has been keeping up with
+     * seeks while playback is being faked.
+     */
+    public Map<DataViewer, ScrubController.Statistics> getScrubStatistics() {
+        return scrubController.getStatistics();
+    }
+
+    /**
+     * @return A snapshot of how quickly jogs have been shown.
+     */
+    public JogController.Statistics getJogStatistics() {
+        return jogController.getStatistics();
     }
 
     /**
@@ -0,0 +1,71 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers;
+
+import org.openshapa.models.PlaybackModel;
+
+
+/**
+ * The synchronisation of data viewers with the master clock, shared by the
+ * playback controllers. The current time changes on every clock tick, which
+ * only resets the last sync time. The drift and scrub controllers are only
+ * restarted when playback itself changes - it starts, stops, steps, jumps or
+ * changes rate - so that the drift control loop and the merging of seeks
+ * carry on from one tick to the next.
+ */
+public final class PlaybackSync {
+
+    /** Model containing playback information. */
+    private final PlaybackModel playbackModel;
+
+    /** Keeps the playing viewers in sync with the clock. */
+    private final DriftController driftController;
+
+    /** Seeks the viewers while playback is being faked. */
+    private final ScrubController scrubController;
+
+    /**
+     * Constructor.
+     *
+     * @param model Model containing playback information.
+     * @param drift Keeps the playing viewers in sync with the clock.
+     * @param scrub Seeks the viewers while playback is being faked.
+     */
+    public PlaybackSync(final PlaybackModel model, final DriftController drift,
+        final ScrubController scrub) {
+        playbackModel = model;
+        driftController = drift;
+        scrubController = scrub;
+    }
+
+    /**
+     * Called when the current time changes, i.e. on every clock tick.
+     */
+    public void timeChanged() {
+        playbackModel.setLastSync(0);
+    }
+
+    /**
+     * Called when playback starts, stops, steps, jumps or changes rate. The
+     * viewers have been, or are about to be, seeked or given a new speed
+     * directly, so the drift control loops start again and any seeks still
+     * waiting are discarded.
+     */
+    public void restart() {
+        timeChanged();
+        driftController.reset();
+        scrubController.cancel();
+    }
+}
@@ -351,7 +351,7 @@ public final class RunScriptC extends SwingWorker<Object, String> {
         // Display any changes.
         OpenSHAPAView view = (OpenSHAPAView) OpenSHAPA.getApplication()
             .getMainView();
-        view.showSpreadsheet();
+        view.refreshSpreadsheet();
     }
 
     @Override protected void process(final List<String> chunks) {
@@ -0,0 +1,528 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openshapa.plugins.DataViewer;
+import org.openshapa.plugins.FrameListener;
+import org.openshapa.plugins.FrameNotifier;
+
+
+/**
+ * Drives data viewers by seeking when playback is being faked (i.e. high
+ * shuttle rates and reverse). Each viewer has at most one seek outstanding at
+ * a time; requests that arrive while a seek is in progress replace each other,
+ * so that only the latest position is seeked to once the viewer is ready. A
+ * seek is considered complete once the viewer tells us it has displayed the
+ * frame (see {@link FrameNotifier}), or for viewers that seek as they are
+ * asked, once the viewer reports a time close to the target. The measured
+ * latency paces how often the viewer is seeked.
+ */
+public final class ScrubController implements FrameListener {
+
+    /** Marks that no seek is waiting. */
+    private static final long NONE = Long.MIN_VALUE;
+
+    /** Shortest interval between the starts of two seeks, in ms. */
+    private static final long MIN_INTERVAL = 15;
+
+    /** Longest interval between the starts of two seeks, in ms. */
+    private static final long MAX_INTERVAL = 500;
+
+    /** Longest time to wait for a seek to land, in ms. */
+    private static final long SEEK_TIMEOUT = 250;
+
+    /** How often to check whether a seek has landed, in ms. */
+    private static final long SEEK_POLL = 5;
+
+    /** Tolerance for a seek landing when the frame rate is unknown, in ms. */
+    private static final long DEFAULT_TOLERANCE = 40;
+
+    /** Weight given to each new latency sample when smoothing. */
+    private static final double SMOOTHING = 0.2;
+
+    /** The number of recent seeks used to calculate the frame rate. */
+    private static final int RATE_WINDOW = 32;
+
+    /** Used to convert between nanoseconds and milliseconds. */
+    private static final long NANO_IN_MILLI = 1000000L;
+
+    /** The logger for this class. */
+    private static Logger LOGGER = UserMetrix.getLogger(ScrubController.class);
+
+    /** Performs the seeks - one task at most per viewer. */
+    private final ExecutorService executor;
+
+    /** The scrub state of each viewer. */
+    private final Map<DataViewer, ViewerScrub> scrubs =
+        new ConcurrentHashMap<DataViewer, ViewerScrub>();
+
+    /**
+     * Constructor.
+     */
+    public ScrubController() {
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    @Override public Thread newThread(final Runnable r) {
+                        Thread t = new Thread(r, "ScrubController");
+                        t.setDaemon(true);
+
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Requests that a viewer displays the supplied position. If the viewer is
+     * busy seeking, the request replaces any other request still waiting.
+     *
+     * @param viewer The viewer to seek.
+     * @param position The position (relative to the viewer) to show.
+     */
+    public void scrubTo(final DataViewer viewer, final long position) {
+        ViewerScrub scrub = scrubs.get(viewer);
+
+        if (scrub == null) {
+            scrub = new ViewerScrub(viewer);
+            scrubs.put(viewer, scrub);
+        }
+
+        scrub.requested.incrementAndGet();
+
+        if (scrub.target.getAndSet(position) != NONE) {
+            scrub.coalesced.incrementAndGet();
+        }
+
+        if (scrub.active.compareAndSet(false, true)) {
+            executor.execute(scrub);
+        }
+    }
+
+    /**
+     * Discards any seeks that are still waiting, i.e. when the clock has been
+     * stopped or stepped and the viewers have been seeked directly. A seek that
+     * is already in progress is left to finish.
+     */
+    public void cancel() {
+
+        for (ViewerScrub scrub : scrubs.values()) {
+            scrub.target.set(NONE);
+        }
+    }
+
+    /**
+     * Stops scrubbing a viewer.
+     *
+     * @param viewer The viewer that has been removed.
+     */
+    public void remove(final DataViewer viewer) {
+        ViewerScrub scrub = scrubs.remove(viewer);
+
+        if (scrub != null) {
+            scrub.target.set(NONE);
+        }
+    }
+
+    /**
+     * @return A snapshot of the scrub statistics of each viewer.
+     */
+    public Map<DataViewer, Statistics> getStatistics() {
+        Map<DataViewer, Statistics> result =
+            new HashMap<DataViewer, Statistics>();
+
+        for (Map.Entry<DataViewer, ViewerScrub> entry : scrubs.entrySet()) {
+            result.put(entry.getKey(), new Statistics(entry.getValue()));
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override public void frameShown(final DataViewer viewer,
+        final long position) {
+        ViewerScrub scrub = scrubs.get(viewer);
+
+        if (scrub != null) {
+            scrub.shown(position);
+        }
+    }
+
+    /**
+     * Stops the threads used for seeking.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The scrub state of a single viewer, and the task that seeks it.
+     */
+    private static final class ViewerScrub implements Runnable {
+
+        /** The viewer being scrubbed. */
+        final DataViewer viewer;
+
+        /** The latest position requested and not yet seeked to. */
+        final AtomicLong target = new AtomicLong(NONE);
+
+        /** Is a task seeking this viewer? */
+        final AtomicBoolean active = new AtomicBoolean(false);
+
+        /** The number of positions requested. */
+        final AtomicLong requested = new AtomicLong();
+
+        /** The number of requests replaced by a later one. */
+        final AtomicLong coalesced = new AtomicLong();
+
+        /** The number of seeks that landed. */
+        final AtomicLong completed = new AtomicLong();
+
+        /** The number of seeks that did not land in time. */
+        final AtomicLong timedOut = new AtomicLong();
+
+        /** The smoothed seek latency in milliseconds. */
+        volatile double latency = MIN_INTERVAL;
+
+        /** System.nanoTime() at which the last seek started. */
+        long lastSeek;
+
+        /** System.nanoTime() at which each recent seek landed. */
+        final long[] landed = new long[RATE_WINDOW];
+
+        /** The number of seeks that have landed, used to index the above. */
+        int landedCount;
+
+        /** The position the viewer last displayed, guarded by itself. */
+        final long[] shownPosition = { NONE };
+
+        /**
+         * Constructor.
+         *
+         * @param dv The viewer to scrub.
+         */
+        ViewerScrub(final DataViewer dv) {
+            viewer = dv;
+        }
+
+        @Override public void run() {
+            boolean handedOver = false;
+
+            try {
+
+                while (true) {
+                    long position = target.getAndSet(NONE);
+
+                    if (position == NONE) {
+                        active.set(false);
+
+                        // Pick up a request that arrived as we finished.
+                        if ((target.get() == NONE)
+                                || !active.compareAndSet(false, true)) {
+                            handedOver = true;
+
+                            return;
+                        }
+
+                        continue;
+                    }
+
+                    // Don't seek faster than the viewer has been keeping up.
+                    long interval = Math.max(MIN_INTERVAL,
+                            Math.min(MAX_INTERVAL, (long) latency));
+                    long wait = interval
+                        - ((System.nanoTime() - lastSeek) / NANO_IN_MILLI);
+
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+
+                        long newer = target.getAndSet(NONE);
+
+                        if (newer != NONE) {
+                            coalesced.incrementAndGet();
+                            position = newer;
+                        }
+                    }
+
+                    seek(position);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOGGER.error("Unable to scrub", e);
+            } finally {
+
+                // Let the next request start a new task, however we stopped.
+                if (!handedOver) {
+                    active.set(false);
+                }
+            }
+        }
+
+        /**
+         * Called when the viewer has displayed the frame for a seek.
+         *
+         * @param position The position the viewer was seeked to.
+         */
+        void shown(final long position) {
+
+            synchronized (shownPosition) {
+                shownPosition[0] = position;
+                shownPosition.notifyAll();
+            }
+        }
+
+        /**
+         * Seeks the viewer and waits for the seek to land.
+         *
+         * @param position The position to seek to.
+         *
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        private void seek(final long position) throws InterruptedException {
+
+            synchronized (shownPosition) {
+                shownPosition[0] = NONE;
+            }
+
+            lastSeek = System.nanoTime();
+            viewer.seekTo(position);
+
+            long deadline = lastSeek + (SEEK_TIMEOUT * NANO_IN_MILLI);
+            boolean inTime = (viewer instanceof FrameNotifier)
+                ? awaitShown(position, deadline)
+                : awaitTime(position, deadline);
+
+            if (!inTime) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            recordLatency((now - lastSeek) / (double) NANO_IN_MILLI);
+            completed.incrementAndGet();
+
+            synchronized (landed) {
+                landed[landedCount % RATE_WINDOW] = now;
+                landedCount++;
+            }
+        }
+
+        /**
+         * Waits for the viewer to tell us it has displayed a position.
+         *
+         * @param position The position seeked to.
+         * @param deadline System.nanoTime() by which the seek must land.
+         *
+         * @return True if the seek landed in time.
+         *
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        private boolean awaitShown(final long position, final long deadline)
+            throws InterruptedException {
+
+            synchronized (shownPosition) {
+
+                while (shownPosition[0] != position) {
+                    long wait = (deadline - System.nanoTime()) / NANO_IN_MILLI;
+
+                    if (wait <= 0) {
+                        timedOut.incrementAndGet();
+                        recordLatency(SEEK_TIMEOUT);
+
+                        return false;
+                    }
+
+                    shownPosition.wait(wait);
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Waits for the viewer to report a time close to a position.
+         *
+         * @param position The position seeked to.
+         * @param deadline System.nanoTime() by which the seek must land.
+         *
+         * @return True if the seek landed in time, false if it didn't or the
+         * time of the viewer couldn't be read.
+         *
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        private boolean awaitTime(final long position, final long deadline)
+            throws InterruptedException {
+            float fps = viewer.getFrameRate();
+            long tolerance = (fps > 0) ? (long) Math.ceil(1000 / fps)
+                                       : DEFAULT_TOLERANCE;
+
+            try {
+
+                while (Math.abs(viewer.getCurrentTime() - position)
+                        > tolerance) {
+
+                    if (System.nanoTime() > deadline) {
+                        timedOut.incrementAndGet();
+                        recordLatency(SEEK_TIMEOUT);
+
+                        return false;
+                    }
+
+                    Thread.sleep(SEEK_POLL);
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                LOGGER.error("Unable to read viewer time while scrubbing", e);
+
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * @param ms A seek latency sample in milliseconds.
+         */
+        private void recordLatency(final double ms) {
+            latency = latency + (SMOOTHING * (ms - latency));
+        }
+
+        /**
+         * @return The rate at which seeks have been landing recently, in
+         * frames per second.
+         */
+        double getEffectiveFrameRate() {
+
+            synchronized (landed) {
+                int count = Math.min(landedCount, RATE_WINDOW);
+
+                if (count < 2) {
+                    return 0;
+                }
+
+                long newest = landed[(landedCount - 1) % RATE_WINDOW];
+                long oldest = landed[(landedCount - count) % RATE_WINDOW];
+
+                // Stale if nothing has landed for a while.
+                if ((System.nanoTime() - newest)
+                        > (MAX_INTERVAL * NANO_IN_MILLI)) {
+                    return 0;
+                }
+
+                return (count - 1) * 1000.0 * NANO_IN_MILLI
+                    / Math.max(1, newest - oldest);
+            }
+        }
+    }
+
+    /**
+     * Scrub statistics for a single viewer.
+     */
+    public static final class Statistics {
+
+        /** The number of positions requested. */
+        private final long requested;
+
+        /** The number of requests replaced by a later one. */
+        private final long coalesced;
+
+        /** The number of seeks that landed. */
+        private final long completed;
+
+        /** The number of seeks that did not land in time. */
+        private final long timedOut;
+
+        /** The smoothed seek latency in milliseconds. */
+        private final double latency;
+
+        /** The recent rate of landed seeks in frames per second. */
+        private final double effectiveFrameRate;
+
+        /**
+         * Constructor.
+         *
+         * @param scrub The scrub state to take a snapshot of.
+         */
+        private Statistics(final ViewerScrub scrub) {
+            requested = scrub.requested.get();
+            coalesced = scrub.coalesced.get();
+            completed = scrub.completed.get();
+            timedOut = scrub.timedOut.get();
+            latency = scrub.latency;
+            effectiveFrameRate = scrub.getEffectiveFrameRate();
+        }
+
+        /**
+         * @return The number of positions requested.
+         */
+        public long getRequested() {
+            return requested;
+        }
+
+        /**
+         * @return The number of requests that were replaced by a later one
+         * before they could be seeked to.
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * @return The number of seeks that landed.
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return The number of seeks that did not land in time.
+         */
+        public long getTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return The smoothed seek latency in milliseconds.
+         */
+        public double getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return The rate at which seeks have recently been landing, i.e. the
+         * frame rate actually being displayed, in frames per second.
+         */
+        public double getEffectiveFrameRate() {
+            return effectiveFrameRate;
+        }
+
+        @Override public String toString() {
+            return String.format(
+                    "requested=%d coalesced=%d completed=%d timedOut=%d "
+                    + "latency=%.1fms fps=%.1f", requested, coalesced,
+                    completed, timedOut, latency, effectiveFrameRate);
+        }
+    }
+}
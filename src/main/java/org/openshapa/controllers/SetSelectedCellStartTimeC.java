@@ -20,7 +20,6 @@ import org.openshapa.OpenSHAPA;
 import com.usermetrix.jclient.UserMetrix;
 import javax.swing.undo.UndoableEdit;
 import org.openshapa.models.db.Cell;
-import org.openshapa.models.db.Datastore;
 import org.openshapa.undoableedits.ChangeCellEdit.Granularity;
 import org.openshapa.undoableedits.ChangeOnsetCellEdit;
 
@@ -42,10 +41,9 @@ public class SetSelectedCellStartTimeC {
     public SetSelectedCellStartTimeC(final long milliseconds) {
         LOGGER.event("set selected cell onset");
 
-        // Get the datastore that we are manipulating.
-        Datastore datastore = OpenSHAPA.getProjectController().getDB();
-
-        for (Cell c : datastore.getSelectedCells()) {
+        // The selection is held by the spreadsheet.
+        for (Cell c : OpenSHAPA.getView().getSpreadsheetPanel()
+                               .getSelectedCells()) {
             // record the effect
             UndoableEdit edit = new ChangeOnsetCellEdit(c, c.getOnset(), milliseconds, Granularity.FINEGRAINED);
             OpenSHAPA.getView().getUndoSupport().postEdit(edit);
@@ -20,7 +20,6 @@ import org.openshapa.OpenSHAPA;
 import com.usermetrix.jclient.UserMetrix;
 import javax.swing.undo.UndoableEdit;
 import org.openshapa.models.db.Cell;
-import org.openshapa.models.db.Datastore;
 import org.openshapa.undoableedits.ChangeCellEdit;
 import org.openshapa.undoableedits.ChangeOffsetCellEdit;
 
@@ -42,10 +41,9 @@ public class SetSelectedCellStopTimeC {
     public SetSelectedCellStopTimeC(final long milliseconds) {
         LOGGER.event("set selected cell offset");
 
-        // Get the datastore that we are manipulating.
-        Datastore datastore = OpenSHAPA.getProjectController().getDB();
-
-        for (Cell c : datastore.getSelectedCells()) {
+        // The selection is held by the spreadsheet.
+        for (Cell c : OpenSHAPA.getView().getSpreadsheetPanel()
+                               .getSelectedCells()) {
             // record the effect
             UndoableEdit edit = new ChangeOffsetCellEdit(c, c.getOffset(), milliseconds, ChangeCellEdit.Granularity.FINEGRAINED);
             OpenSHAPA.getView().getUndoSupport().postEdit(edit);
@@ -0,0 +1,539 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers.component;
+
+import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
+
+import net.miginfocom.swing.MigLayout;
+
+import org.apache.commons.lang.text.StrSubstitutor;
+
+import org.openshapa.OpenSHAPA;
+
+import org.openshapa.models.component.CellTrackModel;
+import org.openshapa.models.component.MixerModel;
+import org.openshapa.models.component.TrackConstants;
+import org.openshapa.models.component.ViewportState;
+import org.openshapa.models.db.Cell;
+import org.openshapa.models.db.CellListener;
+import org.openshapa.models.db.Datastore;
+import org.openshapa.models.db.DatastoreListener;
+import org.openshapa.models.db.Value;
+import org.openshapa.models.db.Variable;
+import org.openshapa.models.db.VariableListener;
+
+import org.openshapa.views.component.CellTrackPainter;
+
+import com.google.common.collect.Maps;
+
+
+/**
+ * CellTrackController is responsible for managing a track showing the cells
+ * of a variable as bars from their onsets to their offsets.
+ *
+ * The onsets and offsets are kept in an interval index in the track's model,
+ * which is kept up to date from the cell and variable events of the
+ * datastore rather than by reading the variable again. Clicking a bar selects
+ * the cell and scrolls the spreadsheet to it.
+ */
+public final class CellTrackController implements PropertyChangeListener,
+    VariableListener, DatastoreListener {
+
+    /** Main panel holding the track UI. */
+    private final JPanel view;
+
+    /** Lists the variables to choose from. */
+    private final JComboBox variableBox;
+
+    /** Component that paints the cells. */
+    private final CellTrackPainter painter;
+
+    /** The cells shown. */
+    private final CellTrackModel model;
+
+    /** Viewable model. */
+    private final MixerModel mixerModel;
+
+    /** The datastore holding the variable. */
+    private final Datastore datastore;
+
+    /** Watches each cell of the variable for changes. */
+    private final Map<Cell, CellWatcher> watchers =
+        new ConcurrentHashMap<Cell, CellWatcher>();
+
+    /** Is the variable list being filled in, rather than chosen from? */
+    private boolean isUpdatingVariableBox;
+
+    /**
+     * Creates a new CellTrackController.
+     *
+     * @param mixerController The mixer the track belongs to.
+     * @param mixerModel The mixer's model.
+     */
+    public CellTrackController(final MixerController mixerController,
+        final MixerModel mixerModel) {
+        this.mixerModel = mixerModel;
+        datastore = OpenSHAPA.getProjectController().getDB();
+        model = new CellTrackModel();
+
+        view = new JPanel();
+        view.setLayout(new MigLayout("fillx, ins 0", "[]0[]"));
+        view.setBorder(BorderFactory.createLineBorder(
+                TrackConstants.BORDER_COLOR, 1));
+
+        painter = new CellTrackPainter();
+        painter.setMixerView(mixerModel);
+        painter.setCellTrackModel(model);
+        painter.addMouseListener(new MouseAdapter() {
+                @Override public void mouseClicked(final MouseEvent e) {
+                    showCellAt(e.getX());
+                }
+            });
+
+        mixerModel.getViewportModel().addPropertyChangeListener(this);
+        datastore.addListener(this);
+
+        variableBox = new JComboBox();
+        variableBox.setName("cellTrackVariableBox");
+        variableBox.addPopupMenuListener(new PopupMenuListener() {
+                @Override public void popupMenuWillBecomeVisible(
+                    final PopupMenuEvent e) {
+                    updateVariableBox();
+                }
+
+                @Override public void popupMenuWillBecomeInvisible(
+                    final PopupMenuEvent e) {
+                }
+
+                @Override public void popupMenuCanceled(
+                    final PopupMenuEvent e) {
+                }
+            });
+        variableBox.addActionListener(new ActionListener() {
+                @Override public void actionPerformed(final ActionEvent e) {
+                    handleVariableBoxEvent();
+                }
+            });
+
+        JButton rubbishButton = new JButton(TrackConstants.DELETE_ICON);
+        rubbishButton.setName("cellTrackRubbishButton");
+        rubbishButton.setContentAreaFilled(false);
+        rubbishButton.setBorderPainted(false);
+        rubbishButton.addActionListener(new ActionListener() {
+                @Override public void actionPerformed(final ActionEvent e) {
+                    mixerController.removeCellTrack(CellTrackController.this);
+                }
+            });
+
+        JPanel header = new JPanel(new MigLayout("ins 0, center"));
+        header.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createMatteBorder(0, 0, 0, 1,
+                    TrackConstants.BORDER_COLOR),
+                BorderFactory.createEmptyBorder(2, 2, 2, 2)));
+        header.setBackground(Color.LIGHT_GRAY);
+
+        // 136 pixels wide, less the button and the gap before it.
+        {
+            Map<String, String> constraints = Maps.newHashMap();
+            constraints.put("width",
+                Integer.toString(136 - TrackConstants.ACTION_BUTTON_WIDTH - 4));
+
+            String template = "w ${width}!";
+            StrSubstitutor sub = new StrSubstitutor(constraints);
+
+            header.add(variableBox, sub.replace(template));
+        }
+
+        {
+            Map<String, String> constraints = Maps.newHashMap();
+            constraints.put("width",
+                Integer.toString(TrackConstants.ACTION_BUTTON_WIDTH));
+            constraints.put("height",
+                Integer.toString(TrackConstants.ACTION_BUTTON_HEIGHT));
+
+            String template = "w ${width}!, h ${height}!";
+            StrSubstitutor sub = new StrSubstitutor(constraints);
+
+            header.add(rubbishButton, sub.replace(template));
+        }
+
+        // Add the header to our layout.
+        {
+            Map<String, String> constraints = Maps.newHashMap();
+            constraints.put("width",
+                Integer.toString(TrackConstants.HEADER_WIDTH));
+            constraints.put("height",
+                Integer.toString(TrackConstants.CELL_TRACK_HEIGHT));
+
+            String template = "w ${width}!, h ${height}!";
+            StrSubstitutor sub = new StrSubstitutor(constraints);
+
+            view.add(header, sub.replace(template));
+        }
+
+        // Add the cells to our layout.
+        {
+            Map<String, String> constraints = Maps.newHashMap();
+            constraints.put("height",
+                Integer.toString(TrackConstants.CELL_TRACK_HEIGHT));
+
+            String template = "pushx, growx, h ${height}!";
+            StrSubstitutor sub = new StrSubstitutor(constraints);
+
+            view.add(painter, sub.replace(template));
+        }
+
+        updateVariableBox();
+        view.validate();
+    }
+
+    /**
+     * @return The view of the track.
+     */
+    public JComponent getView() {
+        return view;
+    }
+
+    /**
+     * @return The model of the track.
+     */
+    public CellTrackModel getCellTrackModel() {
+        return model;
+    }
+
+    /**
+     * Shows the cells of a variable, indexing them all once. From then on
+     * the index follows the changes to the cells.
+     *
+     * @param variable The variable to show, null for none.
+     */
+    public void setVariable(final Variable variable) {
+        Variable old = model.getVariable();
+
+        if ((old != null) && old.equals(variable)) {
+            return;
+        }
+
+        unwatchAll();
+        model.setVariable(variable);
+
+        if (variable != null) {
+            variable.addListener(this);
+
+            // Cells come in onset order, so each is appended to the index.
+            for (Cell cell : variable.getCellsTemporally()) {
+                watch(cell);
+            }
+        }
+
+        painter.repaint();
+    }
+
+    /**
+     * Stops following the datastore. The track is not used again.
+     */
+    public void close() {
+        unwatchAll();
+        model.setVariable(null);
+        datastore.removeListener(this);
+        mixerModel.getViewportModel().removePropertyChangeListener(this);
+    }
+
+    /**
+     * Starts following a cell.
+     *
+     * @param cell The cell to follow.
+     */
+    private void watch(final Cell cell) {
+        CellWatcher watcher = new CellWatcher(cell);
+        CellWatcher old = watchers.put(cell, watcher);
+
+        if (old != null) {
+            cell.removeListener(old);
+        }
+
+        cell.addListener(watcher);
+        model.getCells().put(cell, watcher.onset, watcher.offset);
+        painter.repaintInterval(watcher.onset, watcher.offset);
+    }
+
+    /**
+     * Stops following a cell.
+     *
+     * @param cell The cell to stop following.
+     */
+    private void unwatch(final Cell cell) {
+        CellWatcher watcher = watchers.remove(cell);
+
+        if (watcher != null) {
+            cell.removeListener(watcher);
+            painter.repaintInterval(watcher.onset, watcher.offset);
+        }
+
+        model.getCells().remove(cell);
+
+        if (cell.equals(model.getHighlighted())) {
+            model.setHighlighted(null);
+        }
+    }
+
+    /**
+     * Stops following the variable and all of its cells.
+     */
+    private void unwatchAll() {
+        Variable variable = model.getVariable();
+
+        if (variable != null) {
+            variable.removeListener(this);
+        }
+
+        for (CellWatcher watcher : watchers.values()) {
+            watcher.cell.removeListener(watcher);
+        }
+
+        watchers.clear();
+    }
+
+    /**
+     * Selects the cell under a point on the track and scrolls the spreadsheet
+     * to it.
+     *
+     * @param x The position on the track, in pixels.
+     */
+    private void showCellAt(final int x) {
+        final ViewportState viewport = mixerModel.getViewportModel()
+            .getViewport();
+
+        if (Double.isNaN(viewport.getResolution())) {
+            return;
+        }
+
+        // Allow a couple of pixels either side, so narrow cells can be hit.
+        final long time = viewport.getViewStart()
+            + viewport.computeTimeFromXOffset(x);
+        final long slack = viewport.computeTimeFromXOffset(2);
+        final Cell cell = model.getCells().find(time - slack, time + slack);
+
+        if (cell == null) {
+            return;
+        }
+
+        CellWatcher watcher = watchers.get(cell);
+
+        OpenSHAPA.getView().getSpreadsheetPanel().showCell(cell);
+
+        if (watcher != null) {
+            OpenSHAPA.getDataController().setFindTime(watcher.onset);
+            OpenSHAPA.getDataController().setFindOffsetField(watcher.offset);
+        }
+    }
+
+    /**
+     * Fills in the list of variables from the datastore.
+     */
+    private void updateVariableBox() {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(new Runnable() {
+                    @Override public void run() {
+                        updateVariableBox();
+                    }
+                });
+
+            return;
+        }
+
+        try {
+            isUpdatingVariableBox = true;
+
+            DefaultComboBoxModel names = new DefaultComboBoxModel();
+
+            for (Variable variable : datastore.getAllVariables()) {
+                names.addElement(variable.getName());
+            }
+
+            Variable shown = model.getVariable();
+            names.setSelectedItem((shown == null) ? null : shown.getName());
+            variableBox.setModel(names);
+        } finally {
+            isUpdatingVariableBox = false;
+        }
+    }
+
+    /**
+     * Shows the variable chosen from the list.
+     */
+    private void handleVariableBoxEvent() {
+        if (isUpdatingVariableBox) {
+            return;
+        }
+
+        Object name = variableBox.getSelectedItem();
+        setVariable((name == null) ? null
+                                   : datastore.getVariable(name.toString()));
+    }
+
+    @Override public void propertyChange(final PropertyChangeEvent evt) {
+        painter.repaint();
+    }
+
+    // *************************************************************************
+    // VariableListener Overrides
+    // *************************************************************************
+    @Override public void nameChanged(final String newName) {
+        updateVariableBox();
+    }
+
+    @Override public void visibilityChanged(final boolean isHidden) {
+        // Hidden variables still have cells to show.
+    }
+
+    @Override public void cellInserted(final Cell newCell) {
+        watch(newCell);
+    }
+
+    @Override public void cellRemoved(final Cell deletedCell) {
+        unwatch(deletedCell);
+    }
+
+    // *************************************************************************
+    // DatastoreListener Overrides
+    // *************************************************************************
+    @Override public void variableAdded(final Variable newVariable) {
+        updateVariableBox();
+    }
+
+    @Override public void variableRemoved(final Variable deletedVariable) {
+        if (deletedVariable.equals(model.getVariable())) {
+            setVariable(null);
+        }
+
+        updateVariableBox();
+    }
+
+    @Override public void variableOrderChanged() {
+        updateVariableBox();
+    }
+
+    @Override public void variableHidden(final Variable hiddenVariable) {
+        // Hidden variables still have cells to show.
+    }
+
+    @Override public void variableVisible(final Variable visibleVariable) {
+        // Nothing to do.
+    }
+
+    @Override public void variableNameChange(final Variable editedVariable) {
+        updateVariableBox();
+    }
+
+    /**
+     * Follows the changes to one cell. Cells do not say which cell changed,
+     * so each cell has a watcher of its own, which remembers the cell's onset
+     * and offset - the cell object the events come from may not be the one
+     * the track was given.
+     */
+    private final class CellWatcher implements CellListener {
+
+        /** The cell watched. */
+        private final Cell cell;
+
+        /** The onset of the cell, in milliseconds. */
+        private volatile long onset;
+
+        /** The offset of the cell, in milliseconds. */
+        private volatile long offset;
+
+        /**
+         * @param cell The cell to watch.
+         */
+        CellWatcher(final Cell cell) {
+            this.cell = cell;
+            onset = cell.getOnset();
+            offset = cell.getOffset();
+        }
+
+        /**
+         * Moves the cell in the index, repainting where it was and where it
+         * is now.
+         *
+         * @param newOnset The new onset of the cell.
+         * @param newOffset The new offset of the cell.
+         */
+        private void move(final long newOnset, final long newOffset) {
+            painter.repaintInterval(onset, Math.max(onset, offset));
+            onset = newOnset;
+            offset = newOffset;
+            model.getCells().put(cell, onset, offset);
+            painter.repaintInterval(onset, Math.max(onset, offset));
+        }
+
+        @Override public void onsetChanged(final long newOnset) {
+            move(newOnset, offset);
+        }
+
+        @Override public void offsetChanged(final long newOffset) {
+            move(onset, newOffset);
+        }
+
+        @Override public void highlightingChange(final boolean isHighlighted) {
+            if (isHighlighted) {
+                Cell old = model.getHighlighted();
+                model.setHighlighted(cell);
+
+                CellWatcher oldWatcher = (old == null) ? null
+                                                       : watchers.get(old);
+
+                if (oldWatcher != null) {
+                    painter.repaintInterval(oldWatcher.onset,
+                        Math.max(oldWatcher.onset, oldWatcher.offset));
+                }
+            } else if (cell.equals(model.getHighlighted())) {
+                model.setHighlighted(null);
+            }
+
+            painter.repaintInterval(onset, Math.max(onset, offset));
+        }
+
+        @Override public void selectionChange(final boolean isSelected) {
+            if (!isSelected) {
+                highlightingChange(false);
+            }
+        }
+
+        @Override public void valueChange(final Value newValue) {
+            // Only the onset and offset are shown.
+        }
+    }
+}
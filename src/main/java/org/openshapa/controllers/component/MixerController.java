@@ -200,7 +200,7 @@ public final class MixerController implements PropertyChangeListener,
         // Set up the root panel
         tracksPanel = new JPanel();
         tracksPanel.setLayout(new MigLayout("ins 0",
-                "[left|left|left|left]rel push[right|right]", ""));
+                "[left|left|left|left|left]rel push[right|right]", ""));
         tracksPanel.setBackground(Color.WHITE);
 
         if (Platform.isMac()) {
@@ -241,6 +241,14 @@ public final class MixerController implements PropertyChangeListener,
             });
         clearRegion.setName("clearRegionButton");
 
+        JButton addCellTrack = new JButton("Add Cell Track");
+        addCellTrack.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent e) {
+                    addCellTrack();
+                }
+            });
+        addCellTrack.setName("addCellTrackButton");
+
         zoomSlide = new JSlider(JSlider.HORIZONTAL, 1, 1000, 1);
         zoomSlide.addChangeListener(new ChangeListener() {
                 public void stateChanged(final ChangeEvent e) {
@@ -279,6 +287,7 @@ public final class MixerController implements PropertyChangeListener,
         tracksPanel.add(bookmarkButton);
         tracksPanel.add(snapRegion);
         tracksPanel.add(clearRegion);
+        tracksPanel.add(addCellTrack);
         tracksPanel.add(zoomRegionButton);
         tracksPanel.add(zoomSlide, "wrap");
 
@@ -511,7 +520,7 @@ public final class MixerController implements PropertyChangeListener,
 
         {
             Map<String, String> constraints = Maps.newHashMap();
-            constraints.put("span", "6");
+            constraints.put("span", "7");
             constraints.put("width",
                 Integer.toString(MixerConstants.MIXER_MIN_WIDTH));
             constraints.put("height", Integer.toString(layeredPaneHeight));
@@ -588,6 +597,45 @@ public final class MixerController implements PropertyChangeListener,
         updateGlobalLockToggle();
     }
 
+    /**
+     * Adds a track showing the cells of a variable above the other tracks.
+     * The variable is chosen on the track.
+     *
+     * @return The controller of the new track.
+     */
+    public CellTrackController addCellTrack() {
+        CellTrackController cellTrack = new CellTrackController(this,
+                mixerModel);
+        tracksEditorController.addCellTrack(cellTrack);
+        tracksScrollPane.validate();
+
+        return cellTrack;
+    }
+
+    /**
+     * Removes a track showing the cells of a variable.
+     *
+     * @param cellTrack
+     *            The track to remove.
+     */
+    public void removeCellTrack(final CellTrackController cellTrack) {
+        tracksEditorController.removeCellTrack(cellTrack);
+        tracksScrollPane.validate();
+    }
+
+    /**
+     * Removes the tracks showing the cells of variables, for when the
+     * datastore they show is closed.
+     */
+    public void removeAllCellTracks() {
+        runInEDT(new Runnable() {
+                @Override public void run() {
+                    tracksEditorController.removeAllCellTracks();
+                    tracksScrollPane.validate();
+                }
+            });
+    }
+
     /** Clears the region of interest and zooms all the way out. */
     public void clearRegionAndZoomOut() {
         clearRegionOfInterest();
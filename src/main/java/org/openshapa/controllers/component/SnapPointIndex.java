@@ -0,0 +1,463 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers.component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.openshapa.models.id.Identifier;
+
+import com.google.common.collect.Maps;
+
+
+/**
+ * A sorted index of the positions of interest on each track (the start, the
+ * bookmarks and the end), used to snap a track that is being dragged to the
+ * other tracks.
+ *
+ * The points of each track are held relative to the start of the track, so
+ * they only need rebuilding when the bookmarks or duration of the track
+ * change. The points of every track are also merged into a single sorted
+ * array of absolute times, which is only rebuilt when a track other than the
+ * one being dragged has moved. The entries belonging to the dragged track are
+ * skipped when searching, so dragging a track never rebuilds the index and
+ * each search is a binary search over primitive arrays.
+ */
+final class SnapPointIndex {
+
+    /** The positions of interest on a single track. */
+    private static final class TrackPoints {
+
+        /** The position of this track's entries in the merged index. */
+        final int slot;
+
+        /** Sorted positions of interest, relative to the start of the track. */
+        long[] points = new long[0];
+
+        /** The number of positions of interest. */
+        int size;
+
+        /** The snap points version of the track the points were taken at. */
+        int version;
+
+        /** The offset of the track in milliseconds. */
+        long offset;
+
+        /** The offset of the track when the merged index was built. */
+        long mergedOffset;
+
+        /**
+         * Constructor.
+         *
+         * @param trackSlot The slot identifying the track in the merged index.
+         */
+        TrackPoints(final int trackSlot) {
+            slot = trackSlot;
+        }
+    }
+
+    /** The positions of interest on each track. */
+    private final Map<Identifier, TrackPoints> tracks = Maps.newHashMap();
+
+    /** The slot to give the next track added. */
+    private int nextSlot;
+
+    /** The absolute positions of interest on every track, in time order. */
+    private long[] merged = new long[0];
+
+    /** The slot of the track each merged position belongs to. */
+    private int[] owners = new int[0];
+
+    /** The number of merged positions. */
+    private int mergedSize;
+
+    /** Scratch space used when merging. */
+    private long[] scratchTimes = new long[0];
+
+    /** Scratch space used when merging. */
+    private int[] scratchOwners = new int[0];
+
+    /** Has a track been added, removed or changed since the last merge? */
+    private boolean stale;
+
+    /** The amount to move the track by to snap, from the last search. */
+    private long snapOffset;
+
+    /** The position snapped to, from the last search. */
+    private long snapPosition;
+
+    /**
+     * Updates the positions of interest on a track, adding the track to the
+     * index if it is not already there. The bookmarks are only read if the
+     * version differs from the one the index holds for the track.
+     *
+     * @param id Identifies the track.
+     * @param version The snap points version of the track, changes whenever
+     * the bookmarks or duration of the track change.
+     * @param offset The offset of the track in milliseconds.
+     * @param bookmarks The bookmarks of the track, relative to its start.
+     * @param duration The duration of the track in milliseconds.
+     */
+    void update(final Identifier id,
+                final int version,
+                final long offset,
+                final List<Long> bookmarks,
+                final long duration) {
+        TrackPoints tp = tracks.get(id);
+
+        if (tp == null) {
+            tp = new TrackPoints(nextSlot++);
+            tp.version = version - 1;
+            tracks.put(id, tp);
+            stale = true;
+        }
+
+        tp.offset = offset;
+
+        if (tp.version == version) {
+            return;
+        }
+
+        int capacity = bookmarks.size() + 2;
+        if (tp.points.length < capacity) {
+            tp.points = new long[capacity];
+        }
+
+        int size = 0;
+        tp.points[size++] = 0;
+        for (Long bookmark : bookmarks) {
+            tp.points[size++] = bookmark;
+        }
+        tp.points[size++] = duration;
+
+        tp.size = unique(tp.points, size);
+        tp.version = version;
+        stale = true;
+    }
+
+    /**
+     * Removes a track from the index.
+     *
+     * @param id Identifies the track to remove.
+     */
+    void remove(final Identifier id) {
+        if (tracks.remove(id) != null) {
+            stale = true;
+        }
+    }
+
+    /**
+     * Removes every track from the index.
+     */
+    void clear() {
+        tracks.clear();
+        mergedSize = 0;
+        stale = false;
+    }
+
+    /**
+     * Searches for a position to snap a track to. The positions of interest
+     * on the track are tried in turn, starting with the one nearest to the
+     * supplied position. Each is snapped to the nearest earlier position of
+     * interest on another track (or one of the fixed positions) within the
+     * threshold, or failing that, the nearest later one.
+     *
+     * @param id Identifies the track being moved.
+     * @param position The position to start searching from.
+     * @param threshold Positions closer than this many milliseconds snap.
+     * @param fixed Positions not on any track to snap to, such as the needle.
+     * @param fixedCount The number of fixed positions.
+     *
+     * @return True if a snap position was found, which is then available
+     * from {@link #getSnapOffset()} and {@link #getSnapPosition()}.
+     */
+    boolean snap(final Identifier id,
+                 final long position,
+                 final long threshold,
+                 final long[] fixed,
+                 final int fixedCount) {
+        TrackPoints moving = tracks.get(id);
+
+        if ((moving == null) || (moving.size == 0)) {
+            return false;
+        }
+
+        ensureMerged(moving);
+
+        final long[] points = moving.points;
+        final long offset = moving.offset;
+
+        // Try the point nearest to the position first.
+        int nearest = lowerBound(points, moving.size, position - offset);
+        if (nearest >= moving.size) {
+            nearest = moving.size - 1;
+        }
+
+        if ((nearest > 0)
+                && (Math.abs(points[nearest] + offset - position)
+                    >= Math.abs(position - points[nearest - 1] - offset))) {
+            nearest--;
+        }
+
+        if (snapPoint(moving, points[nearest] + offset, threshold, fixed,
+                    fixedCount)) {
+            return true;
+        }
+
+        for (int i = 0; i < moving.size; i++) {
+
+            if ((i != nearest)
+                    && snapPoint(moving, points[i] + offset, threshold, fixed,
+                        fixedCount)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The amount to move the track by to snap, from the last
+     * successful search.
+     */
+    long getSnapOffset() {
+        return snapOffset;
+    }
+
+    /**
+     * @return The position snapped to, from the last successful search.
+     */
+    long getSnapPosition() {
+        return snapPosition;
+    }
+
+    /**
+     * Searches for a position to snap a single point to.
+     *
+     * @param moving The track being moved.
+     * @param point The absolute position of the point on the moving track.
+     * @param threshold Positions closer than this many milliseconds snap.
+     * @param fixed Positions not on any track to snap to.
+     * @param fixedCount The number of fixed positions.
+     *
+     * @return True if a position was found.
+     */
+    private boolean snapPoint(final TrackPoints moving,
+                              final long point,
+                              final long threshold,
+                              final long[] fixed,
+                              final int fixedCount) {
+        if (point <= 0) {
+            return false;
+        }
+
+        boolean hasLower = false;
+        long lower = 0;
+        boolean hasUpper = false;
+        long upper = 0;
+
+        int index = lowerBound(merged, mergedSize, point);
+
+        for (int i = index - 1; (i >= 0) && (point - merged[i] < threshold);
+                i--) {
+
+            if (owners[i] != moving.slot) {
+                hasLower = true;
+                lower = merged[i];
+
+                break;
+            }
+        }
+
+        for (int i = index; (i < mergedSize) && (merged[i] - point < threshold);
+                i++) {
+
+            if (owners[i] != moving.slot) {
+                hasUpper = true;
+                upper = merged[i];
+
+                break;
+            }
+        }
+
+        for (int i = 0; i < fixedCount; i++) {
+            final long time = fixed[i];
+
+            if ((time < point) && (point - time < threshold)
+                    && (!hasLower || (time > lower))) {
+                hasLower = true;
+                lower = time;
+            } else if ((time >= point) && (time - point < threshold)
+                    && (!hasUpper || (time < upper))) {
+                hasUpper = true;
+                upper = time;
+            }
+        }
+
+        if (hasLower) {
+            snapOffset = lower - point;
+            snapPosition = lower;
+
+            return true;
+        }
+
+        if (hasUpper) {
+            snapOffset = upper - point;
+            snapPosition = upper;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Rebuilds the merged index if a track has been added, removed or changed,
+     * or a track other than the one being moved has changed offset.
+     *
+     * @param moving The track being moved.
+     */
+    private void ensureMerged(final TrackPoints moving) {
+        if (!stale) {
+            for (TrackPoints tp : tracks.values()) {
+
+                if ((tp != moving) && (tp.offset != tp.mergedOffset)) {
+                    stale = true;
+
+                    break;
+                }
+            }
+        }
+
+        if (!stale) {
+            return;
+        }
+
+        int capacity = 0;
+        for (TrackPoints tp : tracks.values()) {
+            capacity += tp.size;
+        }
+
+        if (merged.length < capacity) {
+            merged = new long[capacity];
+            owners = new int[capacity];
+            scratchTimes = new long[capacity];
+            scratchOwners = new int[capacity];
+        }
+
+        // Each track's points are already sorted, so merge them in one track
+        // at a time.
+        mergedSize = 0;
+        for (TrackPoints tp : tracks.values()) {
+            mergeTrack(tp);
+            tp.mergedOffset = tp.offset;
+        }
+
+        stale = false;
+    }
+
+    /**
+     * Merges the positive absolute positions of interest on a track into the
+     * merged index.
+     *
+     * @param tp The track to merge.
+     */
+    private void mergeTrack(final TrackPoints tp) {
+        int i = 0;
+        int j = 0;
+        int size = 0;
+
+        while ((j < tp.size) && (tp.points[j] + tp.offset <= 0)) {
+            j++;
+        }
+
+        while ((i < mergedSize) || (j < tp.size)) {
+
+            if ((j >= tp.size)
+                    || ((i < mergedSize)
+                        && (merged[i] <= tp.points[j] + tp.offset))) {
+                scratchTimes[size] = merged[i];
+                scratchOwners[size] = owners[i];
+                i++;
+            } else {
+                scratchTimes[size] = tp.points[j] + tp.offset;
+                scratchOwners[size] = tp.slot;
+                j++;
+            }
+
+            size++;
+        }
+
+        long[] times = merged;
+        merged = scratchTimes;
+        scratchTimes = times;
+
+        int[] slots = owners;
+        owners = scratchOwners;
+        scratchOwners = slots;
+
+        mergedSize = size;
+    }
+
+    /**
+     * Sorts the start of an array and removes duplicates.
+     *
+     * @param values The values to sort.
+     * @param size The number of values at the start of the array to sort.
+     *
+     * @return The number of unique values.
+     */
+    private static int unique(final long[] values, final int size) {
+        Arrays.sort(values, 0, size);
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+
+            if ((count == 0) || (values[i] != values[count - 1])) {
+                values[count++] = values[i];
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @param values Sorted values to search.
+     * @param size The number of values to search.
+     * @param key The value to search for.
+     *
+     * @return The index of the first value that is not less than the key, or
+     * size if every value is less than the key.
+     */
+    private static int lowerBound(final long[] values,
+                                  final int size,
+                                  final long key) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+}
@@ -132,6 +132,9 @@ public final class TrackController implements ViewerStateListener,
 
     private boolean isViewerVisible = true;
 
+    /** Changes whenever the bookmarks or duration of the track change. */
+    private int snapPointsVersion;
+
 
     /**
      * Creates a new TrackController.
@@ -368,6 +371,7 @@ public final class TrackController implements ViewerStateListener,
         trackModel.setDuration(duration);
         trackModel.setOffset(offset);
         trackModel.setErroneous(false);
+        snapPointsVersion++;
         trackLabel.setText(trackName);
         trackLabel.setToolTipText(trackName);
         trackPainter.setTrackModel(trackModel);
@@ -415,6 +419,7 @@ public final class TrackController implements ViewerStateListener,
         if ((0 <= bookmark) && (bookmark <= trackModel.getDuration())) {
             trackModel.addBookmark(bookmark);
             trackPainter.setTrackModel(trackModel);
+            snapPointsVersion++;
         }
 
         updatePopupMenu();
@@ -423,12 +428,14 @@ public final class TrackController implements ViewerStateListener,
     public void addBookmarks(final List<Long> bookmarks) {
         trackModel.addBookmarks(bookmarks);
         trackPainter.setTrackModel(trackModel);
+        snapPointsVersion++;
         updatePopupMenu();
     }
 
     public void removeBookmark(final long bookmark) {
         trackModel.removeBookmark(bookmark);
         trackPainter.setTrackModel(trackModel);
+        snapPointsVersion++;
         updatePopupMenu();
     }
 
@@ -482,6 +489,14 @@ public final class TrackController implements ViewerStateListener,
         return trackModel.getDuration();
     }
 
+    /**
+     * @return A number that changes whenever the bookmarks or duration of the
+     *         track change.
+     */
+    int getSnapPointsVersion() {
+        return snapPointsVersion;
+    }
+
     /**
      * @return Bookmarked positions in milliseconds. Does not take into account
      *         any offsets.
@@ -587,6 +602,7 @@ public final class TrackController implements ViewerStateListener,
                 if (val != null) {
 
                     trackModel.setDuration(val);
+                    snapPointsVersion++;
                     view.repaint();
                     OpenSHAPA.getDataController().updateMaxViewerDuration();
                     OpenSHAPA.getDataController().getMixerController()
@@ -661,6 +677,7 @@ public final class TrackController implements ViewerStateListener,
     private void clearBookmarkAction() {
         trackModel.clearBookmarks();
         trackPainter.setTrackModel(trackModel);
+        snapPointsVersion++;
     }
 
     /**
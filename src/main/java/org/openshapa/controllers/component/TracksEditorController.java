@@ -16,7 +16,6 @@ package org.openshapa.controllers.component;
 
 import java.awt.event.MouseEvent;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -62,12 +61,21 @@ public final class TracksEditorController implements TrackMouseEventListener {
     /** List of track controllers. */
     private final Map<Identifier, TrackController> tracks;
 
+    /** Tracks showing the cells of variables, above the other tracks. */
+    private final List<CellTrackController> cellTracks = Lists.newArrayList();
+
     private final MixerController mixerController;
     private final MixerModel mixerModel;
 
     /** Handles the selection model for tracks. */
     private final CarriageSelection selectionHandler;
 
+    /** Positions of interest on each track, for snapping. */
+    private final SnapPointIndex snapIndex = new SnapPointIndex();
+
+    /** Positions not on any track to snap to, reused between drags. */
+    private final long[] fixedCandidates = new long[4];
+
     /**
      * Create a new tracks editor controller.
      */
@@ -160,6 +168,53 @@ public final class TracksEditorController implements TrackMouseEventListener {
             });
     }
 
+    /**
+     * Adds a track showing the cells of a variable, below any other cell
+     * tracks and above the tracks of the data viewers.
+     *
+     * @param cellTrack
+     *            The cell track to add.
+     */
+    public void addCellTrack(final CellTrackController cellTrack) {
+        editingPanel.add(cellTrack.getView(),
+            "pad 0 0 0 " + -RegionConstants.RMARKER_WIDTH + ", growx",
+            cellTracks.size());
+        cellTracks.add(cellTrack);
+        editingPanel.revalidate();
+        editingPanel.repaint();
+    }
+
+    /**
+     * Removes a cell track, which stops following the datastore.
+     *
+     * @param cellTrack
+     *            The cell track to remove.
+     * @return true if the cell track was removed, false otherwise.
+     */
+    public boolean removeCellTrack(final CellTrackController cellTrack) {
+
+        if (!cellTracks.remove(cellTrack)) {
+            return false;
+        }
+
+        cellTrack.close();
+        editingPanel.remove(cellTrack.getView());
+        editingPanel.revalidate();
+        editingPanel.repaint();
+
+        return true;
+    }
+
+    /**
+     * Removes every cell track.
+     */
+    public void removeAllCellTracks() {
+
+        for (CellTrackController cellTrack : Lists.newArrayList(cellTracks)) {
+            removeCellTrack(cellTrack);
+        }
+    }
+
     /**
      * Bind track actions to a data viewer.
      *
@@ -199,6 +254,7 @@ public final class TracksEditorController implements TrackMouseEventListener {
 
         if (tracks.containsKey(trackId)) {
             TrackController tc = tracks.remove(trackId);
+            snapIndex.remove(trackId);
 
             tc.removeCarriageEventListener(listener);
             tc.removeCarriageEventListener(selectionHandler);
@@ -225,7 +281,13 @@ public final class TracksEditorController implements TrackMouseEventListener {
             tc.removeCarriageEventListener(selectionHandler);
         }
 
+        for (CellTrackController cellTrack : cellTracks) {
+            cellTrack.close();
+        }
+
         tracks.clear();
+        cellTracks.clear();
+        snapIndex.clear();
         editingPanel.removeAll();
         editingPanel.repaint();
     }
@@ -260,200 +322,71 @@ public final class TracksEditorController implements TrackMouseEventListener {
         tc.setTrackOffset(newOffset);
         snapMarkerController.setMarkerTime(-1);
 
-        SnapPoint snapPoint = snapOffset(trackId, snapTemporalPosition);
-        tc.setMoveable(snapPoint == null);
+        final boolean snapped = snapOffset(trackId, snapTemporalPosition);
+        tc.setMoveable(!snapped);
 
-        if (snapPoint == null) {
+        if (!snapped) {
             snapMarkerController.setMarkerTime(-1);
         } else {
-            snapMarkerController.setMarkerTime(snapPoint.snapMarkerPosition);
-            tc.setTrackOffset(newOffset + snapPoint.snapOffset);
+            snapMarkerController.setMarkerTime(snapIndex.getSnapPosition());
+            tc.setTrackOffset(newOffset + snapIndex.getSnapOffset());
         }
 
         return true;
     }
 
     /**
-     * Naive snap algorithm:
-     * <ol>
-     * <li>Compile a list of snap points for the given track.</li>
-     * <li>Compile a list of candidate snap points from every other track.</li>
-     * <li>Find a snap position by comparing the snap points for the given track
-     * against every other track.</li>
-     * <li>A candidate snap point is chosen as the new offset value if it is
-     * within +/- 5 seconds of the snap point being compared against.</li>
-     * <li>If no snap points are found, then return null.</li>
-     * </ol>
+     * Snaps the given track to the positions of interest on every other track,
+     * time zero, the region markers and the needle. The positions of interest
+     * on the tracks are kept in {@link #snapIndex}, which is brought up to
+     * date with any bookmark, duration or offset changes before searching.
      *
      * @param trackId
      *            Identifier of the track being moved.
      * @param temporalSnapPosition
      *            The snap position to start searching from.
-     * @return see Javadoc for explanation.
+     * @return true if a snap position was found, which is then available from
+     *         the snap index.
      */
-    private SnapPoint snapOffset(final Identifier trackId,
+    private boolean snapOffset(final Identifier trackId,
         final long temporalSnapPosition) {
         final ViewportState viewport = mixerModel.getViewportModel()
             .getViewport();
 
-        // Points on other (non-selected) data tracks that can be used for
-        // alignment.
-        final List<Long> snapCandidates = Lists.newArrayList();
-
-        // Points on the current/selected data track that may be used for
-        // alignment against other data tracks.
-        final List<Long> snapPoints = Lists.newArrayList();
-
-        long longestDuration = 0;
+        // Time zero, the region markers and the needle are only snapped to
+        // when they are visible.
+        int fixedCount = 0;
 
-        // add time zero as a candidate snap point
         if (viewport.isTimeInViewport(0)) {
-            snapCandidates.add(0L);
+            fixedCandidates[fixedCount++] = 0;
         }
 
-        // add region markers as snap candidates
         final RegionState region = mixerModel.getRegionModel().getRegion();
 
         if (viewport.isTimeInViewport(region.getRegionStart())) {
-            snapCandidates.add(region.getRegionStart());
+            fixedCandidates[fixedCount++] = region.getRegionStart();
         }
 
         if (viewport.isTimeInViewport(region.getRegionEnd())) {
-            snapCandidates.add(region.getRegionEnd());
+            fixedCandidates[fixedCount++] = region.getRegionEnd();
         }
 
-        // add the needle as a candidate snap point
         final long needlePosition = mixerController.getNeedleController()
             .getNeedleModel().getCurrentTime();
 
         if (viewport.isTimeInViewport(needlePosition)) {
-            snapCandidates.add(needlePosition);
+            fixedCandidates[fixedCount++] = needlePosition;
         }
 
-        // Compile track and candidate snap points
         for (TrackController tc : tracks.values()) {
-            final List<Long> snapList =
-                tc.getTrackModel().getId().equals(trackId) ? snapPoints
-                                                           : snapCandidates;
-
-            // add the left side (start) of the track as a snap point
-            final long startTime = tc.getOffset();
-
-            if (startTime > 0) {
-                snapList.add(startTime);
-            }
-
-            // add all of the bookmarks as snap points
-            for (Long bookmark : tc.getBookmarks()) {
-                final long time = startTime + bookmark;
-
-                if (time > 0) {
-                    snapList.add(time);
-                }
-            }
-
-            // add the right side (end) of the track as a snap point
-            final long duration = tc.getDuration();
-            final long endTime = startTime + duration;
-
-            if (endTime > 0) {
-                snapList.add(endTime);
-            }
-
-            if (duration > longestDuration) {
-                longestDuration = duration;
-            }
+            snapIndex.update(tc.getTrackModel().getId(),
+                tc.getSnapPointsVersion(), tc.getOffset(), tc.getBookmarks(),
+                tc.getDuration());
         }
 
-        // If there are no snap candidates just exit immediately.
-        if (snapCandidates.isEmpty()) {
-            return null;
-        }
-
-        final long snappingThreshold = TrackController
-            .calculateSnappingThreshold(viewport);
-
-        // Remove duplicate candidate snap points
-        for (int i = snapCandidates.size() - 1; i > 0; i--) {
-
-            if (snapCandidates.get(i).equals(snapCandidates.get(i - 1))) {
-                snapCandidates.remove(i);
-            }
-        }
-
-        // Sort the candidate snap points
-        Collections.sort(snapCandidates);
-
-        // Search for a snap position nearest to temporalSnapPosition
-        int nearestIndex = Collections.binarySearch(snapPoints,
-                temporalSnapPosition);
-
-        if (nearestIndex < 0) {
-            nearestIndex = -(nearestIndex + 1);
-        }
-
-        if (nearestIndex >= snapPoints.size()) {
-            nearestIndex = snapPoints.size() - 1;
-        }
-
-        if ((nearestIndex >= 0) && (nearestIndex < snapPoints.size())) {
-            final long rightSnapTime = snapPoints.get(nearestIndex);
-            long leftSnapTime = rightSnapTime;
-
-            if (nearestIndex > 0) {
-                leftSnapTime = snapPoints.get(nearestIndex - 1);
-            }
-
-            // Add the closest snap point as first search position
-            if (Math.abs(rightSnapTime - temporalSnapPosition)
-                    < Math.abs(temporalSnapPosition - leftSnapTime)) {
-                snapPoints.add(0, rightSnapTime);
-            } else {
-                snapPoints.add(0, leftSnapTime);
-            }
-        }
-
-        // Search for snap position
-        for (Long snapPoint : snapPoints) {
-            int candidateIndex = Collections.binarySearch(snapCandidates,
-                    snapPoint);
-
-            if (candidateIndex < 0) {
-                candidateIndex = -(candidateIndex + 1);
-            }
-
-            if (candidateIndex >= snapCandidates.size()) {
-                candidateIndex = snapCandidates.size() - 1;
-            }
-
-            final long upperSnapTime = snapCandidates.get(candidateIndex);
-            long lowerSnapTime = upperSnapTime;
-
-            if (candidateIndex > 0) {
-                lowerSnapTime = snapCandidates.get(candidateIndex - 1);
-            }
-
-            if ((lowerSnapTime < snapPoint)
-                    && (Math.abs(snapPoint - lowerSnapTime)
-                        < snappingThreshold)) {
-                final SnapPoint sp = new SnapPoint();
-                sp.snapOffset = lowerSnapTime - snapPoint;
-                sp.snapMarkerPosition = lowerSnapTime;
-
-                return sp;
-            }
-
-            // Check if the candidate snap points can be used
-            if (Math.abs(upperSnapTime - snapPoint) < snappingThreshold) {
-                final SnapPoint sp = new SnapPoint();
-                sp.snapOffset = upperSnapTime - snapPoint;
-                sp.snapMarkerPosition = upperSnapTime;
-
-                return sp;
-            }
-        }
-
-        return null;
+        return snapIndex.snap(trackId, temporalSnapPosition,
+                TrackController.calculateSnappingThreshold(viewport),
+                fixedCandidates, fixedCount);
     }
 
     /**
@@ -675,21 +608,4 @@ public final class TracksEditorController implements TrackMouseEventListener {
 
     }
 
-    /**
-     * Inner class for packaging snap information.
-     */
-    private static class SnapPoint {
-
-        /** The new snap offset position in milliseconds. */
-        public long snapOffset;
-
-        /** The snap marker position to paint. */
-        public long snapMarkerPosition;
-
-        public String toString() {
-            return "[SnapPoint snapOffset=" + snapOffset
-                + ", snapMarkerPosition=" + snapMarkerPosition + "]";
-        }
-    }
-
 }
@@ -0,0 +1,917 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers.project;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+import org.openshapa.OpenSHAPA;
+
+import org.openshapa.util.HashUtils;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+
+/**
+ * Finds media that has moved since a project was saved.
+ *
+ * The index keeps a set of media roots - the directories of projects and of
+ * media that has been opened - and a catalogue of the directories below them:
+ * the names of their files and sub-directories along with their modification
+ * time. Missing media is looked up by name in the catalogue. Only when that
+ * finds nothing is the catalogue refreshed, statting each directory under the
+ * roots and listing again only those that have changed. The roots, the
+ * catalogue and the fingerprints of opened media are saved between sessions.
+ *
+ * When several files share the name, they are narrowed down by comparing
+ * their size and a hash of their first and last few kilobytes with the media
+ * as it was when last opened. If more than one candidate is left, the one
+ * whose path has the most in common with the original path is chosen, and
+ * the match is reported as ambiguous.
+ */
+public final class MediaIndex {
+
+    /** Name of the file to save the index to. */
+    private static final String fileName = "media_index.yml";
+
+    /** The most media roots to remember. */
+    private static final int ROOT_LIMIT = 50;
+
+    /** The most media fingerprints to remember. */
+    private static final int FINGERPRINT_LIMIT = 1000;
+
+    /** The deepest to descend below a root, guarding against link cycles. */
+    private static final int MAX_DEPTH = 16;
+
+    /** The most directories to list in one refresh of the catalogue. */
+    private static final int DIR_LIMIT = 5000;
+
+    /** The number of bytes hashed from each end of a file. */
+    private static final int HASH_BYTES = 64 * 1024;
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(MediaIndex.class);
+
+    /** The index used by the application. */
+    private static MediaIndex instance;
+
+    /**
+     * The files and sub-directories of a listed directory.
+     */
+    private static final class Directory {
+
+        /** The modification time of the directory when it was listed. */
+        final long modified;
+
+        /** The names of the files in the directory. */
+        final Set<String> files;
+
+        /** The names of the sub-directories. */
+        final List<String> dirs;
+
+        /**
+         * Constructor.
+         *
+         * @param dirModified The modification time of the directory.
+         * @param dirFiles The names of the files.
+         * @param subDirs The names of the sub-directories.
+         */
+        Directory(final long dirModified,
+                  final Set<String> dirFiles,
+                  final List<String> subDirs) {
+            modified = dirModified;
+            files = dirFiles;
+            dirs = subDirs;
+        }
+    }
+
+    /**
+     * The result of looking for a piece of media.
+     */
+    public static final class Match {
+
+        /** The candidates, best first. */
+        private final List<File> candidates;
+
+        /** Was every directory under the media roots searched? */
+        private final boolean complete;
+
+        /**
+         * Constructor.
+         *
+         * @param found The candidates, best first.
+         * @param searchedAll Was every directory under the media roots
+         * searched?
+         */
+        Match(final List<File> found, final boolean searchedAll) {
+            candidates = Collections.unmodifiableList(found);
+            complete = searchedAll;
+        }
+
+        /**
+         * @return The best candidate, or null if nothing was found.
+         */
+        public File getFile() {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+
+        /**
+         * @return Every candidate that matched, best first.
+         */
+        public List<File> getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * @return True if more than one file matched.
+         */
+        public boolean isAmbiguous() {
+            return candidates.size() > 1;
+        }
+
+        /**
+         * @return True if every directory under the media roots was searched.
+         * When false and nothing was found, the media may still be there.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /** The file to save the index to, null if not saved. */
+    private final File indexFile;
+
+    /** The most directories to list in one refresh of the catalogue. */
+    private final int dirLimit;
+
+    /** Media roots, mapped to whether they are searched recursively. */
+    private final Map<String, Boolean> roots = new LinkedHashMap<String,
+        Boolean>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(
+                final Map.Entry<String, Boolean> eldest) {
+                return size() > ROOT_LIMIT;
+            }
+        };
+
+    /** The catalogue of directories, keyed by absolute path. */
+    private final Map<String, Directory> dirs =
+        new HashMap<String, Directory>();
+
+    /** File names, mapped to the catalogued directories holding them. */
+    private final Map<String, Set<String>> names =
+        new HashMap<String, Set<String>>();
+
+    /**
+     * The size, modification time and partial hash of media, keyed by
+     * absolute path.
+     */
+    private final Map<String, Map<String, Object>> fingerprints =
+        new LinkedHashMap<String, Map<String, Object>>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(
+                final Map.Entry<String, Map<String, Object>> eldest) {
+                return size() > FINGERPRINT_LIMIT;
+            }
+        };
+
+    /** Has the index changed since it was last saved? */
+    private boolean dirty;
+
+    /**
+     * Held while refreshing the catalogue, so that only one thread walks the
+     * media roots. Lookups only need the lock of the index itself.
+     */
+    private final Object walkLock = new Object();
+
+    /** The number of refreshes of the catalogue. */
+    private volatile int refreshes;
+
+    /** Did the last refresh reach every directory under the media roots? */
+    private volatile boolean refreshComplete = true;
+
+    /**
+     * Constructor.
+     *
+     * @param file The file to save the index to, or null to not save it.
+     */
+    MediaIndex(final File file) {
+        this(file, DIR_LIMIT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file The file to save the index to, or null to not save it.
+     * @param limit The most directories to list in one refresh of the
+     * catalogue.
+     */
+    MediaIndex(final File file, final int limit) {
+        indexFile = file;
+        dirLimit = limit;
+
+        if ((indexFile != null) && indexFile.exists()) {
+            load();
+        }
+    }
+
+    /**
+     * @return The index used by the application.
+     */
+    public static synchronized MediaIndex getInstance() {
+        if (instance == null) {
+            instance = new MediaIndex(new File(OpenSHAPA.getApplication()
+                        .getContext().getLocalStorage().getDirectory(),
+                        fileName));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Adds a directory to search for media.
+     *
+     * @param dir The directory.
+     * @param recursive Should the sub-directories be searched too?
+     */
+    public synchronized void addRoot(final File dir, final boolean recursive) {
+        if (dir == null) {
+            return;
+        }
+
+        String path = dir.getAbsolutePath();
+        Boolean was = roots.get(path);
+
+        // Don't lose recursion that was asked for earlier.
+        boolean deep = recursive || ((was != null) && was);
+        roots.put(path, deep);
+
+        if ((was == null) || (was != deep)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Remembers media that has been opened, so that it can be recognised if
+     * it moves. Its directory becomes a media root. The media is only hashed
+     * again if it has changed since it was last remembered.
+     *
+     * @param media The media that was opened.
+     */
+    public void remember(final File media) {
+        addRoot(media.getParentFile(), false);
+        fingerprint(media);
+    }
+
+    /**
+     * Saves the index if it has changed since it was last saved. Loading a
+     * project remembers and looks for each of its media, so the changes are
+     * saved once the load is done rather than one at a time.
+     */
+    public synchronized void flush() {
+        if (dirty && save()) {
+            dirty = false;
+        }
+    }
+
+    /**
+     * Looks for media that is no longer at its original path. The catalogue
+     * is refreshed first if it holds nothing that could be the media.
+     *
+     * @param originalPath The path the media used to be at.
+     *
+     * @return The files that might be the media, best first.
+     */
+    public Match locate(final String originalPath) {
+        String name = FilenameUtils.getName(originalPath);
+        Map<String, Object> original;
+
+        synchronized (this) {
+            original = fingerprints.get(new File(originalPath)
+                    .getAbsolutePath());
+        }
+
+        List<File> candidates = lookup(name);
+        boolean complete = true;
+
+        if (!fits(candidates, original)) {
+            complete = refresh();
+            candidates = lookup(name);
+        }
+
+        // Narrow down by the size, then the contents, of the media as it was
+        // last opened.
+        if ((original != null) && (candidates.size() > 1)) {
+            List<File> sameSize = new ArrayList<File>();
+            for (File file : candidates) {
+                if (file.length() == toLong(original.get("size"))) {
+                    sameSize.add(file);
+                }
+            }
+
+            if (sameSize.size() > 1) {
+                List<File> sameHash = new ArrayList<File>();
+                for (File file : sameSize) {
+                    Map<String, Object> print = fingerprint(file);
+
+                    if ((print != null)
+                            && print.get("hash").equals(original.get("hash"))) {
+                        sameHash.add(file);
+                    }
+                }
+
+                if (!sameHash.isEmpty()) {
+                    sameSize = sameHash;
+                }
+            }
+
+            if (!sameSize.isEmpty()) {
+                candidates = sameSize;
+            }
+        }
+
+        // The closest path wins, then the one nearest a root.
+        final String[] originalParts = split(originalPath);
+        Collections.sort(candidates, new Comparator<File>() {
+                @Override public int compare(final File a, final File b) {
+                    String[] aParts = split(a.getPath());
+                    String[] bParts = split(b.getPath());
+                    int closer = commonTail(originalParts, bParts)
+                        - commonTail(originalParts, aParts);
+
+                    return (closer != 0) ? closer
+                                         : (aParts.length - bParts.length);
+                }
+            });
+
+        if (candidates.size() > 1) {
+            LOGGER.event("Ambiguous media: " + originalPath + " matched "
+                + candidates.size() + " files");
+        }
+
+        return new Match(candidates, complete);
+    }
+
+    /**
+     * @param candidates The files found for a piece of media.
+     * @param original The fingerprint of the media, or null if unknown.
+     *
+     * @return True if one of the files could be the media.
+     */
+    private static boolean fits(final List<File> candidates,
+        final Map<String, Object> original) {
+        if (original == null) {
+            return !candidates.isEmpty();
+        }
+
+        for (File file : candidates) {
+            if (file.length() == toLong(original.get("size"))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Looks up a file name in the catalogue.
+     *
+     * @param name The name of the file to look for.
+     *
+     * @return The catalogued files with the name that are still there.
+     */
+    private List<File> lookup(final String name) {
+        List<String> holders;
+
+        synchronized (this) {
+            Set<String> paths = names.get(name);
+
+            if (paths == null) {
+                return new ArrayList<File>();
+            }
+
+            holders = new ArrayList<String>(paths);
+        }
+
+        List<File> found = new ArrayList<File>();
+
+        for (String path : holders) {
+            File file = new File(path, name);
+
+            if (file.isFile()) {
+                found.add(file);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Brings the catalogue up to date with the directories under the media
+     * roots. If another thread finished a refresh while this one waited for
+     * it, that refresh is used instead of walking the roots again.
+     *
+     * @return True if every directory under the media roots was reached.
+     */
+    boolean refresh() {
+        int seen = refreshes;
+
+        synchronized (walkLock) {
+            if (refreshes == seen) {
+                refreshComplete = walk();
+                refreshes++;
+            }
+
+            return refreshComplete;
+        }
+    }
+
+    /**
+     * Walks the media roots breadth first, listing the directories that have
+     * changed since they were catalogued. Called with the walk lock held.
+     *
+     * @return True if every directory under the media roots was reached.
+     */
+    private boolean walk() {
+        Map<File, Boolean> level = new LinkedHashMap<File, Boolean>();
+
+        synchronized (this) {
+            for (Map.Entry<String, Boolean> root : roots.entrySet()) {
+                level.put(new File(root.getKey()), root.getValue());
+            }
+        }
+
+        // Directories reached so far, mapped to whether their
+        // sub-directories were reached too.
+        Map<String, Boolean> visited = new HashMap<String, Boolean>();
+        boolean complete = true;
+        int listed = 0;
+
+        for (int depth = 0; !level.isEmpty(); depth++) {
+            if (depth > MAX_DEPTH) {
+                complete = false;
+
+                break;
+            }
+
+            Map<File, Boolean> next = new LinkedHashMap<File, Boolean>();
+
+            for (Map.Entry<File, Boolean> dir : level.entrySet()) {
+                String path = dir.getKey().getAbsolutePath();
+                boolean recursive = dir.getValue();
+                Boolean seen = visited.get(path);
+
+                // A shallow root within a deeper one still has its
+                // sub-directories searched when the deeper one reaches it.
+                if ((seen != null) && (seen || !recursive)) {
+                    continue;
+                }
+
+                visited.put(path, recursive);
+
+                long modified = dir.getKey().lastModified();
+                Directory entry;
+
+                synchronized (this) {
+                    entry = dirs.get(path);
+                }
+
+                if ((entry == null) || (entry.modified != modified)) {
+                    if (listed >= dirLimit) {
+                        complete = false;
+
+                        continue;
+                    }
+
+                    entry = list(dir.getKey(), modified);
+                    listed++;
+                    catalogue(path, entry);
+                }
+
+                if ((entry != null) && recursive) {
+                    for (String sub : entry.dirs) {
+                        next.put(new File(dir.getKey(), sub), true);
+                    }
+                }
+            }
+
+            level = next;
+        }
+
+        // Directories that are gone, or no longer under a root, are only
+        // known once every directory has been reached.
+        if (complete) {
+            synchronized (this) {
+                for (String path : new ArrayList<String>(dirs.keySet())) {
+                    if (!visited.containsKey(path)) {
+                        catalogue(path, null);
+                    }
+                }
+            }
+        }
+
+        if (listed > 0) {
+            LOGGER.event("Media index listed " + listed + " directories");
+        }
+
+        return complete;
+    }
+
+    /**
+     * Lists a directory.
+     *
+     * @param dir The directory to list.
+     * @param modified The modification time of the directory.
+     *
+     * @return The files and sub-directories of the directory, or null if it
+     * could not be listed.
+     */
+    private static Directory list(final File dir, final long modified) {
+        File[] children = (modified == 0) ? null : dir.listFiles();
+
+        if (children == null) {
+            return null;
+        }
+
+        Set<String> files = new HashSet<String>();
+        List<String> subDirs = new ArrayList<String>();
+
+        for (File child : children) {
+            if (child.isDirectory()) {
+                subDirs.add(child.getName());
+            } else {
+                files.add(child.getName());
+            }
+        }
+
+        return new Directory(modified, files, subDirs);
+    }
+
+    /**
+     * Replaces a directory in the catalogue.
+     *
+     * @param path The absolute path of the directory.
+     * @param entry The listing of the directory, or null to remove it.
+     */
+    private synchronized void catalogue(final String path,
+        final Directory entry) {
+        Directory old = (entry == null) ? dirs.remove(path)
+                                        : dirs.put(path, entry);
+
+        if (old != null) {
+            for (String file : old.files) {
+                Set<String> holders = names.get(file);
+                holders.remove(path);
+
+                if (holders.isEmpty()) {
+                    names.remove(file);
+                }
+            }
+        }
+
+        if (entry != null) {
+            for (String file : entry.files) {
+                Set<String> holders = names.get(file);
+
+                if (holders == null) {
+                    holders = new HashSet<String>();
+                    names.put(file, holders);
+                }
+
+                holders.add(path);
+            }
+        }
+
+        if ((old != null) || (entry != null)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Finds the fingerprint of a file, hashing it if it has changed since it
+     * was last hashed.
+     *
+     * @param file The file to fingerprint.
+     *
+     * @return The size, modification time and hash of the file, or null if
+     * it could not be read.
+     */
+    private Map<String, Object> fingerprint(final File file) {
+        String path = file.getAbsolutePath();
+        Map<String, Object> print;
+
+        synchronized (this) {
+            print = fingerprints.get(path);
+        }
+
+        if ((print != null) && (toLong(print.get("size")) == file.length())
+                && (toLong(print.get("modified")) == file.lastModified())
+                && (print.get("hash") instanceof String)) {
+            return print;
+        }
+
+        try {
+            print = new LinkedHashMap<String, Object>();
+            print.put("size", file.length());
+            print.put("modified", file.lastModified());
+            print.put("hash", partialHash(file));
+
+            synchronized (this) {
+                fingerprints.put(path, print);
+                dirty = true;
+            }
+
+            return print;
+        } catch (IOException e) {
+            LOGGER.error("Unable to fingerprint " + path, e);
+
+            return null;
+        }
+    }
+
+    /**
+     * @param file The file to hash.
+     *
+     * @return A hash of the first and last few kilobytes of the file.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    static String partialHash(final File file) throws IOException {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 is not available");
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            byte[] buffer = new byte[HASH_BYTES];
+            long length = raf.length();
+
+            int read = (int) Math.min(length, HASH_BYTES);
+            raf.readFully(buffer, 0, read);
+            digest.update(buffer, 0, read);
+
+            if (length > HASH_BYTES) {
+                long tail = Math.max(HASH_BYTES, length - HASH_BYTES);
+                read = (int) (length - tail);
+                raf.seek(tail);
+                raf.readFully(buffer, 0, read);
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            raf.close();
+        }
+
+        return HashUtils.convertToHex(digest.digest());
+    }
+
+    /**
+     * @param path A file path.
+     *
+     * @return The names making up the path, with either separator.
+     */
+    private static String[] split(final String path) {
+        return FilenameUtils.separatorsToUnix(path).split("/");
+    }
+
+    /**
+     * @param a The names making up a path.
+     * @param b The names making up another path.
+     *
+     * @return The number of names the paths end with in common.
+     */
+    private static int commonTail(final String[] a, final String[] b) {
+        int count = 0;
+
+        while ((count < a.length) && (count < b.length)
+                && a[a.length - 1 - count].equals(b[b.length - 1 - count])) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @param number A number loaded from YAML, which may be an Integer or a
+     * Long depending on its size.
+     *
+     * @return The number as a long, or -1 if missing.
+     */
+    private static long toLong(final Object number) {
+        return (number instanceof Number) ? ((Number) number).longValue() : -1;
+    }
+
+    /**
+     * Save the index to disk in YAML format. The index is written next to the
+     * old one and then renamed over it, so an interrupted save leaves the old
+     * index intact.
+     *
+     * @return True if the index was saved.
+     */
+    private boolean save() {
+        if (indexFile == null) {
+            return false;
+        }
+
+        Map<String, Object> directories = new TreeMap<String, Object>();
+
+        for (Map.Entry<String, Directory> e : dirs.entrySet()) {
+            Map<String, Object> dir = new LinkedHashMap<String, Object>();
+            dir.put("modified", e.getValue().modified);
+            dir.put("files", new ArrayList<String>(
+                    new TreeSet<String>(e.getValue().files)));
+            dir.put("dirs", e.getValue().dirs);
+            directories.put(e.getKey(), dir);
+        }
+
+        Map<String, Object> data = new LinkedHashMap<String, Object>();
+        data.put("roots", roots);
+        data.put("fingerprints", fingerprints);
+        data.put("directories", directories);
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        Yaml yaml = new Yaml(options);
+        File part = new File(indexFile.getPath() + ".part");
+        Writer fw = null;
+
+        try {
+            fw = new FileWriter(part);
+            yaml.dump(data, fw);
+            fw.close();
+            fw = null;
+
+            indexFile.delete();
+
+            if (!part.renameTo(indexFile)) {
+                throw new IOException("Unable to write " + indexFile);
+            }
+
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Couldn't save media index", e);
+
+            return false;
+        } finally {
+            IOUtils.closeQuietly(fw);
+            part.delete();
+        }
+    }
+
+    /**
+     * @param value A directory loaded from YAML.
+     *
+     * @return The directory, or null if it is malformed.
+     */
+    private static Directory toDirectory(final Map<?, ?> value) {
+        Object files = value.get("files");
+        Object subDirs = value.get("dirs");
+
+        if (!(value.get("modified") instanceof Number)
+                || !(files instanceof List) || !(subDirs instanceof List)) {
+            return null;
+        }
+
+        Set<String> dirFiles = new HashSet<String>();
+        for (Object file : (List<?>) files) {
+            if (file instanceof String) {
+                dirFiles.add((String) file);
+            }
+        }
+
+        List<String> dirNames = new ArrayList<String>();
+        for (Object dir : (List<?>) subDirs) {
+            if (dir instanceof String) {
+                dirNames.add((String) dir);
+            }
+        }
+
+        return new Directory(toLong(value.get("modified")), dirFiles,
+                dirNames);
+    }
+
+    /**
+     * Load the index from disk. Anything that isn't of the expected type is
+     * skipped.
+     */
+    private void load() {
+        Yaml yaml = new Yaml();
+        Reader fr = null;
+
+        try {
+            fr = new FileReader(indexFile);
+
+            Object data = yaml.load(fr);
+            if (!(data instanceof Map)) {
+                return;
+            }
+
+            Map<?, ?> map = (Map<?, ?>) data;
+            Object rootData = map.get("roots");
+
+            if (rootData instanceof Map) {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) rootData).entrySet()) {
+                    if ((e.getKey() instanceof String)
+                            && (e.getValue() instanceof Boolean)) {
+                        roots.put((String) e.getKey(), (Boolean) e.getValue());
+                    }
+                }
+            }
+
+            Object printData = map.get("fingerprints");
+
+            if (printData instanceof Map) {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) printData).entrySet()) {
+                    if (!(e.getKey() instanceof String)
+                            || !(e.getValue() instanceof Map)) {
+                        continue;
+                    }
+
+                    Map<?, ?> value = (Map<?, ?>) e.getValue();
+
+                    if (value.get("hash") instanceof String) {
+                        Map<String, Object> print =
+                            new LinkedHashMap<String, Object>();
+                        print.put("size", toLong(value.get("size")));
+                        print.put("modified", toLong(value.get("modified")));
+                        print.put("hash", value.get("hash"));
+                        fingerprints.put((String) e.getKey(), print);
+                    }
+                }
+            }
+
+            Object dirData = map.get("directories");
+
+            if (dirData instanceof Map) {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) dirData).entrySet()) {
+                    if ((e.getKey() instanceof String)
+                            && (e.getValue() instanceof Map)) {
+                        Directory entry = toDirectory((Map<?, ?>) e
+                                .getValue());
+
+                        if (entry != null) {
+                            catalogue((String) e.getKey(), entry);
+                        }
+                    }
+                }
+            }
+
+            // Loading is not a change.
+            dirty = false;
+        } catch (FileNotFoundException e) {
+            ; // Function is only called if the file exists.
+        } catch (RuntimeException e) {
+            LOGGER.error("Couldn't load media index", e);
+            roots.clear();
+            fingerprints.clear();
+            dirs.clear();
+            names.clear();
+            dirty = false;
+        } finally {
+            IOUtils.closeQuietly(fr);
+        }
+    }
+}
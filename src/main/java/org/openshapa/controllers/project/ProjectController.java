@@ -14,21 +14,30 @@
  */
 package org.openshapa.controllers.project;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
 import java.io.File;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.filechooser.FileFilter;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.filefilter.FileFilterUtils;
-import org.apache.commons.io.filefilter.IOFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import org.jdesktop.application.Application;
 import org.jdesktop.application.ResourceMap;
@@ -51,6 +60,9 @@ import org.openshapa.views.DataControllerV;
 
 import com.google.common.collect.Lists;
 
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
 import org.openshapa.models.db.*;
 import org.openshapa.plugins.DataViewer;
 import org.openshapa.plugins.Plugin;
@@ -61,6 +73,28 @@ import org.openshapa.plugins.Plugin;
  */
 public final class ProjectController {
 
+    /** The most data viewers to initialise at once. */
+    private static final int MAX_VIEWER_LOADERS = 4;
+
+    /** How long to wait before showing progress, in milliseconds. */
+    private static final int PROGRESS_DELAY = 1000;
+
+    /** How often progress is updated, in milliseconds. */
+    private static final int PROGRESS_PERIOD = 250;
+
+    /** The longest list of waiting files to show with the progress. */
+    private static final int PROGRESS_NOTE_LENGTH = 60;
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(
+            ProjectController.class);
+
+    /** Counts project loads, so that a load can tell it has been replaced. */
+    private static final AtomicInteger LOAD_GENERATION = new AtomicInteger();
+
+    /** The load in progress, null if none. Only used on the EDT. */
+    private static ProjectLoad activeLoad;
+
     /** The current project we are working on. */
     private Project project;
 
@@ -278,31 +312,294 @@ public final class ProjectController {
     }
 
     /**
-     * Load the settings from the current project.
+     * Load the settings from the current project. Media files and plugins are
+     * found in the background, and each data viewer is opened and attached to
+     * the data controller on the EDT as soon as its media has been found, so
+     * this returns before the viewers have been opened. Progress is shown if
+     * any of the media is slow to find. Any load still in progress is
+     * cancelled. Must be called on the EDT.
      */
     public void loadProject() {
+        cancelLoading();
+        activeLoad = new ProjectLoad();
+        activeLoad.start();
+    }
 
-        // Use the plugin manager to load up the data viewers
-        PluginManager pm = PluginManager.getInstance();
-        DataControllerV dataController = OpenSHAPA.getDataController();
+    /**
+     * Cancels the project load in progress, if any. Viewers that haven't been
+     * opened yet are not opened, and nothing is reported for the load. Must be
+     * called on the EDT.
+     */
+    public static void cancelLoading() {
+        LOAD_GENERATION.incrementAndGet();
+
+        if (activeLoad != null) {
+            activeLoad.cancel();
+            activeLoad = null;
+        }
+    }
+
+    /**
+     * @return True if the data viewers of the project are still being loaded.
+     * The project shouldn't be saved until they are, or the viewers still
+     * being loaded would be left out. Must be called on the EDT.
+     */
+    public boolean isLoading() {
+        return activeLoad != null;
+    }
+
+    /**
+     * Runs a task once the data viewers of the project have been loaded, such
+     * as saving the project. Runs the task straight away if nothing is being
+     * loaded. Must be called on the EDT.
+     *
+     * @param task The task to run on the EDT.
+     */
+    public void whenLoaded(final Runnable task) {
+        if (activeLoad == null) {
+            task.run();
+        } else {
+            activeLoad.deferred.add(task);
+        }
+    }
+
+    /**
+     * A data viewer whose media and plugin have been found, ready to be opened
+     * on the EDT.
+     */
+    private static final class LocatedViewer {
 
-        // Load the plugins required for each media file
-        boolean showController = false;
+        /** The setting the viewer is loaded from. */
+        final ViewerSetting setting;
 
-        List<String> missingFilesList = Lists.newLinkedList();
-        List<String> missingPluginList = Lists.newLinkedList();
+        /** The plugin that builds the viewer. */
+        final Plugin plugin;
 
-        final MixerController mixerController =
+        /** The media the viewer is to display. */
+        final File file;
+
+        LocatedViewer(final ViewerSetting viewerSetting,
+            final Plugin viewerPlugin, final File dataFile) {
+            setting = viewerSetting;
+            plugin = viewerPlugin;
+            file = dataFile;
+        }
+    }
+
+    /**
+     * Loads the data viewers of the project. Media files and plugins are
+     * looked for on a small pool of threads, while the viewers are opened and
+     * everything touching the interface happens on the EDT. Each load has a
+     * generation; once another load starts, or the load is cancelled, the
+     * stale load's remaining work is ignored.
+     */
+    private final class ProjectLoad {
+
+        /** The generation of this load. */
+        private final int generation = LOAD_GENERATION.incrementAndGet();
+
+        /** The data controller viewers are attached to. */
+        private final DataControllerV dataController =
+            OpenSHAPA.getDataController();
+
+        /** The mixer tracks are added to. */
+        private final MixerController mixerController =
             dataController.getMixerController();
 
-        // Load the viewer settings.
-        for (ViewerSetting setting : project.getViewerSettings()) {
-            showController = true;
+        /** The viewer settings still being loaded, with their file names. */
+        private final Map<ViewerSetting, String> waiting = Collections
+            .synchronizedMap(new LinkedHashMap<ViewerSetting, String>());
 
-            File file = new File(setting.getFilePath());
+        /** The number of loader tasks still running. */
+        private final AtomicInteger remaining = new AtomicInteger();
+
+        /** Old style track settings whose media was found. */
+        private final List<TrackSettings> foundTracks = Collections
+            .synchronizedList(new LinkedList<TrackSettings>());
+
+        /** Files that could not be found. */
+        private final List<String> missingFilesList = Collections
+            .synchronizedList(new LinkedList<String>());
+
+        /** Plugins that could not be found. */
+        private final List<String> missingPluginList = Collections
+            .synchronizedList(new LinkedList<String>());
+
+        /** Files that were not found by a search that stopped short. */
+        private final List<String> unsearchedFilesList = Collections
+            .synchronizedList(new LinkedList<String>());
+
+        /** Files that have moved, with several candidates for the file. */
+        private final List<String> ambiguousFilesList = Collections
+            .synchronizedList(new LinkedList<String>());
+
+        /** Files that were found but could not be opened, with the reason. */
+        private final List<String> failedFilesList = Collections
+            .synchronizedList(new LinkedList<String>());
+
+        /** Tasks waiting for the load to finish. Only used on the EDT. */
+        private final List<Runnable> deferred = new ArrayList<Runnable>();
 
-            File currentDir = new File(project.getProjectDirectory());
-            String dataFileName = FilenameUtils.getName(setting.getFilePath());
+        /** The threads looking for media, null if there was nothing to do. */
+        private ExecutorService loaders;
+
+        /** Shows progress while waiting on slow media. */
+        private ProgressMonitor progress;
+
+        /** Updates the progress. */
+        private Timer progressTimer;
+
+        /**
+         * @return True if this load has not been cancelled or replaced by
+         * another load.
+         */
+        boolean isCurrent() {
+            return generation == LOAD_GENERATION.get();
+        }
+
+        /**
+         * Starts loading the viewers of the project.
+         */
+        void start() {
+            List<ViewerSetting> settings = Lists.newArrayList(project
+                    .getViewerSettings());
+            final List<TrackSettings> tracks = Lists.newArrayList(project
+                    .getTrackSettings());
+            final boolean hadViewers = !settings.isEmpty();
+
+            // Media that has moved is looked for around the project.
+            File projectDir = new File(project.getProjectDirectory());
+            MediaIndex.getInstance().addRoot(projectDir, true);
+            MediaIndex.getInstance().addRoot(projectDir.getParentFile(), false);
+
+            if (settings.isEmpty() && tracks.isEmpty()) {
+                finish(false);
+
+                return;
+            }
+
+            for (ViewerSetting setting : settings) {
+                waiting.put(setting,
+                    FilenameUtils.getName(setting.getFilePath()));
+            }
+
+            // The old style track settings are looked for as one more task.
+            int tasks = settings.size() + (tracks.isEmpty() ? 0 : 1);
+            remaining.set(tasks);
+            showProgress(tasks);
+
+            loaders = Executors.newFixedThreadPool(Math.min(
+                        MAX_VIEWER_LOADERS, tasks),
+                    new ThreadFactory() {
+                        @Override public Thread newThread(final Runnable r) {
+                            Thread t = new Thread(r, "ProjectLoader");
+                            t.setDaemon(true);
+
+                            return t;
+                        }
+                    });
+
+            for (final ViewerSetting setting : settings) {
+                loaders.execute(new Runnable() {
+                        @Override public void run() {
+                            try {
+                                if (!isCurrent()) {
+                                    return;
+                                }
+
+                                final LocatedViewer located = findMedia(setting);
+
+                                if (located != null) {
+                                    SwingUtilities.invokeLater(new Runnable() {
+                                            @Override public void run() {
+                                                if (isCurrent()) {
+                                                    open(located);
+                                                }
+                                            }
+                                        });
+                                }
+                            } catch (Throwable t) {
+                                LOGGER.error("Unable to locate media", t);
+                                failedFilesList.add(setting.getFilePath()
+                                    + " (" + t + ")");
+                            } finally {
+                                waiting.remove(setting);
+                                taskDone(hadViewers);
+                            }
+                        }
+                    });
+            }
+
+            if (!tracks.isEmpty()) {
+                loaders.execute(new Runnable() {
+                        @Override public void run() {
+                            try {
+                                if (isCurrent()) {
+                                    findTracks(tracks);
+                                }
+                            } catch (Throwable t) {
+                                LOGGER.error("Unable to locate track media", t);
+                            } finally {
+                                taskDone(hadViewers);
+                            }
+                        }
+                    });
+            }
+
+            // Let the threads go once the media has been found.
+            loaders.shutdown();
+        }
+
+        /**
+         * Finishes the load on the EDT once the last loader task is done.
+         * Called on a loader thread.
+         *
+         * @param hadViewers Did the project have any viewers?
+         */
+        private void taskDone(final boolean hadViewers) {
+
+            // Opening was queued before this, so the last viewer is opened
+            // before finishing.
+            if (remaining.decrementAndGet() == 0) {
+                SwingUtilities.invokeLater(new Runnable() {
+                        @Override public void run() {
+                            if (isCurrent()) {
+                                finish(hadViewers);
+                            }
+                        }
+                    });
+            }
+        }
+
+        /**
+         * Stops the load, leaving any viewers already attached. Called on the
+         * EDT.
+         */
+        void cancel() {
+            if (loaders != null) {
+                loaders.shutdownNow();
+            }
+
+            stopProgress();
+
+            if (!deferred.isEmpty()) {
+                LOGGER.event("Project load cancelled, dropping "
+                    + deferred.size() + " waiting tasks");
+                deferred.clear();
+            }
+        }
+
+        /**
+         * Finds the file and plugin for a viewer setting. Called on a loader
+         * thread.
+         *
+         * @param setting The viewer setting to load.
+         *
+         * @return The media and plugin for the viewer, or null if the file or
+         * plugin is missing.
+         */
+        private LocatedViewer findMedia(final ViewerSetting setting) {
+            File file = new File(setting.getFilePath());
 
             if (!file.exists()) {
 
@@ -316,25 +613,29 @@ public final class ProjectController {
                 }
             }
 
+            boolean searchedAll = true;
+
             if (!file.exists()) {
 
                 // Look for a file that _might_ be the file we are looking for.
-                // This is a brute force search. Ideally we would never want to
-                // do this.
-                File searchedFile = huntForFile(currentDir, dataFileName);
+                MediaIndex.Match match = locate(setting.getFilePath());
+                searchedAll = match.isComplete();
 
-                if (searchedFile != null) {
-                    file = searchedFile;
+                if (match.getFile() != null) {
+                    file = match.getFile();
                 }
             }
 
             // The file is actually missing.
             if (!file.exists()) {
-                missingFilesList.add(setting.getFilePath());
+                reportMissing(setting.getFilePath(), searchedAll);
 
-                continue;
+                return null;
             }
 
+            MediaIndex.getInstance().remember(file);
+
+            PluginManager pm = PluginManager.getInstance();
             Plugin plugin = pm.getAssociatedPlugin(setting.getPluginName());
 
             // BugzID:2110
@@ -348,34 +649,154 @@ public final class ProjectController {
                 // Record missing plugin.
                 missingPluginList.add(setting.getPluginName());
 
-                continue;
+                return null;
             }
 
-            final DataViewer viewer = plugin.getNewDataViewer(OpenSHAPA
-                    .getApplication().getMainFrame(), false);
-            viewer.setIdentifier(IDController.generateIdentifier());
-            viewer.setDataFeed(file);
-            viewer.setDatastore(db);
+            return new LocatedViewer(setting, plugin, file);
+        }
 
-            if (setting.getSettingsId() != null) {
+        /**
+         * Finds the media of old style track settings, whose bookmarks and
+         * locks are applied once the viewers are loaded. Called on a loader
+         * thread.
+         *
+         * @param tracks The track settings of the project.
+         */
+        private void findTracks(final List<TrackSettings> tracks) {
+            for (TrackSettings setting : tracks) {
+                File file = new File(setting.getFilePath());
+
+                if (!file.exists()) {
+
+                    // Look for a file by generating OS-independent paths.
+                    // This is not guaranteed for older project file formats.
+                    File searchedFile = genRelative(
+                            project.getOriginalProjectDirectory(),
+                            setting.getFilePath(),
+                            project.getProjectDirectory());
 
-                // new project file
-                viewer.loadSettings(setting.getSettingsInputStream());
-            } else {
+                    if (searchedFile != null) {
+                        file = searchedFile;
+                    }
+                }
+
+                boolean searchedAll = true;
+
+                if (!file.exists()) {
+
+                    // BugzID:1804 - If absolute path does not find the file,
+                    // look in the relative path (as long as we are dealing
+                    // with a newer project file type).
+                    if (project.getOriginalProjectDirectory() != null) {
+
+                        MediaIndex.Match match = locate(setting.getFilePath());
+                        searchedAll = match.isComplete();
 
-                // old project file
-                viewer.setOffset(setting.getOffset());
+                        if (match.getFile() != null) {
+                            file = match.getFile();
+                        }
+                    }
+                }
+
+                if (!file.exists()) {
+                    reportMissing(setting.getFilePath(), searchedAll);
+
+                    continue;
+                }
+
+                foundTracks.add(setting);
+            }
+        }
+
+        /**
+         * Opens a viewer on its media and attaches it to the data controller.
+         * Called on the EDT.
+         *
+         * @param located The media and plugin for the viewer.
+         */
+        private void open(final LocatedViewer located) {
+            ViewerSetting setting = located.setting;
+            DataViewer viewer;
+
+            try {
+                viewer = located.plugin.getNewDataViewer(OpenSHAPA
+                        .getApplication().getMainFrame(), false);
+                viewer.setIdentifier(IDController.generateIdentifier());
+                viewer.setDataFeed(located.file);
+                viewer.setDatastore(db);
+
+                if (setting.getSettingsId() != null) {
+
+                    // new project file
+                    viewer.loadSettings(setting.getSettingsInputStream());
+                } else {
+
+                    // old project file
+                    viewer.setOffset(setting.getOffset());
+                }
+            } catch (Exception e) {
+                LOGGER.error("Unable to open data viewer", e);
+                failedFilesList.add(setting.getFilePath() + " (" + e + ")");
+
+                return;
             }
 
+            attach(located, viewer);
+        }
+
+        /**
+         * Looks for media that is no longer at its original path, recording
+         * it if more than one file could be the media.
+         *
+         * @param filePath The original path of the media.
+         *
+         * @return The files that might be the media.
+         */
+        private MediaIndex.Match locate(final String filePath) {
+            MediaIndex.Match match = MediaIndex.getInstance().locate(filePath);
+
+            if (match.isAmbiguous()) {
+                ambiguousFilesList.add(filePath + " -> " + match.getFile());
+            }
+
+            return match;
+        }
+
+        /**
+         * Records media that could not be found.
+         *
+         * @param filePath The original path of the media.
+         * @param searchedAll Was every directory under the media roots
+         * searched?
+         */
+        private void reportMissing(final String filePath,
+            final boolean searchedAll) {
+            if (searchedAll) {
+                missingFilesList.add(filePath);
+            } else {
+                unsearchedFilesList.add(filePath);
+            }
+        }
+
+        /**
+         * Attaches an opened viewer to the data controller. Called on the EDT.
+         *
+         * @param located The media and plugin of the viewer.
+         * @param viewer The viewer to attach.
+         */
+        private void attach(final LocatedViewer located,
+            final DataViewer viewer) {
+            File file = located.file;
+
             dataController.addViewer(viewer, viewer.getOffset());
 
             dataController.addTrack(viewer.getIdentifier(),
-                plugin.getTypeIcon(), file.getAbsolutePath(), file.getName(),
-                viewer.getDuration(), viewer.getOffset(),
+                located.plugin.getTypeIcon(), file.getAbsolutePath(),
+                file.getName(), viewer.getDuration(), viewer.getOffset(),
                 viewer.getTrackPainter());
 
-            if (setting.getTrackSettings() != null) {
-                final TrackSettings ts = setting.getTrackSettings();
+            if (located.setting.getTrackSettings() != null) {
+                final TrackSettings ts = located.setting.getTrackSettings();
                 mixerController.setTrackInterfaceSettings(viewer
                     .getIdentifier(), ts.getBookmarkPositions(), ts.isLocked());
             }
@@ -387,91 +808,202 @@ public final class ProjectController {
                     .getViewerStateListener(viewer.getIdentifier()));
         }
 
-        // Do not remove; this is here for backwards compatibility.
-        for (TrackSettings setting : project.getTrackSettings()) {
-            File file = new File(setting.getFilePath());
+        /**
+         * Shows progress once loading has taken a while. Progress is polled,
+         * as a viewer can spend a long time opening its data feed.
+         *
+         * @param total The number of viewers being loaded.
+         */
+        private void showProgress(final int total) {
+            Runnable edtTask = new Runnable() {
+                    @Override public void run() {
+                        if (!isCurrent()) {
+                            return;
+                        }
+
+                        progress = new ProgressMonitor(OpenSHAPA
+                                .getApplication().getMainFrame(),
+                                "Opening media...", "", 0, total);
+                        progress.setMillisToDecideToPopup(PROGRESS_DELAY);
+                        progress.setMillisToPopup(PROGRESS_DELAY);
+
+                        progressTimer = new Timer(PROGRESS_PERIOD,
+                                new ActionListener() {
+                                    @Override public void actionPerformed(
+                                        final ActionEvent e) {
+                                        updateProgress(total);
+                                    }
+                                });
+                        progressTimer.start();
+                    }
+                };
 
-            if (!file.exists()) {
+            if (SwingUtilities.isEventDispatchThread()) {
+                edtTask.run();
+            } else {
+                SwingUtilities.invokeLater(edtTask);
+            }
+        }
 
-                // Look for a file by generating OS-independent paths.
-                // This is not guaranteed for older project file formats.
-                File searchedFile = genRelative(
-                        project.getOriginalProjectDirectory(),
-                        setting.getFilePath(), project.getProjectDirectory());
+        /**
+         * Updates the progress with the media still being opened.
+         *
+         * @param total The number of viewers being loaded.
+         */
+        private void updateProgress(final int total) {
+            StringBuilder note = new StringBuilder("Waiting for ");
 
-                if (searchedFile != null) {
-                    file = searchedFile;
+            synchronized (waiting) {
+                for (String name : waiting.values()) {
+
+                    if (note.length() > PROGRESS_NOTE_LENGTH) {
+                        note.append("...");
+
+                        break;
+                    }
+
+                    note.append(name).append(' ');
                 }
             }
 
-            if (!file.exists()) {
+            progress.setNote(note.toString());
+            progress.setProgress(total - remaining.get());
+        }
 
-                // BugzID:1804 - If absolute path does not find the file, look
-                // in the relative path (as long as we are dealing with a newer
-                // project file type).
-                if (project.getOriginalProjectDirectory() != null) {
+        /**
+         * Applies the remaining project settings once every viewer has been
+         * loaded, and reports anything missing. Called on the EDT.
+         *
+         * @param hadViewers Did the project have any viewers?
+         */
+        private void finish(final boolean hadViewers) {
+            stopProgress();
+
+            if (activeLoad == this) {
+                activeLoad = null;
+            }
 
-                    File searchedFile = huntForFile(new File(
-                                project.getProjectDirectory()), file.getName());
+            boolean showController = hadViewers;
 
-                    if (searchedFile != null) {
-                        file = searchedFile;
-                    }
+            // Do not remove; this is here for backwards compatibility.
+            synchronized (foundTracks) {
+                for (TrackSettings setting : foundTracks) {
+                    mixerController.setTrackInterfaceSettings(
+                        setting.getFilePath(), setting.getBookmarkPositions(),
+                        setting.isLocked());
                 }
             }
 
-            if (!file.exists()) {
-                missingFilesList.add(setting.getFilePath());
+            // Whatever the load taught the media index is saved in one go.
+            MediaIndex.getInstance().flush();
 
-                continue;
-            }
+            if (!missingFilesList.isEmpty() || !missingPluginList.isEmpty()
+                    || !unsearchedFilesList.isEmpty()
+                    || !ambiguousFilesList.isEmpty()
+                    || !failedFilesList.isEmpty()) {
+                JFrame mainFrame = OpenSHAPA.getApplication().getMainFrame();
+                ResourceMap rMap = Application.getInstance(OpenSHAPA.class)
+                    .getContext().getResourceMap(OpenSHAPA.class);
 
-            mixerController.setTrackInterfaceSettings(setting.getFilePath(),
-                setting.getBookmarkPositions(), setting.isLocked());
-        }
+                StringBuilder sb = new StringBuilder();
 
-        if (!missingFilesList.isEmpty() || !missingPluginList.isEmpty()) {
-            JFrame mainFrame = OpenSHAPA.getApplication().getMainFrame();
-            ResourceMap rMap = Application.getInstance(OpenSHAPA.class)
-                .getContext().getResourceMap(OpenSHAPA.class);
+                if (!missingFilesList.isEmpty()) {
+                    sb.append("The following files are missing:\n\n");
 
-            StringBuilder sb = new StringBuilder();
+                    for (String filePath : missingFilesList) {
+                        sb.append(filePath);
+                        sb.append('\n');
+                    }
+                }
 
-            if (!missingFilesList.isEmpty()) {
-                sb.append("The following files are missing:\n\n");
+                if (!unsearchedFilesList.isEmpty()) {
+
+                    if (sb.length() != 0) {
+                        sb.append('\n');
+                    }
 
-                for (String filePath : missingFilesList) {
-                    sb.append(filePath);
-                    sb.append('\n');
+                    sb.append("The following files were not found, but the "
+                        + "search for them was incomplete:\n\n");
+
+                    for (String filePath : unsearchedFilesList) {
+                        sb.append(filePath);
+                        sb.append('\n');
+                    }
                 }
-            }
 
-            if (!missingPluginList.isEmpty()) {
+                if (!failedFilesList.isEmpty()) {
+
+                    if (sb.length() != 0) {
+                        sb.append('\n');
+                    }
+
+                    sb.append("The following files could not be opened:\n\n");
 
-                if (sb.length() != 0) {
-                    sb.append('\n');
+                    for (String failure : failedFilesList) {
+                        sb.append(failure);
+                        sb.append('\n');
+                    }
                 }
 
-                sb.append("The following plugins are missing:\n\n");
+                if (!missingPluginList.isEmpty()) {
+
+                    if (sb.length() != 0) {
+                        sb.append('\n');
+                    }
+
+                    sb.append("The following plugins are missing:\n\n");
 
-                for (String pluginName : missingPluginList) {
-                    sb.append(pluginName);
-                    sb.append('\n');
+                    for (String pluginName : missingPluginList) {
+                        sb.append(pluginName);
+                        sb.append('\n');
+                    }
                 }
+
+                if (!ambiguousFilesList.isEmpty()) {
+
+                    if (sb.length() != 0) {
+                        sb.append('\n');
+                    }
+
+                    sb.append("The following files have moved, and more than "
+                        + "one file could be them. The closest match was "
+                        + "used:\n\n");
+
+                    for (String filePath : ambiguousFilesList) {
+                        sb.append(filePath);
+                        sb.append('\n');
+                    }
+                }
+
+                JOptionPane.showMessageDialog(mainFrame, sb.toString(),
+                    rMap.getString("ProjectLoadError.title"),
+                    JOptionPane.WARNING_MESSAGE);
+
+                showController = true;
             }
 
-            JOptionPane.showMessageDialog(mainFrame, sb.toString(),
-                rMap.getString("ProjectLoadError.title"),
-                JOptionPane.WARNING_MESSAGE);
+            // Show the data controller
+            if (showController) {
+                OpenSHAPA.getApplication().showDataController();
+            }
 
-            showController = true;
-        }
+            for (Runnable task : deferred) {
+                task.run();
+            }
 
-        // Show the data controller
-        if (showController) {
-            OpenSHAPA.getApplication().showDataController();
+            deferred.clear();
         }
 
+        /**
+         * Stops showing progress. Called on the EDT.
+         */
+        private void stopProgress() {
+            if (progressTimer != null) {
+                progressTimer.stop();
+                progress.close();
+                progressTimer = null;
+            }
+        }
     }
 
     /**
@@ -591,50 +1123,4 @@ public final class ProjectController {
         return new File(newBase, rel);
     }
 
-    private File huntForFile(final File workingDir, final String fileName) {
-        // If we can't find the file, we will start looking for the file
-        // using the easiest solution first and bump up the complexity as
-        // we go along.
-
-        // Solution 1: It is in the same directory as the project file.
-        File file = new File(workingDir, fileName);
-
-        if (file.exists()) {
-            return file;
-        }
-
-        IOFileFilter fileNameFilter = FileFilterUtils.nameFileFilter(fileName);
-
-        // Solution 2: It is in a sub-directory of the project file.
-        {
-            Iterator<File> subFiles = FileUtils.iterateFiles(workingDir,
-                    fileNameFilter, TrueFileFilter.TRUE);
-
-            if (subFiles.hasNext()) {
-                file = subFiles.next();
-            }
-
-            if (file.exists()) {
-                return file;
-            }
-        }
-
-
-        // Solution 3: It is in the parent of the current directory.
-        {
-            Iterator<File> subFiles = FileUtils.iterateFiles(
-                    workingDir.getParentFile(), fileNameFilter, null);
-
-            if (subFiles.hasNext()) {
-                file = subFiles.next();
-            }
-
-            if (file.exists()) {
-                return file;
-            }
-        }
-
-        return null;
-    }
-
 }
@@ -0,0 +1,74 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.models.component;
+
+import org.openshapa.models.db.Cell;
+import org.openshapa.models.db.Variable;
+
+
+/**
+ * This model provides the information used to render the cells of a variable
+ * as a track on the tracks interface.
+ */
+public final class CellTrackModel {
+
+    /** The variable whose cells are shown, null for none. */
+    private volatile Variable variable;
+
+    /** The cell highlighted in the spreadsheet, null for none. */
+    private volatile Cell highlighted;
+
+    /** Onsets and offsets of the variable's cells. */
+    private final IntervalIndex<Cell> cells = new IntervalIndex<Cell>();
+
+    /**
+     * @return The variable whose cells are shown, null for none.
+     */
+    public Variable getVariable() {
+        return variable;
+    }
+
+    /**
+     * Sets the variable to show, emptying the index of cells.
+     *
+     * @param variable The variable whose cells to show, null for none.
+     */
+    public void setVariable(final Variable variable) {
+        this.variable = variable;
+        highlighted = null;
+        cells.clear();
+    }
+
+    /**
+     * @return The onsets and offsets of the variable's cells.
+     */
+    public IntervalIndex<Cell> getCells() {
+        return cells;
+    }
+
+    /**
+     * @return The cell highlighted in the spreadsheet, null for none.
+     */
+    public Cell getHighlighted() {
+        return highlighted;
+    }
+
+    /**
+     * @param cell The cell highlighted in the spreadsheet, null for none.
+     */
+    public void setHighlighted(final Cell cell) {
+        highlighted = cell;
+    }
+}
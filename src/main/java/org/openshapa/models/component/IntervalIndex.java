@@ -0,0 +1,286 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.models.component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Temporal index of intervals - cells, for the most part - for finding the
+ * intervals that overlap a window of time without looking at the rest.
+ *
+ * Intervals are held in arrays sorted by onset. Alongside them is the running
+ * maximum of the ends, which only ever grows along the array: the intervals
+ * that can overlap a window start at the first one whose running maximum
+ * reaches the window, and stop before the first one that starts after it.
+ * For intervals that rarely overlap - as cells of one variable rarely do -
+ * that is the intervals in the window and very few others.
+ *
+ * Changing an interval moves the arrays along by one entry, and the running
+ * maximum is only worked out again, from the first changed entry, when the
+ * index is next searched. Intervals added in onset order are appended.
+ *
+ * @param <T> The type of the items the intervals belong to.
+ */
+public final class IntervalIndex<T> {
+
+    /** Visits the intervals found by a search. */
+    public interface Visitor<T> {
+
+        /**
+         * @param item The item the interval belongs to.
+         * @param onset The start of the interval, in milliseconds.
+         * @param end The end of the interval, in milliseconds.
+         */
+        void visit(T item, long onset, long end);
+    }
+
+    /** The size of the arrays to begin with. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The items, in onset order. */
+    private Object[] items = new Object[INITIAL_CAPACITY];
+
+    /** The onsets of the items. */
+    private long[] onsets = new long[INITIAL_CAPACITY];
+
+    /** The ends of the items. */
+    private long[] ends = new long[INITIAL_CAPACITY];
+
+    /** The largest end of the items up to and including each one. */
+    private long[] maxEnds = new long[INITIAL_CAPACITY];
+
+    /** The number of items in the index. */
+    private int size;
+
+    /** The number of entries at the start of maxEnds that are up to date. */
+    private int maxEndsValid;
+
+    /** The onset each item is filed under, for finding it again. */
+    private final Map<T, Long> filed = new HashMap<T, Long>();
+
+    /**
+     * @return The number of intervals in the index.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Removes every interval from the index.
+     */
+    public synchronized void clear() {
+        Arrays.fill(items, 0, size, null);
+        size = 0;
+        maxEndsValid = 0;
+        filed.clear();
+    }
+
+    /**
+     * Adds an interval to the index, or moves it if the item is already in
+     * the index. An end before the onset is taken to be the onset, so the
+     * interval is a point.
+     *
+     * @param item The item the interval belongs to.
+     * @param onset The start of the interval, in milliseconds.
+     * @param end The end of the interval, in milliseconds.
+     */
+    public synchronized void put(final T item, final long onset,
+        final long end) {
+        remove(item);
+
+        if (size == items.length) {
+            int capacity = items.length * 2;
+            items = Arrays.copyOf(items, capacity);
+            onsets = Arrays.copyOf(onsets, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            maxEnds = Arrays.copyOf(maxEnds, capacity);
+        }
+
+        // After any intervals with the same onset, so appending in order
+        // never moves anything.
+        int pos = firstAfter(onset);
+        int moved = size - pos;
+
+        if (moved > 0) {
+            System.arraycopy(items, pos, items, pos + 1, moved);
+            System.arraycopy(onsets, pos, onsets, pos + 1, moved);
+            System.arraycopy(ends, pos, ends, pos + 1, moved);
+        }
+
+        items[pos] = item;
+        onsets[pos] = onset;
+        ends[pos] = Math.max(onset, end);
+        size++;
+        maxEndsValid = Math.min(maxEndsValid, pos);
+        filed.put(item, onset);
+    }
+
+    /**
+     * Removes an item's interval from the index.
+     *
+     * @param item The item to remove.
+     *
+     * @return True if the item was in the index.
+     */
+    public synchronized boolean remove(final T item) {
+        Long onset = filed.remove(item);
+
+        if (onset == null) {
+            return false;
+        }
+
+        // Search the intervals with the same onset for the item.
+        int pos = firstAfter(onset - 1);
+
+        while ((pos < size) && !item.equals(items[pos])) {
+            pos++;
+        }
+
+        if (pos == size) {
+            return false;
+        }
+
+        int moved = size - pos - 1;
+
+        if (moved > 0) {
+            System.arraycopy(items, pos + 1, items, pos, moved);
+            System.arraycopy(onsets, pos + 1, onsets, pos, moved);
+            System.arraycopy(ends, pos + 1, ends, pos, moved);
+        }
+
+        size--;
+        items[size] = null;
+        maxEndsValid = Math.min(maxEndsValid, pos);
+
+        return true;
+    }
+
+    /**
+     * @param item The item to look for.
+     *
+     * @return True if the item is in the index.
+     */
+    public synchronized boolean contains(final T item) {
+        return filed.containsKey(item);
+    }
+
+    /**
+     * Visits every interval that overlaps a window of time, in onset order.
+     * The index is locked while visiting, so the visitor must not change it.
+     *
+     * @param start The start of the window, in milliseconds.
+     * @param end The end of the window, in milliseconds.
+     * @param visitor Visits the intervals.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void visit(final long start, final long end,
+        final Visitor<T> visitor) {
+        int last = firstAfter(end);
+
+        for (int i = firstReaching(start, last); i < last; i++) {
+            if (ends[i] >= start) {
+                visitor.visit((T) items[i], onsets[i], ends[i]);
+            }
+        }
+    }
+
+    /**
+     * Finds the interval overlapping a window of time that started last - the
+     * one drawn on top.
+     *
+     * @param start The start of the window, in milliseconds.
+     * @param end The end of the window, in milliseconds.
+     *
+     * @return The item whose interval it is, or null if no interval overlaps
+     * the window.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T find(final long start, final long end) {
+        int last = firstAfter(end);
+        int first = firstReaching(start, last);
+
+        for (int i = last - 1; i >= first; i--) {
+            if (ends[i] >= start) {
+                return (T) items[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param time A time, in milliseconds.
+     *
+     * @return The position of the first interval that starts after the time.
+     */
+    private int firstAfter(final long time) {
+        int lo = 0;
+        int hi = size;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (onsets[mid] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * @param time A time, in milliseconds.
+     * @param limit The position to stop searching at.
+     *
+     * @return The position of the first interval before the limit that, with
+     * the intervals before it, reaches the time - or the limit if none do.
+     */
+    private int firstReaching(final long time, final int limit) {
+        updateMaxEnds(limit);
+
+        int lo = 0;
+        int hi = limit;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (maxEnds[mid] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Brings the running maximum of the ends up to date.
+     *
+     * @param limit The number of entries needed.
+     */
+    private void updateMaxEnds(final int limit) {
+        for (int i = maxEndsValid; i < limit; i++) {
+            maxEnds[i] = (i == 0) ? ends[0] : Math.max(maxEnds[i - 1], ends[i]);
+        }
+
+        maxEndsValid = Math.max(maxEndsValid, limit);
+    }
+}
@@ -23,6 +23,7 @@ public interface TrackConstants {
 
     static final Color BORDER_COLOR = new Color(73, 73, 73);
     static final int CARRIAGE_HEIGHT = 75;
+    static final int CELL_TRACK_HEIGHT = 32;
     static final int HEADER_WIDTH = 140;
     static final int ACTION_BUTTON_WIDTH = 20;
     static final int ACTION_BUTTON_HEIGHT = 20;
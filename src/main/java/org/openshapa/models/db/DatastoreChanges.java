@@ -0,0 +1,137 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.models.db;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The set of changes that have been made to a datastore since the changes
+ * were last taken. Views use this to patch only the parts of the display that
+ * are affected by a batch of edits (i.e. a script or an undo), rather than
+ * rebuilding everything. Variables and cells are recorded by their ID, so a
+ * change is found no matter which copy of the variable or cell is at hand.
+ */
+public final class DatastoreChanges {
+
+    /** IDs of variables that have been added, removed or renamed, or have had
+     * cells inserted or removed. */
+    private final Set<String> variables = new HashSet<String>();
+
+    /** IDs of variables whose type (argument list) has changed. */
+    private final Set<String> retypedVariables = new HashSet<String>();
+
+    /** IDs of cells whose onset, offset or value has changed. */
+    private final Set<String> cells = new HashSet<String>();
+
+    /**
+     * Records that a variable has been added, removed or renamed, or has had
+     * cells inserted or removed.
+     *
+     * @param variableId The ID of the changed variable.
+     */
+    synchronized void variableChanged(final String variableId) {
+        variables.add(variableId);
+    }
+
+    /**
+     * Records that the type (argument list) of a variable has changed.
+     *
+     * @param variableId The ID of the changed variable.
+     */
+    synchronized void variableRetyped(final String variableId) {
+        variables.add(variableId);
+        retypedVariables.add(variableId);
+    }
+
+    /**
+     * Records that the onset, offset or value of a cell has changed.
+     *
+     * @param cellId The ID of the changed cell.
+     */
+    synchronized void cellChanged(final String cellId) {
+        cells.add(cellId);
+    }
+
+    /**
+     * Moves all the changes recorded so far into a new change set, leaving
+     * this change set empty.
+     *
+     * @return The changes that have been recorded since the last take.
+     */
+    synchronized DatastoreChanges take() {
+        DatastoreChanges result = new DatastoreChanges();
+        result.variables.addAll(variables);
+        result.retypedVariables.addAll(retypedVariables);
+        result.cells.addAll(cells);
+        clear();
+
+        return result;
+    }
+
+    /**
+     * Discards all the changes recorded so far.
+     */
+    synchronized void clear() {
+        variables.clear();
+        retypedVariables.clear();
+        cells.clear();
+    }
+
+    /**
+     * @return True if no changes have been recorded, false otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return variables.isEmpty() && cells.isEmpty();
+    }
+
+    /**
+     * @param variableId The ID of the variable to check.
+     *
+     * @return True if the variable has been added, removed, renamed or
+     * retyped, or has had cells inserted or removed.
+     */
+    public synchronized boolean isVariableChanged(final String variableId) {
+        return variables.contains(variableId);
+    }
+
+    /**
+     * @param variableId The ID of the variable to check.
+     *
+     * @return True if the type (argument list) of the variable has changed,
+     * meaning every cell of the variable needs to be redisplayed.
+     */
+    public synchronized boolean isVariableRetyped(final String variableId) {
+        return retypedVariables.contains(variableId);
+    }
+
+    /**
+     * @param cellId The ID of the cell to check, as given by
+     * {@link Cell#getCellID()}.
+     *
+     * @return True if the onset, offset or value of the cell has changed.
+     */
+    public synchronized boolean isCellChanged(final String cellId) {
+        return cells.contains(cellId);
+    }
+
+    /**
+     * @return True if any cells have had their onset, offset or value
+     * changed.
+     */
+    public synchronized boolean hasCellChanges() {
+        return !cells.isEmpty();
+    }
+}
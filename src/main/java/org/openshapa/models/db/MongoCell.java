@@ -18,6 +18,7 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import org.bson.types.ObjectId;
+import org.openshapa.util.ClockText;
 import java.lang.Math;
 import java.util.*;
 
@@ -83,12 +84,7 @@ public class MongoCell extends BasicDBObject implements Cell {
     }
 
     private String convertMStoTimestamp(long time) {
-        long hours = Math.round(Math.floor((time/1000.0/60.0/60.0)));
-        long minutes = Math.round(Math.floor(time/1000.0/60.0 - (hours * 60)));
-        long seconds = Math.round(Math.floor(time/1000.0 - (hours*60*60) - (minutes * 60)));
-        long mseconds = Math.round(Math.floor(time - (hours *60*60*1000) - (minutes*60*1000) - (seconds*1000)));
-
-        return String.format("%02d:%02d:%02d:%03d", hours, minutes, seconds, mseconds);
+        return ClockText.timestamp(time);
     }
 
     private long convertTimestampToMS(String timestamp) {
@@ -133,6 +129,7 @@ public class MongoCell extends BasicDBObject implements Cell {
     public void setOffset(final long newOffset) {
         this.put("offset", newOffset);
         this.save();
+        MongoDatastore.markCellAsChanged(getID());
 
         for(CellListener cl : getListeners(getID())) {
             cl.offsetChanged(newOffset);
@@ -144,6 +141,7 @@ public class MongoCell extends BasicDBObject implements Cell {
         this.put("offset", convertTimestampToMS(newOffset));
         MongoDatastore.getCellCollection().ensureIndex(index);
         this.save();
+        MongoDatastore.markCellAsChanged(getID());
 
         for(CellListener cl : getListeners(getID())) {
             cl.offsetChanged(convertTimestampToMS(newOffset));
@@ -165,6 +163,7 @@ public class MongoCell extends BasicDBObject implements Cell {
         this.put("onset", convertTimestampToMS(newOnset));
         MongoDatastore.getCellCollection().ensureIndex(index);
         this.save();
+        MongoDatastore.markCellAsChanged(getID());
 
         for(CellListener cl : getListeners(getID())) {
             cl.onsetChanged(convertTimestampToMS(newOnset));
@@ -176,6 +175,7 @@ public class MongoCell extends BasicDBObject implements Cell {
         this.put("onset", newOnset);
         MongoDatastore.getCellCollection().ensureIndex(index);
         this.save();
+        MongoDatastore.markCellAsChanged(getID());
 
         for(CellListener cl : getListeners(getID()) ) {
             cl.onsetChanged(newOnset);
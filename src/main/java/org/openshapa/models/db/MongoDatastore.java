@@ -33,6 +33,7 @@ import java.net.ServerSocket;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import org.bson.types.ObjectId;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.DirectoryFileFilter;
 import org.apache.commons.io.filefilter.RegexFileFilter;
@@ -69,6 +70,9 @@ public class MongoDatastore implements Datastore {
 
     // Has tbhe datastore changed since it has last been marked as unchanged?
     private static boolean changed;
+
+    // The changes made to the datastore since they were last taken by a view.
+    private static final DatastoreChanges changes = new DatastoreChanges();
     
     // Location of the Mongo OSX files
     private static final String mongoOSXLocation = "mongodb-osx64-2.0.2";
@@ -137,6 +141,7 @@ public class MongoDatastore implements Datastore {
         // Clear variable listeners.
         MongoVariable.clearListeners();
         MongoDatastore.changed = false;
+        MongoDatastore.changes.clear();
     }
 
     public static void markDBAsChanged() {
@@ -149,6 +154,55 @@ public class MongoDatastore implements Datastore {
         }
     }
 
+    /**
+     * Records that a variable has been added, removed or renamed, or has had
+     * cells inserted or removed.
+     *
+     * @param variableId The ID of the variable that changed.
+     */
+    public static void markVariableAsChanged(final ObjectId variableId) {
+        changes.variableChanged(variableId.toString());
+        markDBAsChanged();
+    }
+
+    /**
+     * Records that the type (argument list) of a variable has changed.
+     *
+     * @param variableId The ID of the variable that changed.
+     */
+    public static void markVariableAsRetyped(final ObjectId variableId) {
+        changes.variableRetyped(variableId.toString());
+        markDBAsChanged();
+    }
+
+    /**
+     * Records that the onset, offset or value of a cell has changed.
+     *
+     * @param cellId The ID of the cell that changed.
+     */
+    public static void markCellAsChanged(final ObjectId cellId) {
+        changes.cellChanged(cellId.toString());
+        markDBAsChanged();
+    }
+
+    /**
+     * @return The changes made to the datastore since the changes were last
+     * taken, the datastore starts recording a fresh set of changes.
+     */
+    public static DatastoreChanges takeChanges() {
+        return changes.take();
+    }
+
+    /**
+     * @param var The variable to identify.
+     *
+     * @return The ID the datastore records changes to the variable under,
+     * which stays the same when the variable is renamed or retyped.
+     */
+    public static String getVariableID(final Variable var) {
+        return ((MongoVariable) var).getID().toString();
+    }
+
     /**
      * Spin up the mongo instance so that we can query and do stuff with it.
      */
@@ -187,8 +241,10 @@ public class MongoDatastore implements Datastore {
 //            File f = new File(mongoDir + "/mongodb-osx-x86_64-2.0.2/bin/mongod");
 //            f.setExecutable(true);
 
-            // Spin up a new mongo instance.
-            File mongoD = new File(mongoDir);
+            // Spin up a new mongo instance. The unpacked binaries are shared
+            // with other sessions, so the database lives in our own folder.
+            File mongoD = new File(NativeLoader.getRunFolder(), "mongodb");
+            mongoD.mkdirs();
 //            int port = findFreePort(27019);
 	    int port = 27019;
 
@@ -420,7 +476,7 @@ public class MongoDatastore implements Datastore {
             dbl.variableAdded(v);
         }
 
-        markDBAsChanged();
+        markVariableAsChanged(((MongoVariable) v).getID());
         return v;
     }
 
@@ -440,7 +496,7 @@ public class MongoDatastore implements Datastore {
 
         query.put("_id", ((MongoVariable)var).getID());
         varCollection.remove(query);
-        markDBAsChanged();
+        markVariableAsChanged(((MongoVariable) var).getID());
 
     }
 
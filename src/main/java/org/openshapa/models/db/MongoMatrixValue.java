@@ -54,6 +54,7 @@ public final class MongoMatrixValue extends MongoValue implements MatrixValue {
     public void set(final String value) {
         this.put("value", value);
         this.save();
+        markCellAsChanged();
     }
     
     @Override
@@ -103,7 +104,8 @@ public final class MongoMatrixValue extends MongoValue implements MatrixValue {
             mongo_values.add( (MongoTextValue)cur.next() );
         }
 
-        for(Value v : mongo_values) {
+        for(MongoValue v : mongo_values) {
+            v.setCellID(getCellID());
             values.add(v);
         }
         
@@ -139,13 +141,16 @@ public final class MongoMatrixValue extends MongoValue implements MatrixValue {
 
     @Override
     public Value createArgument(Argument.Type argType) {
-        Value val = null;
+        MongoValue val = null;
         String name = String.format("arg%02d", getArguments().size() + 1);
         if(argType == Argument.Type.NOMINAL) {
             val = new MongoNominalValue((ObjectId)this.get("_id"), name, getArguments().size());
         } else if(argType == Argument.Type.TEXT) {
             val = new MongoTextValue((ObjectId)this.get("_id"), name, getArguments().size());
         }
+        if(val != null) {
+            val.setCellID(getCellID());
+        }
         this.getArguments().add(val);
         this.save();
         return val;
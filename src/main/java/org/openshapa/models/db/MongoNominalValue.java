@@ -54,6 +54,7 @@ public final class MongoNominalValue extends MongoValue implements NominalValue
     public void set(final String value) {
         this.put("value", value);
         this.save();
+        markCellAsChanged();
     }
     
     
@@ -55,6 +55,7 @@ public final class MongoTextValue extends MongoValue implements TextValue {
         if(isValid(value)){
             this.put("value", value);
             this.save();
+            markCellAsChanged();
         }
     }
     
@@ -25,6 +25,7 @@ package org.openshapa.models.db;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import java.io.Serializable;
 import org.bson.types.ObjectId;
 
@@ -32,6 +33,9 @@ import org.bson.types.ObjectId;
 public abstract class MongoValue extends BasicDBObject implements Value, Serializable, Comparable<MongoValue> {
     
     String value;
+
+    /** The ID of the cell holding this value, null until known. */
+    private transient ObjectId cellId;
     
     @Override
     public boolean isValid(final String value) {
@@ -42,6 +46,53 @@ public abstract class MongoValue extends BasicDBObject implements Value, Seriali
     public void clear() {
         this.put("value", null);
         this.save();
+        markCellAsChanged();
+    }
+
+    /**
+     * @param id The ID of the cell holding this value, so that changes to
+     * the value can be recorded against the cell without looking it up.
+     */
+    void setCellID(final ObjectId id) {
+        cellId = id;
+    }
+
+    /**
+     * @return The ID of the cell holding this value, or null if the value no
+     * longer belongs to a cell.
+     */
+    ObjectId getCellID() {
+        if (cellId == null) {
+            ObjectId parentId = (ObjectId) this.get("parent_id");
+            Integer index = (Integer) this.get("index");
+
+            // Arguments of a matrix are held by the matrix value, not the
+            // cell. Those fetched through their matrix have the cell set.
+            if ((index != null) && (index >= 0)) {
+                DBObject matrix = MongoDatastore.getMatrixValuesCollection().findOne(parentId);
+
+                if (matrix == null) {
+                    return null;
+                }
+
+                parentId = (ObjectId) matrix.get("parent_id");
+            }
+
+            cellId = parentId;
+        }
+
+        return cellId;
+    }
+
+    /**
+     * Records the cell holding this value as changed within the datastore.
+     */
+    protected void markCellAsChanged() {
+        ObjectId id = getCellID();
+
+        if (id != null) {
+            MongoDatastore.markCellAsChanged(id);
+        }
     }
 
     @Override
@@ -166,7 +166,7 @@ public final class MongoVariable extends BasicDBObject implements Variable  {
             vl.cellInserted(c);
         }
 
-        MongoDatastore.markDBAsChanged();
+        MongoDatastore.markVariableAsChanged(getID());
         return c;
     }
 
@@ -187,7 +187,7 @@ public final class MongoVariable extends BasicDBObject implements Variable  {
 	    cell_collection.remove(cur.next());
 	}
 	
-	MongoDatastore.markDBAsChanged();
+	MongoDatastore.markVariableAsChanged(getID());
 	
         for(VariableListener vl : getListeners(getID()) ) {
             vl.cellRemoved(cell);
@@ -245,6 +245,7 @@ public final class MongoVariable extends BasicDBObject implements Variable  {
     public void setVariableType(final Argument newType) {
         this.put("type", serializeArgument(newType));
         this.save();
+        MongoDatastore.markVariableAsRetyped(getID());
     }
 
     @Override
@@ -296,6 +297,7 @@ public final class MongoVariable extends BasicDBObject implements Variable  {
     public void setHidden(final boolean hidden) {
         this.put("hidden", hidden);
         this.save();
+        MongoDatastore.markVariableAsChanged(getID());
 
         for(VariableListener vl : getListeners(getID()) ) {
             vl.visibilityChanged(hidden);
@@ -327,6 +329,11 @@ public final class MongoVariable extends BasicDBObject implements Variable  {
         this.put("name", newName.trim());
         this.save();
 
+        // A new variable has no ID until it has been saved.
+        if (getID() != null) {
+            MongoDatastore.markVariableAsChanged(getID());
+        }
+
         for(VariableListener vl : getListeners(getID()) ) {
             vl.nameChanged(newName);
         }
@@ -0,0 +1,31 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins;
+
+/**
+ * Told when a data viewer has displayed the frame it was seeked to.
+ */
+public interface FrameListener {
+
+    /**
+     * Called once a viewer has displayed the frame for a seek. May be called
+     * on any thread.
+     *
+     * @param viewer The viewer that displayed the frame.
+     * @param position The position the viewer was seeked to, in milliseconds
+     * relative to the viewer.
+     */
+    void frameShown(DataViewer viewer, long position);
+}
@@ -0,0 +1,35 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins;
+
+/**
+ * Implemented by data viewers whose seeks finish after
+ * {@link DataViewer#seekTo(long)} has returned, so that they can tell when the
+ * frame has actually been displayed. Viewers that don't implement this are
+ * taken to have displayed the frame by the time seekTo returns.
+ */
+public interface FrameNotifier {
+
+    /**
+     * @param listener Told each time the viewer displays the frame for a
+     * seek.
+     */
+    void addFrameListener(FrameListener listener);
+
+    /**
+     * @param listener The listener to stop telling.
+     */
+    void removeFrameListener(FrameListener listener);
+}
@@ -0,0 +1,145 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins;
+
+import java.awt.Frame;
+
+import javax.swing.ImageIcon;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+
+/**
+ * Stands in for a plugin until it is needed. The name and classifier of the
+ * plugin are answered from its descriptor; the plugin class is only loaded
+ * and instantiated when its filters, icon or a data viewer are asked for.
+ */
+final class LazyPlugin implements Plugin {
+
+    /** The logger for this class. */
+    private static Logger LOGGER = UserMetrix.getLogger(LazyPlugin.class);
+
+    /** The fully qualified class name of the plugin. */
+    private final String className;
+
+    /** The class loader to load the plugin with. */
+    private final ClassLoader loader;
+
+    /** What is known about the plugin, null until described. */
+    private volatile PluginIndex.Descriptor descriptor;
+
+    /** The plugin, null until instantiated. */
+    private Plugin plugin;
+
+    /** Has instantiating the plugin failed? */
+    private boolean failed;
+
+    /**
+     * Constructor.
+     *
+     * @param pluginClass The fully qualified class name of the plugin.
+     * @param classLoader The class loader to load the plugin with.
+     * @param known What is known about the plugin, or null if nothing.
+     */
+    LazyPlugin(final String pluginClass, final ClassLoader classLoader,
+        final PluginIndex.Descriptor known) {
+        className = pluginClass;
+        loader = classLoader;
+        descriptor = known;
+    }
+
+    /**
+     * @return What is known about the plugin, instantiating it if nothing is
+     * known yet, or null if it could not be instantiated.
+     */
+    PluginIndex.Descriptor describe() {
+
+        if (descriptor == null) {
+            Plugin p = get();
+
+            if (p != null) {
+                Class<? extends DataViewer> viewer = p.getViewerClass();
+                descriptor = new PluginIndex.Descriptor(className,
+                        p.getPluginName(), p.getClassifier(),
+                        (viewer == null) ? null : viewer.getName());
+            }
+        }
+
+        return descriptor;
+    }
+
+    /**
+     * @return The plugin, instantiating it the first time it is needed, or
+     * null if it could not be instantiated.
+     */
+    synchronized Plugin get() {
+
+        if ((plugin == null) && !failed) {
+
+            try {
+                Class<?> c = Class.forName(className, true, loader);
+                plugin = (Plugin) c.newInstance();
+            } catch (ClassNotFoundException e) {
+                LOGGER.error("Unable to find plugin.", e);
+            } catch (ClassFormatError e) {
+                LOGGER.error("Plugin with bad class format.", e);
+            } catch (Throwable e) {
+                LOGGER.error("Unable to instantiate plugin", e);
+            }
+
+            failed = plugin == null;
+        }
+
+        return plugin;
+    }
+
+    @Override public String getClassifier() {
+        PluginIndex.Descriptor d = describe();
+
+        return (d == null) ? null : d.classifier;
+    }
+
+    @Override public Filter[] getFilters() {
+        Plugin p = get();
+
+        return (p == null) ? new Filter[0] : p.getFilters();
+    }
+
+    @Override public DataViewer getNewDataViewer(final Frame parent,
+        final boolean modal) {
+        Plugin p = get();
+
+        return (p == null) ? null : p.getNewDataViewer(parent, modal);
+    }
+
+    @Override public String getPluginName() {
+        PluginIndex.Descriptor d = describe();
+
+        return (d == null) ? className : d.name;
+    }
+
+    @Override public ImageIcon getTypeIcon() {
+        Plugin p = get();
+
+        return (p == null) ? null : p.getTypeIcon();
+    }
+
+    @Override public Class<? extends DataViewer> getViewerClass() {
+        Plugin p = get();
+
+        return (p == null) ? null : p.getViewerClass();
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+import org.openshapa.util.HashUtils;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+
+/**
+ * Remembers the plugins found in each plugin jar, so that a jar only has to
+ * be searched for plugins - and its plugins instantiated to find out their
+ * names - the first time it is seen. Jars are keyed by a checksum of their
+ * contents, so a jar that is replaced is searched again. The index is saved
+ * between sessions.
+ */
+final class PluginIndex {
+
+    /** Name of the file to save the index to. */
+    static final String FILE_NAME = "plugin_index.yml";
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(PluginIndex.class);
+
+    /**
+     * What is known about a plugin without loading it.
+     */
+    static final class Descriptor {
+
+        /** The fully qualified class name of the plugin. */
+        final String className;
+
+        /** The name of the plugin. */
+        final String name;
+
+        /** The classifier of the plugin. */
+        final String classifier;
+
+        /** The class name of the data viewer built by the plugin, or null. */
+        final String viewerClass;
+
+        /**
+         * Constructor.
+         *
+         * @param pluginClass The class name of the plugin.
+         * @param pluginName The name of the plugin.
+         * @param pluginClassifier The classifier of the plugin.
+         * @param viewer The class name of the data viewer, or null.
+         */
+        Descriptor(final String pluginClass, final String pluginName,
+                   final String pluginClassifier, final String viewer) {
+            className = pluginClass;
+            name = pluginName;
+            classifier = pluginClassifier;
+            viewerClass = viewer;
+        }
+    }
+
+    /** The file to save the index to, null if not saved. */
+    private final File indexFile;
+
+    /** The plugins found in each jar, keyed by checksum. */
+    private final Map<String, List<Descriptor>> jars =
+        new LinkedHashMap<String, List<Descriptor>>();
+
+    /** Has the index changed since it was loaded? */
+    private boolean changed;
+
+    /**
+     * Constructor.
+     *
+     * @param file The file to save the index to, or null to not save it.
+     */
+    PluginIndex(final File file) {
+        indexFile = file;
+
+        if ((indexFile != null) && indexFile.exists()) {
+            load();
+        }
+    }
+
+    /**
+     * @param checksum The checksum of a jar.
+     *
+     * @return The plugins found in the jar, or null if it hasn't been seen.
+     */
+    synchronized List<Descriptor> get(final String checksum) {
+        return jars.get(checksum);
+    }
+
+    /**
+     * @param checksum The checksum of a jar.
+     * @param plugins The plugins found in the jar.
+     */
+    synchronized void put(final String checksum,
+        final List<Descriptor> plugins) {
+        jars.put(checksum, Collections.unmodifiableList(
+                new ArrayList<Descriptor>(plugins)));
+        changed = true;
+    }
+
+    /**
+     * Forgets the jars that are no longer around.
+     *
+     * @param checksums The checksums of the jars that are still around.
+     */
+    synchronized void retain(final Collection<String> checksums) {
+        changed |= jars.keySet().retainAll(checksums);
+    }
+
+    /**
+     * Calculates the checksum of a jar.
+     *
+     * @param jar The jar.
+     *
+     * @return The SHA-1 of the contents of the jar, in hexadecimal.
+     *
+     * @throws IOException If unable to read the jar.
+     */
+    static String checksum(final File jar) throws IOException {
+        InputStream in = null;
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            in = new FileInputStream(jar);
+
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+
+            return HashUtils.convertToHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 unavailable: " + e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Save the index to disk in YAML format, if it has changed.
+     */
+    synchronized void save() {
+        if ((indexFile == null) || !changed) {
+            return;
+        }
+
+        Map<String, Object> data = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, List<Descriptor>> jar : jars.entrySet()) {
+            List<Object> plugins = new ArrayList<Object>();
+
+            for (Descriptor d : jar.getValue()) {
+                Map<String, Object> entry = new LinkedHashMap<String, Object>();
+                entry.put("class", d.className);
+                entry.put("name", d.name);
+                entry.put("classifier", d.classifier);
+
+                if (d.viewerClass != null) {
+                    entry.put("viewer", d.viewerClass);
+                }
+
+                plugins.add(entry);
+            }
+
+            data.put(jar.getKey(), plugins);
+        }
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        Yaml yaml = new Yaml(options);
+        Writer fw = null;
+
+        try {
+            fw = new FileWriter(indexFile);
+            yaml.dump(data, fw);
+            changed = false;
+        } catch (IOException e) {
+            LOGGER.error("Couldn't save plugin index", e);
+        } finally {
+            IOUtils.closeQuietly(fw);
+        }
+    }
+
+    /**
+     * Load the index from disk.
+     */
+    private void load() {
+        Yaml yaml = new Yaml();
+        Reader fr = null;
+
+        try {
+            fr = new FileReader(indexFile);
+
+            Object data = yaml.load(fr);
+            if (!(data instanceof Map)) {
+                return;
+            }
+
+            for (Object o : ((Map) data).entrySet()) {
+                Map.Entry e = (Map.Entry) o;
+
+                if (!(e.getValue() instanceof List)) {
+                    continue;
+                }
+
+                List<Descriptor> plugins = new ArrayList<Descriptor>();
+                for (Object p : (List) e.getValue()) {
+                    Map entry = (Map) p;
+                    plugins.add(new Descriptor((String) entry.get("class"),
+                            (String) entry.get("name"),
+                            (String) entry.get("classifier"),
+                            (String) entry.get("viewer")));
+                }
+
+                jars.put((String) e.getKey(),
+                    Collections.unmodifiableList(plugins));
+            }
+        } catch (IOException e) {
+            LOGGER.error("Couldn't load plugin index", e);
+        } catch (RuntimeException e) {
+
+            // A damaged index is rebuilt rather than trusted.
+            LOGGER.error("Couldn't read plugin index", e);
+            jars.clear();
+        } finally {
+            IOUtils.closeQuietly(fr);
+        }
+    }
+}
@@ -14,15 +14,18 @@
  */
 package org.openshapa.plugins;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
-import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
 
 import java.util.Collections;
 import java.util.Comparator;
@@ -30,12 +33,13 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 import javax.swing.filechooser.FileFilter;
 
+import org.apache.commons.io.IOUtils;
+
 import org.jdesktop.application.LocalStorage;
 
 import org.openshapa.OpenSHAPA;
@@ -53,11 +57,23 @@ import com.usermetrix.jclient.UserMetrix;
 /**
  * This class manages and wrangles all the viewer plugins currently availble to
  * OpenSHAPA. It is implemented as a singleton, so only one instance is
- * available to OpenSHAPA - this single instance will hunt down and load all
- * plugins that implement the Plugin interface.
+ * available to OpenSHAPA.
+ *
+ * Plugins are listed, one fully qualified class name per line, in
+ * META-INF/services/org.openshapa.plugins.Plugin - the same index that
+ * java.util.ServiceLoader reads - which is built into the OpenSHAPA jar, so
+ * the classpath never has to be searched. Jars in the "plugins" directory are
+ * each loaded by a class loader of their own; a jar without the index is
+ * searched for plugins the first time it is seen, and what was found is
+ * remembered against the checksum of the jar. Plugins are not instantiated
+ * until their file filters (or a data viewer) are needed.
  */
 public final class PluginManager {
 
+    /** The index of plugins within a jar or on the classpath. */
+    static final String SERVICE_INDEX =
+        "META-INF/services/org.openshapa.plugins.Plugin";
+
     /** A reference to the interface that plugins must override. */
     private static final Class<?> PLUGIN_CLASS;
 
@@ -76,6 +92,15 @@ public final class PluginManager {
     /** The single instance of the PluginManager for OpenSHAPA. */
     private static final PluginManager INSTANCE = new PluginManager();
 
+    /** Where plugins come from, in the order they take precedence. */
+    private List<Source> sources;
+
+    /** The plugins found in plugin jars, saved between sessions. */
+    private PluginIndex index;
+
+    /** Have the sources been turned into plugins yet? */
+    private boolean resolved;
+
     /** Set of plugins. */
     private Set<Plugin> plugins;
 
@@ -88,19 +113,19 @@ public final class PluginManager {
     /** The list of plugins associated with data viewer class name. */
     private Map<String, Plugin> pluginLookup;
 
-    /** Merged file filters for plugins of the same name. */
+    /** Merged file filters for plugins of the same name, null until used. */
     private Map<String, GroupFileFilter> filters;
 
     /**
-     * Default constructor. Searches for valid plugins ... currently scans the
-     * classpath looking for classes that implement the plugin interface.
+     * Default constructor. Finds out where plugins are to be loaded from;
+     * nothing is loaded until a plugin is asked for.
      */
     private PluginManager() {
+        sources = Lists.newArrayList();
         plugins = Sets.newLinkedHashSet();
         pluginNames = Sets.newHashSet();
         pluginLookup = Maps.newHashMap();
         pluginClassifiers = HashMultimap.create();
-        filters = Maps.newLinkedHashMap();
         initialize();
     }
 
@@ -116,258 +141,273 @@ public final class PluginManager {
     }
 
     /**
-     * Initalizes the plugin manager by searching for valid plugins to insert
-     * into the manager.
+     * A jar or directory that plugins come from.
+     */
+    private static final class Source {
+
+        /** The jar, or null if the plugins are in a directory. */
+        final File jar;
+
+        /** The plugin class names listed in the index, null if no index. */
+        final List<String> classNames;
+
+        /** The class loader for the plugins. */
+        final ClassLoader loader;
+
+        /**
+         * Constructor.
+         *
+         * @param jarFile The jar, or null for a directory.
+         * @param names The class names in the index, or null if none.
+         * @param classLoader The class loader for the plugins.
+         */
+        Source(final File jarFile, final List<String> names,
+               final ClassLoader classLoader) {
+            jar = jarFile;
+            classNames = names;
+            loader = classLoader;
+        }
+    }
+
+    /**
+     * Initalizes the plugin manager by finding the plugin indexes on the
+     * classpath and the jars in the plugins directory.
      */
     private void initialize() {
 
         try {
-            ClassLoader loader = Thread.currentThread().getContextClassLoader();
-            URL resource = loader.getResource("");
-
-            // Quaqua workaround
-            if ((resource != null)
-                    && resource.toString().equals(
-                        "file:/System/Library/Java/")) {
-                resource = null;
-            }
-
-            // The classloader references a jar - open the jar file up and
-            // iterate through all the entries and add the entries that are
-            // concrete Plugins.
-            if (resource == null) {
-                resource = loader.getResource("org/openshapa");
-
-                if (resource == null) {
-                    throw new ClassNotFoundException("Can't get class loader.");
-                }
-
-                String file = resource.getFile();
-                file = file.substring(0, file.indexOf("!"));
-
-                URI uri = new URI(file);
-                File f = new File(uri);
-                JarFile jar = new JarFile(f);
-
-                Enumeration<JarEntry> entries = jar.entries();
-
-                while (entries.hasMoreElements()) {
-                    String name = entries.nextElement().getName();
-
-                    if (name.endsWith(".class")) {
-                        addPlugin(name);
-                    }
-                }
-
-                // The classloader references a bunch of .class files on disk,
-                // recusively inspect contents of each of the resources. If it
-                // is a directory add it to our workStack, otherwise check to
-                // see if it is a concrete plugin.
-            } else {
-
-                // If we are running from a test we need to look in more than
-                // one place for classes - add all these places to the workstack
-                Enumeration<URL> resources = loader.getResources("");
-                Stack<File> workStack = new Stack<File>();
-                Stack<String> packages = new Stack<String>();
-
-                while (resources.hasMoreElements()) {
-                    workStack.clear();
-
-                    File res = new File(resources.nextElement().getFile());
+            ClassLoader loader = PluginManager.class.getClassLoader();
+            Enumeration<URL> indexes = loader.getResources(SERVICE_INDEX);
 
-                    // Dirty hack for Quaqua.
-                    if (res.equals(new File("/System/Library/Java"))) {
-                        continue;
-                    }
-
-                    workStack.push(res);
-
-                    packages.clear();
-                    packages.push("");
-
-                    while (!workStack.empty()) {
-
-                        // We must handle spaces in the directory name
-                        File f = workStack.pop();
-                        String s = f.getCanonicalPath();
-                        s = s.replaceAll("%20", " ");
-
-                        File dir = new File(s);
-
-                        String pkgName = packages.pop();
-
-                        // For each of the children of the directory - look for
-                        // Plugins or more directories to recurse inside.
-                        String[] files = dir.list();
-
-                        for (int i = 0; i < files.length; i++) {
-                            File file = new File(dir.getAbsolutePath() + "/"
-                                    + files[i]);
-
-                            if (file == null) {
-                                throw new ClassNotFoundException("Null file");
-                            }
-
-                            // If the file is a directory, add to work list.
-                            if (file.isDirectory()) {
-                                workStack.push(file);
-                                packages.push(pkgName + file.getName() + ".");
-
-                                // If we are dealling with a class file -
-                                // attempt to add it to our list of plugins.
-                            } else if (files[i].endsWith(".class")) {
-                                addPlugin(pkgName.concat(files[i]));
-                            }
-                        }
-                    }
-                }
+            while (indexes.hasMoreElements()) {
+                URL url = indexes.nextElement();
+                sources.add(new Source(null, readIndex(url), loader));
             }
 
-            // We have scanned the OpenSHAPA classpath - but we should also look
-            // in the "plugins" directory for jar files that correctly conform
-            // to the OpenSHAPA plugin interface.
+            // We have the OpenSHAPA plugins - but we should also look in the
+            // "plugins" directory for jar files that correctly conform to the
+            // OpenSHAPA plugin interface.
             LocalStorage ls = OpenSHAPA.getApplication().getContext()
                 .getLocalStorage();
             File pluginDir = new File(ls.getDirectory().toString()
                     + "/plugins");
+            index = new PluginIndex(new File(ls.getDirectory(),
+                        PluginIndex.FILE_NAME));
 
             // Unable to find plugin directory or any entries within the plugin
             // directory - don't bother attempting to add more plugins to
             // OpenSHAPA.
-            if ((pluginDir == null) || (pluginDir.list() == null)) {
+            if (pluginDir.list() == null) {
                 return;
             }
 
-            // For each of the files in the plugin directory - check to see if
-            // they conform to the plugin interface.
             for (String file : pluginDir.list()) {
-                File f = new File(pluginDir.getAbsolutePath() + "/" + file);
 
-                if (file == null) {
-                    throw new ClassNotFoundException("Null file");
-
-                    // File is a jar file - crack it open and look for plugins!
-                } else if (file.endsWith(".jar")) {
-                    injectPlugin(f);
-
-                    JarFile jar = new JarFile(f);
-
-                    // For each file in the jar file check to see if it could be
-                    // a plugin.
-                    Enumeration<JarEntry> entries = jar.entries();
-
-                    while (entries.hasMoreElements()) {
-                        String name = entries.nextElement().getName();
-
-                        // Found a class file - attempt to add it as a plugin.
-                        if (name.endsWith(".class")) {
-                            addPlugin(name);
-                        }
-                    }
+                if (file.endsWith(".jar")) {
+                    File f = new File(pluginDir, file);
+
+                    // Each jar gets a class loader of its own, so plugins
+                    // can't trip over each other's classes.
+                    URLClassLoader jarLoader = new URLClassLoader(
+                            new URL[] { f.toURI().toURL() }, loader);
+                    URL jarIndex = jarLoader.findResource(SERVICE_INDEX);
+                    sources.add(new Source(f,
+                            (jarIndex == null) ? null : readIndex(jarIndex),
+                            jarLoader));
                 }
             }
 
             // Whoops, something went bad. Chuck a spaz.
-        } catch (ClassNotFoundException e) {
-            LOGGER.error("Unable to build Plugin", e);
         } catch (IOException ie) {
-            LOGGER.error("Unable to load jar file", ie);
-        } catch (URISyntaxException se) {
-            LOGGER.error("Unable to build path to jar file", se);
+            LOGGER.error("Unable to find plugins", ie);
         }
     }
 
     /**
-     * Injects A plugin into the classpath.
+     * Reads the plugin class names from an index, ignoring comments and
+     * blank lines.
+     *
+     * @param url The index to read.
      *
-     * @param f
-     *            The jar file to inject into the classpath.
-     * @throws IOException
-     *             If unable to inject the plugin into the class path.
+     * @return The plugin class names.
+     *
+     * @throws IOException If unable to read the index.
      */
-    private void injectPlugin(final File f) throws IOException {
-        URLClassLoader sysLoader = (URLClassLoader) ClassLoader
-            .getSystemClassLoader();
-        Class<?> sysclass = URLClassLoader.class;
+    private static List<String> readIndex(final URL url) throws IOException {
+        List<String> names = Lists.newArrayList();
+        URLConnection connection = url.openConnection();
+
+        // Don't hold plugin jars open once they have been read.
+        if (connection instanceof JarURLConnection) {
+            connection.setUseCaches(false);
+        }
+
+        InputStream in = connection.getInputStream();
 
         try {
-            Class<?>[] parameters = new Class[] { URL.class };
-            Method method = sysclass.getDeclaredMethod("addURL", parameters);
-            method.setAccessible(true);
-            method.invoke(sysLoader, new Object[] { f.toURL() });
-        } catch (Throwable t) {
-            LOGGER.error("Unable to inject class into class path.", t);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        in, "UTF-8"));
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+
+                line = line.trim();
+
+                if (line.length() > 0) {
+                    names.add(line);
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
         }
+
+        return names;
     }
 
     /**
-     * Attempts to add an instance of the supplied class name as a plugin to the
-     * plugin manager. Will only add the class if it implements the plugin
-     * interface.
+     * Searches a jar without an index for the classes that implement the
+     * plugin interface. The classes are loaded but not initialised.
+     *
+     * @param source The jar to search.
      *
-     * @param className
-     *            The fully qualified class name to attempt to add to the list
-     *            of plugins.
+     * @return The plugin class names.
+     *
+     * @throws IOException If unable to read the jar.
      */
-    private void addPlugin(final String className) {
+    private static List<String> scanJar(final Source source)
+        throws IOException {
+        List<String> names = Lists.newArrayList();
+        JarFile jar = new JarFile(source.jar);
 
         try {
-            String cName = className.replaceAll("\\.class$", "").replace('/',
-                    '.');
-
-            /*
-             * Ignore classes that: - Belong to the UITests (traditionally this
-             * was because of the UISpec4J interceptor, which interrupted the
-             * UI. We still ignore UITest classes as these will not be plugins)
-             * - Are part of GStreamer, or JUnitX (these cause issues and are
-             * certainly not going to be plugins either)
-             */
-            if (!cName.contains("org.openshapa.uitests")
-                    && !cName.contains("org.gstreamer")
-                    && !cName.contains("ch.randelshofer")
-                    && !cName.startsWith("junitx")) {
+            Enumeration<JarEntry> entries = jar.entries();
 
-                Class<?> testClass = Class.forName(cName);
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
 
-                if (PLUGIN_CLASS.isAssignableFrom(testClass)) {
-                    Plugin p = (Plugin) testClass.newInstance();
+                if (!name.endsWith(".class")) {
+                    continue;
+                }
 
-                    String pluginName = p.getPluginName();
+                String cName = name.replaceAll("\\.class$", "").replace('/',
+                        '.');
 
-                    if (pluginNames.contains(p.getPluginName())) {
+                try {
+                    Class<?> c = Class.forName(cName, false, source.loader);
 
-                        // We already have this plugin; stop processing it
-                        return;
+                    if (PLUGIN_CLASS.isAssignableFrom(c)
+                            && !c.isInterface()
+                            && !Modifier.isAbstract(c.getModifiers())) {
+                        names.add(cName);
                     }
+                } catch (Throwable e) {
+                    LOGGER.error("Unable to inspect plugin class " + cName, e);
+                }
+            }
+        } finally {
+            jar.close();
+        }
 
-                    pluginNames.add(pluginName);
+        return names;
+    }
 
-                    buildGroupFilter(p);
+    /**
+     * Turns the sources into plugins, the first time plugins are asked for.
+     * Plugins that have been seen before are looked up in the index; others
+     * are instantiated to find out their names, and remembered.
+     */
+    private synchronized void resolve() {
+
+        if (resolved) {
+            return;
+        }
+
+        resolved = true;
+
+        long start = System.currentTimeMillis();
+        Set<String> checksums = Sets.newHashSet();
+
+        for (Source source : sources) {
 
-                    // Just make sure that we have at least one file filter.
-                    assert p.getFilters() != null;
-                    assert p.getFilters().length > 0;
-                    assert p.getFilters()[0] != null;
+            try {
+                String checksum = null;
+                List<PluginIndex.Descriptor> known = null;
 
-                    plugins.add(p);
+                if (source.jar != null) {
+                    checksum = PluginIndex.checksum(source.jar);
+                    checksums.add(checksum);
+                    known = index.get(checksum);
+                }
+
+                if (known != null) {
+
+                    for (PluginIndex.Descriptor d : known) {
+                        addPlugin(new LazyPlugin(d.className, source.loader,
+                                d));
+                    }
+
+                    continue;
+                }
 
-                    // BugzID:2110
-                    pluginClassifiers.put(p.getClassifier(), p);
+                List<String> names = (source.classNames != null)
+                    ? source.classNames : scanJar(source);
+                List<PluginIndex.Descriptor> found = Lists.newArrayList();
 
-                    final Class<? extends DataViewer> cdv = p.getViewerClass();
+                for (String name : names) {
+                    LazyPlugin p = new LazyPlugin(name, source.loader, null);
 
-                    if (cdv != null) {
-                        pluginLookup.put(cdv.getName(), p);
+                    if (p.describe() != null) {
+                        found.add(p.describe());
+                        addPlugin(p);
                     }
                 }
+
+                if (checksum != null) {
+                    index.put(checksum, found);
+                }
+            } catch (IOException e) {
+                LOGGER.error("Unable to load jar file", e);
             }
-        } catch (ClassNotFoundException e) {
-            LOGGER.error("Unable to find plugin.", e);
-        } catch (ClassFormatError e) {
-            LOGGER.error("Plugin with bad class format.", e);
-        } catch (Throwable e) {
-            LOGGER.error("Unable to instantiate plugin", e);
+        }
+
+        if (index != null) {
+            index.retain(checksums);
+            index.save();
+        }
+
+        LOGGER.event("Found " + plugins.size() + " plugins in "
+            + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Adds a plugin to the plugin manager, unless a plugin with the same name
+     * has already been added.
+     *
+     * @param p
+     *            The plugin to add.
+     */
+    private void addPlugin(final LazyPlugin p) {
+        PluginIndex.Descriptor d = p.describe();
+
+        if ((d == null) || pluginNames.contains(d.name)) {
+
+            // We already have this plugin; stop processing it
+            return;
+        }
+
+        pluginNames.add(d.name);
+        plugins.add(p);
+
+        // BugzID:2110
+        pluginClassifiers.put(d.classifier, p);
+
+        if (d.viewerClass != null) {
+            pluginLookup.put(d.viewerClass, p);
         }
     }
 
@@ -387,11 +427,27 @@ public final class PluginManager {
         }
     }
 
-    public Iterable<? extends FileFilter> getFileFilters() {
+    /**
+     * @return The file filters of the plugins, merged by name. The plugins
+     * are instantiated the first time this is called.
+     */
+    public synchronized Iterable<? extends FileFilter> getFileFilters() {
+        resolve();
+
+        if (filters == null) {
+            filters = Maps.newLinkedHashMap();
+
+            for (Plugin p : plugins) {
+                buildGroupFilter(p);
+            }
+        }
+
         return filters.values();
     }
 
-    public Iterable<Plugin> getPlugins() {
+    public synchronized Iterable<Plugin> getPlugins() {
+        resolve();
+
         List<Plugin> p = Lists.newArrayList(plugins);
         Collections.sort(p, new Comparator<Plugin>() {
                 @Override public int compare(final Plugin o1, final Plugin o2) {
@@ -422,8 +478,9 @@ public final class PluginManager {
      *            The data file to open.
      * @return The first compatible plugin that is found, null otherwise.
      */
-    public Plugin getCompatiblePlugin(final String classifier,
+    public synchronized Plugin getCompatiblePlugin(final String classifier,
         final File file) {
+        resolve();
 
         for (Plugin candidate : pluginClassifiers.get(classifier)) {
 
@@ -445,7 +502,9 @@ public final class PluginManager {
      * @return The {@link Plugin} used to build the data viewer if it exists,
      *         {@code null} otherwise.
      */
-    public Plugin getAssociatedPlugin(final String dataViewer) {
+    public synchronized Plugin getAssociatedPlugin(final String dataViewer) {
+        resolve();
+
         return pluginLookup.get(dataViewer);
     }
 
@@ -0,0 +1,657 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.sensor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import org.openshapa.OpenSHAPA;
+
+import org.openshapa.util.HashUtils;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Sensor data - a time column and any number of channels of samples - held
+ * in memory mapped columns.
+ *
+ * The CSV the data is recorded in is converted once into a directory of
+ * binary columns in local storage, named by the CSV: the times as longs and
+ * each channel as floats. Alongside each channel is a stack of summary
+ * levels, each holding the smallest and largest sample of every block of
+ * {@link #FANOUT} blocks in the level below. The smallest and largest sample
+ * of any range of rows is found by walking up the levels and back down,
+ * reading a few dozen values however many rows there are, so the viewer can
+ * draw any time window in time proportional to its width.
+ *
+ * The first column of the CSV is the time, in seconds unless its heading
+ * mentions ms. Rows are expected in time order. A first row that is not a
+ * number names the channels.
+ */
+final class SensorData {
+
+    /** The number of blocks summarised by each block of the level above. */
+    static final int FANOUT = 16;
+
+    /** Name of the index of a converted data set. */
+    private static final String INDEX = "columns.yml";
+
+    /** Name of the directory converted data is kept in. */
+    private static final String SENSOR_DIR = "sensors";
+
+    /** The version of the converted format. */
+    private static final int FORMAT_VERSION = 2;
+
+    /** The size of the buffers used while converting. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The names of the channels. */
+    private final String[] names;
+
+    /** The number of rows. */
+    private final int rows;
+
+    /** The time of each row, in milliseconds from the first row. */
+    private final LongBuffer times;
+
+    /** The samples of each channel. */
+    private final FloatBuffer[] channels;
+
+    /** The summary levels of each channel, smallest then largest sample of
+        each block, finest level first. */
+    private final FloatBuffer[][] levels;
+
+    /**
+     * Constructor.
+     *
+     * @param channelNames The names of the channels.
+     * @param rowCount The number of rows.
+     * @param timeColumn The time of each row.
+     * @param channelColumns The samples of each channel.
+     * @param channelLevels The summary levels of each channel.
+     */
+    private SensorData(final String[] channelNames,
+                       final int rowCount,
+                       final LongBuffer timeColumn,
+                       final FloatBuffer[] channelColumns,
+                       final FloatBuffer[][] channelLevels) {
+        names = channelNames;
+        rows = rowCount;
+        times = timeColumn;
+        channels = channelColumns;
+        levels = channelLevels;
+    }
+
+    /**
+     * Opens sensor data, converting it first if it has not been opened
+     * before.
+     *
+     * @param csv The CSV file holding the data.
+     *
+     * @return The data.
+     *
+     * @throws IOException If the data could not be read or converted.
+     */
+    static SensorData open(final File csv) throws IOException {
+        return open(csv, new File(OpenSHAPA.getApplication().getContext()
+                    .getLocalStorage().getDirectory(), SENSOR_DIR));
+    }
+
+    /**
+     * Opens sensor data, converting it first if it has not been opened
+     * before.
+     *
+     * @param csv The CSV file holding the data.
+     * @param cacheDir The directory to keep converted data in.
+     *
+     * @return The data.
+     *
+     * @throws IOException If the data could not be read or converted.
+     */
+    static SensorData open(final File csv, final File cacheDir)
+        throws IOException {
+        File dir = new File(cacheDir, HashUtils.mediaKey(csv));
+
+        if (!new File(dir, INDEX).isFile()) {
+            FileUtils.deleteDirectory(dir);
+            convert(csv, dir);
+        }
+
+        return map(dir);
+    }
+
+    /**
+     * @return The number of channels.
+     */
+    int getChannelCount() {
+        return names.length;
+    }
+
+    /**
+     * @param channel A channel.
+     *
+     * @return The name of the channel.
+     */
+    String getChannelName(final int channel) {
+        return names[channel];
+    }
+
+    /**
+     * @return The number of rows.
+     */
+    int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @param row A row.
+     *
+     * @return The time of the row, in milliseconds from the first row.
+     */
+    long getTime(final int row) {
+        return times.get(row);
+    }
+
+    /**
+     * @param channel A channel.
+     * @param row A row.
+     *
+     * @return The sample, NaN if the row has none.
+     */
+    float getValue(final int channel, final int row) {
+        return channels[channel].get(row);
+    }
+
+    /**
+     * @return The time of the last row, in milliseconds from the first.
+     */
+    long getDuration() {
+        return (rows == 0) ? 0 : times.get(rows - 1);
+    }
+
+    /**
+     * @return The average number of rows a second.
+     */
+    float getSampleRate() {
+        long duration = getDuration();
+
+        return (duration > 0) ? ((rows - 1) * 1000f / duration) : 0f;
+    }
+
+    /**
+     * Finds the first row at or after a time.
+     *
+     * @param time A time, in milliseconds from the first row.
+     *
+     * @return The first row at or after the time, the row count if there
+     * isn't one.
+     */
+    int rowAt(final long time) {
+        int low = 0;
+        int high = rows;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (times.get(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Finds the smallest and largest sample of a range of rows. Samples that
+     * are NaN are ignored.
+     *
+     * @param channel The channel.
+     * @param from The first row of the range.
+     * @param to The row after the last row of the range.
+     * @param out Set to the smallest then the largest sample; infinite if
+     * there are no samples.
+     */
+    void minMax(final int channel,
+                final int from,
+                final int to,
+                final float[] out) {
+        FloatBuffer samples = channels[channel];
+        FloatBuffer[] summaries = levels[channel];
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        int row = Math.max(0, from);
+        int end = Math.min(rows, to);
+
+        while (row < end) {
+
+            // Use the largest block that starts here and fits in the range.
+            int level = 0;
+            long size = 1;
+            while ((level < summaries.length) && ((row % (size * FANOUT)) == 0)
+                    && ((row + (size * FANOUT)) <= end)) {
+                size *= FANOUT;
+                level++;
+            }
+
+            if (level == 0) {
+                float value = samples.get(row);
+                if (value < min) {
+                    min = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+            } else {
+                int block = (int) (row / size);
+                float low = summaries[level - 1].get(2 * block);
+                float high = summaries[level - 1].get((2 * block) + 1);
+                if (low < min) {
+                    min = low;
+                }
+                if (high > max) {
+                    max = high;
+                }
+            }
+
+            row += size;
+        }
+
+        out[0] = min;
+        out[1] = max;
+    }
+
+    /**
+     * Maps converted data.
+     *
+     * @param dir The directory of converted data.
+     *
+     * @return The data.
+     *
+     * @throws IOException If the data could not be read.
+     */
+    private static SensorData map(final File dir) throws IOException {
+        Reader fr = null;
+        Map<?, ?> index;
+
+        try {
+            fr = new FileReader(new File(dir, INDEX));
+            index = (Map<?, ?>) new Yaml().load(fr);
+        } catch (RuntimeException e) {
+            throw new IOException("Damaged sensor data index in " + dir);
+        } finally {
+            IOUtils.closeQuietly(fr);
+        }
+
+        if ((index == null)
+                || !Integer.valueOf(FORMAT_VERSION).equals(
+                    index.get("version"))) {
+            throw new IOException("Unknown sensor data format in " + dir);
+        }
+
+        List<?> channelNames = (List<?>) index.get("channels");
+        int rowCount = ((Number) index.get("rows")).intValue();
+        int levelCount = levelCount(rowCount);
+
+        String[] names = new String[channelNames.size()];
+        FloatBuffer[] channels = new FloatBuffer[names.length];
+        FloatBuffer[][] levels = new FloatBuffer[names.length][levelCount];
+
+        for (int c = 0; c < names.length; c++) {
+            names[c] = String.valueOf(channelNames.get(c));
+            channels[c] = mapColumn(columnFile(dir, c, 0)).asFloatBuffer();
+
+            for (int level = 1; level <= levelCount; level++) {
+                levels[c][level - 1] = mapColumn(columnFile(dir, c, level))
+                    .asFloatBuffer();
+            }
+        }
+
+        return new SensorData(names, rowCount,
+                mapColumn(new File(dir, "time.col")).asLongBuffer(),
+                channels, levels);
+    }
+
+    /**
+     * @param file A column file.
+     *
+     * @return The file mapped read only into memory.
+     *
+     * @throws IOException If the file could not be mapped.
+     */
+    private static MappedByteBuffer mapColumn(final File file)
+        throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+
+            // The mapping stays valid once the file is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @param dir The directory of converted data.
+     * @param channel A channel.
+     * @param level A summary level, 0 for the samples themselves.
+     *
+     * @return The file holding the level of the channel.
+     */
+    private static File columnFile(final File dir,
+                                   final int channel,
+                                   final int level) {
+        return new File(dir, "c" + channel
+                + ((level == 0) ? "" : (".L" + level)) + ".col");
+    }
+
+    /**
+     * @param rowCount The number of rows.
+     *
+     * @return The number of summary levels of each channel.
+     */
+    private static int levelCount(final int rowCount) {
+        int count = 0;
+
+        for (long blocks = rowCount; blocks > 1;
+                blocks = (blocks + FANOUT - 1) / FANOUT) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Converts a CSV file into columns. The columns are written to a
+     * temporary directory that is renamed once they are complete, so a
+     * conversion that is interrupted is started again the next time.
+     *
+     * @param csv The CSV file to convert.
+     * @param dir The directory to write the columns to.
+     *
+     * @throws IOException If the CSV could not be read or the columns
+     * written.
+     */
+    private static void convert(final File csv, final File dir)
+        throws IOException {
+        File part = new File(dir.getPath() + ".part");
+        FileUtils.deleteDirectory(part);
+
+        if (!part.mkdirs()) {
+            throw new IOException("Unable to create " + part);
+        }
+
+        BufferedReader in = new BufferedReader(new FileReader(csv),
+                BUFFER_SIZE);
+        DataOutputStream time = null;
+        DataOutputStream[] columns = null;
+        List<String> names = new ArrayList<String>();
+        List<String> cells = new ArrayList<String>();
+        int rowCount = 0;
+
+        try {
+            boolean millis = false;
+            long first = Long.MIN_VALUE;
+            long last = Long.MIN_VALUE;
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                split(line, cells);
+
+                if (cells.isEmpty() || cells.get(0).isEmpty()) {
+                    continue;
+                }
+
+                if (columns == null) {
+                    boolean header = Double.isNaN(parse(cells.get(0)));
+
+                    for (int c = 1; c < cells.size(); c++) {
+                        names.add(header ? cells.get(c) : ("Channel " + c));
+                    }
+
+                    millis = header
+                        && cells.get(0).toLowerCase().contains("ms");
+
+                    time = create(new File(part, "time.col"));
+                    columns = new DataOutputStream[names.size()];
+                    for (int c = 0; c < columns.length; c++) {
+                        columns[c] = create(columnFile(part, c, 0));
+                    }
+
+                    if (header) {
+                        continue;
+                    }
+                }
+
+                double t = parse(cells.get(0));
+                if (Double.isNaN(t)) {
+                    continue;
+                }
+
+                long ms = Math.round(millis ? t : (t * 1000.0));
+                if (first == Long.MIN_VALUE) {
+                    first = ms;
+                }
+
+                // Keep the times in order, so rows can be searched by time.
+                last = Math.max(last, ms - first);
+                time.writeLong(last);
+
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c].writeFloat((c + 1 < cells.size())
+                        ? (float) parse(cells.get(c + 1)) : Float.NaN);
+                }
+
+                rowCount++;
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(time);
+
+            if (columns != null) {
+                for (DataOutputStream column : columns) {
+                    IOUtils.closeQuietly(column);
+                }
+            }
+        }
+
+        if ((columns == null) || (rowCount == 0)) {
+            FileUtils.deleteDirectory(part);
+            throw new IOException("No sensor data in " + csv);
+        }
+
+        for (int c = 0; c < columns.length; c++) {
+            summarise(part, c, rowCount);
+        }
+
+        Map<String, Object> index = new LinkedHashMap<String, Object>();
+        index.put("version", FORMAT_VERSION);
+        index.put("source", csv.getAbsolutePath());
+        index.put("rows", rowCount);
+        index.put("channels", names);
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        Writer fw = null;
+
+        try {
+            fw = new FileWriter(new File(part, INDEX));
+            new Yaml(options).dump(index, fw);
+        } finally {
+            IOUtils.closeQuietly(fw);
+        }
+
+        if (!part.renameTo(dir)) {
+            FileUtils.deleteDirectory(part);
+            throw new IOException("Unable to create " + dir);
+        }
+    }
+
+    /**
+     * Writes the summary levels of a channel. Each level is read back in
+     * order to write the one above it; nothing is mapped while converting,
+     * so the directory can still be renamed on platforms that lock mapped
+     * files.
+     *
+     * @param dir The directory the columns are being written to.
+     * @param channel The channel.
+     * @param rowCount The number of rows.
+     *
+     * @throws IOException If the levels could not be written.
+     */
+    private static void summarise(final File dir,
+                                  final int channel,
+                                  final int rowCount) throws IOException {
+        int count = rowCount;
+        int level = 1;
+
+        while (count > 1) {
+            int blocks = (count + FANOUT - 1) / FANOUT;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(columnFile(dir, channel,
+                                level - 1)), BUFFER_SIZE));
+            DataOutputStream out = create(columnFile(dir, channel, level));
+
+            try {
+                for (int b = 0; b < blocks; b++) {
+                    float min = Float.NaN;
+                    float max = Float.NaN;
+                    int size = Math.min(FANOUT, count - (b * FANOUT));
+
+                    for (int i = 0; i < size; i++) {
+                        float low = in.readFloat();
+                        float high = (level == 1) ? low : in.readFloat();
+
+                        if (Float.isNaN(min) || (low < min)) {
+                            min = low;
+                        }
+                        if (Float.isNaN(max) || (high > max)) {
+                            max = high;
+                        }
+                    }
+
+                    out.writeFloat(min);
+                    out.writeFloat(max);
+                }
+            } finally {
+                IOUtils.closeQuietly(in);
+                IOUtils.closeQuietly(out);
+            }
+
+            count = blocks;
+            level++;
+        }
+    }
+
+    /**
+     * @param file A column file.
+     *
+     * @return A buffered stream writing the file.
+     *
+     * @throws IOException If the file could not be created.
+     */
+    private static DataOutputStream create(final File file)
+        throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * Splits a line of CSV at its commas. Commas within quoted cells are
+     * kept, as are doubled quotes within them; the surrounding quotes are
+     * removed.
+     *
+     * @param line The line to split.
+     * @param cells Cleared, then filled with the cells of the line.
+     */
+    private static void split(final String line, final List<String> cells) {
+        cells.clear();
+
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (c == '"') {
+                if (quoted && ((i + 1) < line.length())
+                        && (line.charAt(i + 1) == '"')) {
+                    cell.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if ((c == ',') && !quoted) {
+                cells.add(cell.toString().trim());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+
+        String lastCell = cell.toString().trim();
+        if (!cells.isEmpty() || !lastCell.isEmpty()) {
+            cells.add(lastCell);
+        }
+    }
+
+    /**
+     * @param cell A cell of CSV.
+     *
+     * @return The number in the cell, NaN if it isn't one.
+     */
+    private static double parse(final String cell) {
+        if (cell.isEmpty()) {
+            return Double.NaN;
+        }
+
+        try {
+            return Double.parseDouble(cell);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.sensor;
+
+import java.awt.BorderLayout;
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.JDialog;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.openshapa.models.db.Datastore;
+import org.openshapa.models.id.Identifier;
+
+import org.openshapa.plugins.CustomActions;
+import org.openshapa.plugins.CustomActionsAdapter;
+import org.openshapa.plugins.DataViewer;
+import org.openshapa.plugins.ViewerStateListener;
+
+import org.openshapa.util.DataViewerUtils;
+
+import org.openshapa.views.DataController;
+import org.openshapa.views.component.DefaultTrackPainter;
+import org.openshapa.views.component.TrackPainter;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+/**
+ * Shows sensor data - heart rate, accelerometers, eye tracking and the like
+ * - in step with the other data viewers.
+ *
+ * Sensor data has no clock of its own, so the viewer keeps one: the time of
+ * the last seek, plus the time played since at the playback rate. The data
+ * controller compares it with the master clock and seeks the viewer whenever
+ * they drift apart, like any other viewer. Seeking only moves the window of
+ * the plot, so scrubbing is as quick as painting.
+ */
+public final class SensorDataViewer implements DataViewer {
+
+    /** How often the plot is repainted while playing, in milliseconds. */
+    private static final int PLAY_REPAINT = 33;
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(SensorDataViewer.class);
+
+    /** Data viewer ID. */
+    private Identifier id;
+
+    /** Data viewer offset. */
+    private long offset;
+
+    /** Dialog showing the plot. */
+    private final JDialog dialog;
+
+    /** Plots the data. */
+    private final SensorPanel panel;
+
+    /** Repaints the plot while playing. */
+    private final Timer repaintTimer;
+
+    /** The file the data was read from. */
+    private File dataFeed;
+
+    /** The data, null until the data feed is set. */
+    private volatile SensorData data;
+
+    /** Guards the clock. */
+    private final Object clockLock = new Object();
+
+    /** The time of the last seek, or when playback last changed. */
+    private long baseTime;
+
+    /** System time of the base time, in nanoseconds. */
+    private long baseNanos;
+
+    /** The playback rate. */
+    private float rate = 1f;
+
+    /** Is the viewer playing? */
+    private boolean playing;
+
+    /** Data viewer state listeners. */
+    private final List<ViewerStateListener> stateListeners =
+        new CopyOnWriteArrayList<ViewerStateListener>();
+
+    /** Supported custom actions. */
+    private final CustomActions actions = new CustomActionsAdapter();
+
+    /**
+     * Constructor.
+     *
+     * @param parent The frame the dialog belongs to.
+     * @param modal Is the dialog modal?
+     */
+    public SensorDataViewer(final Frame parent, final boolean modal) {
+        dialog = new JDialog(parent, modal);
+        dialog.setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+        dialog.setName("SensorDataViewer");
+        dialog.setResizable(true);
+        dialog.setSize(800, 400);
+
+        panel = new SensorPanel();
+        dialog.setLayout(new BorderLayout());
+        dialog.add(panel, BorderLayout.CENTER);
+
+        repaintTimer = new Timer(PLAY_REPAINT, new ActionListener() {
+                    @Override public void actionPerformed(
+                        final ActionEvent e) {
+                        panel.setTime(clockTime());
+                    }
+                });
+    }
+
+    @Override public JDialog getParentJDialog() {
+        return dialog;
+    }
+
+    @Override public float getFrameRate() {
+        SensorData d = data;
+
+        return (d == null) ? 0f : d.getSampleRate();
+    }
+
+    @Override public void setIdentifier(final Identifier id) {
+        this.id = id;
+    }
+
+    @Override public Identifier getIdentifier() {
+        return id;
+    }
+
+    @Override public void setOffset(final long offset) {
+        this.offset = offset;
+    }
+
+    @Override public long getOffset() {
+        return offset;
+    }
+
+    @Override public TrackPainter getTrackPainter() {
+        return new DefaultTrackPainter();
+    }
+
+    @Override public void setDataViewerVisible(final boolean isVisible) {
+        dialog.setVisible(isVisible);
+    }
+
+    @Override public void setDataFeed(final File feed) {
+        dataFeed = feed;
+
+        // Converting the data the first time it is opened reads the whole
+        // CSV; data viewers are opened off the EDT.
+        try {
+            data = SensorData.open(feed);
+        } catch (final IOException e) {
+            LOGGER.error("Unable to open sensor data", e);
+            SwingUtilities.invokeLater(new Runnable() {
+                    @Override public void run() {
+                        JOptionPane.showMessageDialog(dialog,
+                            "Unable to open sensor data:\n" + e.getMessage());
+                    }
+                });
+
+            return;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+                @Override public void run() {
+                    panel.setData(data);
+                    dialog.setTitle(feed.getName());
+                    dialog.setVisible(true);
+                }
+            });
+    }
+
+    @Override public File getDataFeed() {
+        return dataFeed;
+    }
+
+    @Override public long getDuration() {
+        SensorData d = data;
+
+        return (d == null) ? 0 : d.getDuration();
+    }
+
+    @Override public long getCurrentTime() throws Exception {
+        return clockTime();
+    }
+
+    @Override public void seekTo(final long position) {
+        synchronized (clockLock) {
+            baseTime = position;
+            baseNanos = System.nanoTime();
+        }
+
+        panel.setTime(position);
+    }
+
+    @Override public boolean isPlaying() {
+        synchronized (clockLock) {
+            return playing;
+        }
+    }
+
+    @Override public void stop() {
+        synchronized (clockLock) {
+            rebase();
+            playing = false;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+                @Override public void run() {
+                    repaintTimer.stop();
+                    panel.setTime(clockTime());
+                }
+            });
+    }
+
+    @Override public void setPlaybackSpeed(final float speed) {
+        synchronized (clockLock) {
+            rebase();
+            rate = speed;
+        }
+    }
+
+    @Override public void play() {
+        synchronized (clockLock) {
+            rebase();
+            playing = true;
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+                @Override public void run() {
+                    repaintTimer.start();
+                }
+            });
+    }
+
+    @Override public void storeSettings(final OutputStream os) {
+        try {
+            DataViewerUtils.storeDefaults(this, os);
+        } catch (IOException ex) {
+            LOGGER.error("Unable to store settings", ex);
+        }
+    }
+
+    @Override public void loadSettings(final InputStream is) {
+        try {
+            DataViewerUtils.loadDefaults(this, is);
+        } catch (IOException ex) {
+            LOGGER.error("Unable to load settings", ex);
+        }
+    }
+
+    @Override public void addViewerStateListener(
+        final ViewerStateListener vsl) {
+
+        if (vsl != null) {
+            stateListeners.add(vsl);
+        }
+    }
+
+    @Override public void removeViewerStateListener(
+        final ViewerStateListener vsl) {
+
+        if (vsl != null) {
+            stateListeners.remove(vsl);
+        }
+    }
+
+    @Override public CustomActions getCustomActions() {
+        return actions;
+    }
+
+    @Override public void clearDataFeed() {
+        stop();
+        data = null;
+
+        SwingUtilities.invokeLater(new Runnable() {
+                @Override public void run() {
+                    panel.setData(null);
+                    dialog.setVisible(false);
+                }
+            });
+    }
+
+    @Override public void setDatastore(final Datastore sDB) {
+        // Sensor data is not stored in the database.
+    }
+
+    @Override public void setParentController(
+        final DataController dataController) {
+        // The data controller drives the viewer through seeks alone.
+    }
+
+    /**
+     * @return The time of the viewer's clock, in milliseconds.
+     */
+    private long clockTime() {
+        synchronized (clockLock) {
+            if (!playing) {
+                return baseTime;
+            }
+
+            return baseTime + Math.round((System.nanoTime() - baseNanos)
+                    * (double) rate / 1000000.0);
+        }
+    }
+
+    /**
+     * Moves the base of the clock to now, before the rate or playing state
+     * changes. Must hold the clock lock.
+     */
+    private void rebase() {
+        baseTime = clockTime();
+        baseNanos = System.nanoTime();
+    }
+}
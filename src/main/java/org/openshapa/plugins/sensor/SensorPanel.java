@@ -0,0 +1,264 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.sensor;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+
+import javax.swing.JComponent;
+
+/**
+ * Plots the channels of sensor data, one above the other, over a window of
+ * time centred on the current time.
+ *
+ * When the window holds fewer samples than there are pixels across, the
+ * samples are joined by lines. Otherwise each column of pixels is drawn as a
+ * line from the smallest to the largest sample it covers, found from the
+ * summary levels of the data - so drawing costs the same whether the window
+ * holds a hundred samples or ten million. The mouse wheel zooms the window.
+ */
+final class SensorPanel extends JComponent {
+
+    /** The shortest window, in milliseconds. */
+    private static final long MIN_WINDOW = 100;
+
+    /** The window shown at first, in milliseconds. */
+    private static final long DEFAULT_WINDOW = 10000;
+
+    /** How much each notch of the mouse wheel zooms by. */
+    private static final double ZOOM_STEP = 1.25;
+
+    /** Gap between the plots of the channels. */
+    private static final int GAP = 4;
+
+    /** Colour behind the plots. */
+    private static final Color BACKGROUND = new Color(249, 249, 249);
+
+    /** Colour of the plots. */
+    private static final Color TRACE = new Color(58, 58, 58);
+
+    /** Colour of the channel names. */
+    private static final Color LABEL = new Color(90, 90, 90);
+
+    /** Colour of the line at the current time. */
+    private static final Color NEEDLE = new Color(250, 0, 0);
+
+    /** The data to plot, null for none. */
+    private volatile SensorData data;
+
+    /** The smallest and largest sample of each channel, for scaling. */
+    private float[][] ranges;
+
+    /** The time at the centre of the window, in milliseconds. */
+    private volatile long time;
+
+    /** The width of the window, in milliseconds. */
+    private volatile long window = DEFAULT_WINDOW;
+
+    /** Reused when finding the smallest and largest sample of a column. */
+    private final float[] extent = new float[2];
+
+    /** Reused x coordinates of the lines joining samples. */
+    private int[] xs = new int[0];
+
+    /** Reused y coordinates of the lines joining samples. */
+    private int[] ys = new int[0];
+
+    /**
+     * Constructor.
+     */
+    SensorPanel() {
+        setOpaque(true);
+        addMouseWheelListener(new MouseWheelListener() {
+                @Override public void mouseWheelMoved(
+                    final MouseWheelEvent e) {
+                    double zoom = Math.pow(ZOOM_STEP, e.getWheelRotation());
+                    window = Math.max(MIN_WINDOW,
+                            Math.round(window * zoom));
+                    repaint();
+                }
+            });
+    }
+
+    /**
+     * @param sensorData The data to plot, null for none.
+     */
+    void setData(final SensorData sensorData) {
+        float[][] channelRanges = null;
+
+        if (sensorData != null) {
+            channelRanges = new float[sensorData.getChannelCount()][2];
+
+            for (int c = 0; c < channelRanges.length; c++) {
+                sensorData.minMax(c, 0, sensorData.getRowCount(),
+                    channelRanges[c]);
+            }
+        }
+
+        ranges = channelRanges;
+        data = sensorData;
+        repaint();
+    }
+
+    /**
+     * @param currentTime The time at the centre of the window, in
+     * milliseconds.
+     */
+    void setTime(final long currentTime) {
+        if (time != currentTime) {
+            time = currentTime;
+            repaint();
+        }
+    }
+
+    @Override protected void paintComponent(final Graphics g) {
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        SensorData d = data;
+        float[][] channelRanges = ranges;
+        if ((d == null) || (channelRanges == null) || (getWidth() <= 0)
+                || (d.getChannelCount() == 0)) {
+            return;
+        }
+
+        int count = d.getChannelCount();
+        int plotHeight = (getHeight() - (GAP * (count + 1))) / count;
+        if (plotHeight <= 0) {
+            return;
+        }
+
+        double msPerPixel = (double) window / getWidth();
+        long start = time - (window / 2);
+
+        Rectangle clip = g.getClipBounds();
+        int left = (clip == null) ? 0 : Math.max(0, clip.x);
+        int right = (clip == null) ? getWidth()
+                                   : Math.min(getWidth(), clip.x + clip.width);
+
+        for (int c = 0; c < count; c++) {
+            int top = GAP + (c * (plotHeight + GAP));
+
+            g.setColor(TRACE);
+            paintChannel(g, d, c, channelRanges[c], top, plotHeight, start,
+                msPerPixel, left, right);
+
+            g.setColor(LABEL);
+            g.drawString(d.getChannelName(c), GAP,
+                top + g.getFontMetrics().getAscent());
+        }
+
+        g.setColor(NEEDLE);
+        g.drawLine(getWidth() / 2, 0, getWidth() / 2, getHeight());
+    }
+
+    /**
+     * Plots one channel.
+     *
+     * @param g The graphics to paint with.
+     * @param d The data.
+     * @param channel The channel to plot.
+     * @param range The smallest and largest sample of the channel.
+     * @param top The top of the plot.
+     * @param height The height of the plot.
+     * @param start The time at the left edge of the panel.
+     * @param msPerPixel The time each column of pixels covers.
+     * @param left The first column to paint.
+     * @param right The column after the last column to paint.
+     */
+    private void paintChannel(final Graphics g,
+                              final SensorData d,
+                              final int channel,
+                              final float[] range,
+                              final int top,
+                              final int height,
+                              final long start,
+                              final double msPerPixel,
+                              final int left,
+                              final int right) {
+        if (!(range[0] <= range[1])) {
+            return;
+        }
+
+        double span = Math.max(range[1] - range[0], Float.MIN_NORMAL);
+        double scale = (height - 1) / span;
+        int bottom = top + height - 1;
+
+        long from = start + (long) (left * msPerPixel);
+        long to = start + (long) Math.ceil(right * msPerPixel);
+
+        // Include the samples either side, so lines run off the edges.
+        int first = Math.max(0, d.rowAt(from) - 1);
+        int last = Math.min(d.getRowCount(), d.rowAt(to) + 1);
+
+        if ((last - first) <= (right - left)) {
+            int n = 0;
+            ensureCapacity(last - first);
+
+            for (int row = first; row < last; row++) {
+                float value = d.getValue(channel, row);
+
+                // Gaps in the data break the line.
+                if (Float.isNaN(value)) {
+                    g.drawPolyline(xs, ys, n);
+                    n = 0;
+
+                    continue;
+                }
+
+                xs[n] = (int) Math.round((d.getTime(row) - start)
+                        / msPerPixel);
+                ys[n] = bottom - (int) Math.round((value - range[0]) * scale);
+                n++;
+            }
+
+            g.drawPolyline(xs, ys, n);
+
+            return;
+        }
+
+        int row = d.rowAt(from);
+
+        for (int x = left; x < right; x++) {
+            int end = d.rowAt(start + (long) ((x + 1) * msPerPixel));
+            if (end <= row) {
+                continue;
+            }
+
+            d.minMax(channel, row, end, extent);
+            row = end;
+
+            if (extent[0] <= extent[1]) {
+                g.drawLine(x,
+                    bottom - (int) Math.round((extent[1] - range[0]) * scale),
+                    x,
+                    bottom - (int) Math.round((extent[0] - range[0]) * scale));
+            }
+        }
+    }
+
+    /**
+     * @param size The number of points needed for a line.
+     */
+    private void ensureCapacity(final int size) {
+        if (xs.length < size) {
+            xs = new int[size];
+            ys = new int[size];
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.sensor;
+
+import java.awt.Frame;
+
+import java.io.FileFilter;
+
+import java.util.List;
+
+import javax.swing.ImageIcon;
+
+import org.apache.commons.io.IOCase;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+
+import org.openshapa.plugins.DataViewer;
+import org.openshapa.plugins.Filter;
+import org.openshapa.plugins.Plugin;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * Plugin for viewing sensor data recorded as CSV - physiological signals,
+ * motion and eye tracking - in step with video.
+ */
+public class SensorPlugin implements Plugin {
+
+    private static final Filter SENSOR_FILTER = new Filter() {
+            final SuffixFileFilter ff;
+            final List<String> ext;
+
+            {
+                ext = Lists.newArrayList(".csv");
+                ff = new SuffixFileFilter(ext, IOCase.INSENSITIVE);
+            }
+
+            @Override public FileFilter getFileFilter() {
+                return ff;
+            }
+
+            @Override public String getName() {
+                return "Sensor data";
+            }
+
+            @Override public Iterable<String> getExtensions() {
+                return ext;
+            }
+        };
+
+    private static final Filter[] FILTERS = new Filter[] { SENSOR_FILTER };
+
+    @Override public String getClassifier() {
+        return "sensorplugin";
+    }
+
+    @Override public Filter[] getFilters() {
+        return FILTERS;
+    }
+
+    @Override public DataViewer getNewDataViewer(final Frame parent,
+        final boolean modal) {
+        return new SensorDataViewer(parent, modal);
+    }
+
+    @Override public String getPluginName() {
+        return "Sensor Data";
+    }
+
+    @Override public ImageIcon getTypeIcon() {
+        return null;
+    }
+
+    @Override public Class<? extends DataViewer> getViewerClass() {
+        return SensorDataViewer.class;
+    }
+
+}
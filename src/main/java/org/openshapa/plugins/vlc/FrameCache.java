@@ -0,0 +1,232 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+/**
+ * A bounded ring of decoded video frames, keyed by the time of each frame.
+ *
+ * The pixel buffers in the ring are allocated once and recycled - when the
+ * ring is full the frame furthest from the most recently requested time is
+ * overwritten. Frames are written by the background decoder and copied out
+ * by the EDT, so a frame being painted is never overwritten, and all access
+ * is synchronised on the cache.
+ */
+final class FrameCache {
+
+    /** Marks an empty slot in the ring. */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /** The time of the frame held in each slot. */
+    private final long[] times;
+
+    /** The pixels of the frame held in each slot. */
+    private final int[][] pixels;
+
+    /** The width of the frames in the cache. */
+    private final int width;
+
+    /** The height of the frames in the cache. */
+    private final int height;
+
+    /** The time most recently requested from the cache. */
+    private long needle;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The number of frames to hold.
+     * @param frameWidth The width of the decoded frames.
+     * @param frameHeight The height of the decoded frames.
+     */
+    FrameCache(final int capacity, final int frameWidth, final int frameHeight) {
+        width = frameWidth;
+        height = frameHeight;
+        times = new long[capacity];
+        pixels = new int[capacity][width * height];
+
+        for (int i = 0; i < capacity; i++) {
+            times[i] = EMPTY;
+        }
+    }
+
+    /**
+     * Works out how many frames fit within a memory budget.
+     *
+     * @param budget The number of bytes the cache may use.
+     * @param frameWidth The width of the decoded frames.
+     * @param frameHeight The height of the decoded frames.
+     * @param min The smallest number of frames to hold.
+     * @param max The largest number of frames to hold.
+     *
+     * @return The number of frames to hold.
+     */
+    static int capacityFor(final long budget,
+                           final int frameWidth,
+                           final int frameHeight,
+                           final int min,
+                           final int max) {
+        long frameBytes = 4L * Math.max(frameWidth, 1) * Math.max(frameHeight, 1);
+
+        return (int) Math.max(min, Math.min(max, budget / frameBytes));
+    }
+
+    /**
+     * @return The width of the frames in the cache.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The height of the frames in the cache.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The number of frames the cache can hold.
+     */
+    int getCapacity() {
+        return times.length;
+    }
+
+    /**
+     * Finds the pixel buffer to decode a frame into. If a frame with the
+     * supplied time is already held its buffer is reused, otherwise the frame
+     * furthest from the needle is evicted. The frame is not visible to readers
+     * until it is committed.
+     *
+     * @param time The time of the frame about to be decoded, in milliseconds.
+     *
+     * @return The index of the slot to decode into.
+     */
+    synchronized int claim(final long time) {
+        int victim = 0;
+        long furthest = -1;
+
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] == time || times[i] == EMPTY) {
+                victim = i;
+
+                break;
+            }
+
+            long distance = Math.abs(times[i] - needle);
+            if (distance > furthest) {
+                furthest = distance;
+                victim = i;
+            }
+        }
+
+        times[victim] = EMPTY;
+
+        return victim;
+    }
+
+    /**
+     * @param slot A slot returned by {@link #claim(long)}.
+     *
+     * @return The pixels to decode into, in 0xRRGGBB order.
+     */
+    int[] pixelsOf(final int slot) {
+        return pixels[slot];
+    }
+
+    /**
+     * Makes a decoded frame visible to readers.
+     *
+     * @param slot A slot returned by {@link #claim(long)}.
+     * @param time The time of the decoded frame, in milliseconds.
+     */
+    synchronized void commit(final int slot, final long time) {
+        times[slot] = time;
+    }
+
+    /**
+     * Copies out the frame showing the supplied time, and moves the needle to
+     * it.
+     *
+     * @param time The time to fetch, in milliseconds.
+     * @param frameInterval The time between frames, in milliseconds.
+     * @param into The pixels to copy the frame into, in 0xRRGGBB order.
+     *
+     * @return True if the frame was copied, false if the cache does not hold
+     * it.
+     */
+    synchronized boolean copy(final long time, final long frameInterval,
+                              final int[] into) {
+        needle = time;
+
+        int best = -1;
+        for (int i = 0; i < times.length; i++) {
+
+            // A frame is displayed from its own time until the next frame.
+            if (times[i] != EMPTY && times[i] <= time
+                && time - times[i] < frameInterval
+                && (best < 0 || times[i] > times[best])) {
+                best = i;
+            }
+        }
+
+        if (best < 0) {
+            return false;
+        }
+
+        System.arraycopy(pixels[best], 0, into, 0, pixels[best].length);
+
+        return true;
+    }
+
+    /**
+     * @param from The start of the range to check, in milliseconds.
+     * @param to The end of the range to check, in milliseconds.
+     * @param frameInterval The time between frames, in milliseconds.
+     *
+     * @return The start of the first gap in the cache within the supplied
+     * range, or -1 if every frame in the range is held.
+     */
+    synchronized long firstGap(final long from,
+                               final long to,
+                               final long frameInterval) {
+        long covered = from;
+
+        // Walk forwards through the range, extending the covered region with
+        // any frame that starts within it.
+        boolean extended = true;
+        while (covered <= to && extended) {
+            extended = false;
+
+            for (int i = 0; i < times.length; i++) {
+                if (times[i] != EMPTY && times[i] <= covered
+                    && times[i] + frameInterval > covered) {
+                    covered = times[i] + frameInterval;
+                    extended = true;
+                }
+            }
+        }
+
+        return (covered > to) ? -1 : covered;
+    }
+
+    /**
+     * Empties the cache.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < times.length; i++) {
+            times[i] = EMPTY;
+        }
+    }
+}
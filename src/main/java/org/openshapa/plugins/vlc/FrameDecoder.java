@@ -0,0 +1,356 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import java.io.File;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.jna.Memory;
+
+import uk.co.caprica.vlcj.player.MediaPlayerFactory;
+import uk.co.caprica.vlcj.player.direct.BufferFormat;
+import uk.co.caprica.vlcj.player.direct.BufferFormatCallback;
+import uk.co.caprica.vlcj.player.direct.DirectMediaPlayer;
+import uk.co.caprica.vlcj.player.direct.RenderCallback;
+import uk.co.caprica.vlcj.player.direct.format.RV32BufferFormat;
+
+/**
+ * Decodes the frames around the needle into a {@link FrameCache} in the
+ * background, so that jogging and reverse stepping can be displayed without
+ * seeking the media player that is showing the video.
+ *
+ * A second, off-screen, VLC player is opened on the same media with direct
+ * rendering. When asked to fill the cache around a position, it seeks to the
+ * first frame that is missing from the window around that position and plays
+ * forward until the window is full, copying each frame into the ring under
+ * the time the player reports for it.
+ */
+final class FrameDecoder {
+
+    /** Marks that no fill has been requested. */
+    private static final long NONE = Long.MIN_VALUE;
+
+    /** Frames are decoded no wider than this. */
+    private static final int MAX_WIDTH = 640;
+
+    /** The memory the decoded frames may use, in bytes. */
+    private static final long CACHE_BUDGET = 64L * 1024 * 1024;
+
+    /** The fewest frames to hold. */
+    private static final int MIN_FRAMES = 16;
+
+    /** The most frames to hold. */
+    private static final int MAX_FRAMES = 240;
+
+    /** The portion of the cache kept behind the needle when going forward. */
+    private static final double TRAILING = 0.3;
+
+    /** How often to check on the progress of a fill, in milliseconds. */
+    private static final long POLL = 10;
+
+    /** The longest to wait for a fill to finish, in milliseconds. */
+    private static final long FILL_TIMEOUT = 5000;
+
+    /** The rate the off-screen player decodes at. */
+    private static final float DECODE_RATE = 2.0f;
+
+    /** The frame rate of the media. */
+    private final double fps;
+
+    /** The time between frames, in milliseconds. */
+    private final long frameInterval;
+
+    /** The ring of decoded frames. */
+    private final FrameCache cache;
+
+    /** The frame handed out for display, copied out of the cache. Only used
+        on the EDT. */
+    private final BufferedImage display;
+
+    /** The pixels of the frame handed out for display. */
+    private final int[] displayPixels;
+
+    /** The off-screen player decoding frames. */
+    private final DirectMediaPlayer player;
+
+    /** The thread running fills. */
+    private final ExecutorService executor;
+
+    /** The most recent fill request. */
+    private final AtomicLong request = new AtomicLong(NONE);
+
+    /** Was the most recent fill request going backwards? */
+    private volatile boolean reverse;
+
+    /** Is a fill running or scheduled? */
+    private final AtomicBoolean active = new AtomicBoolean(false);
+
+    /** The time the current fill was seeked to, NONE if not anchored yet. */
+    private volatile long seekTarget = NONE;
+
+    /** The time the next frame to be rendered is due by, NONE until
+        anchored. */
+    private volatile long nextFrame = NONE;
+
+    /** The time of the last frame decoded in the current fill. */
+    private volatile long lastFrame = NONE;
+
+    /** Has the decoder been released? */
+    private volatile boolean released = false;
+
+    /** The last time to decode in the current fill. */
+    private volatile long fillEnd = NONE;
+
+    /** Has the player started playing the media yet? */
+    private boolean started = false;
+
+    /**
+     * Constructor.
+     *
+     * @param factory The factory to create the off-screen player with.
+     * @param media The media to decode.
+     * @param frameRate The frame rate of the media.
+     * @param size The size of the video.
+     */
+    FrameDecoder(final MediaPlayerFactory factory,
+                 final File media,
+                 final float frameRate,
+                 final Dimension size) {
+        fps = frameRate;
+        frameInterval = (long) Math.ceil(1000.0 / frameRate);
+
+        final int width = Math.min(size.width, MAX_WIDTH);
+        final int height = Math.max(1, size.height * width
+                                        / Math.max(size.width, 1));
+        cache = new FrameCache(FrameCache.capacityFor(CACHE_BUDGET, width,
+                                                      height, MIN_FRAMES,
+                                                      MAX_FRAMES),
+                               width, height);
+        display = new BufferedImage(width, height,
+                                    BufferedImage.TYPE_INT_RGB);
+        displayPixels = ((DataBufferInt) display.getRaster()
+                         .getDataBuffer()).getData();
+
+        player = factory.newDirectMediaPlayer(new BufferFormatCallback() {
+                    @Override public BufferFormat getBufferFormat(
+                        final int sourceWidth, final int sourceHeight) {
+                        return new RV32BufferFormat(width, height);
+                    }
+                }, new FrameRenderer());
+        player.prepareMedia(media.getAbsolutePath(), ":no-audio");
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override public Thread newThread(final Runnable r) {
+                        Thread t = new Thread(r, "VLC-FrameDecoder");
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Must be called on the EDT. The same image is handed out each time, so
+     * it only holds the frame until the next call.
+     *
+     * @param time The time to display, in milliseconds.
+     *
+     * @return The decoded frame displayed at the supplied time, or null if it
+     * has not been decoded.
+     */
+    BufferedImage getFrame(final long time) {
+        if (!cache.copy(time, frameInterval, displayPixels)) {
+            return null;
+        }
+
+        return display;
+    }
+
+    /**
+     * Requests that the cache is filled around the supplied time. The window
+     * reaches further in the direction the needle is moving. Returns
+     * immediately; the latest request replaces any still waiting.
+     *
+     * @param time The time of the needle, in milliseconds.
+     * @param backwards Is the needle moving backwards?
+     */
+    void fillAround(final long time, final boolean backwards) {
+        reverse = backwards;
+        request.set(time);
+
+        if (active.compareAndSet(false, true)) {
+            executor.execute(new Filler());
+        }
+    }
+
+    /**
+     * Stops decoding and releases the off-screen player. The player is
+     * released on the decoder thread once any fill has stopped, so it is
+     * never released while in use.
+     */
+    void release() {
+        request.set(NONE);
+        released = true;
+        executor.execute(new Runnable() {
+                @Override public void run() {
+                    player.release();
+                }
+            });
+        executor.shutdown();
+    }
+
+    /**
+     * @param time A time in milliseconds.
+     *
+     * @return The time of the frame displayed at the supplied time. Frame
+     * times are rounded to the millisecond, so half a millisecond is allowed
+     * for the rounding.
+     */
+    private long snapToFrame(final long time) {
+        return Math.round(Math.floor((time + 0.5) * fps / 1000.0) * 1000.0
+                          / fps);
+    }
+
+    /**
+     * Fills the cache for the latest request, until there are no requests
+     * left.
+     */
+    private final class Filler implements Runnable {
+        @Override public void run() {
+            try {
+                long needle;
+                while ((needle = request.getAndSet(NONE)) != NONE) {
+                    fill(needle);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.set(false);
+
+                // A request may have arrived after the last check.
+                if (request.get() != NONE && !released
+                    && active.compareAndSet(false, true)) {
+                    executor.execute(this);
+                }
+            }
+        }
+
+        /**
+         * Decodes the frames missing from the window around the needle.
+         *
+         * @param needle The time of the needle, in milliseconds.
+         */
+        private void fill(final long needle) throws InterruptedException {
+            long span = cache.getCapacity() * frameInterval;
+            long behind = (long) (span * (reverse ? 1.0 - TRAILING : TRAILING));
+            long start = Math.max(0, needle - behind);
+            long end = start + span - frameInterval;
+
+            long gap = cache.firstGap(start, end, frameInterval);
+            if (gap < 0) {
+                return;
+            }
+
+            // VLC ignores seeks until the media has started playing.
+            long waited = 0;
+            if (!started) {
+                player.play();
+
+                while (!player.isPlaying() && waited < FILL_TIMEOUT) {
+                    Thread.sleep(POLL);
+                    waited += POLL;
+                }
+
+                started = true;
+            }
+
+            fillEnd = end;
+            nextFrame = NONE;
+            lastFrame = NONE;
+            seekTarget = gap;
+            player.setRate(DECODE_RATE);
+            player.setTime(Math.max(gap, 1));
+            if (!player.isPlaying()) {
+                player.play();
+            }
+
+            // Decode until the window is full, or a request arrives that
+            // the current window no longer serves.
+            waited = 0;
+            while (nextFrame == NONE || nextFrame <= fillEnd) {
+                long next = request.get();
+                if ((next != NONE && (next < start || next > end))
+                    || waited > FILL_TIMEOUT || released) {
+                    break;
+                }
+
+                Thread.sleep(POLL);
+                waited += POLL;
+            }
+
+            seekTarget = NONE;
+            player.pause();
+        }
+    }
+
+    /**
+     * Copies each frame rendered by the off-screen player into the cache,
+     * under the time the player reports for it.
+     */
+    private final class FrameRenderer implements RenderCallback {
+        @Override public void display(final DirectMediaPlayer mediaPlayer,
+                                      final Memory[] nativeBuffers,
+                                      final BufferFormat bufferFormat) {
+            long target = seekTarget;
+            if (target == NONE) {
+                return;
+            }
+
+            long time = snapToFrame(mediaPlayer.getTime());
+
+            // Frames still in flight from before the seek are dropped.
+            if ((nextFrame == NONE)
+                && (Math.abs(time - target) > frameInterval * 2)) {
+                return;
+            }
+
+            nextFrame = time + frameInterval;
+
+            // The player's clock can lag the frames it renders. Rather than
+            // guess the time of a frame, it is dropped - it is decoded
+            // again if it is needed.
+            if ((time > fillEnd) || ((lastFrame != NONE)
+                                     && (time <= lastFrame))) {
+                return;
+            }
+
+            int slot = cache.claim(time);
+            nativeBuffers[0].read(0, cache.pixelsOf(slot), 0,
+                                  cache.getWidth() * cache.getHeight());
+            cache.commit(slot, time);
+            lastFrame = time;
+        }
+    }
+}
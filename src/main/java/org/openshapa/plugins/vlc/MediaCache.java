@@ -0,0 +1,207 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+/**
+ * The properties of probed media, saved to disk in YAML format. Entries are
+ * keyed by the path, size and modification time of the media, so media that
+ * has changed since it was probed is not found.
+ */
+final class MediaCache {
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(MediaCache.class);
+
+    /** The file to save probed media to. */
+    private final File cacheFile;
+
+    /** Probed media, keyed by path, least recently used first. */
+    private final Map<String, Map<String, Object>> entries;
+
+    /**
+     * Constructor. Loads any media saved to the file.
+     *
+     * @param file The file to save probed media to.
+     * @param limit The most media files to remember.
+     */
+    MediaCache(final File file, final int limit) {
+        cacheFile = file;
+        entries = new LinkedHashMap<String, Map<String, Object>>(16, 0.75f,
+                true) {
+                    @Override protected boolean removeEldestEntry(
+                        final Map.Entry<String, Map<String, Object>> eldest) {
+                        return size() > limit;
+                    }
+                };
+
+        if (cacheFile.exists()) {
+            load();
+        }
+    }
+
+    /**
+     * @param media The media file to look up.
+     *
+     * @return The remembered properties of the media, or null if the media
+     * has not been probed or has changed since it was probed.
+     */
+    MediaInfo lookup(final File media) {
+        Map<String, Object> entry;
+
+        synchronized (entries) {
+            entry = entries.get(media.getAbsolutePath());
+        }
+
+        // Entries saved before the need for a proxy was remembered are
+        // probed again.
+        if ((entry == null)
+                || (toLong(entry.get("size")) != media.length())
+                || (toLong(entry.get("modified")) != media.lastModified())
+                || !(entry.get("proxy") instanceof Boolean)) {
+            return null;
+        }
+
+        try {
+            return new MediaInfo(((Number) entry.get("fps")).floatValue(),
+                                 toLong(entry.get("duration")),
+                                 ((Number) entry.get("width")).intValue(),
+                                 ((Number) entry.get("height")).intValue(),
+                                 (String) entry.get("codec"),
+                                 (Boolean) entry.get("proxy"));
+        } catch (RuntimeException e) {
+
+            // A damaged entry - probe the media again.
+            return null;
+        }
+    }
+
+    /**
+     * Remembers the properties of a media file. Incomplete results are not
+     * remembered, so that the media is probed again next time.
+     *
+     * @param media The probed media file.
+     * @param info The properties of the media.
+     */
+    void remember(final File media, final MediaInfo info) {
+        if ((info.getFrameRate() <= 0) || (info.getDuration() <= 0)) {
+            return;
+        }
+
+        Map<String, Object> entry = new LinkedHashMap<String, Object>();
+        entry.put("size", media.length());
+        entry.put("modified", media.lastModified());
+        entry.put("fps", (double) info.getFrameRate());
+        entry.put("duration", info.getDuration());
+        entry.put("width", info.getDimension().width);
+        entry.put("height", info.getDimension().height);
+        entry.put("codec", info.getCodec());
+        entry.put("proxy", info.needsProxy());
+
+        synchronized (entries) {
+            entries.put(media.getAbsolutePath(), entry);
+            save();
+        }
+    }
+
+    /**
+     * @param number A number loaded from YAML, which may be an Integer or a
+     * Long depending on its size.
+     *
+     * @return The number as a long, or -1 if missing.
+     */
+    private static long toLong(final Object number) {
+        return (number instanceof Number) ? ((Number) number).longValue() : -1;
+    }
+
+    /**
+     * Save probed media to disk in YAML format. Must hold the entries lock.
+     */
+    private void save() {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        Yaml yaml = new Yaml(options);
+        Writer fw = null;
+
+        try {
+            fw = new FileWriter(cacheFile);
+            yaml.dump(entries, fw);
+        } catch (IOException e) {
+            LOGGER.error("Couldn't save media cache", e);
+        } finally {
+            IOUtils.closeQuietly(fw);
+        }
+    }
+
+    /**
+     * Load probed media from disk. Anything that isn't a map of paths to maps
+     * of named properties is skipped.
+     */
+    private void load() {
+        Yaml yaml = new Yaml();
+        Reader fr = null;
+
+        try {
+            fr = new FileReader(cacheFile);
+
+            Object data = yaml.load(fr);
+            if (!(data instanceof Map<?, ?>)) {
+                return;
+            }
+
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) data).entrySet()) {
+                if (!(e.getKey() instanceof String)
+                        || !(e.getValue() instanceof Map<?, ?>)) {
+                    continue;
+                }
+
+                Map<String, Object> entry = new LinkedHashMap<String, Object>();
+                for (Map.Entry<?, ?> p : ((Map<?, ?>) e.getValue())
+                        .entrySet()) {
+                    if (p.getKey() instanceof String) {
+                        entry.put((String) p.getKey(), p.getValue());
+                    }
+                }
+
+                entries.put((String) e.getKey(), entry);
+            }
+        } catch (FileNotFoundException e) {
+            ; // Function is only called if the file exists.
+        } catch (RuntimeException e) {
+            LOGGER.error("Couldn't load media cache", e);
+        } finally {
+            IOUtils.closeQuietly(fr);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.awt.Dimension;
+
+import java.io.File;
+
+/**
+ * The properties of a media file that VLC has to play the media to find out.
+ * Immutable.
+ */
+public final class MediaInfo {
+
+    /** The frame rate of the video, zero if unknown. */
+    private final float fps;
+
+    /** The length of the media in milliseconds. */
+    private final long duration;
+
+    /** The width of the video in pixels. */
+    private final int width;
+
+    /** The height of the video in pixels. */
+    private final int height;
+
+    /** The name of the video codec, empty if unknown. */
+    private final String codec;
+
+    /** Does the media need a proxy to be stepped through frame by frame? */
+    private final boolean proxy;
+
+    /**
+     * Constructor.
+     *
+     * @param frameRate The frame rate of the video, zero if unknown.
+     * @param length The length of the media in milliseconds.
+     * @param videoWidth The width of the video in pixels.
+     * @param videoHeight The height of the video in pixels.
+     * @param codecName The name of the video codec, null if unknown.
+     * @param needsProxy Does the media need a proxy to be stepped through
+     * frame by frame?
+     */
+    public MediaInfo(final float frameRate,
+                     final long length,
+                     final int videoWidth,
+                     final int videoHeight,
+                     final String codecName,
+                     final boolean needsProxy) {
+        fps = frameRate;
+        duration = length;
+        width = videoWidth;
+        height = videoHeight;
+        codec = (codecName == null) ? "" : codecName;
+        proxy = needsProxy;
+    }
+
+    /**
+     * @return The frame rate of the video, zero if unknown.
+     */
+    public float getFrameRate() {
+        return fps;
+    }
+
+    /**
+     * @return The length of the media in milliseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return The size of the video in pixels.
+     */
+    public Dimension getDimension() {
+        return new Dimension(width, height);
+    }
+
+    /**
+     * @return The name of the video codec, empty if unknown.
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return True if the media needs a proxy to be stepped through frame by
+     * frame, as found by
+     * {@link org.openshapa.util.VideoConverter#DetectIfNeedsConvert(File)}.
+     */
+    public boolean needsProxy() {
+        return proxy;
+    }
+
+    @Override public String toString() {
+        return String.format("%dx%d %s %.3ffps %dms%s", width, height, codec,
+                             fps, duration, proxy ? " (needs proxy)" : "");
+    }
+}
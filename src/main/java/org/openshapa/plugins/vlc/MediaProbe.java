@@ -0,0 +1,401 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.jdesktop.application.LocalStorage;
+
+import org.openshapa.OpenSHAPA;
+
+import org.openshapa.util.VideoConverter;
+
+import com.sun.jna.Memory;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+import uk.co.caprica.vlcj.player.MediaPlayerFactory;
+import uk.co.caprica.vlcj.player.TrackInfo;
+import uk.co.caprica.vlcj.player.VideoTrackInfo;
+import uk.co.caprica.vlcj.player.direct.BufferFormat;
+import uk.co.caprica.vlcj.player.direct.BufferFormatCallback;
+import uk.co.caprica.vlcj.player.direct.DirectMediaPlayer;
+import uk.co.caprica.vlcj.player.direct.RenderCallback;
+import uk.co.caprica.vlcj.player.direct.format.RV32BufferFormat;
+
+/**
+ * Probes media files for their frame rate, length, dimensions and codec in
+ * the background, remembering the results between sessions.
+ *
+ * VLC only knows these properties once it has started playing the media, so
+ * probing takes a while. Results are saved in the local storage directory,
+ * keyed by the path, size and modification time of the media - reopening a
+ * project whose media has not changed needs no probing at all.
+ */
+public enum MediaProbe {
+
+    INSTANCE;
+
+    /**
+     * Told the properties of a media file once it has been probed.
+     */
+    public interface Callback {
+
+        /**
+         * Called on the event dispatch thread once the media is probed.
+         *
+         * @param info The properties of the media, or null if the media
+         * could not be probed.
+         */
+        void probed(MediaInfo info);
+    }
+
+    /** Name of the file to save probed media to. */
+    private static final String fileName = "media_cache.yml";
+
+    /** The most media files to remember. */
+    private static final int CACHE_LIMIT = 500;
+
+    /** The number of media files probed at once. */
+    private static final int PROBE_THREADS = 2;
+
+    /** The longest to wait for VLC to open media, in milliseconds. */
+    private static final long PROBE_TIMEOUT = 5000;
+
+    /** Frames are decoded this small while probing, they are discarded. */
+    private static final int PROBE_FRAME_SIZE = 16;
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(MediaProbe.class);
+
+    /** Probed media, remembered between sessions. */
+    private final MediaCache cache;
+
+    /** Probes currently running, keyed by path. */
+    private final Map<String, Probe> probing =
+        new ConcurrentHashMap<String, Probe>();
+
+    /** Runs the probes. */
+    private final ExecutorService executor;
+
+    /** Factory for the players used to probe media, only kept while media
+        is being probed. */
+    private MediaPlayerFactory factory;
+
+    /** The number of probes using the factory. */
+    private int factoryUsers;
+
+    private MediaProbe() {
+        LocalStorage storage = OpenSHAPA.getApplication().getContext()
+            .getLocalStorage();
+
+        cache = new MediaCache(new File(storage.getDirectory(), fileName),
+                               CACHE_LIMIT);
+
+        executor = Executors.newFixedThreadPool(PROBE_THREADS,
+                new ThreadFactory() {
+                    @Override public Thread newThread(final Runnable r) {
+                        Thread t = new Thread(r, "MediaProbe");
+                        t.setDaemon(true);
+
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Finds the properties of a media file. Media that has been probed before
+     * and has not changed since is answered straight away, otherwise the
+     * media is probed in the background. Asking for media that is already
+     * being probed shares the running probe.
+     *
+     * @param media The media file to probe.
+     * @param callback Told the properties of the media on the event dispatch
+     * thread. If the properties are already known and this is called on the
+     * event dispatch thread, the callback is told before this returns.
+     */
+    public static void probe(final File media, final Callback callback) {
+        INSTANCE.submit(media).addCallback(callback);
+    }
+
+    /**
+     * @param media The media file to look up.
+     *
+     * @return The remembered properties of the media, or null if the media
+     * has not been probed or has changed since it was probed.
+     */
+    public static MediaInfo getCached(final File media) {
+        return INSTANCE.cache.lookup(media);
+    }
+
+    /**
+     * @param media The media file to probe.
+     *
+     * @return The probe finding the properties of the media.
+     */
+    private Probe submit(final File media) {
+        final MediaInfo cached = cache.lookup(media);
+
+        if (cached != null) {
+            Probe done = new Probe(new Callable<MediaInfo>() {
+                        @Override public MediaInfo call() {
+                            return cached;
+                        }
+                    });
+            done.run();
+
+            return done;
+        }
+
+        final String path = media.getAbsolutePath();
+        Probe task = new Probe(new Callable<MediaInfo>() {
+                    @Override public MediaInfo call() throws Exception {
+                        try {
+                            MediaInfo info = probeMedia(media);
+                            cache.remember(media, info);
+
+                            return info;
+                        } finally {
+                            probing.remove(path);
+                        }
+                    }
+                });
+
+        synchronized (probing) {
+            Probe running = probing.get(path);
+
+            if (running != null) {
+                return running;
+            }
+
+            probing.put(path, task);
+        }
+
+        executor.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Plays media in an off-screen player until VLC knows its properties.
+     *
+     * @param media The media file to probe.
+     *
+     * @return The properties of the media.
+     *
+     * @throws IOException If VLC could not open the media.
+     * @throws InterruptedException If interrupted while waiting for VLC.
+     */
+    private MediaInfo probeMedia(final File media) throws IOException,
+        InterruptedException {
+        final CountDownLatch opened = new CountDownLatch(1);
+        final int[] size = new int[2];
+
+        MediaPlayerFactory playerFactory = acquireFactory();
+
+        try {
+
+            // The size of the video is handed to us as soon as the video
+            // output starts, at which point the frame rate and length are
+            // known too.
+            DirectMediaPlayer player = playerFactory.newDirectMediaPlayer(
+                    new BufferFormatCallback() {
+                        @Override public BufferFormat getBufferFormat(
+                            final int sourceWidth, final int sourceHeight) {
+                            size[0] = sourceWidth;
+                            size[1] = sourceHeight;
+                            opened.countDown();
+
+                            return new RV32BufferFormat(PROBE_FRAME_SIZE,
+                                                        PROBE_FRAME_SIZE);
+                        }
+                    }, new RenderCallback() {
+                        @Override public void display(
+                            final DirectMediaPlayer mediaPlayer,
+                            final Memory[] nativeBuffers,
+                            final BufferFormat bufferFormat) {
+                            // Frames are not needed.
+                        }
+                    });
+
+            try {
+                player.startMedia(media.getAbsolutePath(), ":no-audio");
+
+                if (!opened.await(PROBE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Unable to open media: " + media);
+                }
+
+                String codec = null;
+                for (TrackInfo track : player.getTrackInfo()) {
+                    if (track instanceof VideoTrackInfo) {
+                        codec = track.codecName();
+                    }
+                }
+
+                // Reading the sample tables of the media can take a while, so
+                // it is done here rather than on the EDT.
+                MediaInfo info = new MediaInfo(player.getFps(),
+                                               player.getLength(), size[0],
+                                               size[1], codec,
+                                               VideoConverter
+                                               .DetectIfNeedsConvert(media));
+                LOGGER.event("Probed media: " + info);
+
+                return info;
+            } finally {
+                player.release();
+            }
+        } finally {
+            releaseFactory();
+        }
+    }
+
+    /**
+     * @return The factory for the players used to probe media, which must be
+     * handed back with {@link #releaseFactory()}.
+     */
+    private synchronized MediaPlayerFactory acquireFactory() {
+        if (factory == null) {
+            factory = new MediaPlayerFactory("--no-video-title-show");
+        }
+
+        factoryUsers++;
+
+        return factory;
+    }
+
+    /**
+     * Hands back the factory, releasing it once no media is being probed.
+     */
+    private synchronized void releaseFactory() {
+        factoryUsers--;
+
+        if (factoryUsers == 0) {
+            factory.release();
+            factory = null;
+        }
+    }
+
+    /**
+     * A probe of a media file that tells its callbacks on the event dispatch
+     * thread once it is done.
+     */
+    static final class Probe extends FutureTask<MediaInfo> {
+
+        /** Class logger. */
+        private static Logger LOGGER = UserMetrix.getLogger(Probe.class);
+
+        /** Callbacks waiting for the probe to finish. */
+        private final List<Callback> callbacks = new ArrayList<Callback>();
+
+        /** Has the probe finished? */
+        private boolean finished = false;
+
+        /**
+         * Constructor.
+         *
+         * @param probe Finds the properties of the media.
+         */
+        Probe(final Callable<MediaInfo> probe) {
+            super(probe);
+        }
+
+        /**
+         * @param callback Told the properties of the media once they are
+         * known, on the event dispatch thread.
+         */
+        void addCallback(final Callback callback) {
+            synchronized (callbacks) {
+                if (!finished) {
+                    callbacks.add(callback);
+
+                    return;
+                }
+            }
+
+            tell(callback);
+        }
+
+        @Override protected void done() {
+            List<Callback> waiting;
+
+            synchronized (callbacks) {
+                finished = true;
+                waiting = new ArrayList<Callback>(callbacks);
+                callbacks.clear();
+            }
+
+            for (Callback callback : waiting) {
+                tell(callback);
+            }
+        }
+
+        /**
+         * Tells a callback the properties of the media on the event dispatch
+         * thread. Must only be called once the probe has finished.
+         *
+         * @param callback The callback to tell.
+         */
+        private void tell(final Callback callback) {
+            Runnable edtTask = new Runnable() {
+                    @Override public void run() {
+                        callback.probed(result());
+                    }
+                };
+
+            if (SwingUtilities.isEventDispatchThread()) {
+                edtTask.run();
+            } else {
+                SwingUtilities.invokeLater(edtTask);
+            }
+        }
+
+        /**
+         * @return The properties of the media, null if they could not be
+         * found.
+         */
+        private MediaInfo result() {
+            try {
+                return get();
+            } catch (ExecutionException e) {
+                LOGGER.error("Unable to probe media", e.getCause());
+            } catch (CancellationException e) {
+                LOGGER.event("Media probe cancelled");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return null;
+        }
+    }
+}
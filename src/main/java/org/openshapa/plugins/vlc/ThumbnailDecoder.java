@@ -0,0 +1,527 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openshapa.OpenSHAPA;
+
+import org.openshapa.util.DiskCache;
+import org.openshapa.util.HashUtils;
+import org.openshapa.util.TranscodeQueue;
+
+import com.sun.jna.Memory;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+import uk.co.caprica.vlcj.player.MediaPlayerFactory;
+import uk.co.caprica.vlcj.player.direct.BufferFormat;
+import uk.co.caprica.vlcj.player.direct.BufferFormatCallback;
+import uk.co.caprica.vlcj.player.direct.DirectMediaPlayer;
+import uk.co.caprica.vlcj.player.direct.RenderCallback;
+import uk.co.caprica.vlcj.player.direct.format.RV32BufferFormat;
+
+/**
+ * Decodes thumbnails of a video for its track in the mixer.
+ *
+ * Thumbnails are decoded one at a time by a low priority thread driving an
+ * off-screen VLC player of its own, so the player showing the video and the
+ * playback clock are never held up. Decoded thumbnails are kept in memory and
+ * saved to local storage, named by the media, the time of the frame shown and
+ * its size, so they only ever need decoding once. The thumbnails in local
+ * storage are trimmed to a size, least recently used media first.
+ */
+final class ThumbnailDecoder {
+
+    /**
+     * Listener notified as thumbnails are decoded. Notified on the decoding
+     * thread.
+     */
+    interface Listener {
+
+        /**
+         * @param time The time of the frame of the thumbnail that is now
+         * available.
+         */
+        void thumbnailReady(long time);
+    }
+
+    /** Marks that no thumbnail is being captured. */
+    private static final long NONE = Long.MIN_VALUE;
+
+    /** The height thumbnails are decoded at. */
+    private static final int HEIGHT = 72;
+
+    /** The most thumbnails to keep in memory. */
+    private static final int MEMORY_LIMIT = 512;
+
+    /** The longest to wait for VLC to render a thumbnail, in milliseconds. */
+    private static final long CAPTURE_TIMEOUT = 2000;
+
+    /** How often to check that the player has started, in milliseconds. */
+    private static final long POLL = 10;
+
+    /** Frames this far from the time asked for are dropped, in ms. */
+    private static final long TOLERANCE = 500;
+
+    /** Name of the directory thumbnails are saved in. */
+    private static final String THUMBNAIL_DIR = "thumbnails";
+
+    /** The most bytes of thumbnails to keep in local storage. */
+    private static final long DISK_LIMIT = 256L * 1024 * 1024;
+
+    /** Has local storage been trimmed this session? */
+    private static boolean trimmed = false;
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(ThumbnailDecoder.class);
+
+    /** The width of the thumbnails. */
+    private final int width;
+
+    /** The height of the thumbnails. */
+    private final int height;
+
+    /** Half the time between frames, in milliseconds. */
+    private final long halfFrame;
+
+    /** The directory the thumbnails of this media are saved in. */
+    private final File directory;
+
+    /** The times of the frames saved in the directory, null until listed. */
+    private TreeSet<Long> saved;
+
+    /** Decoded thumbnails. */
+    private final ThumbnailStore thumbnails = new ThumbnailStore(MEMORY_LIMIT);
+
+    /** Times of the thumbnails still to decode, most wanted first. */
+    private final LinkedList<Long> requests = new LinkedList<Long>();
+
+    /** Times in the requests, to avoid queueing a time twice. */
+    private final Set<Long> requested = new HashSet<Long>();
+
+    /** Notified as thumbnails are decoded. */
+    private final Listener listener;
+
+    /** The off-screen player decoding thumbnails. */
+    private final DirectMediaPlayer player;
+
+    /** The thread decoding thumbnails. */
+    private final Thread worker;
+
+    /** The time of the thumbnail being captured, NONE if there isn't one. */
+    private volatile long target = NONE;
+
+    /** The thumbnail captured by the renderer. */
+    private volatile BufferedImage captured;
+
+    /** The time of the frame captured by the renderer. */
+    private volatile long capturedTime;
+
+    /** Counted down when the renderer has captured a thumbnail. */
+    private volatile CountDownLatch capture;
+
+    /** Has the player started playing the media yet? */
+    private boolean started = false;
+
+    /** Has the decoder been released? */
+    private volatile boolean released = false;
+
+    /**
+     * Constructor.
+     *
+     * @param factory The factory to create the off-screen player with.
+     * @param media The media to decode thumbnails of.
+     * @param size The size of the video.
+     * @param frameRate The frame rate of the video.
+     * @param thumbnailListener Notified as thumbnails are decoded.
+     */
+    ThumbnailDecoder(final MediaPlayerFactory factory,
+                     final File media,
+                     final Dimension size,
+                     final float frameRate,
+                     final Listener thumbnailListener) {
+        listener = thumbnailListener;
+        height = HEIGHT;
+        width = Math.max(1, size.width * HEIGHT / Math.max(size.height, 1));
+        halfFrame = (frameRate > 0) ? (long) Math.ceil(500 / frameRate) : 20;
+
+        directory = new File(new File(OpenSHAPA.getApplication().getContext()
+                    .getLocalStorage().getDirectory(), THUMBNAIL_DIR),
+                HashUtils.mediaKey(media));
+
+        // Seeking within a proxy only decodes one frame, so use one if the
+        // media has it.
+        File source = TranscodeQueue.getProxy(media);
+        if (source == null) {
+            source = media;
+        }
+
+        player = factory.newDirectMediaPlayer(new BufferFormatCallback() {
+                    @Override public BufferFormat getBufferFormat(
+                        final int sourceWidth, final int sourceHeight) {
+                        return new RV32BufferFormat(width, height);
+                    }
+                }, new ThumbnailRenderer());
+        player.prepareMedia(source.getAbsolutePath(), ":no-audio");
+
+        worker = new Thread(new Decoder(), "VLC-ThumbnailDecoder");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * @return The width to height ratio of the thumbnails.
+     */
+    double getAspectRatio() {
+        return (double) width / height;
+    }
+
+    /**
+     * @param time The time of a thumbnail, in milliseconds.
+     * @param tolerance How far from the time the frame of the thumbnail may
+     * be, in milliseconds.
+     *
+     * @return The thumbnail of the frame nearest the time, or null if none
+     * within the tolerance has been decoded. Never blocks.
+     */
+    BufferedImage get(final long time, final long tolerance) {
+        return thumbnails.get(time, Math.max(tolerance, halfFrame));
+    }
+
+    /**
+     * Replaces the thumbnails waiting to be decoded. Thumbnails that were
+     * waiting but are no longer wanted - scrolled out of view, or at another
+     * zoom level - are dropped.
+     *
+     * @param times The times of the thumbnails wanted, most wanted first.
+     * @param count The number of times to use from the array.
+     */
+    void request(final long[] times, final int count) {
+        synchronized (requests) {
+            requests.clear();
+            requested.clear();
+
+            for (int i = 0; i < count; i++) {
+                if (requested.add(times[i])) {
+                    requests.add(times[i]);
+                }
+            }
+
+            requests.notifyAll();
+        }
+    }
+
+    /**
+     * Stops decoding. The off-screen player is released by the decoding
+     * thread as it stops, so it is never released while still in use.
+     */
+    void release() {
+        released = true;
+        worker.interrupt();
+
+        try {
+            worker.join(CAPTURE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (worker.isAlive()) {
+            LOGGER.event("Thumbnail decoder is still busy, releasing its "
+                + "player once it stops");
+        }
+    }
+
+    /**
+     * @param time The time of the frame of a thumbnail.
+     *
+     * @return The file the thumbnail is saved in.
+     */
+    private File fileFor(final long time) {
+        return new File(directory, time + suffix());
+    }
+
+    /**
+     * @return The end of the names of the thumbnails saved at this size.
+     */
+    private String suffix() {
+        return "-" + width + "x" + height + ".png";
+    }
+
+    /**
+     * Marks the thumbnails of this media as used, and trims the thumbnails in
+     * local storage once per session.
+     */
+    private void trimStorage() {
+        directory.mkdirs();
+        DiskCache.touch(directory);
+
+        synchronized (ThumbnailDecoder.class) {
+            if (trimmed) {
+                return;
+            }
+
+            trimmed = true;
+        }
+
+        DiskCache.trim(directory.getParentFile(), DISK_LIMIT);
+    }
+
+    /**
+     * Decodes the requested thumbnails until released.
+     */
+    private final class Decoder implements Runnable {
+        @Override public void run() {
+            try {
+                trimStorage();
+
+                while (!released) {
+                    long time;
+
+                    synchronized (requests) {
+                        while (requests.isEmpty()) {
+                            requests.wait();
+                        }
+
+                        time = requests.removeFirst();
+                        requested.remove(time);
+                    }
+
+                    try {
+                        fetch(time);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Unable to decode thumbnail at " + time,
+                            e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Released.
+            } finally {
+                player.release();
+            }
+        }
+
+        /**
+         * Loads or decodes the thumbnail for a time, unless it already has
+         * been.
+         *
+         * @param time The time asked for.
+         */
+        private void fetch(final long time) throws InterruptedException {
+            if (thumbnails.isDecoded(time)
+                    || (thumbnails.get(time, halfFrame) != null)) {
+                return;
+            }
+
+            long frame = time;
+            BufferedImage thumbnail = null;
+            Long nearest = nearestSaved(time);
+
+            if (nearest != null) {
+                frame = nearest;
+                thumbnail = load(frame);
+            }
+
+            if (thumbnail == null) {
+                thumbnail = decode(time);
+
+                if (thumbnail == null) {
+                    return;
+                }
+
+                frame = capturedTime;
+                save(frame, thumbnail);
+            }
+
+            thumbnails.put(time, frame, thumbnail);
+            listener.thumbnailReady(frame);
+        }
+
+        /**
+         * @param time A time.
+         *
+         * @return The time of the saved frame nearest the time, or null if
+         * none is within half a frame of it.
+         */
+        private Long nearestSaved(final long time) {
+            if (saved == null) {
+                saved = new TreeSet<Long>();
+
+                String[] names = directory.list();
+                String end = suffix();
+
+                for (int i = 0; (names != null) && (i < names.length); i++) {
+                    if (names[i].endsWith(end)) {
+                        try {
+                            saved.add(Long.valueOf(names[i].substring(0,
+                                        names[i].length() - end.length())));
+                        } catch (NumberFormatException e) {
+                            // Not a thumbnail.
+                        }
+                    }
+                }
+            }
+
+            Long below = saved.floor(time);
+            Long above = saved.ceiling(time);
+            Long nearest = ((below == null) || ((above != null)
+                        && ((above - time) < (time - below)))) ? above : below;
+
+            if ((nearest == null) || (Math.abs(nearest - time) > halfFrame)) {
+                return null;
+            }
+
+            return nearest;
+        }
+
+        /**
+         * @param time The time of the frame of a thumbnail.
+         *
+         * @return The thumbnail saved for the frame, or null if it could not
+         * be read.
+         */
+        private BufferedImage load(final long time) {
+            File file = fileFor(time);
+
+            try {
+                return ImageIO.read(file);
+            } catch (IOException e) {
+                LOGGER.error("Unable to read thumbnail " + file, e);
+                saved.remove(time);
+
+                return null;
+            }
+        }
+
+        /**
+         * Saves a thumbnail. It is written to a temporary file first, so
+         * that a half written thumbnail is never read.
+         *
+         * @param time The time of the frame of the thumbnail.
+         * @param thumbnail The thumbnail to save.
+         */
+        private void save(final long time, final BufferedImage thumbnail) {
+            File file = fileFor(time);
+            File part = new File(file.getPath() + ".part");
+
+            try {
+                directory.mkdirs();
+
+                if (ImageIO.write(thumbnail, "png", part)) {
+                    file.delete();
+
+                    if (part.renameTo(file)) {
+                        saved.add(time);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("Unable to save thumbnail " + file, e);
+            } finally {
+                part.delete();
+            }
+        }
+
+        /**
+         * Seeks the off-screen player to a time and captures the frame it
+         * renders.
+         *
+         * @param time The time of the thumbnail.
+         *
+         * @return The thumbnail, or null if VLC did not render the frame in
+         * time. The time of the frame rendered is left in capturedTime.
+         */
+        private BufferedImage decode(final long time)
+            throws InterruptedException {
+
+            // VLC ignores seeks until the media has started playing.
+            if (!started) {
+                player.play();
+
+                long waited = 0;
+                while (!player.isPlaying() && (waited < CAPTURE_TIMEOUT)) {
+                    Thread.sleep(POLL);
+                    waited += POLL;
+                }
+
+                started = true;
+            }
+
+            captured = null;
+            capture = new CountDownLatch(1);
+            target = time;
+
+            player.setTime(Math.max(time, 1));
+            if (!player.isPlaying()) {
+                player.play();
+            }
+
+            try {
+                capture.await(CAPTURE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } finally {
+                target = NONE;
+                player.pause();
+            }
+
+            return captured;
+        }
+    }
+
+    /**
+     * Copies the frame rendered at the time being captured.
+     */
+    private final class ThumbnailRenderer implements RenderCallback {
+        @Override public void display(final DirectMediaPlayer mediaPlayer,
+                                      final Memory[] nativeBuffers,
+                                      final BufferFormat bufferFormat) {
+            long time = target;
+            if (time == NONE) {
+                return;
+            }
+
+            // Frames still in flight from before the seek are dropped.
+            long shown = mediaPlayer.getTime();
+            if (Math.abs(shown - time) > TOLERANCE) {
+                return;
+            }
+
+            BufferedImage image = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+                .getData();
+            nativeBuffers[0].read(0, pixels, 0, pixels.length);
+
+            target = NONE;
+            capturedTime = Math.max(0, shown);
+            captured = image;
+            capture.countDown();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.awt.image.BufferedImage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The thumbnails of a video held in memory. Each thumbnail is kept under the
+ * time of the frame it shows, which may be a little way from the time it was
+ * asked for, and looked up by the nearest frame to a time. The least recently
+ * used thumbnails are dropped once there are too many.
+ */
+final class ThumbnailStore {
+
+    /** The thumbnails, keyed by the time of their frame. */
+    private final TreeMap<Long, BufferedImage> thumbnails =
+        new TreeMap<Long, BufferedImage>();
+
+    /** The times of the thumbnails, least recently used first. */
+    private final Map<Long, Boolean> used;
+
+    /** The times asked for that have been decoded, mapped to the time of the
+     * frame that was shown. */
+    private final Map<Long, Long> decoded;
+
+    /**
+     * Constructor.
+     *
+     * @param limit The most thumbnails to hold.
+     */
+    ThumbnailStore(final int limit) {
+        used = new LinkedHashMap<Long, Boolean>(16, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(
+                    final Map.Entry<Long, Boolean> eldest) {
+                    if (size() > limit) {
+                        thumbnails.remove(eldest.getKey());
+
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+
+        decoded = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(
+                    final Map.Entry<Long, Long> eldest) {
+                    return size() > limit;
+                }
+            };
+    }
+
+    /**
+     * @param time A time, in milliseconds.
+     * @param tolerance How far from the time the frame may be.
+     *
+     * @return The thumbnail of the frame nearest the time, or null if there
+     * isn't one within the tolerance.
+     */
+    synchronized BufferedImage get(final long time, final long tolerance) {
+        Long nearest = nearest(time);
+
+        if ((nearest == null) || (Math.abs(nearest - time) > tolerance)) {
+            return null;
+        }
+
+        used.get(nearest);
+
+        return thumbnails.get(nearest);
+    }
+
+    /**
+     * @param time A time asked for.
+     *
+     * @return True if a thumbnail has been decoded for the time, even if its
+     * frame turned out to be some way from the time.
+     */
+    synchronized boolean isDecoded(final long time) {
+        return decoded.containsKey(time);
+    }
+
+    /**
+     * Holds a thumbnail.
+     *
+     * @param requested The time the thumbnail was asked for.
+     * @param time The time of the frame the thumbnail shows.
+     * @param thumbnail The thumbnail.
+     */
+    synchronized void put(final long requested, final long time,
+                          final BufferedImage thumbnail) {
+        thumbnails.put(time, thumbnail);
+        used.put(time, Boolean.TRUE);
+        decoded.put(requested, time);
+    }
+
+    /**
+     * @return The number of thumbnails held.
+     */
+    synchronized int size() {
+        return thumbnails.size();
+    }
+
+    /**
+     * @param time A time.
+     *
+     * @return The time of the thumbnail nearest the time, or null if there
+     * are no thumbnails.
+     */
+    private Long nearest(final long time) {
+        Long below = thumbnails.floorKey(time);
+        Long above = thumbnails.ceilingKey(time);
+
+        if ((below == null) || (above == null)) {
+            return (below == null) ? above : below;
+        }
+
+        return ((time - below) <= (above - time)) ? below : above;
+    }
+}
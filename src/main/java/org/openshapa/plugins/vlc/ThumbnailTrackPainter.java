@@ -0,0 +1,235 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import org.openshapa.views.component.TrackPainter;
+
+/**
+ * Paints a strip of thumbnails of a video along its carriage.
+ *
+ * The spacing of the thumbnails follows the zoom level: the interval between
+ * them is the smallest power of two multiple of a base interval that leaves
+ * room for a whole thumbnail. Because every interval is a multiple of the
+ * ones below it, thumbnails decoded at one zoom level are reused at the
+ * others. Thumbnails are painted as they are decoded; until then the nearest
+ * thumbnail already decoded at a coarser spacing is painted in its place.
+ * The waveform of the audio, once loaded, is painted along the bottom.
+ */
+final class ThumbnailTrackPainter extends TrackPainter {
+
+    /** The finest spacing of thumbnails, in milliseconds. */
+    private static final long BASE_INTERVAL = 100;
+
+    /** How many coarser spacings to look through for a stand in. */
+    private static final int FALLBACK_LEVELS = 8;
+
+    /** Gap between the thumbnails and the edge of the carriage. */
+    private static final int INSET = 2;
+
+    /** Decodes the thumbnails, null until the media is opened. */
+    private volatile ThumbnailDecoder decoder;
+
+    /** The duration of the media, in milliseconds. */
+    private volatile long duration;
+
+    /** The times of the thumbnails missing from the last paint. */
+    private long[] missing = new long[32];
+
+    /** The part of the carriage in view, reused between paints. */
+    private final Rectangle strip = new Rectangle();
+
+    /** The waveform of the audio, null for none. */
+    private volatile Waveform waveform;
+
+    /** The band along the bottom of the carriage for the waveform. */
+    private final Rectangle band = new Rectangle();
+
+    /**
+     * Sets the media to paint thumbnails of.
+     *
+     * @param thumbnailDecoder Decodes the thumbnails, null for none.
+     * @param mediaDuration The duration of the media, in milliseconds.
+     */
+    void setDecoder(final ThumbnailDecoder thumbnailDecoder,
+                    final long mediaDuration) {
+        decoder = thumbnailDecoder;
+        duration = mediaDuration;
+        repaint();
+    }
+
+    /**
+     * @param mediaWaveform The waveform of the audio to paint along the
+     * bottom of the thumbnails, null for none.
+     */
+    void setWaveform(final Waveform mediaWaveform) {
+        waveform = mediaWaveform;
+        repaint();
+    }
+
+    /**
+     * @return Listener that repaints the track as thumbnails are decoded.
+     */
+    ThumbnailDecoder.Listener getRepainter() {
+        return new ThumbnailDecoder.Listener() {
+                @Override public void thumbnailReady(final long time) {
+                    // Repaints are coalesced, so a burst of thumbnails only
+                    // paints the track once.
+                    repaint();
+                }
+            };
+    }
+
+    @Override protected void paintCustom(final Graphics g) {
+        Rectangle carriage = getCarriagePolygon().getBounds();
+        paintThumbnails(g, carriage);
+
+        Waveform w = waveform;
+        if (w != null) {
+            int height = (carriage.height - (2 * INSET)) / 3;
+            band.setBounds(carriage.x, carriage.y + carriage.height - INSET
+                - height, carriage.width, height);
+            w.paint(g, carriage, band, duration);
+        }
+    }
+
+    /**
+     * Paints the thumbnails that have been decoded, and requests the ones in
+     * view that haven't.
+     *
+     * @param g The graphics to paint with.
+     * @param carriage The bounds of the carriage.
+     */
+    private void paintThumbnails(final Graphics g, final Rectangle carriage) {
+        ThumbnailDecoder d = decoder;
+        long length = duration;
+
+        if ((d == null) || (length <= 0) || (carriage.width <= 0)) {
+            return;
+        }
+
+        strip.setBounds(carriage.x + INSET, carriage.y + INSET,
+            carriage.width - (2 * INSET), carriage.height - (2 * INSET));
+
+        // Thumbnails are requested for all of the strip in view, even when
+        // only part of it is being painted, so that painting a sliver of the
+        // track doesn't drop the requests for the rest.
+        Rectangle2D.intersect(strip, getVisibleRect(), strip);
+
+        int thumbHeight = carriage.height - (2 * INSET);
+        if ((strip.width <= 0) || (strip.height <= 0) || (thumbHeight <= 0)) {
+            return;
+        }
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = strip;
+        }
+
+        int thumbWidth = (int) Math.ceil(thumbHeight * d.getAspectRatio());
+        double msPerPixel = (double) length / carriage.width;
+        long interval = intervalFor(thumbWidth * msPerPixel);
+
+        // The thumbnail that straddles the left edge of the strip is painted
+        // as well, so start one thumbnail before it.
+        long first = (long) ((strip.x - carriage.x - thumbWidth) * msPerPixel
+                / interval);
+        first = Math.max(0, first);
+
+        Graphics clipped = g.create();
+        clipped.clipRect(strip.x, strip.y, strip.width, strip.height);
+
+        int count = 0;
+
+        try {
+            for (long slot = first;; slot++) {
+                long time = slot * interval;
+                int x = carriage.x + (int) (time / msPerPixel);
+
+                if ((time >= length) || (x >= (strip.x + strip.width))) {
+                    break;
+                }
+
+                BufferedImage thumbnail = d.get(time, interval / 2);
+
+                if (thumbnail == null) {
+                    if (count == missing.length) {
+                        long[] grown = new long[count * 2];
+                        System.arraycopy(missing, 0, grown, 0, count);
+                        missing = grown;
+                    }
+
+                    missing[count++] = time;
+                    thumbnail = standIn(d, time, interval);
+                }
+
+                if ((thumbnail != null) && (x < (clip.x + clip.width))
+                        && ((x + thumbWidth) > clip.x)) {
+                    clipped.drawImage(thumbnail, x, carriage.y + INSET,
+                        thumbWidth, thumbHeight, null);
+                }
+            }
+        } finally {
+            clipped.dispose();
+        }
+
+        d.request(missing, count);
+    }
+
+    /**
+     * @param span The time a thumbnail covers at the current zoom level.
+     *
+     * @return The spacing of thumbnails at the current zoom level.
+     */
+    private static long intervalFor(final double span) {
+        long interval = BASE_INTERVAL;
+
+        while ((interval < span) && (interval < (Long.MAX_VALUE / 2))) {
+            interval *= 2;
+        }
+
+        return interval;
+    }
+
+    /**
+     * @param d Decodes the thumbnails.
+     * @param time The time of a thumbnail that has not been decoded.
+     * @param interval The spacing of thumbnails at the current zoom level.
+     *
+     * @return The nearest thumbnail decoded at a coarser spacing, or null if
+     * there isn't one.
+     */
+    private static BufferedImage standIn(final ThumbnailDecoder d,
+                                         final long time,
+                                         final long interval) {
+        long coarser = interval;
+
+        for (int i = 0; i < FALLBACK_LEVELS; i++) {
+            coarser *= 2;
+
+            BufferedImage thumbnail = d.get((time / coarser) * coarser,
+                    coarser / 2);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+
+        return null;
+    }
+}
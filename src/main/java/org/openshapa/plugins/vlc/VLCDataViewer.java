@@ -2,9 +2,12 @@ package org.openshapa.plugins.vlc;
 
 import java.awt.BorderLayout;
 import java.awt.Canvas;
+import java.awt.CardLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Frame;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
 
 import java.io.File;
 import java.io.IOException;
@@ -13,35 +16,53 @@ import java.io.OutputStream;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.AbstractButton;
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
+import org.openshapa.OpenSHAPA;
+
 import org.openshapa.models.db.Datastore;
 import org.openshapa.models.id.Identifier;
 
 import org.openshapa.plugins.CustomActions;
 import org.openshapa.plugins.CustomActionsAdapter;
 import org.openshapa.plugins.DataViewer;
+import org.openshapa.plugins.FrameListener;
+import org.openshapa.plugins.FrameNotifier;
 import org.openshapa.plugins.ViewerStateListener;
 
 import org.openshapa.util.DataViewerUtils;
+import org.openshapa.util.TranscodeJob;
+import org.openshapa.util.TranscodeQueue;
+import org.openshapa.util.VLCDiscovery;
 
 import org.openshapa.views.DataController;
 import org.openshapa.views.VideoConverterV;
-import org.openshapa.views.component.DefaultTrackPainter;
 import org.openshapa.views.component.TrackPainter;
-import uk.co.caprica.vlcj.discovery.NativeDiscovery;
 
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+
+import uk.co.caprica.vlcj.player.MediaPlayer;
+import uk.co.caprica.vlcj.player.MediaPlayerEventAdapter;
 import uk.co.caprica.vlcj.player.MediaPlayerFactory;
 import uk.co.caprica.vlcj.player.embedded.EmbeddedMediaPlayer;
 import uk.co.caprica.vlcj.player.embedded.FullScreenStrategy;
 
 
-public class VLCDataViewer implements DataViewer {
+public class VLCDataViewer implements DataViewer, FrameNotifier {
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(VLCDataViewer.class);
 
     /** Data viewer ID. */
     private Identifier id;
@@ -87,11 +108,76 @@ public class VLCDataViewer implements DataViewer {
     private long last_position;
     
     private Thread vlcThread;
+
+    /** Marks that no seek is waiting for the EDT. */
+    private static final long NO_SEEK = Long.MIN_VALUE;
+
+    /** The latest position to seek to that the EDT hasn't got to yet. */
+    private final AtomicLong pendingSeek = new AtomicLong(NO_SEEK);
+
+    /** Card showing the video from the VLC mediaPlayer. */
+    private static final String LIVE_CARD = "live";
+
+    /** Card showing a frame from the frame cache. */
+    private static final String CACHED_CARD = "cached";
+
+    /** Panel flipping between the video surface and cached frames. */
+    private JPanel videoPanel;
+
+    /** Displays frames from the frame cache. */
+    private FramePanel framePanel;
+
+    /** Decodes the frames around the needle into memory, null until the
+        data feed is set. */
+    private FrameDecoder frameDecoder;
+
+    /** Switches the frame decoder over to the proxy once it is made. */
+    private TranscodeQueue.Listener proxyListener;
+
+    /** Paints thumbnails of the video along its track. */
+    private final ThumbnailTrackPainter thumbnailPainter =
+        new ThumbnailTrackPainter();
+
+    /** Paints the waveform along the track of media without video. */
+    private final WaveformTrackPainter waveformPainter =
+        new WaveformTrackPainter();
+
+    /** The waveform of the audio, null until the data feed is set. */
+    private Waveform waveform;
+
+    /** Decodes the thumbnails for the track, null until the data feed is
+        set. */
+    private ThumbnailDecoder thumbnailDecoder;
+
+    /** The time of the cached frame being displayed, NO_SEEK if the
+        mediaPlayer is being displayed. */
+    private volatile long cachedTime = NO_SEEK;
+
+    /** The position of the last seek, used to tell which way we are
+        jogging. */
+    private long lastSeek = 0;
+
+    /** Have the properties of the media been probed? */
+    private boolean probed = false;
+
+    /** The data controller this viewer was added to, null until added. */
+    private DataController parentController;
+
+    /** Has the data feed been cleared, releasing the mediaPlayerFactory? */
+    private boolean released = false;
+
+    /** Told as the frame for each seek is displayed. */
+    private final List<FrameListener> frameListeners =
+        new CopyOnWriteArrayList<FrameListener>();
+
+    /** The position of the seek the mediaPlayer is still to display,
+        NO_SEEK if none. */
+    private volatile long liveSeek = NO_SEEK;
     
     static {
 	// Try to load VLC libraries.
 	// This discovery function is platform independent
-	new NativeDiscovery().discover();
+	VLCDiscovery.discover();
     }
 
     /** Supported custom actions. */
@@ -156,12 +242,31 @@ public class VLCDataViewer implements DataViewer {
 	// Create a media player instance
 	mediaPlayer = mediaPlayerFactory.newEmbeddedMediaPlayer();
 
-	// Add it to the dialog and place the video onto the surface
+	// Add it to the dialog and place the video onto the surface. Cached
+	// frames are shown in place of the surface while jogging.
+	framePanel = new FramePanel();
+	videoPanel = new JPanel(new CardLayout());
+	videoPanel.add(videoSurface, LIVE_CARD);
+	videoPanel.add(framePanel, CACHED_CARD);
 	vlcDialog.setLayout(new BorderLayout());
-	vlcDialog.add(videoSurface, BorderLayout.CENTER);
+	vlcDialog.add(videoPanel, BorderLayout.CENTER);
 	mediaPlayer.setVideoSurface(mediaPlayerFactory.newVideoSurface(videoSurface));
 	mediaPlayer.setFullScreen(false);
 
+	// VLC seeks in the background - the frame for a seek is displayed once
+	// the time of the mediaPlayer reaches it.
+	mediaPlayer.addMediaPlayerEventListener(new MediaPlayerEventAdapter() {
+		@Override public void timeChanged(final MediaPlayer player,
+						  final long newTime) {
+			long position = liveSeek;
+			if ((position != NO_SEEK) && (Math.abs(Math.max(position, 1)
+				- newTime) <= frameTolerance())) {
+				liveSeek = NO_SEEK;
+				fireFrameShown(position);
+			}
+		}
+	});
+
 
         stateListeners = new ArrayList<ViewerStateListener>();
 		
@@ -216,7 +321,13 @@ private void launchEdtTaskNow(Runnable edtTask) {
     }
 
     @Override public TrackPainter getTrackPainter() {
-        return new DefaultTrackPainter();
+        // Until the media is probed, assume it has video. The thumbnail
+        // painter paints the waveform too, if it turns out there isn't any.
+        if (probed && (thumbnailDecoder == null)) {
+            return waveformPainter;
+        }
+
+        return thumbnailPainter;
     }
 
     @Override public void setDataViewerVisible(final boolean isVisible) {
@@ -224,44 +335,47 @@ private void launchEdtTaskNow(Runnable edtTask) {
     }
 
     @Override public void setDataFeed(final File dataFeed) {	
+	data = dataFeed;
 	vlcDialog.setVisible(true);
 	vlcDialog.setName(vlcDialog.getName() + "-" + dataFeed.getName());
-	mediaPlayer.startMedia(dataFeed.getAbsolutePath());
+	playing = false;
 
-	// Grab FPS and length
-	
-	// Because of the way VLC works, we have to wait for the metadata to become
-	// available a short time after we start playing.
-	// TODO: reimplement this using the video output event
-	try {
-	    int i = 0;
-	    while(mediaPlayer.getVideoDimension() == null) {
-		    if(i > 100)
-			break;
-		    Thread.sleep(5); 
-		    i++; }
-	} catch (Exception e) {
-		
+	// Grab FPS, length and size. VLC has to play the media before it knows
+	// these, so they are probed in the background and remembered for the
+	// next time this media is opened. Meanwhile the player opens the media
+	// paused on the first frame.
+	mediaPlayer.startMedia(dataFeed.getAbsolutePath(), ":start-paused");
+	MediaProbe.probe(dataFeed, new MediaProbe.Callback() {
+		@Override public void probed(final MediaInfo info) {
+			// Ignore probes finishing after the media was closed.
+			if (!released && (data == dataFeed)) {
+				mediaProbed(dataFeed, info);
+			}
+		}
+	});
+    }
+
+    /**
+     * Sets up the viewer once the properties of its media are known. Must be
+     * called on the EDT.
+     *
+     * @param dataFeed The media being viewed.
+     * @param info The properties of the media, null if they are unknown.
+     */
+    private void mediaProbed(final File dataFeed, final MediaInfo info) {
+	Dimension d = null;
+	if (info != null) {
+		fps = info.getFrameRate();
+		length = info.getDuration();
+		d = info.getDimension();
+	}
+	probed = true;
+
+	LOGGER.event(String.format("Opened media: %f fps, %d ms", fps, length));
+
+	if (d != null) {
+		vlcDialog.setSize(d);
 	}
-	
-	fps = mediaPlayer.getFps();
-	length = mediaPlayer.getLength();
-	Dimension d = mediaPlayer.getVideoDimension();
-	
-	System.out.println(String.format("FPS: %f", fps));
-	System.out.println(String.format("Length: %d", length));
-	
-	// Test to see if we should prompt user to convert the video to 
-	// the ideal format
-	
-	// Stop the player. This will rewind whatever
-	// frames we just played to get the FPS and length
-	mediaPlayer.pause();
-	mediaPlayer.setTime(1);
-	
-	playing = false;
-	
-	vlcDialog.setSize(d);
 	
 	// Test to make sure we got the framerate.
 	// If we didn't, alert the user that this
@@ -276,6 +390,87 @@ private void launchEdtTaskNow(Runnable edtTask) {
 				+ "Please try converting to H.264.\n\nSetting "
 				+ "framerate to 29.97.");
 	}
+
+	waveform = new Waveform(dataFeed, new Runnable() {
+		@Override public void run() {
+			thumbnailPainter.repaint();
+			waveformPainter.repaint();
+		}
+	});
+	thumbnailPainter.setWaveform(waveform);
+
+	if (d != null) {
+		startFrameDecoder(d, info.needsProxy());
+
+		thumbnailDecoder = new ThumbnailDecoder(mediaPlayerFactory,
+			dataFeed, d, fps, thumbnailPainter.getRepainter());
+		thumbnailPainter.setDecoder(thumbnailDecoder, length);
+	} else {
+		waveformPainter.setWaveform(waveform, length);
+	}
+
+	// The viewer may have been added to the data controller before the
+	// media was probed - tell it and the track about the frame rate and
+	// length.
+	if (parentController != null) {
+		OpenSHAPA.getDataController().updateFrameRate(this);
+	}
+	for (ViewerStateListener listener : stateListeners) {
+		listener.notifyStateChanged("duration", Long.toString(length));
+	}
+    }
+
+    /**
+     * Starts the decoder used for jogging and scrubbing. It decodes the proxy
+     * of the media if there is one. Otherwise, unless the media is already in
+     * the form a conversion would give it, a proxy of that form is made in
+     * the background and the decoder switches over to it when it is done.
+     *
+     * @param d The size of the video.
+     * @param needsProxy Does the media need a proxy? Found when the media was
+     * probed, see {@link MediaInfo#needsProxy()}.
+     */
+    private void startFrameDecoder(final Dimension d,
+                                   final boolean needsProxy) {
+	File proxy = TranscodeQueue.getProxy(data);
+	if (proxy != null) {
+		frameDecoder = new FrameDecoder(mediaPlayerFactory, proxy, fps, d);
+		return;
+	}
+
+	frameDecoder = new FrameDecoder(mediaPlayerFactory, data, fps, d);
+
+	if (!needsProxy) {
+		return;
+	}
+
+	final File media = data.getAbsoluteFile();
+	proxyListener = new TranscodeQueue.Listener() {
+		@Override public void jobChanged(final TranscodeJob job) {
+			if ((job.getKind() != TranscodeJob.Kind.PROXY)
+				|| (job.getState() != TranscodeJob.State.DONE)
+				|| !job.getSource().getAbsoluteFile().equals(media)) {
+				return;
+			}
+
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override public void run() {
+					// Ignore proxies finishing after the media was closed.
+					if ((frameDecoder == null) || (data == null)
+						|| !data.getAbsoluteFile().equals(media)) {
+						return;
+					}
+
+					FrameDecoder old = frameDecoder;
+					frameDecoder = new FrameDecoder(mediaPlayerFactory,
+						job.getTarget(), fps, d);
+					old.release();
+				}
+			});
+		}
+	};
+	TranscodeQueue.addListener(proxyListener);
+	TranscodeQueue.requestProxy(data);
     }
 
     @Override public File getDataFeed() {
@@ -287,22 +482,47 @@ private void launchEdtTaskNow(Runnable edtTask) {
     }
 
     @Override public long getCurrentTime() throws Exception {
+	long cached = cachedTime;
+	if (cached != NO_SEEK) {
+		return cached;
+	}
+
         return mediaPlayer.getTime();
     }
 
     @Override public void seekTo(final long position) {
+	// Only queue one seek at a time - if the EDT hasn't got to the last one
+	// yet, it will seek straight to the latest position instead.
+	if (pendingSeek.getAndSet(position) != NO_SEEK) {
+		return;
+	}
+
 	Runnable edtTask = new Runnable() {
 		@Override public void run() {
-			
-			long current = mediaPlayer.getTime();
-			
+			long target = pendingSeek.getAndSet(NO_SEEK);
+
+			if(!playing && target != NO_SEEK) {
+				long time = Math.max(target, 1);
+
+				// Jogging and reverse stepping are served from
+				// the frame cache when possible, VLC only has to
+				// seek when the frame hasn't been decoded.
+				BufferedImage frame = null;
+				if (frameDecoder != null) {
+					frame = frameDecoder.getFrame(time);
+					frameDecoder.fillAround(time, time < lastSeek);
+				}
+				lastSeek = time;
 
-			if(!playing) {
-				if (position > 0) {
-					mediaPlayer.setTime(position);
+				if (frame != null) {
+					liveSeek = NO_SEEK;
+					showCachedFrame(frame, time);
+					fireFrameShown(target);
 				}
 				else {
-					mediaPlayer.setTime(1);
+					showLiveVideo();
+					liveSeek = target;
+					mediaPlayer.setTime(time);
 				}
 			}
 		}
@@ -311,6 +531,57 @@ private void launchEdtTaskNow(Runnable edtTask) {
 	launchEdtTaskLater(edtTask);
     }
 
+    /**
+     * @return How far the time of the mediaPlayer may be from a seek once
+     * the frame for it is displayed, in milliseconds.
+     */
+    private long frameTolerance() {
+	return (fps > 0) ? (long) Math.ceil(1000 / fps) : 40;
+    }
+
+    /**
+     * Tells the frame listeners the frame for a seek has been displayed.
+     *
+     * @param position The position that was seeked to.
+     */
+    private void fireFrameShown(final long position) {
+	for (FrameListener listener : frameListeners) {
+		listener.frameShown(this, position);
+	}
+    }
+
+    @Override public void addFrameListener(final FrameListener listener) {
+	frameListeners.add(listener);
+    }
+
+    @Override public void removeFrameListener(final FrameListener listener) {
+	frameListeners.remove(listener);
+    }
+
+    /**
+     * Displays a frame from the frame cache in place of the video surface.
+     * Must be called on the EDT.
+     *
+     * @param frame The frame to display.
+     * @param time The time of the frame.
+     */
+    private void showCachedFrame(final BufferedImage frame, final long time) {
+	cachedTime = time;
+	framePanel.setFrame(frame);
+	((CardLayout) videoPanel.getLayout()).show(videoPanel, CACHED_CARD);
+    }
+
+    /**
+     * Displays the video surface of the mediaPlayer. Must be called on the
+     * EDT.
+     */
+    private void showLiveVideo() {
+	if (cachedTime != NO_SEEK) {
+		cachedTime = NO_SEEK;
+		((CardLayout) videoPanel.getLayout()).show(videoPanel, LIVE_CARD);
+	}
+    }
+
     @Override public boolean isPlaying() {
 		return playing;
     }
@@ -331,7 +602,8 @@ private void launchEdtTaskNow(Runnable edtTask) {
     @Override public void setPlaybackSpeed(final float rate) {
 	if(rate < 0) {
 		// VLC cannot play in reverse, so we're going to rely
-		// on the clock to do fake jumping
+		// on the clock to do fake jumping - served from the
+		// frame cache where possible
 		mediaPlayer.setRate(0);
 		if(playing) {
 			mediaPlayer.pause();
@@ -345,6 +617,12 @@ private void launchEdtTaskNow(Runnable edtTask) {
 	Runnable edtTask = new Runnable() {
 		@Override public void run() {
 			if(!playing && mediaPlayer.getRate() > 0) {
+				// Pick up from the cached frame being displayed.
+				long cached = cachedTime;
+				if (cached != NO_SEEK) {
+					mediaPlayer.setTime(cached);
+				}
+				showLiveVideo();
 				mediaPlayer.play();
 				playing = true;
 			}
@@ -393,9 +671,29 @@ private void launchEdtTaskNow(Runnable edtTask) {
 
     @Override public void clearDataFeed() {
         stop();
+	if (proxyListener != null) {
+		TranscodeQueue.removeListener(proxyListener);
+		proxyListener = null;
+	}
+	if (frameDecoder != null) {
+		frameDecoder.release();
+		frameDecoder = null;
+	}
+	if (thumbnailDecoder != null) {
+		thumbnailPainter.setDecoder(null, 0);
+		thumbnailDecoder.release();
+		thumbnailDecoder = null;
+	}
+	if (waveform != null) {
+		thumbnailPainter.setWaveform(null);
+		waveformPainter.setWaveform(null, 0);
+		waveform.release();
+		waveform = null;
+	}
 	videoSurface.setVisible(false);
 	vlcDialog.setVisible(false);
 	mediaPlayerFactory.release();
+	released = true;
     }
 
     @Override public void setDatastore(final Datastore sDB) {
@@ -404,7 +702,39 @@ private void launchEdtTaskNow(Runnable edtTask) {
 
     @Override public void setParentController(
         final DataController dataController) {
-        // TODO Auto-generated method stub
+        parentController = dataController;
     }
 
+    /**
+     * Paints a decoded frame, scaled to fit the panel.
+     */
+    private static final class FramePanel extends JComponent {
+
+	/** The frame to paint. */
+	private BufferedImage frame;
+
+	/**
+	 * @param newFrame The frame to paint.
+	 */
+	void setFrame(final BufferedImage newFrame) {
+		frame = newFrame;
+		repaint();
+	}
+
+	@Override protected void paintComponent(final Graphics g) {
+		g.setColor(Color.black);
+		g.fillRect(0, 0, getWidth(), getHeight());
+
+		if (frame == null) {
+			return;
+		}
+
+		double scale = Math.min((double) getWidth() / frame.getWidth(),
+					(double) getHeight() / frame.getHeight());
+		int w = (int) (frame.getWidth() * scale);
+		int h = (int) (frame.getHeight() * scale);
+		g.drawImage(frame, (getWidth() - w) / 2, (getHeight() - h) / 2,
+			    w, h, null);
+	}
+    }
 }
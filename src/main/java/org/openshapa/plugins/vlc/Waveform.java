@@ -0,0 +1,321 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.openshapa.OpenSHAPA;
+
+import org.openshapa.util.HashUtils;
+import org.openshapa.util.MediaInspector;
+import org.openshapa.util.PeakPyramid;
+import org.openshapa.util.TranscodeJob;
+import org.openshapa.util.TranscodeQueue;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+/**
+ * The waveform of the audio of a media file, painted along its track.
+ *
+ * The peaks of the audio are built once per media file and saved in a
+ * binary peak file in local storage, named by the media. Building them
+ * extracts the audio through the {@link TranscodeQueue} and reads the peaks
+ * from it in the background, so opening media never waits for its waveform;
+ * the waveform is painted when it is ready. Media found to have no audio is
+ * remembered by a marker file, so that it isn't extracted again each time
+ * the media is opened.
+ */
+final class Waveform {
+
+    /** The number of samples in each bucket of the finest level. */
+    private static final int SAMPLES_PER_BUCKET = 64;
+
+    /** Name of the directory peak files are kept in. */
+    private static final String WAVEFORM_DIR = "waveforms";
+
+    /** Colour of the waveform. */
+    private static final Color WAVEFORM_COLOUR = new Color(40, 40, 40, 160);
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(Waveform.class);
+
+    /** Reads and builds peak files. */
+    private static final ExecutorService LOADER =
+        Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r, "WaveformLoader");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+
+                    return t;
+                }
+            });
+
+    /** The peaks of the audio, null until they are loaded. */
+    private volatile PeakPyramid peaks;
+
+    /** The media the waveform is of. */
+    private final File media;
+
+    /** The peak file of the media. */
+    private final File peakFile;
+
+    /** The audio extracted from the media, while the peaks are built. */
+    private final File audioFile;
+
+    /** Marks media that has no audio to extract. */
+    private final File noAudioFile;
+
+    /** Called when the peaks have been loaded. */
+    private final Runnable onLoad;
+
+    /** Builds the peaks once the audio has been extracted. */
+    private TranscodeQueue.Listener extracted;
+
+    /** Has the waveform been released? */
+    private volatile boolean released = false;
+
+    /**
+     * Constructor. Loads the peaks of the media in the background, building
+     * them first if need be.
+     *
+     * @param mediaFile The media to show the waveform of.
+     * @param loaded Called when the peaks have been loaded, on a background
+     * thread.
+     */
+    Waveform(final File mediaFile, final Runnable loaded) {
+        media = mediaFile.getAbsoluteFile();
+        onLoad = loaded;
+
+        File dir = new File(OpenSHAPA.getApplication().getContext()
+                .getLocalStorage().getDirectory(), WAVEFORM_DIR);
+        String key = HashUtils.mediaKey(media);
+        peakFile = new File(dir, key + ".peaks");
+        audioFile = new File(dir, key + ".wav");
+        noAudioFile = new File(dir, key + ".noaudio");
+
+        LOADER.execute(new Runnable() {
+                @Override public void run() {
+                    load();
+                }
+            });
+    }
+
+    /**
+     * @return True if the peaks have been loaded.
+     */
+    boolean isLoaded() {
+        return peaks != null;
+    }
+
+    /**
+     * Stops loading the peaks.
+     */
+    void release() {
+        released = true;
+
+        synchronized (this) {
+            if (extracted != null) {
+                TranscodeQueue.removeListener(extracted);
+                extracted = null;
+            }
+        }
+    }
+
+    /**
+     * Paints the waveform. Costs one column per pixel painted, whatever the
+     * length of the audio.
+     *
+     * @param g The graphics to paint with.
+     * @param carriage The bounds of the whole track; the start and end of
+     * the media.
+     * @param area The part of the track to paint the waveform in.
+     * @param duration The duration of the media, in milliseconds.
+     */
+    void paint(final Graphics g,
+               final Rectangle carriage,
+               final Rectangle area,
+               final long duration) {
+        PeakPyramid p = peaks;
+        if ((p == null) || (duration <= 0) || (carriage.width <= 0)
+                || (area.height <= 0)) {
+            return;
+        }
+
+        int left = area.x;
+        int right = area.x + area.width;
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            left = Math.max(left, clip.x);
+            right = Math.min(right, clip.x + clip.width);
+        }
+
+        // The time a pixel covers is the resolution of the viewport.
+        double msPerPixel = (double) duration / carriage.width;
+        int level = p.levelFor(msPerPixel);
+        double bucketsPerPixel = msPerPixel / p.getBucketDuration(level);
+        int buckets = p.getBucketCount(level);
+
+        int middle = area.y + (area.height / 2);
+        double scale = (area.height / 2) / 128.0;
+
+        g.setColor(WAVEFORM_COLOUR);
+
+        for (int x = left; x < right; x++) {
+            int from = (int) ((x - carriage.x) * bucketsPerPixel);
+            int to = Math.max(from + 1,
+                    (int) ((x + 1 - carriage.x) * bucketsPerPixel));
+            to = Math.min(to, buckets);
+
+            if (from >= to) {
+                continue;
+            }
+
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+
+            for (int b = from; b < to; b++) {
+                min = Math.min(min, p.getMin(level, b));
+                max = Math.max(max, p.getMax(level, b));
+            }
+
+            g.drawLine(x, middle - (int) Math.round(max * scale), x,
+                middle - (int) Math.round(min * scale));
+        }
+    }
+
+    /**
+     * Loads the peak file, or starts building it. Called on the loader.
+     */
+    private void load() {
+        if (released || noAudioFile.isFile()) {
+            return;
+        }
+
+        if (peakFile.isFile()) {
+            try {
+                loaded(PeakPyramid.read(peakFile));
+
+                return;
+            } catch (IOException e) {
+                LOGGER.error("Unable to read peak file, rebuilding", e);
+                peakFile.delete();
+            }
+        }
+
+        // The audio may have been extracted in an earlier session.
+        if (audioFile.isFile()) {
+            build();
+
+            return;
+        }
+
+        try {
+            if (MediaInspector.hasNoAudio(media)) {
+                markNoAudio();
+
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to inspect media, extracting anyway", e);
+        }
+
+        synchronized (this) {
+            extracted = new TranscodeQueue.Listener() {
+                    @Override public void jobChanged(final TranscodeJob job) {
+                        if ((job.getKind() != TranscodeJob.Kind.AUDIO)
+                                || !job.getTarget().equals(audioFile)
+                                || !job.getState().isFinished()) {
+                            return;
+                        }
+
+                        TranscodeQueue.removeListener(this);
+
+                        if (job.getState() == TranscodeJob.State.DONE) {
+                            LOADER.execute(new Runnable() {
+                                    @Override public void run() {
+                                        build();
+                                    }
+                                });
+                        } else if (job.getState()
+                                == TranscodeJob.State.FAILED) {
+                            // VLC finds no audio to write out.
+                            markNoAudio();
+                        }
+                    }
+                };
+            TranscodeQueue.addListener(extracted);
+        }
+
+        TranscodeQueue.extractAudio(media, audioFile);
+    }
+
+    /**
+     * Builds the peak file from the extracted audio. Called on the loader.
+     */
+    private void build() {
+        if (released || !audioFile.isFile()) {
+            return;
+        }
+
+        try {
+            PeakPyramid built = PeakPyramid.fromWav(audioFile,
+                    SAMPLES_PER_BUCKET);
+            built.write(peakFile);
+            loaded(built);
+        } catch (IOException e) {
+            LOGGER.error("Unable to build peak file", e);
+        } catch (UnsupportedAudioFileException e) {
+            LOGGER.error("Unable to read extracted audio", e);
+        } finally {
+            audioFile.delete();
+        }
+    }
+
+    /**
+     * Remembers that the media has no audio to extract.
+     */
+    private void markNoAudio() {
+        try {
+            noAudioFile.getParentFile().mkdirs();
+            noAudioFile.createNewFile();
+        } catch (IOException e) {
+            LOGGER.error("Unable to mark media as having no audio", e);
+        }
+    }
+
+    /**
+     * @param loadedPeaks The peaks of the audio.
+     */
+    private void loaded(final PeakPyramid loadedPeaks) {
+        peaks = loadedPeaks;
+
+        if (!released) {
+            onLoad.run();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+import org.openshapa.views.component.TrackPainter;
+
+/**
+ * Paints the waveform of audio along its carriage, for media without video.
+ */
+final class WaveformTrackPainter extends TrackPainter {
+
+    /** Gap between the waveform and the edge of the carriage. */
+    private static final int INSET = 2;
+
+    /** The waveform to paint, null until the media is opened. */
+    private volatile Waveform waveform;
+
+    /** The duration of the media, in milliseconds. */
+    private volatile long duration;
+
+    /** The part of the carriage to paint, reused between paints. */
+    private final Rectangle area = new Rectangle();
+
+    /**
+     * Sets the waveform to paint.
+     *
+     * @param mediaWaveform The waveform, null for none.
+     * @param mediaDuration The duration of the media, in milliseconds.
+     */
+    void setWaveform(final Waveform mediaWaveform, final long mediaDuration) {
+        waveform = mediaWaveform;
+        duration = mediaDuration;
+        repaint();
+    }
+
+    @Override protected void paintCustom(final Graphics g) {
+        Waveform w = waveform;
+        if (w == null) {
+            return;
+        }
+
+        Rectangle carriage = getCarriagePolygon().getBounds();
+        area.setBounds(carriage.x, carriage.y + INSET, carriage.width,
+            carriage.height - (2 * INSET));
+        w.paint(g, carriage, area, duration);
+    }
+}
@@ -94,6 +94,6 @@ public class RemoveCellEdit extends SpreadsheetEdit {
             newCell.setOffset(cellTO.getOffset());
             newCell.getValue().set(cellTO.getValue());
         }
-        view.showSpreadsheet();
+        view.refreshSpreadsheet();
     }
 }
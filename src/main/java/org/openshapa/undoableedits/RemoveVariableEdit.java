@@ -84,7 +84,7 @@ public class RemoveVariableEdit extends VocabEditorEdit {
                 LOGGER.error("Unable to undo.", e);
             }
         }
-        OpenSHAPA.getView().showSpreadsheet();
+        OpenSHAPA.getView().refreshSpreadsheet();
     }
 
     @Override 
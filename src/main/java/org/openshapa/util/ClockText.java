@@ -0,0 +1,187 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+/**
+ * Formats times as HH:mm:ss:SSS for the clock display, without the garbage
+ * created by a DateFormat. The digits are written into a reused character
+ * buffer, and a new String is only created when the text actually changes.
+ *
+ * Each field can be surrounded with markup (such as HTML font tags). Like the
+ * SimpleDateFormat used elsewhere for the clock, hours wrap at 24.
+ *
+ * Instances are not thread safe.
+ */
+public final class ClockText {
+
+    /** The number of milliseconds in a second. */
+    private static final long SECOND = 1000L;
+
+    /** The number of milliseconds in a minute. */
+    private static final long MINUTE = 60 * SECOND;
+
+    /** The number of milliseconds in an hour. */
+    private static final long HOUR = 60 * MINUTE;
+
+    /** The number of milliseconds in a day. */
+    private static final long DAY = 24 * HOUR;
+
+    /** Digits in each field: hours, minutes, seconds and milliseconds. */
+    private static final int[] DIGITS = { 2, 2, 2, 3 };
+
+    /** Text before, between and after the fields. */
+    private final char[][] separators;
+
+    /** The buffer the text is formatted into. */
+    private final char[] buffer;
+
+    /** The length of the formatted text. */
+    private final int length;
+
+    /** The value of each field of the time being formatted. */
+    private final long[] fields = new long[DIGITS.length];
+
+    /** The most recently formatted time. */
+    private long lastTime = Long.MIN_VALUE;
+
+    /** The text of the most recently formatted time. */
+    private String lastText;
+
+    /**
+     * Constructor.
+     *
+     * @param prefix Text before the hours.
+     * @param hoursSeparator Text between the hours and minutes.
+     * @param minutesSeparator Text between the minutes and seconds.
+     * @param secondsSeparator Text between the seconds and milliseconds.
+     * @param suffix Text after the milliseconds.
+     */
+    public ClockText(final String prefix,
+                     final String hoursSeparator,
+                     final String minutesSeparator,
+                     final String secondsSeparator,
+                     final String suffix) {
+        separators = new char[][] {
+            prefix.toCharArray(), hoursSeparator.toCharArray(),
+            minutesSeparator.toCharArray(), secondsSeparator.toCharArray(),
+            suffix.toCharArray()
+        };
+
+        int size = 0;
+        for (char[] separator : separators) {
+            size += separator.length;
+        }
+        for (int digits : DIGITS) {
+            size += digits;
+        }
+
+        length = size;
+        buffer = new char[length];
+        fillSeparators();
+    }
+
+    /**
+     * @return A formatter producing plain HH:mm:ss:SSS text.
+     */
+    public static ClockText plain() {
+        return new ClockText("", ":", ":", ":", "");
+    }
+
+    /**
+     * @param time A time in milliseconds.
+     *
+     * @return The formatted time. If the text is the same as the last time
+     * formatted, the same String is returned.
+     */
+    public String format(final long time) {
+        if ((lastText != null) && (time == lastTime)) {
+            return lastText;
+        }
+
+        lastTime = time;
+
+        long t = ((time % DAY) + DAY) % DAY;
+        fields[0] = t / HOUR;
+        fields[1] = (t % HOUR) / MINUTE;
+        fields[2] = (t % MINUTE) / SECOND;
+        fields[3] = t % SECOND;
+
+        boolean changed = (lastText == null);
+        int pos = 0;
+
+        for (int i = 0; i < fields.length; i++) {
+            pos += separators[i].length;
+
+            // Digits are written from least significant.
+            long value = fields[i];
+            for (int d = DIGITS[i] - 1; d >= 0; d--) {
+                char c = (char) ('0' + (value % 10));
+                value /= 10;
+
+                if (buffer[pos + d] != c) {
+                    buffer[pos + d] = c;
+                    changed = true;
+                }
+            }
+
+            pos += DIGITS[i];
+        }
+
+        if (changed) {
+            lastText = new String(buffer, 0, length);
+        }
+
+        return lastText;
+    }
+
+    /**
+     * Formats the onset or offset of a cell, as shown in the spreadsheet.
+     * Unlike the clock, hours do not wrap.
+     *
+     * @param time A time in milliseconds.
+     *
+     * @return The time as HH:mm:ss:SSS.
+     */
+    public static String timestamp(final long time) {
+        long hours = Math.round(Math.floor((time / 1000.0 / 60.0 / 60.0)));
+        long minutes = Math.round(Math.floor(time / 1000.0 / 60.0
+                                             - (hours * 60)));
+        long seconds = Math.round(Math.floor(time / 1000.0 - (hours * 60 * 60)
+                                             - (minutes * 60)));
+        long mseconds = Math.round(Math.floor(time - (hours * HOUR)
+                                              - (minutes * MINUTE)
+                                              - (seconds * SECOND)));
+
+        return String.format("%02d:%02d:%02d:%03d", hours, minutes, seconds,
+                             mseconds);
+    }
+
+    /**
+     * Writes the separators into the buffer, they never change.
+     */
+    private void fillSeparators() {
+        int pos = 0;
+
+        for (int i = 0; i < separators.length; i++) {
+            System.arraycopy(separators[i], 0, buffer, pos,
+                             separators[i].length);
+            pos += separators[i].length;
+
+            if (i < DIGITS.length) {
+                pos += DIGITS[i];
+            }
+        }
+    }
+}
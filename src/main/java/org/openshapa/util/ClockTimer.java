@@ -14,15 +14,37 @@
  */
 package org.openshapa.util;
 
-import java.util.HashSet;
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
  * ClockTime is a class which can be used as a time marshall to keep multiple
  * objects in sync.
+ *
+ * The time, rate and running state of the clock are held in a single
+ * immutable snapshot that is swapped atomically, so they can be read from any
+ * thread without locking. The time is calculated from the snapshot when it is
+ * read, rather than being accumulated on each tick.
+ *
+ * Ticks are generated on a dedicated thread, and listeners are notified on a
+ * separate dispatcher thread so that a slow listener can never delay the clock
+ * or block callers. If a listener is still handling one tick when the next is
+ * due, the new tick is dropped - listeners always receive the latest time
+ * rather than a backlog of stale ones. Start, stop, rate and step
+ * notifications are never dropped.
  */
 public final class ClockTimer {
 
@@ -30,39 +52,85 @@ public final class ClockTimer {
     //
     //
 
-    /** Clock clockTick period. */
+    /** Default clock tick period in milliseconds. */
     private static final long CLOCK_TICK = 31L;
 
+    /** Shortest permitted clock tick period in milliseconds. */
+    private static final long MIN_CLOCK_TICK = 5L;
+
     /** Clock initial delay. */
     private static final long CLOCK_DELAY = 0L;
 
     /** Used to convert between nanoseconds and milliseconds. */
     private static final long NANO_IN_MILLI = 1000000L;
 
+    /** The logger for this class. */
+    private static Logger LOGGER = UserMetrix.getLogger(ClockTimer.class);
+
     //--------------------------------------------------------------------------
     //
     //
 
-    /** Current time of the clock. */
-    private double time;
+    /** The current time, rate and running state of the clock. */
+    private final AtomicReference<State> state;
+
+    /** Generates the clock ticks. */
+    private final ScheduledExecutorService ticker;
 
-    /** Used to calculate elapsed time. */
-    private long nanoTime;
+    /** Notifies listeners of clock events, in the order they occurred. */
+    private final ExecutorService dispatcher;
 
-    /** */
-    private Timer clock;
+    /** The scheduled task that generates clock ticks. */
+    private ScheduledFuture<?> tickTask;
 
-    /** Is the clock currently stopped? */
-    private boolean isStopped;
+    /** Clock tick period in milliseconds. */
+    private volatile long tickPeriod = CLOCK_TICK;
 
-    /** What was the state of the clock in the previous tick? */
-    private boolean oldIsStopped;
+    /** Is a tick waiting to be delivered to (or being handled by) listeners? */
+    private final AtomicBoolean tickPending = new AtomicBoolean(false);
 
-    /** Update multiplier. */
-    private float rate = 1F;
+    /** Was the clock stopped at the previous tick? Only used by the ticker. */
+    private boolean oldIsStopped = true;
+
+    /** The time of the previous tick in nanoseconds. Only used by the ticker. */
+    private long lastTickNano;
 
     /** The set of objects that listen to this clock. */
-    private Set<ClockListener> clockListeners = new HashSet<ClockListener>();
+    private final Set<ClockListener> clockListeners =
+            new CopyOnWriteArraySet<ClockListener>();
+
+    /** The number of ticks generated since the metrics were reset. */
+    private final AtomicLong tickCount = new AtomicLong();
+
+    /** The number of ticks dropped because listeners were lagging. */
+    private final AtomicLong droppedTicks = new AtomicLong();
+
+    /** The number of ticks that listeners took longer than a period to handle. */
+    private final AtomicLong overrunTicks = new AtomicLong();
+
+    /** The sum of the deviations of tick intervals from the period, in ns. */
+    private final AtomicLong totalJitter = new AtomicLong();
+
+    /** The largest deviation of a tick interval from the period, in ns. */
+    private final AtomicLong maxJitter = new AtomicLong();
+
+    /** Delivers the latest time to listeners. */
+    private final Runnable deliverTick = new Runnable() {
+            @Override public void run() {
+                long start = System.nanoTime();
+
+                try {
+                    notifyTick(getTime());
+                } finally {
+                    if ((System.nanoTime() - start)
+                            > (tickPeriod * NANO_IN_MILLI)) {
+                        overrunTicks.incrementAndGet();
+                    }
+
+                    tickPending.set(false);
+                }
+            }
+        };
 
 
     //--------------------------------------------------------------------------
@@ -82,15 +150,24 @@ public final class ClockTimer {
      * @param initialTime Intial clock time.
      */
     public ClockTimer(final long initialTime) {
-        time = initialTime;
-        isStopped = true;
-        oldIsStopped = true;
-        clock = new Timer();
-        clock.scheduleAtFixedRate(new TimerTask() {
-                @Override public void run() {
-                    tick();
-                }
-            }, CLOCK_DELAY, CLOCK_TICK);
+        this(initialTime, CLOCK_TICK);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param initialTime Intial clock time.
+     * @param period Clock tick period in milliseconds.
+     */
+    public ClockTimer(final long initialTime, final long period) {
+        state = new AtomicReference<State>(new State(initialTime,
+                    System.nanoTime(), 1F, true));
+        ticker = Executors.newSingleThreadScheduledExecutor(
+                new ClockThreadFactory("ClockTimer-tick", Thread.MAX_PRIORITY));
+        dispatcher = Executors.newSingleThreadExecutor(
+                new ClockThreadFactory("ClockTimer-dispatch",
+                    Thread.NORM_PRIORITY));
+        setTickPeriod(period);
     }
 
     //--------------------------------------------------------------------------
@@ -100,89 +177,251 @@ public final class ClockTimer {
     /**
      * @param newTime Millisecond time to set clock to.
      */
-    public synchronized void setTime(final long newTime) {
+    public void setTime(final long newTime) {
 
-        if (isStopped) {
-            time = newTime;
-            time = Math.max(time, 0);
-            notifyStep();
-        } else {
-            stop();
+        while (true) {
+            State s = state.get();
+
+            if (!s.stopped) {
+                stop();
+
+                return;
+            }
+
+            State next = new State(Math.max(newTime, 0), System.nanoTime(),
+                    s.rate, true);
+
+            if (state.compareAndSet(s, next)) {
+                notifyStep((long) next.time);
+
+                return;
+            }
         }
     }
 
     /**
      * @return Current clock time.
      */
-    public synchronized long getTime() {
-        return (long) time;
+    public long getTime() {
+        return (long) state.get().timeAt(System.nanoTime());
     }
 
     /**
      * @param newRate Multiplier for CLOCK_TICK.
      */
-    public synchronized void setRate(final float newRate) {
-        rate = newRate;
-        notifyRate();
+    public void setRate(final float newRate) {
+
+        while (true) {
+            State s = state.get();
+            long now = System.nanoTime();
+
+            if (state.compareAndSet(s,
+                        new State(s.timeAt(now), now, newRate, s.stopped))) {
+                notifyRate(newRate);
+
+                return;
+            }
+        }
     }
 
     /**
      * @return Current clock multipler.
      */
-    public synchronized float getRate() {
-        return rate;
+    public float getRate() {
+        return state.get().rate;
     }
 
     /**
      * Initiate starting of clock.
      */
-    public synchronized void start() {
+    public void start() {
 
-        if (isStopped) {
-            nanoTime = System.nanoTime();
-            isStopped = false;
+        while (true) {
+            State s = state.get();
+
+            if (!s.stopped
+                    || state.compareAndSet(s,
+                        new State(s.time, System.nanoTime(), s.rate, false))) {
+                return;
+            }
         }
     }
 
     /**
-     * Set flag to stop clock at next time update (boundary).
+     * Stop the clock. Listeners are notified of the stop at the next tick.
      */
-    public synchronized void stop() {
+    public void stop() {
 
-        if (!isStopped) {
-            isStopped = true;
-            setRate(0);
+        while (true) {
+            State s = state.get();
+
+            if (s.stopped) {
+                return;
+            }
+
+            long now = System.nanoTime();
+
+            if (state.compareAndSet(s,
+                        new State(s.timeAt(now), now, s.rate, true))) {
+                setRate(0);
+
+                return;
+            }
         }
     }
 
     /**
      * @param ms Time step to apply to current time when clock stopped.
      */
-    public synchronized void stepTime(final long ms) {
+    public void stepTime(final long ms) {
 
-        if (isStopped) {
-            time += ms;
-            time = Math.max(time, 0);
-            notifyStep();
-        } else {
-            stop();
+        while (true) {
+            State s = state.get();
+
+            if (!s.stopped) {
+                stop();
+
+                return;
+            }
+
+            State next = new State(Math.max(s.time + ms, 0), s.anchor, s.rate,
+                    true);
+
+            if (state.compareAndSet(s, next)) {
+                notifyStep((long) next.time);
+
+                return;
+            }
         }
     }
 
     /**
      * @return True if clock is stopped.
      */
-    public synchronized boolean isStopped() {
-        return isStopped;
+    public boolean isStopped() {
+        return state.get().stopped;
     }
 
     /**
      * @param listener Listener requiring clockTick updates.
      */
-    public synchronized void registerListener(final ClockListener listener) {
+    public void registerListener(final ClockListener listener) {
         clockListeners.add(listener);
     }
 
+    /**
+     * Changes how often the clock ticks. Resets the tick metrics.
+     *
+     * @param period Clock tick period in milliseconds.
+     */
+    public synchronized void setTickPeriod(final long period) {
+        long newPeriod = Math.max(period, MIN_CLOCK_TICK);
+
+        if ((tickTask != null) && (newPeriod == tickPeriod)) {
+            return;
+        }
+
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+
+        tickPeriod = newPeriod;
+        resetMetrics();
+        tickTask = ticker.scheduleAtFixedRate(new Runnable() {
+                    @Override public void run() {
+                        tick();
+                    }
+                }, CLOCK_DELAY, newPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Aligns the clock tick to the frame rate of the media being played, so
+     * that listeners are notified once per frame.
+     *
+     * @param fps The frame rate of the media in frames per second.
+     */
+    public void alignToFrameRate(final double fps) {
+
+        if (fps > 0) {
+            setTickPeriod(Math.round(1000 / fps));
+        }
+    }
+
+    /**
+     * @return Clock tick period in milliseconds.
+     */
+    public long getTickPeriod() {
+        return tickPeriod;
+    }
+
+    /**
+     * Stops the clock threads. The clock can not be used after this.
+     */
+    public void shutdown() {
+        ticker.shutdownNow();
+        dispatcher.shutdownNow();
+    }
+
+    //--------------------------------------------------------------------------
+    // metrics
+    //
+
+    /**
+     * @return The number of ticks generated since the metrics were reset.
+     */
+    public long getTickCount() {
+        return tickCount.get();
+    }
+
+    /**
+     * @return The number of ticks that were not delivered to listeners,
+     * because they were still handling an earlier tick.
+     */
+    public long getDroppedTicks() {
+        return droppedTicks.get();
+    }
+
+    /**
+     * @return The number of ticks that listeners took longer than a tick
+     * period to handle.
+     */
+    public long getOverrunTicks() {
+        return overrunTicks.get();
+    }
+
+    /**
+     * @return The mean deviation, in milliseconds, of the interval between
+     * ticks from the tick period.
+     */
+    public double getMeanJitter() {
+        long intervals = tickCount.get() - 1;
+
+        if (intervals <= 0) {
+            return 0;
+        }
+
+        return totalJitter.get() / (double) intervals / NANO_IN_MILLI;
+    }
+
+    /**
+     * @return The largest deviation, in milliseconds, of the interval between
+     * ticks from the tick period.
+     */
+    public double getMaxJitter() {
+        return maxJitter.get() / (double) NANO_IN_MILLI;
+    }
+
+    /**
+     * Resets the tick metrics.
+     */
+    public void resetMetrics() {
+        tickCount.set(0);
+        droppedTicks.set(0);
+        overrunTicks.set(0);
+        totalJitter.set(0);
+        maxJitter.set(0);
+    }
+
     //--------------------------------------------------------------------------
     // [private] implementation
     //
@@ -190,14 +429,31 @@ public final class ClockTimer {
     /**
      * The "tick" of the clock - updates listeners of changes in time.
      */
-    private synchronized void tick() {
+    private void tick() {
+        long now = System.nanoTime();
+
+        // Measure how far this tick strayed from the period.
+        if (tickCount.getAndIncrement() > 0) {
+            long jitter = Math.abs((now - lastTickNano)
+                    - (tickPeriod * NANO_IN_MILLI));
+            totalJitter.addAndGet(jitter);
+
+            if (jitter > maxJitter.get()) {
+                maxJitter.set(jitter);
+            }
+        }
+
+        lastTickNano = now;
+
+        boolean isStopped = state.get().stopped;
 
         if (!isStopped) {
-            long currentNano = System.nanoTime();
-            time += rate * (currentNano - nanoTime) / NANO_IN_MILLI;
-            nanoTime = currentNano;
 
-            notifyTick();
+            if (tickPending.compareAndSet(false, true)) {
+                dispatcher.execute(deliverTick);
+            } else {
+                droppedTicks.incrementAndGet();
+            }
         }
 
         // Notify listeners if the clock has started or stopped since the last
@@ -205,9 +461,9 @@ public final class ClockTimer {
         if (oldIsStopped != isStopped) {
 
             if (isStopped) {
-                notifyStop();
+                notifyStop(getTime());
             } else {
-                notifyStart();
+                notifyStart(getTime());
             }
 
             oldIsStopped = isStopped;
@@ -219,53 +475,99 @@ public final class ClockTimer {
     //
 
     /**
-     * Notify clock listeners of tick event.
+     * Notify clock listeners of tick event. Called on the dispatcher.
+     *
+     * @param time The current time.
      */
-    private void notifyTick() {
+    private void notifyTick(final long time) {
 
         for (ClockListener l : clockListeners) {
-            l.clockTick((long) time);
+
+            try {
+                l.clockTick(time);
+            } catch (RuntimeException e) {
+                LOGGER.error("Clock listener failed to handle tick", e);
+            }
         }
     }
 
     /**
      * Notify clock listeners of rate update event.
+     *
+     * @param rate The new rate.
      */
-    private void notifyRate() {
-
-        for (ClockListener l : clockListeners) {
-            l.clockRate(rate);
-        }
+    private void notifyRate(final float rate) {
+        dispatch(new ClockEvent() {
+                @Override public void deliverTo(final ClockListener l) {
+                    l.clockRate(rate);
+                }
+            });
     }
 
     /**
      * Notify clock listeners of start event.
+     *
+     * @param time The time the clock started at.
      */
-    private void notifyStart() {
-
-        for (ClockListener l : clockListeners) {
-            l.clockStart((long) time);
-        }
+    private void notifyStart(final long time) {
+        dispatch(new ClockEvent() {
+                @Override public void deliverTo(final ClockListener l) {
+                    l.clockStart(time);
+                }
+            });
     }
 
     /**
      * Notify clock listeners of stop event.
+     *
+     * @param time The time the clock stopped at.
      */
-    private void notifyStop() {
-
-        for (ClockListener l : clockListeners) {
-            l.clockStop((long) time);
-        }
+    private void notifyStop(final long time) {
+        dispatch(new ClockEvent() {
+                @Override public void deliverTo(final ClockListener l) {
+                    l.clockStop(time);
+                }
+            });
     }
 
     /**
      * Notify clock listeners of time step event.
+     *
+     * @param time The time the clock was stepped to.
      */
-    private void notifyStep() {
+    private void notifyStep(final long time) {
+        dispatch(new ClockEvent() {
+                @Override public void deliverTo(final ClockListener l) {
+                    l.clockStep(time);
+                }
+            });
+    }
 
-        for (ClockListener l : clockListeners) {
-            l.clockStep((long) time);
+    /**
+     * Queues an event for delivery to all the listeners of the clock.
+     *
+     * @param event The event to deliver.
+     */
+    private void dispatch(final ClockEvent event) {
+
+        if (dispatcher.isShutdown()) {
+            return;
         }
+
+        dispatcher.execute(new Runnable() {
+                @Override public void run() {
+
+                    for (ClockListener l : clockListeners) {
+
+                        try {
+                            event.deliverTo(l);
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Clock listener failed to handle "
+                                + "event", e);
+                        }
+                    }
+                }
+            });
     }
 
 
@@ -273,6 +575,96 @@ public final class ClockTimer {
     //
     //
 
+    /**
+     * An immutable snapshot of the clock.
+     */
+    private static final class State {
+
+        /** Time of the clock at the anchor, in milliseconds. */
+        final double time;
+
+        /** System.nanoTime() at which the clock had the above time. */
+        final long anchor;
+
+        /** Update multiplier. */
+        final float rate;
+
+        /** Is the clock stopped? */
+        final boolean stopped;
+
+        /**
+         * Constructor.
+         *
+         * @param newTime Time of the clock at the anchor, in milliseconds.
+         * @param newAnchor System.nanoTime() at which the clock had the time.
+         * @param newRate Update multiplier.
+         * @param isStopped Is the clock stopped?
+         */
+        State(final double newTime, final long newAnchor, final float newRate,
+            final boolean isStopped) {
+            time = newTime;
+            anchor = newAnchor;
+            rate = newRate;
+            stopped = isStopped;
+        }
+
+        /**
+         * @param nanoTime A value of System.nanoTime().
+         *
+         * @return The time of the clock at the supplied instant.
+         */
+        double timeAt(final long nanoTime) {
+
+            if (stopped) {
+                return time;
+            }
+
+            return time + (rate * (nanoTime - anchor) / NANO_IN_MILLI);
+        }
+    }
+
+    /**
+     * A clock event to deliver to each listener.
+     */
+    private interface ClockEvent {
+
+        /**
+         * @param l The listener to notify of the event.
+         */
+        void deliverTo(ClockListener l);
+    }
+
+    /**
+     * Creates the daemon threads used by the clock.
+     */
+    private static final class ClockThreadFactory implements ThreadFactory {
+
+        /** The name of the threads created. */
+        private final String name;
+
+        /** The priority of the threads created. */
+        private final int priority;
+
+        /**
+         * Constructor.
+         *
+         * @param threadName The name of the threads created.
+         * @param threadPriority The priority of the threads created.
+         */
+        ClockThreadFactory(final String threadName, final int threadPriority) {
+            name = threadName;
+            priority = threadPriority;
+        }
+
+        @Override public Thread newThread(final Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            t.setPriority(priority);
+
+            return t;
+        }
+    }
+
     /**
      * Listener interface for clock 'ticks'.
      */
@@ -70,6 +70,15 @@ public final class ConfigProperties implements Serializable {
     /** Outline colour of a carriage in the selected state */
     private Color mixerInterfaceSelectedOutlineColour;
 
+    /** The vertical scale of the strong temporal spreadsheet layout. */
+    private Double spreadsheetPixelsPerSecond;
+
+    /** The minimum height of a cell in the strong temporal layout. */
+    private Integer spreadsheetMinCellHeight;
+
+    /** The number of media files to transcode at once. */
+    private Integer transcodeWorkers;
+
     /**
      * Default constructor.
      */
@@ -305,4 +314,58 @@ public final class ConfigProperties implements Serializable {
     public void setMixerInterfaceSelectedOutlineColour(final Color newColour) {
         mixerInterfaceSelectedOutlineColour = newColour;
     }
+
+    /**
+     * @return The number of pixels used to represent a second in the strong
+     * temporal spreadsheet layout.
+     */
+    public Double getSSPixelsPerSecond() {
+        return spreadsheetPixelsPerSecond;
+    }
+
+    /**
+     * Sets the vertical scale of the strong temporal spreadsheet layout.
+     *
+     * @param pixels
+     *            The number of pixels used to represent a second.
+     */
+    public void setSSPixelsPerSecond(final Double pixels) {
+        spreadsheetPixelsPerSecond = pixels;
+    }
+
+    /**
+     * @return The minimum height in pixels of a cell in the strong temporal
+     * spreadsheet layout.
+     */
+    public Integer getSSMinCellHeight() {
+        return spreadsheetMinCellHeight;
+    }
+
+    /**
+     * Sets the minimum height of a cell in the strong temporal spreadsheet
+     * layout.
+     *
+     * @param height
+     *            The minimum height in pixels of a cell.
+     */
+    public void setSSMinCellHeight(final Integer height) {
+        spreadsheetMinCellHeight = height;
+    }
+
+    /**
+     * @return The number of media files to transcode at once.
+     */
+    public Integer getTranscodeWorkers() {
+        return transcodeWorkers;
+    }
+
+    /**
+     * Sets the number of media files to transcode at once.
+     *
+     * @param workers
+     *            The number of media files to transcode at once.
+     */
+    public void setTranscodeWorkers(final Integer workers) {
+        transcodeWorkers = workers;
+    }
 }
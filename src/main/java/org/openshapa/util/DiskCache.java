@@ -0,0 +1,126 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.File;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.io.FileUtils;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+
+/**
+ * Keeps a directory of cached files and folders within bounds. Each entry is
+ * touched when it is used, so its modification time says when it was last
+ * used. Entries that haven't been used for a while are removed, then the
+ * least recently used until the cache fits within its size. Entries used
+ * during this session are always kept, as they may still be in use.
+ */
+public final class DiskCache {
+
+    /** Entries unused for this long (in milliseconds) are removed. */
+    static final long STALE = 30L * 24 * 60 * 60 * 1000;
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(DiskCache.class);
+
+    /** Orders files by modification time, oldest first. */
+    private static final Comparator<File> BY_AGE = new Comparator<File>() {
+            @Override public int compare(final File a, final File b) {
+                long ageA = a.lastModified();
+                long ageB = b.lastModified();
+
+                return (ageA < ageB) ? -1 : ((ageA == ageB) ? 0 : 1);
+            }
+        };
+
+    /**
+     * Private constructor, only static methods.
+     */
+    private DiskCache() {
+    }
+
+    /**
+     * Marks an entry of a cache as used, so that it is the last to go.
+     *
+     * @param entry The file or folder that was used.
+     */
+    public static void touch(final File entry) {
+        entry.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Trims a cache, keeping whatever has been used during this session.
+     *
+     * @param dir The directory holding the cache.
+     * @param limit The most bytes the cache may hold.
+     */
+    public static void trim(final File dir, final long limit) {
+        trim(dir, limit, ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * Removes the entries of a cache that haven't been used for a while, then
+     * the least recently used until the cache fits within its size.
+     *
+     * @param dir The directory holding the cache.
+     * @param limit The most bytes the cache may hold.
+     * @param keepSince Entries used since this time are always kept.
+     */
+    static void trim(final File dir, final long limit, final long keepSince) {
+        File[] entries = dir.listFiles();
+
+        if (entries == null) {
+            return;
+        }
+
+        Arrays.sort(entries, BY_AGE);
+
+        long stale = System.currentTimeMillis() - STALE;
+        long total = 0;
+        long[] sizes = new long[entries.length];
+
+        for (int i = 0; i < entries.length; i++) {
+            sizes[i] = FileUtils.sizeOf(entries[i]);
+            total += sizes[i];
+        }
+
+        int removed = 0;
+
+        for (int i = 0; i < entries.length; i++) {
+            long modified = entries[i].lastModified();
+
+            if (modified >= keepSince) {
+                break;
+            }
+
+            if ((modified < stale) || (total > limit)) {
+                FileUtils.deleteQuietly(entries[i]);
+                total -= sizes[i];
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            LOGGER.event("Removed " + removed + " entries from " + dir);
+        }
+    }
+}
@@ -14,6 +14,12 @@
  */
 package org.openshapa.util;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 /**
  * Class for a couple of helper functions for generating hashcodes.
  */
@@ -73,4 +79,28 @@ public final class HashUtils {
         }
         return buf.toString();
     }
+
+    /**
+     * Generates a key for a media file, for naming files derived from it.
+     * The key depends on the path, size and modification time of the media,
+     * so it changes whenever the media does.
+     *
+     * @param media The media file to generate a key for.
+     *
+     * @return The key for the media, in hexadecimal.
+     */
+    public static String mediaKey(final File media) {
+        String key = media.getAbsolutePath() + "|" + media.length() + "|"
+            + media.lastModified();
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+
+            return convertToHex(digest.digest(key.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        } catch (UnsupportedEncodingException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
 }
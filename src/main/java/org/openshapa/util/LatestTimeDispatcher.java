@@ -0,0 +1,100 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+
+/**
+ * Hands times published from any thread to a listener on the event dispatch
+ * thread, such as the clock ticks that update the timestamp display.
+ *
+ * Only the latest time is kept, in a single atomic slot. At most one task is
+ * queued on the EDT at a time, and it delivers whatever time is in the slot
+ * when it runs - times published faster than the EDT can handle them are
+ * coalesced rather than queued up, and no task is created per time.
+ */
+public final class LatestTimeDispatcher {
+
+    /** Marks an empty slot. */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * Listener receiving times on the event dispatch thread.
+     */
+    public interface Listener {
+
+        /**
+         * @param time The latest time published, in milliseconds.
+         */
+        void timeChanged(long time);
+    }
+
+    /** The listener to deliver times to. */
+    private final Listener listener;
+
+    /** The latest time published and not yet delivered. */
+    private final AtomicLong latest = new AtomicLong(EMPTY);
+
+    /** Is a delivery queued on the EDT? */
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+
+    /** Delivers the latest time, reused for every delivery. */
+    private final Runnable delivery = new Runnable() {
+            @Override public void run() {
+                queued.set(false);
+                deliverLatest();
+            }
+        };
+
+    /**
+     * Constructor.
+     *
+     * @param timeListener The listener to deliver times to.
+     */
+    public LatestTimeDispatcher(final Listener timeListener) {
+        listener = timeListener;
+    }
+
+    /**
+     * Publishes a time. When called on the EDT the time is delivered
+     * immediately, otherwise a delivery is queued if one is not already.
+     *
+     * @param time The time to publish, in milliseconds.
+     */
+    public void publish(final long time) {
+        latest.set(time);
+
+        if (SwingUtilities.isEventDispatchThread()) {
+            deliverLatest();
+        } else if (queued.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(delivery);
+        }
+    }
+
+    /**
+     * Delivers the time in the slot to the listener, if there is one.
+     */
+    private void deliverLatest() {
+        long time = latest.getAndSet(EMPTY);
+
+        if (time != EMPTY) {
+            listener.timeChanged(time);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Reads the codec and keyframe layout of the video track of MP4 and
+ * QuickTime files, straight from the sample tables in the file, without
+ * decoding anything.
+ *
+ * Media that is not in an ISO base media (MP4 / QuickTime) container, or is
+ * fragmented, can not be inspected.
+ */
+public final class MediaInspector {
+
+    /** The size of a box header. */
+    private static final int HEADER = 8;
+
+    /** The size of a box header with a 64 bit size. */
+    private static final int LARGE_HEADER = 16;
+
+    /** The number of sync samples read from the file at once. */
+    private static final int SYNC_CHUNK = 4096;
+
+    /**
+     * The codec and keyframes of a video track.
+     */
+    public static final class Inspection {
+
+        /** The four character code of the codec. */
+        private final String codec;
+
+        /** The number of frames in the track. */
+        private final long frames;
+
+        /** The number of keyframes in the track. */
+        private final long keyframes;
+
+        /** The most frames from one keyframe to the next. */
+        private final long maxInterval;
+
+        /**
+         * Constructor.
+         *
+         * @param fourcc The four character code of the codec.
+         * @param frameCount The number of frames in the track.
+         * @param keyframeCount The number of keyframes in the track.
+         * @param interval The most frames from one keyframe to the next.
+         */
+        Inspection(final String fourcc,
+                   final long frameCount,
+                   final long keyframeCount,
+                   final long interval) {
+            codec = fourcc;
+            frames = frameCount;
+            keyframes = keyframeCount;
+            maxInterval = interval;
+        }
+
+        /**
+         * @return The four character code of the codec, such as avc1.
+         */
+        public String getCodec() {
+            return codec;
+        }
+
+        /**
+         * @return The number of frames in the track.
+         */
+        public long getFrameCount() {
+            return frames;
+        }
+
+        /**
+         * @return The number of keyframes in the track.
+         */
+        public long getKeyframeCount() {
+            return keyframes;
+        }
+
+        /**
+         * @return The most frames from one keyframe to the next - seeking may
+         * need to decode this many frames.
+         */
+        public long getMaxKeyframeInterval() {
+            return maxInterval;
+        }
+
+        /**
+         * @return True if every frame is a keyframe.
+         */
+        public boolean isAllIntra() {
+            return (frames > 0) && (keyframes == frames);
+        }
+
+        @Override public String toString() {
+            return "[codec=" + codec + ", frames=" + frames + ", keyframes="
+                + keyframes + ", maxInterval=" + maxInterval + "]";
+        }
+    }
+
+    /**
+     * Private constructor, this is a utility class.
+     */
+    private MediaInspector() {
+    }
+
+    /**
+     * Inspects the first video track of a media file.
+     *
+     * @param media The media file to inspect.
+     *
+     * @return The codec and keyframes of the video track, or null if the
+     * media is not an MP4 or QuickTime file with a video track.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    public static Inspection inspect(final File media) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(media, "r");
+
+        try {
+            long[] moov = findBox(raf, 0, raf.length(), "moov");
+            if (moov == null) {
+                return null;
+            }
+
+            long pos = moov[0];
+            long[] trak;
+
+            while ((trak = findBox(raf, pos, moov[1], "trak")) != null) {
+                Inspection inspection = inspectTrack(raf, trak);
+
+                if (inspection != null) {
+                    return inspection;
+                }
+
+                pos = trak[1];
+            }
+
+            return null;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Checks if a media file is known to have no audio, so there is nothing
+     * to extract from it.
+     *
+     * @param media The media file to check.
+     *
+     * @return True if the media is an MP4 or QuickTime file without a sound
+     * track. False if it has one, or is some other kind of media, which may
+     * or may not have audio.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    public static boolean hasNoAudio(final File media) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(media, "r");
+
+        try {
+            long[] moov = findBox(raf, 0, raf.length(), "moov");
+            if (moov == null) {
+                return false;
+            }
+
+            long pos = moov[0];
+            long[] trak;
+
+            while ((trak = findBox(raf, pos, moov[1], "trak")) != null) {
+                if ("soun".equals(readHandler(raf, trak))) {
+                    return false;
+                }
+
+                pos = trak[1];
+            }
+
+            return true;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @param raf The file being inspected.
+     * @param trak The start and end of the contents of a trak box.
+     *
+     * @return The handler of the track - what kind of track it is, such as
+     * vide or soun - or null if it has none.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    private static String readHandler(final RandomAccessFile raf,
+                                      final long[] trak) throws IOException {
+        long[] hdlr = findPath(raf, trak, "mdia", "hdlr");
+
+        return (hdlr == null) ? null : readType(raf, hdlr[0] + 8);
+    }
+
+    /**
+     * @param raf The file being inspected.
+     * @param trak The start and end of the contents of a trak box.
+     *
+     * @return The inspection of the track, or null if it is not video.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    private static Inspection inspectTrack(final RandomAccessFile raf,
+                                           final long[] trak)
+        throws IOException {
+        if (!"vide".equals(readHandler(raf, trak))) {
+            return null;
+        }
+
+        long[] stbl = findPath(raf, trak, "mdia", "minf", "stbl");
+        if (stbl == null) {
+            return null;
+        }
+
+        // The first sample description names the codec.
+        String codec = null;
+        long[] stsd = findBox(raf, stbl[0], stbl[1], "stsd");
+        if (stsd != null) {
+            codec = readType(raf, stsd[0] + 12);
+        }
+
+        long[] stsz = findBox(raf, stbl[0], stbl[1], "stsz");
+        if (stsz == null) {
+            return null;
+        }
+
+        raf.seek(stsz[0] + 8);
+        long frames = raf.readInt() & 0xFFFFFFFFL;
+
+        // Without a sync sample table, every sample is a keyframe.
+        long[] stss = findBox(raf, stbl[0], stbl[1], "stss");
+        if (stss == null) {
+            return new Inspection(codec, frames, frames, (frames > 0) ? 1 : 0);
+        }
+
+        // The sync samples are read in chunks, as long tracks have a lot of
+        // them. A count larger than the box holds is not trusted.
+        raf.seek(stss[0] + 4);
+        long keyframes = Math.min(raf.readInt() & 0xFFFFFFFFL,
+                (stss[1] - stss[0] - 8) / 4);
+        byte[] chunk = new byte[SYNC_CHUNK * 4];
+        long last = 1;
+        long maxInterval = 0;
+
+        for (long i = 0; i < keyframes; i += SYNC_CHUNK) {
+            int count = (int) Math.min(SYNC_CHUNK, keyframes - i);
+            raf.readFully(chunk, 0, count * 4);
+
+            ByteBuffer samples = ByteBuffer.wrap(chunk, 0, count * 4);
+
+            for (int j = 0; j < count; j++) {
+                long sample = samples.getInt() & 0xFFFFFFFFL;
+
+                maxInterval = Math.max(maxInterval, sample - last);
+                last = sample;
+            }
+        }
+
+        // The frames after the last keyframe.
+        maxInterval = Math.max(maxInterval, frames - last + 1);
+
+        return new Inspection(codec, frames, keyframes, maxInterval);
+    }
+
+    /**
+     * Finds a box nested within a box.
+     *
+     * @param raf The file being inspected.
+     * @param parent The start and end of the contents of the outer box.
+     * @param types The types of the boxes to descend through, outermost
+     * first.
+     *
+     * @return The start and end of the contents of the innermost box, or null
+     * if it was not found.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    private static long[] findPath(final RandomAccessFile raf,
+                                   final long[] parent,
+                                   final String... types) throws IOException {
+        long[] box = parent;
+
+        for (String type : types) {
+            box = findBox(raf, box[0], box[1], type);
+
+            if (box == null) {
+                return null;
+            }
+        }
+
+        return box;
+    }
+
+    /**
+     * Finds the first box of a type between two positions in the file.
+     *
+     * @param raf The file being inspected.
+     * @param start The position to start looking from.
+     * @param end The position to stop looking at.
+     * @param type The type of box to find.
+     *
+     * @return The start and end of the contents of the box, or null if it was
+     * not found.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    private static long[] findBox(final RandomAccessFile raf,
+                                  final long start,
+                                  final long end,
+                                  final String type) throws IOException {
+        long pos = start;
+
+        while (pos + HEADER <= end) {
+            raf.seek(pos);
+
+            long size = raf.readInt() & 0xFFFFFFFFL;
+            String boxType = readType(raf, pos + 4);
+            long header = HEADER;
+
+            if (size == 1) {
+                raf.seek(pos + HEADER);
+                size = raf.readLong();
+                header = LARGE_HEADER;
+            } else if (size == 0) {
+                size = end - pos;
+            }
+
+            if (size < header) {
+                return null;
+            }
+
+            if (boxType.equals(type)) {
+                return new long[] { pos + header, Math.min(pos + size, end) };
+            }
+
+            pos += size;
+        }
+
+        return null;
+    }
+
+    /**
+     * @param raf The file being inspected.
+     * @param pos The position of the four character code.
+     *
+     * @return The four character code at the position.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    private static String readType(final RandomAccessFile raf, final long pos)
+        throws IOException {
+        byte[] type = new byte[4];
+        raf.seek(pos);
+        raf.readFully(type);
+
+        return new String(type, "ISO-8859-1");
+    }
+}
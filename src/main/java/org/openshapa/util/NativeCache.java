@@ -0,0 +1,538 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+
+/**
+ * A cache of unpacked native libraries and applications that is kept between
+ * sessions. Each entry is keyed by a checksum of what was unpacked, so an
+ * unchanged archive is only unpacked the first time it is seen. Entries are
+ * unpacked into a temporary folder and renamed into place, so a half
+ * unpacked entry is never used, and the cache is locked while it changes so
+ * that several instances of OpenSHAPA can share it.
+ *
+ * Each session also gets a folder of its own for the files it writes, which
+ * is removed when the session ends - or by a later session, if it crashed.
+ * The session folder also notes the entries the session uses. Older versions
+ * of an entry, and entries that haven't been used for a while, are removed as
+ * the cache is used - unless a session that is still running uses them.
+ */
+final class NativeCache {
+
+    /** Name of the file used to lock the cache, and each session folder. */
+    static final String LOCK_FILE = ".lock";
+
+    /** Marks a folder that is still being unpacked. */
+    static final String TMP = ".tmp-";
+
+    /** Prefix of the session folders. */
+    static final String RUN = "run-";
+
+    /** Prefix of the folders holding a single library. */
+    static final String LIB = "lib-";
+
+    /** Suffix of the files in a session folder noting the entries it uses. */
+    static final String USES = ".uses";
+
+    /** Suffix of the file remembering the checksum of an archive. */
+    private static final String CHECKSUM = ".sha1";
+
+    /** Entries unused for this long (in milliseconds) are removed. */
+    private static final long STALE = 30L * 24 * 60 * 60 * 1000;
+
+    /** The size of the buffer to use when unpacking. */
+    private static final int BUFFER = 16384;
+
+    /** The folder holding the cache. */
+    private final File root;
+
+    /** The folder for this session, null until asked for. */
+    private File runFolder;
+
+    /** Held for as long as the session folder is in use. */
+    private FileLock runLock;
+
+    /**
+     * Constructor.
+     *
+     * @param folder The folder holding the cache.
+     */
+    NativeCache(final File folder) {
+        root = folder;
+    }
+
+    /**
+     * Unpacks an archive into the cache, unless it is already there.
+     *
+     * @param jar The archive to unpack.
+     *
+     * @return The folder the archive is unpacked in.
+     *
+     * @throws IOException If unable to unpack the archive.
+     */
+    synchronized File unpack(final File jar) throws IOException {
+        String name = jar.getName();
+
+        if (name.endsWith(".jar")) {
+            name = name.substring(0, name.length() - ".jar".length());
+        }
+
+        FileLock lock = lock();
+
+        try {
+            String key = name + "-" + checksum(jar, new File(root,
+                        name + CHECKSUM));
+            File folder = new File(root, key);
+
+            if (!folder.isDirectory()) {
+                File tmp = new File(root, key + TMP + UUID.randomUUID());
+                extract(jar, tmp);
+                rename(tmp, folder);
+            }
+
+            folder.setLastModified(System.currentTimeMillis());
+            use(folder);
+
+            Set<String> used = getUsed();
+            Pattern version = Pattern.compile(Pattern.quote(name)
+                    + "-[0-9a-f]+");
+
+            for (File f : list()) {
+
+                if (version.matcher(f.getName()).matches() && !f.equals(folder)
+                        && !used.contains(f.getName())) {
+                    FileUtils.deleteQuietly(f);
+                }
+            }
+
+            collect(used);
+
+            return folder;
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Stores a single library in the cache, unless it is already there.
+     *
+     * @param fileName The name to give the library.
+     * @param in The contents of the library, which is closed.
+     *
+     * @return The library in the cache.
+     *
+     * @throws IOException If unable to store the library.
+     */
+    synchronized File store(final String fileName, final InputStream in)
+        throws IOException {
+        byte[] data;
+
+        try {
+            data = IOUtils.toByteArray(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        FileLock lock = lock();
+
+        try {
+            File folder = new File(root, LIB
+                    + digest(new ByteArrayInputStream(data)));
+            File file = new File(folder, fileName);
+
+            if (!file.isFile()) {
+                File tmp = new File(root, folder.getName() + TMP
+                        + UUID.randomUUID());
+                FileUtils.writeByteArrayToFile(tmp, data);
+                folder.mkdirs();
+                rename(tmp, file);
+            }
+
+            folder.setLastModified(System.currentTimeMillis());
+            use(folder);
+
+            Set<String> used = getUsed();
+
+            for (File f : list()) {
+
+                if (f.getName().startsWith(LIB) && !f.equals(folder)
+                        && !used.contains(f.getName())
+                        && new File(f, fileName).exists()) {
+                    FileUtils.deleteQuietly(f);
+                }
+            }
+
+            collect(used);
+
+            return file;
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * @return The folder for the files written during this session. It is
+     * created the first time it is asked for.
+     *
+     * @throws IOException If unable to create the folder.
+     */
+    synchronized File getRunFolder() throws IOException {
+
+        if (runFolder == null) {
+            FileLock lock = lock();
+
+            try {
+                createRunFolder();
+            } finally {
+                release(lock);
+            }
+        }
+
+        return runFolder;
+    }
+
+    /**
+     * Removes the folder for this session. Anything unpacked into the cache
+     * stays for the next session.
+     */
+    synchronized void release() {
+
+        if (runFolder != null) {
+            release(runLock);
+            FileUtils.deleteQuietly(runFolder);
+            runLock = null;
+            runFolder = null;
+        }
+    }
+
+    /**
+     * Creates the folder for this session, unless it already exists. Must
+     * hold the lock.
+     *
+     * @throws IOException If unable to create the folder.
+     */
+    private void createRunFolder() throws IOException {
+
+        if (runFolder == null) {
+            File folder = new File(root, RUN + UUID.randomUUID());
+
+            if (!folder.mkdirs()) {
+                throw new IOException("Unable to create " + folder);
+            }
+
+            runLock = lock(folder);
+            runFolder = folder;
+        }
+    }
+
+    /**
+     * Notes in the folder for this session that it uses an entry, so that
+     * other sessions leave the entry alone. Must hold the lock.
+     *
+     * @param entry The entry used.
+     *
+     * @throws IOException If unable to note the entry.
+     */
+    private void use(final File entry) throws IOException {
+        createRunFolder();
+        FileUtils.touch(new File(runFolder, entry.getName() + USES));
+    }
+
+    /**
+     * @return The names of the entries used by the sessions that are still
+     * running, including this one. Must hold the lock.
+     */
+    private Set<String> getUsed() {
+        Set<String> used = new HashSet<String>();
+
+        for (File f : list()) {
+
+            if (!f.getName().startsWith(RUN)
+                    || (!f.equals(runFolder) && !isInUse(f))) {
+                continue;
+            }
+
+            File[] notes = f.listFiles();
+
+            if (notes == null) {
+                continue;
+            }
+
+            for (File note : notes) {
+                String name = note.getName();
+
+                if (name.endsWith(USES)) {
+                    used.add(name.substring(0, name.length() - USES.length()));
+                }
+            }
+        }
+
+        return used;
+    }
+
+    /**
+     * Removes what was left behind by sessions that didn't finish, and the
+     * entries that haven't been used for a while. Must hold the lock.
+     *
+     * @param used The names of the entries used by running sessions, which
+     * are kept.
+     */
+    private void collect(final Set<String> used) {
+        long stale = System.currentTimeMillis() - STALE;
+
+        for (File f : list()) {
+            String name = f.getName();
+
+            if (name.equals(LOCK_FILE) || f.equals(runFolder)
+                    || used.contains(name)) {
+                continue;
+            }
+
+            if (name.startsWith(RUN)) {
+
+                if (!isInUse(f)) {
+                    FileUtils.deleteQuietly(f);
+                }
+            } else if (name.contains(TMP) || (f.lastModified() < stale)) {
+                FileUtils.deleteQuietly(f);
+            }
+        }
+    }
+
+    /**
+     * @param folder The folder of a session.
+     *
+     * @return Is the session still running?
+     */
+    private static boolean isInUse(final File folder) {
+        File file = new File(folder, LOCK_FILE);
+
+        if (!file.exists()) {
+            return false;
+        }
+
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(file, "rw");
+
+            FileLock lock = raf.getChannel().tryLock();
+
+            if (lock == null) {
+                return true;
+            }
+
+            lock.release();
+
+            return false;
+        } catch (OverlappingFileLockException e) {
+
+            // Held by another cache in this JVM.
+            return true;
+        } catch (IOException e) {
+            return true;
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * @return The files and folders in the cache.
+     */
+    private File[] list() {
+        File[] files = root.listFiles();
+
+        return (files == null) ? new File[0] : files;
+    }
+
+    /**
+     * @return The lock on the cache, once it has been acquired.
+     *
+     * @throws IOException If unable to lock the cache.
+     */
+    private FileLock lock() throws IOException {
+
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Unable to create " + root);
+        }
+
+        return lock(root);
+    }
+
+    /**
+     * @param folder The folder to lock.
+     *
+     * @return The lock on the folder, once it has been acquired.
+     *
+     * @throws IOException If unable to lock the folder.
+     */
+    private static FileLock lock(final File folder) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(new File(folder,
+                    LOCK_FILE), "rw");
+
+        try {
+            return raf.getChannel().lock();
+        } catch (IOException e) {
+            IOUtils.closeQuietly(raf);
+            throw e;
+        }
+    }
+
+    /**
+     * @param lock The lock to release, along with its file.
+     */
+    private static void release(final FileLock lock) {
+
+        try {
+            lock.release();
+        } catch (IOException e) {
+            // The lock goes with the file anyway.
+        } finally {
+            IOUtils.closeQuietly(lock.channel());
+        }
+    }
+
+    /**
+     * Moves a freshly unpacked file or folder into place.
+     *
+     * @param from The file or folder that was unpacked.
+     * @param to Where it belongs.
+     *
+     * @throws IOException If unable to move the folder.
+     */
+    private static void rename(final File from, final File to)
+        throws IOException {
+
+        if (!from.renameTo(to)) {
+            FileUtils.deleteQuietly(from);
+            throw new IOException("Unable to move " + from + " to " + to);
+        }
+    }
+
+    /**
+     * Calculates the checksum of an archive, remembering it for as long as
+     * the archive is unchanged.
+     *
+     * @param jar The archive.
+     * @param memo The file to remember the checksum in.
+     *
+     * @return The SHA-1 of the contents of the archive, in hexadecimal.
+     *
+     * @throws IOException If unable to read the archive.
+     */
+    private static String checksum(final File jar, final File memo)
+        throws IOException {
+        String stamp = jar.length() + " " + jar.lastModified() + " ";
+
+        if (memo.isFile()) {
+            String known = FileUtils.readFileToString(memo, "UTF-8").trim();
+
+            if (known.startsWith(stamp)) {
+                memo.setLastModified(System.currentTimeMillis());
+
+                return known.substring(stamp.length());
+            }
+        }
+
+        String sum = digest(new FileInputStream(jar));
+        FileUtils.writeStringToFile(memo, stamp + sum, "UTF-8");
+
+        return sum;
+    }
+
+    /**
+     * @param in The contents to digest, which is closed.
+     *
+     * @return The SHA-1 of the contents, in hexadecimal.
+     *
+     * @throws IOException If unable to read the contents.
+     */
+    private static String digest(final InputStream in) throws IOException {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[BUFFER];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+
+            return HashUtils.convertToHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 unavailable: " + e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Unpacks an archive.
+     *
+     * @param jar The archive to unpack.
+     * @param folder The folder to unpack it into.
+     *
+     * @throws IOException If unable to unpack the archive.
+     */
+    private static void extract(final File jar, final File folder)
+        throws IOException {
+        JarFile file = new JarFile(jar);
+
+        try {
+            Enumeration<JarEntry> entries = file.entries();
+
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                File out = new File(folder, entry.getName());
+
+                if (entry.isDirectory()) {
+                    out.mkdirs();
+                } else {
+                    FileUtils.copyInputStreamToFile(file.getInputStream(entry),
+                        out);
+                }
+            }
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(folder);
+            throw e;
+        } finally {
+            file.close();
+        }
+    }
+}
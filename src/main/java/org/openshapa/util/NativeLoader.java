@@ -14,31 +14,62 @@
  */
 package org.openshapa.util;
 
-import com.google.common.collect.Iterables;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.UUID;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import org.apache.commons.io.FileUtils;
 
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
 
 public class NativeLoader {
 
-    /** The size of the buffer to use when un zipping native libraries. */
-    private static final int BUFFER = 16384;
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(NativeLoader.class);
 
-    /** The list of all the native loaded odds and ends that need unpacking. */
-    private static final ArrayList<File> loadedLibs = new ArrayList<File>();
+    /** The name of the application, as used for its local storage. */
+    private static final String APP_ID = "OpenSHAPA";
 
-    /** The folder that we stash all our native libs within. */
-    private static File nativeLibFolder;
+    /** The vendor of the application, as used for its local storage. */
+    private static final String VENDOR_ID = "NICTA";
+
+    /**
+     * The cache that native libraries and applications are unpacked into. It
+     * is kept between sessions so that they are only unpacked once.
+     */
+    private static final NativeCache CACHE = new NativeCache(new File(
+                getAppDataFolder(), "native"));
+
+    /**
+     * Works out the per-user folder the application keeps its data in. The
+     * temporary folder is purged by the operating system, which would undo
+     * the cache, so the cache is kept here instead. Native libraries are
+     * loaded before the application has started, so its local storage can't
+     * be asked for the folder - it is laid out the same way.
+     *
+     * @return The folder for the application's data.
+     */
+    private static File getAppDataFolder() {
+        String home = System.getProperty("user.home");
+        String os = System.getProperty("os.name");
+
+        if (os.startsWith("Windows")) {
+
+            // Unpacked binaries are kept out of roaming profiles.
+            String appData = System.getenv("LOCALAPPDATA");
+
+            if (appData == null) {
+                appData = System.getenv("APPDATA");
+            }
+
+            return new File(new File((appData == null) ? home : appData,
+                        VENDOR_ID), APP_ID);
+        } else if (os.contains("Mac")) {
+            return new File(home, "Library/Application Support/" + APP_ID);
+        } else {
+            return new File(home, "." + APP_ID);
+        }
+    }
 
     /**
      * Load the given native library.
@@ -63,37 +94,17 @@ public class NativeLoader {
                                     .getResources(libName + extension);
         }
 
-        File outfile;
         while (resources.hasMoreElements()) {
-            outfile = copyFileToTmp((libName + extension), resources.nextElement());
+            loadFromCache((libName + extension), resources.nextElement());
         }
     }
 
-    private static File copyFileToTmp(final String destName, final URL u) throws Exception {
-        System.err.println("Attempting to load: " + u.toString());
-
-        InputStream in = u.openStream();
-        File outfile = new File(System.getProperty("java.io.tmpdir"), destName);
+    private static File loadFromCache(final String destName, final URL u) throws Exception {
+        LOGGER.event("Attempting to load: " + u.toString());
 
-        // Create a temporary output location for the library.
-        FileOutputStream out = new FileOutputStream(outfile);
-        BufferedOutputStream dest = new BufferedOutputStream(out, BUFFER);
-
-        int count;
-        byte[] data = new byte[BUFFER];
-        while ((count = in.read(data, 0, BUFFER)) != -1) {
-            dest.write(data, 0, count);
-        }
-
-        dest.flush();
-        dest.close();
-        out.close();
-        in.close();
-
-        loadedLibs.add(outfile);
-        System.err.println("Temp File:" + outfile);
+        File outfile = CACHE.store(destName, u.openStream());
         System.load(outfile.toString());
-        System.err.println("Extracted lib: " + outfile);
+        LOGGER.event("Loaded lib: " + outfile);
         return outfile;
     }
 
@@ -101,35 +112,28 @@ public class NativeLoader {
         Enumeration<URL> resources = NativeLoader.class.getClassLoader().getResources(libName);
 
         while (resources.hasMoreElements()) {
-            copyFileToTmp(libName, resources.nextElement());
+            loadFromCache(libName, resources.nextElement());
         }
     }
 
     /**
-     * Unpacks a native application to a temporary location so that it can be
-     * utilized from within java code.
+     * Unpacks a native application into the native cache so that it can be
+     * utilized from within java code. The application is only unpacked again
+     * if its jar has changed.
      *
      * @param appJar The jar containing the native app that you want to unpack.
-     * @return The path of the native app as unpacked to a temporary location.
+     * @return The path of the native app as unpacked in the cache. Nothing
+     * should be written here, as it is shared with other sessions - use
+     * {@link #getRunFolder()} instead.
      *
-     * @throws Exception If unable to unpack the native app to a temporary
-     * location.
+     * @throws Exception If unable to unpack the native app.
      */
     public static String unpackNativeApp(final String appJar) throws Exception {
-        final String nativeLibraryPath;
-
-        if (nativeLibFolder == null) {
-            nativeLibraryPath = System.getProperty("java.io.tmpdir")
-                                + UUID.randomUUID().toString() + "nativelibs";
-            nativeLibFolder = new File(nativeLibraryPath);
-
-            if (!nativeLibFolder.exists()) {
-                nativeLibFolder.mkdir();
-            }
-        }
+        final String jarName = appJar.endsWith(".jar") ? appJar
+                                                       : (appJar + ".jar");
 
         // Search the class path for the application jar.
-        JarFile jar = null;
+        File jar = null;
 
         // BugID: 26178921 -- We need to inspect the surefire test class path as
         // well as the regular class path property so that we can scan dependencies
@@ -140,85 +144,41 @@ public class NativeLoader {
 
         for (String s : searchPath.split(File.pathSeparator)) {
             // Success! We found a matching jar.
-            if (s.endsWith(appJar + ".jar")) {
-                jar = new JarFile(s);
+            if (s.endsWith(jarName)) {
+                jar = new File(s);
             }
         }
 
-        // If we found a jar - it should contain the desired application.
-        // decompress as needed.
-        if (jar != null) {
-            Enumeration<JarEntry> entries = jar.entries();
-
-            while (entries.hasMoreElements()) {
-                JarEntry inFile = entries.nextElement();
-                File outFile = new File(nativeLibFolder, inFile.getName());
-
-                // If the file from the jar is a directory, create it.
-                if (inFile.isDirectory()) {
-                    outFile.mkdir();
-
-                    // The file from the jar is regular - decompress it.
-                } else {
-                    InputStream in = jar.getInputStream(inFile);
-
-                    // Create a temporary output location for the library.
-                    FileOutputStream out = new FileOutputStream(outFile);
-                    BufferedOutputStream dest = new BufferedOutputStream(out,
-                                                                         BUFFER);
-                    int count;
-                    byte[] data = new byte[BUFFER];
-
-                    while ((count = in.read(data, 0, BUFFER)) != -1) {
-                        dest.write(data, 0, count);
-                    }
-
-                    dest.flush();
-                    dest.close();
-                    out.close();
-                    in.close();
-                }
-
-                loadedLibs.add(outFile);
-            }
-
-            // Unable to find jar file - abort decompression.
-        } else {
-            System.err.println("Unable to find jar file for unpacking: "
-                               + appJar + ". Java classpath is:");
-
-            for (String s : System.getProperty("java.class.path").split(File.pathSeparator)) {
-                System.err.println("    " + s);
-            }
+        // Unable to find jar file - abort decompression.
+        if (jar == null) {
+            LOGGER.error("Unable to find jar file for unpacking: " + appJar
+                         + ". Java classpath is: "
+                         + System.getProperty("java.class.path"));
 
             throw new Exception("Unable to find '" + appJar + "' for unpacking.");
         }
 
-        return nativeLibFolder.getAbsolutePath();
+        // If we found a jar - it should contain the desired application.
+        return CACHE.unpack(jar).getAbsolutePath();
+    }
+
+    /**
+     * @return The folder for the files that native applications write during
+     * this session, i.e. databases. It is removed by {@link #cleanAllTmpFiles()}.
+     *
+     * @throws IOException If unable to create the folder.
+     */
+    public static File getRunFolder() throws IOException {
+        return CACHE.getRunFolder();
     }
 
     /**
-     * Cleans all the temporary files created by the native loader.
+     * Cleans all the temporary files created by the native loader. Unpacked
+     * libraries and applications stay in the cache for the next session.
      */
     public static void cleanAllTmpFiles() {
-        System.err.println("cleaning temp files");
-
-        for (File loadedLib : Iterables.reverse(loadedLibs)) {
-
-            if (!loadedLib.delete()) {
-                System.err.println("Unable to delete temp file: " + loadedLib);
-            }
-        }
-	
-	// Delete all of the other files that mongo has created
-	try {
-		FileUtils.deleteDirectory(nativeLibFolder);
-	} catch (IOException e) {
-		e.printStackTrace();
-	}
-        if ((nativeLibFolder != null) && !nativeLibFolder.delete()) {
-            System.err.println("Unable to delete temp folder: + " + nativeLibFolder);
-        }
+        LOGGER.event("cleaning temp files");
+        CACHE.release();
     }
 
 }
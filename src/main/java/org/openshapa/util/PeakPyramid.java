@@ -0,0 +1,440 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.apache.commons.io.IOUtils;
+
+
+/**
+ * The peaks of an audio track at a range of resolutions, for painting its
+ * waveform.
+ *
+ * The finest level holds the smallest and largest sample of each fixed size
+ * block of samples. Each level above it holds the peaks of pairs of buckets
+ * from the level below, so it has half as many buckets, like the mipmaps of
+ * a texture. Painting picks the level whose buckets are closest to, without
+ * being wider than, a pixel - so painting an hour of audio looks at about as
+ * many buckets as there are pixels, no matter how many samples there are.
+ *
+ * Peaks are scaled to a byte each, which is plenty for painting and keeps
+ * the pyramid of an hour of audio to a couple of megabytes.
+ */
+public final class PeakPyramid {
+
+    /** Identifies a peak file, "OSPK". */
+    private static final int MAGIC = 0x4F53504B;
+
+    /** The version of the peak file format. */
+    private static final int VERSION = 1;
+
+    /** The bytes before the first level: magic, version, rate, bucket size
+     * and level count. */
+    private static final int HEADER_SIZE = 20;
+
+    /** Levels stop once they have this few buckets. */
+    private static final int MIN_BUCKETS = 2;
+
+    /** The sample rate of the audio, in hertz. */
+    private final int sampleRate;
+
+    /** The number of samples in each bucket of the finest level. */
+    private final int samplesPerBucket;
+
+    /** The smallest sample of each bucket, by level. */
+    private final byte[][] mins;
+
+    /** The largest sample of each bucket, by level. */
+    private final byte[][] maxs;
+
+    /**
+     * Builds the peaks of audio, a sample at a time.
+     */
+    public static final class Builder {
+
+        /** The sample rate of the audio, in hertz. */
+        private final int rate;
+
+        /** The number of samples in each bucket of the finest level. */
+        private final int bucketSize;
+
+        /** The smallest sample of each finished bucket. */
+        private byte[] mins = new byte[1024];
+
+        /** The largest sample of each finished bucket. */
+        private byte[] maxs = new byte[1024];
+
+        /** The number of finished buckets. */
+        private int buckets = 0;
+
+        /** The number of samples in the current bucket. */
+        private int samples = 0;
+
+        /** The smallest sample in the current bucket. */
+        private int min = Integer.MAX_VALUE;
+
+        /** The largest sample in the current bucket. */
+        private int max = Integer.MIN_VALUE;
+
+        /**
+         * Constructor.
+         *
+         * @param sampleRate The sample rate of the audio, in hertz.
+         * @param samplesPerBucket The number of samples in each bucket of the
+         * finest level.
+         */
+        public Builder(final int sampleRate, final int samplesPerBucket) {
+            rate = sampleRate;
+            bucketSize = samplesPerBucket;
+        }
+
+        /**
+         * @param sample The next sample, between -32768 and 32767.
+         */
+        public void add(final int sample) {
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+
+            if (++samples == bucketSize) {
+                endBucket();
+            }
+        }
+
+        /**
+         * @return The peaks of the audio added.
+         */
+        public PeakPyramid build() {
+            if (samples > 0) {
+                endBucket();
+            }
+
+            int levels = 1;
+            for (int n = buckets; n > MIN_BUCKETS; n = (n + 1) / 2) {
+                levels++;
+            }
+
+            byte[][] levelMins = new byte[levels][];
+            byte[][] levelMaxs = new byte[levels][];
+            levelMins[0] = new byte[buckets];
+            levelMaxs[0] = new byte[buckets];
+            System.arraycopy(mins, 0, levelMins[0], 0, buckets);
+            System.arraycopy(maxs, 0, levelMaxs[0], 0, buckets);
+
+            for (int level = 1; level < levels; level++) {
+                byte[] finerMins = levelMins[level - 1];
+                byte[] finerMaxs = levelMaxs[level - 1];
+                int count = (finerMins.length + 1) / 2;
+
+                levelMins[level] = new byte[count];
+                levelMaxs[level] = new byte[count];
+
+                for (int i = 0; i < count; i++) {
+                    int a = 2 * i;
+                    int b = Math.min(a + 1, finerMins.length - 1);
+
+                    levelMins[level][i] = (byte) Math.min(finerMins[a],
+                            finerMins[b]);
+                    levelMaxs[level][i] = (byte) Math.max(finerMaxs[a],
+                            finerMaxs[b]);
+                }
+            }
+
+            return new PeakPyramid(rate, bucketSize, levelMins, levelMaxs);
+        }
+
+        /**
+         * Finishes the current bucket.
+         */
+        private void endBucket() {
+            if (buckets == mins.length) {
+                byte[] grown = new byte[buckets * 2];
+                System.arraycopy(mins, 0, grown, 0, buckets);
+                mins = grown;
+
+                grown = new byte[buckets * 2];
+                System.arraycopy(maxs, 0, grown, 0, buckets);
+                maxs = grown;
+            }
+
+            mins[buckets] = (byte) (min >> 8);
+            maxs[buckets] = (byte) (max >> 8);
+            buckets++;
+
+            samples = 0;
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param rate The sample rate of the audio, in hertz.
+     * @param bucketSize The number of samples in each bucket of the finest
+     * level.
+     * @param levelMins The smallest sample of each bucket, by level.
+     * @param levelMaxs The largest sample of each bucket, by level.
+     */
+    private PeakPyramid(final int rate,
+                        final int bucketSize,
+                        final byte[][] levelMins,
+                        final byte[][] levelMaxs) {
+        sampleRate = rate;
+        samplesPerBucket = bucketSize;
+        mins = levelMins;
+        maxs = levelMaxs;
+    }
+
+    /**
+     * Builds the peaks of a WAV file. Audio with more than one channel is
+     * mixed down to one.
+     *
+     * @param wav The WAV file to read.
+     * @param samplesPerBucket The number of samples in each bucket of the
+     * finest level.
+     *
+     * @return The peaks of the audio.
+     *
+     * @throws IOException If the file could not be read.
+     * @throws UnsupportedAudioFileException If the file is not audio Java can
+     * read.
+     */
+    public static PeakPyramid fromWav(final File wav,
+                                      final int samplesPerBucket)
+        throws IOException, UnsupportedAudioFileException {
+        AudioInputStream in = AudioSystem.getAudioInputStream(wav);
+
+        try {
+            AudioFormat source = in.getFormat();
+            int channels = Math.max(1, source.getChannels());
+            AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                    source.getSampleRate(), 16, channels, 2 * channels,
+                    source.getSampleRate(), false);
+
+            if (!source.matches(pcm)) {
+                in = AudioSystem.getAudioInputStream(pcm, in);
+            }
+
+            Builder builder = new Builder(Math.round(source.getSampleRate()),
+                    samplesPerBucket);
+            byte[] buffer = new byte[8192 * pcm.getFrameSize()];
+            int frameSize = pcm.getFrameSize();
+            int read;
+            int carried = 0;
+
+            while ((read = in.read(buffer, carried, buffer.length - carried))
+                    > 0) {
+                int length = carried + read;
+                int whole = length - (length % frameSize);
+
+                for (int i = 0; i < whole; i += frameSize) {
+                    int sum = 0;
+
+                    for (int c = 0; c < channels; c++) {
+                        int at = i + (2 * c);
+                        sum += (short) ((buffer[at] & 0xFF)
+                                | (buffer[at + 1] << 8));
+                    }
+
+                    builder.add(sum / channels);
+                }
+
+                // Keep any partial frame for the next read.
+                carried = length - whole;
+                System.arraycopy(buffer, whole, buffer, 0, carried);
+            }
+
+            return builder.build();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Reads peaks saved by {@link #write(File)}.
+     *
+     * @param file The file to read.
+     *
+     * @return The peaks.
+     *
+     * @throws IOException If the file could not be read, or is not a peak
+     * file.
+     */
+    public static PeakPyramid read(final File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+
+        try {
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                throw new IOException("Not a peak file: " + file);
+            }
+
+            int rate = in.readInt();
+            int bucketSize = in.readInt();
+            int levels = in.readInt();
+
+            if ((rate <= 0) || (bucketSize <= 0) || (levels <= 0)) {
+                throw new IOException("Damaged peak file: " + file);
+            }
+
+            // Each level needs at least its count, so a damaged header can't
+            // make us allocate more than the file holds.
+            long remaining = file.length() - HEADER_SIZE;
+
+            if (levels > (remaining / 4)) {
+                throw new IOException("Damaged peak file: " + file);
+            }
+
+            byte[][] levelMins = new byte[levels][];
+            byte[][] levelMaxs = new byte[levels][];
+
+            for (int level = 0; level < levels; level++) {
+                int count = in.readInt();
+                long size = 4 + (2L * count);
+
+                if ((count < 0) || (size > remaining)) {
+                    throw new IOException("Damaged peak file: " + file);
+                }
+
+                remaining -= size;
+                levelMins[level] = new byte[count];
+                levelMaxs[level] = new byte[count];
+                in.readFully(levelMins[level]);
+                in.readFully(levelMaxs[level]);
+            }
+
+            return new PeakPyramid(rate, bucketSize, levelMins, levelMaxs);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Saves the peaks. They are written to a temporary file first, so that a
+     * half written file is never read.
+     *
+     * @param file The file to write.
+     *
+     * @throws IOException If the file could not be written.
+     */
+    public void write(final File file) throws IOException {
+        File part = new File(file.getPath() + ".part");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(part)));
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sampleRate);
+            out.writeInt(samplesPerBucket);
+            out.writeInt(mins.length);
+
+            for (int level = 0; level < mins.length; level++) {
+                out.writeInt(mins[level].length);
+                out.write(mins[level]);
+                out.write(maxs[level]);
+            }
+
+            out.close();
+            out = null;
+
+            file.delete();
+            if (!part.renameTo(file)) {
+                throw new IOException("Unable to write " + file);
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+            part.delete();
+        }
+    }
+
+    /**
+     * @return The number of levels.
+     */
+    public int getLevelCount() {
+        return mins.length;
+    }
+
+    /**
+     * @param level A level.
+     *
+     * @return The number of buckets in the level.
+     */
+    public int getBucketCount(final int level) {
+        return mins[level].length;
+    }
+
+    /**
+     * @param level A level.
+     *
+     * @return The time each bucket of the level covers, in milliseconds.
+     */
+    public double getBucketDuration(final int level) {
+        return 1000.0 * ((long) samplesPerBucket << level) / sampleRate;
+    }
+
+    /**
+     * Picks the level to paint at a zoom level. This is the coarsest level
+     * whose buckets are no wider than a pixel, so each pixel covers no more
+     * than a few buckets and no detail is lost.
+     *
+     * @param msPerPixel The time each pixel covers, in milliseconds.
+     *
+     * @return The level to paint.
+     */
+    public int levelFor(final double msPerPixel) {
+        int level = 0;
+
+        while (((level + 1) < mins.length)
+                && (getBucketDuration(level + 1) <= msPerPixel)) {
+            level++;
+        }
+
+        return level;
+    }
+
+    /**
+     * @param level A level.
+     * @param bucket A bucket in the level.
+     *
+     * @return The smallest sample in the bucket, between -128 and 127.
+     */
+    public int getMin(final int level, final int bucket) {
+        return mins[level][bucket];
+    }
+
+    /**
+     * @param level A level.
+     * @param bucket A bucket in the level.
+     *
+     * @return The largest sample in the bucket, between -128 and 127.
+     */
+    public int getMax(final int level, final int bucket) {
+        return maxs[level][bucket];
+    }
+}
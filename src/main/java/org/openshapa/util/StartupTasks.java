@@ -0,0 +1,422 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.usermetrix.jclient.UserMetrix;
+
+
+/**
+ * Runs the steps of starting OpenSHAPA as a graph of tasks. Each task is run
+ * on a small pool of threads as soon as the tasks it depends on have
+ * finished, so independent steps overlap and the window only waits for the
+ * steps it needs. Steps that must run on a particular thread (i.e. building
+ * the window on the EDT) can be run in place and are timed along with the
+ * rest.
+ *
+ * A task whose dependency failed is skipped, and takes on the failure of the
+ * dependency - waiting for it passes the original exception on.
+ *
+ * Once the graph has been sealed and every task has finished, a report of
+ * when each task started and how long it took is written to the log.
+ */
+public final class StartupTasks {
+
+    /** Used to convert between nanoseconds and milliseconds. */
+    private static final long NANO_IN_MILLI = 1000000L;
+
+    /**
+     * A step of starting up.
+     */
+    public static final class Task {
+
+        /** The name of the task, for the report. */
+        private final String name;
+
+        /** The work of the task. */
+        private final Runnable work;
+
+        /** The tasks waiting on this one. */
+        private final List<Task> dependents = new ArrayList<Task>();
+
+        /** Released once the task has finished. */
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /** The number of tasks this one is still waiting on. */
+        private int waitingOn;
+
+        /** Has the task finished? Guarded by the graph. */
+        private boolean finished;
+
+        /** System.nanoTime() at which the task was added. */
+        private final long added = System.nanoTime();
+
+        /** System.nanoTime() at which the task started. */
+        private volatile long started;
+
+        /** System.nanoTime() at which the task finished. */
+        private volatile long ended;
+
+        /** The thread that ran the task. */
+        private volatile String thread;
+
+        /** What the task, or a task it depends on, threw. Null if it
+            succeeded. */
+        private volatile Throwable failure;
+
+        /** Was the task skipped because a task it depends on failed? */
+        private volatile boolean skipped;
+
+        /**
+         * Constructor.
+         *
+         * @param taskName The name of the task.
+         * @param taskWork The work of the task.
+         */
+        private Task(final String taskName, final Runnable taskWork) {
+            name = taskName;
+            work = taskWork;
+        }
+
+        /**
+         * @return The name of the task.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Has the task finished?
+         */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * @return What the task threw, or what a task it depends on threw if
+         * it was skipped. Null if it succeeded or hasn't finished.
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return Was the task skipped because a task it depends on failed?
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Skips the task, as a task it depends on failed. Must hold the lock
+         * on the graph.
+         *
+         * @param cause What the task it depends on threw.
+         */
+        private void skip(final Throwable cause) {
+            if (failure == null) {
+                failure = cause;
+                skipped = true;
+            }
+        }
+    }
+
+    /** System.nanoTime() at which the graph was created. */
+    private final long created = System.nanoTime();
+
+    /** Runs the tasks. */
+    private final ExecutorService executor;
+
+    /** Every task, in the order added. */
+    private final List<Task> tasks = new ArrayList<Task>();
+
+    /** The number of tasks that haven't finished. */
+    private int unfinished;
+
+    /** Have all the tasks been added? */
+    private boolean sealed;
+
+    /**
+     * Constructor.
+     *
+     * @param threads The number of tasks to run at once.
+     */
+    public StartupTasks(final int threads) {
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    private int count;
+
+                    @Override public Thread newThread(final Runnable r) {
+                        Thread t = new Thread(r, "Startup-" + (++count));
+                        t.setDaemon(true);
+
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Adds a task, to be run once the tasks it depends on have finished. The
+     * task is skipped if a task it depends on failed.
+     *
+     * @param name The name of the task, for the report.
+     * @param work The work of the task.
+     * @param dependencies The tasks that must finish first.
+     *
+     * @return The task.
+     */
+    public synchronized Task add(final String name, final Runnable work,
+        final Task... dependencies) {
+
+        if (sealed) {
+            throw new IllegalStateException("Startup has finished");
+        }
+
+        final Task task = new Task(name, work);
+        tasks.add(task);
+        unfinished++;
+
+        for (Task dependency : dependencies) {
+
+            if (!dependency.finished) {
+                dependency.dependents.add(task);
+                task.waitingOn++;
+            } else if (dependency.failure != null) {
+                task.skip(dependency.failure);
+            }
+        }
+
+        if (task.waitingOn == 0) {
+            submit(task);
+        }
+
+        return task;
+    }
+
+    /**
+     * Runs a task on the calling thread, timing it along with the rest.
+     *
+     * @param name The name of the task, for the report.
+     * @param work The work of the task, whose exceptions are passed on.
+     */
+    public void run(final String name, final Runnable work) {
+        final Task task;
+
+        synchronized (this) {
+            task = new Task(name, work);
+            tasks.add(task);
+            unfinished++;
+        }
+
+        execute(task);
+        complete(task);
+        rethrow(task);
+    }
+
+    /**
+     * Waits for a task to finish.
+     *
+     * @param task The task to wait for, or null to not wait.
+     *
+     * @throws RuntimeException What the task threw, or what a task it depends
+     * on threw if it was skipped.
+     * @throws Error What the task threw, or what a task it depends on threw if
+     * it was skipped.
+     */
+    public void await(final Task task) {
+
+        if (task == null) {
+            return;
+        }
+
+        boolean interrupted = false;
+
+        while (true) {
+
+            try {
+                task.done.await();
+
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        rethrow(task);
+    }
+
+    /**
+     * Passes on what a finished task threw, if anything.
+     *
+     * @param task The finished task.
+     */
+    private static void rethrow(final Task task) {
+
+        if (task.failure instanceof RuntimeException) {
+            throw (RuntimeException) task.failure;
+        } else if (task.failure instanceof Error) {
+            throw (Error) task.failure;
+        } else if (task.failure != null) {
+            throw new IllegalStateException(task.failure);
+        }
+    }
+
+    /**
+     * Marks that every task has been added. The report is written once they
+     * have all finished.
+     */
+    public void seal() {
+
+        synchronized (this) {
+            sealed = true;
+        }
+
+        reportIfFinished();
+    }
+
+    /**
+     * @param task The task to run on the pool.
+     */
+    private void submit(final Task task) {
+        executor.execute(new Runnable() {
+                @Override public void run() {
+                    execute(task);
+                    complete(task);
+                }
+            });
+    }
+
+    /**
+     * Runs the work of a task on the calling thread.
+     *
+     * @param task The task to run.
+     */
+    private void execute(final Task task) {
+        task.thread = Thread.currentThread().getName();
+        task.started = System.nanoTime();
+
+        if (task.skipped) {
+            task.ended = task.started;
+
+            return;
+        }
+
+        try {
+            task.work.run();
+        } catch (Throwable t) {
+            task.failure = t;
+        } finally {
+            task.ended = System.nanoTime();
+        }
+    }
+
+    /**
+     * Releases the tasks waiting on a task that has finished.
+     *
+     * @param task The task that has finished.
+     */
+    private void complete(final Task task) {
+
+        synchronized (this) {
+            task.finished = true;
+            unfinished--;
+
+            for (Task dependent : task.dependents) {
+
+                if (task.failure != null) {
+                    dependent.skip(task.failure);
+                }
+
+                if (--dependent.waitingOn == 0) {
+                    submit(dependent);
+                }
+            }
+
+            task.dependents.clear();
+        }
+
+        task.done.countDown();
+        reportIfFinished();
+    }
+
+    /**
+     * Writes the report and stops the threads, if startup has finished.
+     */
+    private void reportIfFinished() {
+        final String report;
+
+        synchronized (this) {
+
+            if (!sealed || (unfinished > 0) || executor.isShutdown()) {
+                return;
+            }
+
+            executor.shutdown();
+            report = report();
+        }
+
+        // The logger is looked up now rather than held statically, as the
+        // first tasks start before UserMetrix has been initialised.
+        UserMetrix.getLogger(StartupTasks.class).event(report);
+    }
+
+    /**
+     * @return A report of when each task started and how long it took,
+     * relative to when the graph was created. Must hold the lock.
+     */
+    String report() {
+        List<Task> ordered = new ArrayList<Task>(tasks);
+        Collections.sort(ordered, new Comparator<Task>() {
+                @Override public int compare(final Task a, final Task b) {
+                    return (a.started < b.started)
+                        ? -1 : ((a.started == b.started) ? 0 : 1);
+                }
+            });
+
+        long end = created;
+
+        for (Task task : ordered) {
+            end = Math.max(end, task.ended);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Startup took %dms",
+                (end - created) / NANO_IN_MILLI));
+
+        for (Task task : ordered) {
+            sb.append(String.format(
+                    "%n  %-16s at %6dms took %6dms (waited %dms) on %s%s",
+                    task.name, (task.started - created) / NANO_IN_MILLI,
+                    (task.ended - task.started) / NANO_IN_MILLI,
+                    (task.started - task.added) / NANO_IN_MILLI, task.thread,
+                    (task.failure == null)
+                    ? "" : ((task.skipped ? " SKIPPED: " : " FAILED: ")
+                        + task.failure)));
+        }
+
+        return sb.toString();
+    }
+}
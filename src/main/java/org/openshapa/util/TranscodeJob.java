@@ -0,0 +1,219 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.File;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+ * A media file waiting to be, or being, transcoded by the
+ * {@link TranscodeQueue}.
+ */
+public final class TranscodeJob {
+
+    /**
+     * The kinds of transcoding.
+     */
+    public enum Kind {
+
+        /** Converts media to H.264 with every frame a keyframe. */
+        CONVERT,
+
+        /** Creates a small, all keyframe, copy of media for scrubbing. */
+        PROXY,
+
+        /** Extracts the audio of media, as 8 kHz mono PCM in a WAV file. */
+        AUDIO
+    }
+
+    /**
+     * The states of a job.
+     */
+    public enum State {
+
+        /** Waiting for a worker. */
+        QUEUED,
+
+        /** Being transcoded. */
+        RUNNING,
+
+        /** Transcoded successfully. */
+        DONE,
+
+        /** Transcoding failed. */
+        FAILED,
+
+        /** Cancelled before it finished. */
+        CANCELLED;
+
+        /**
+         * @return True if the job will not change state again.
+         */
+        public boolean isFinished() {
+            return (this == DONE) || (this == FAILED) || (this == CANCELLED);
+        }
+    }
+
+    /** Identifies the job. */
+    private final String id;
+
+    /** The kind of transcoding. */
+    private final Kind kind;
+
+    /** The media to transcode. */
+    private final File source;
+
+    /** The file to write the transcoded media to. */
+    private final File target;
+
+    /** The state of the job. */
+    private volatile State state;
+
+    /** How far through the media the job is, between 0 and 1. */
+    private volatile float progress;
+
+    /**
+     * Constructor.
+     *
+     * @param jobId Identifies the job.
+     * @param jobKind The kind of transcoding.
+     * @param sourceFile The media to transcode.
+     * @param targetFile The file to write the transcoded media to.
+     * @param jobState The state of the job.
+     */
+    private TranscodeJob(final String jobId,
+                         final Kind jobKind,
+                         final File sourceFile,
+                         final File targetFile,
+                         final State jobState) {
+        id = jobId;
+        kind = jobKind;
+        source = sourceFile;
+        target = targetFile;
+        state = jobState;
+    }
+
+    /**
+     * Creates a new, queued, job.
+     *
+     * @param kind The kind of transcoding.
+     * @param source The media to transcode.
+     * @param target The file to write the transcoded media to.
+     *
+     * @return The job.
+     */
+    static TranscodeJob create(final Kind kind,
+                               final File source,
+                               final File target) {
+        return new TranscodeJob(UUID.randomUUID().toString(), kind, source,
+                target, State.QUEUED);
+    }
+
+    /**
+     * @return Identifies the job.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return The kind of transcoding.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The media to transcode.
+     */
+    public File getSource() {
+        return source;
+    }
+
+    /**
+     * @return The file the transcoded media is written to.
+     */
+    public File getTarget() {
+        return target;
+    }
+
+    /**
+     * @return The state of the job.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @param newState The state of the job.
+     */
+    void setState(final State newState) {
+        state = newState;
+    }
+
+    /**
+     * @return How far through the media the job is, between 0 and 1.
+     */
+    public float getProgress() {
+        return progress;
+    }
+
+    /**
+     * @param position How far through the media the job is, between 0 and 1.
+     */
+    void setProgress(final float position) {
+        progress = position;
+    }
+
+    /**
+     * @return The job as a map, for saving in YAML.
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("id", id);
+        map.put("kind", kind.name());
+        map.put("source", source.getAbsolutePath());
+        map.put("target", target.getAbsolutePath());
+        map.put("state", state.name());
+
+        return map;
+    }
+
+    /**
+     * @param map A job saved by {@link #toMap()}.
+     *
+     * @return The job, or null if the map is damaged.
+     */
+    static TranscodeJob fromMap(final Map<?, ?> map) {
+        try {
+            return new TranscodeJob((String) map.get("id"),
+                    Kind.valueOf((String) map.get("kind")),
+                    new File((String) map.get("source")),
+                    new File((String) map.get("target")),
+                    State.valueOf((String) map.get("state")));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override public String toString() {
+        return "[TranscodeJob " + kind + " " + source + " -> " + target + " "
+            + state + "]";
+    }
+}
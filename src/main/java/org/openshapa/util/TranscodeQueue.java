@@ -0,0 +1,589 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+
+import org.jdesktop.application.LocalStorage;
+
+import org.openshapa.Configuration;
+import org.openshapa.OpenSHAPA;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
+
+import uk.co.caprica.vlcj.player.MediaPlayer;
+import uk.co.caprica.vlcj.player.MediaPlayerEventAdapter;
+import uk.co.caprica.vlcj.player.MediaPlayerFactory;
+import uk.co.caprica.vlcj.player.headless.HeadlessMediaPlayer;
+
+
+/**
+ * Transcodes media in the background, independently of any window.
+ *
+ * Jobs are run by a fixed number of worker threads (set in the
+ * {@link Configuration}), each driving a headless VLC player with a stream
+ * output chain. The queue is saved to local storage whenever a job changes
+ * state; jobs that were queued or running when OpenSHAPA exited are started
+ * again from the beginning the next time it runs. A stream output chain can't
+ * carry on from a partly written file, so that output is thrown away - it is
+ * written to a temporary file and only renamed into place once transcoding
+ * finishes, so a job that is interrupted never leaves a truncated file
+ * behind.
+ *
+ * Besides converting media on request, the queue creates proxies - small
+ * copies of media in which every frame is a keyframe. Seeking within a proxy
+ * only ever needs to decode a single frame, so they are used for scrubbing
+ * and jogging, while the original media is kept for everything else. Proxies
+ * are kept to a size, those of the media opened least recently going first.
+ * The queue also extracts the audio of media, for drawing its waveform.
+ */
+public enum TranscodeQueue {
+
+    INSTANCE;
+
+    /**
+     * Listener notified of changes to jobs. Listeners are notified on the
+     * worker threads.
+     */
+    public interface Listener {
+
+        /**
+         * @param job The job whose state or progress changed.
+         */
+        void jobChanged(TranscodeJob job);
+    }
+
+    /** Name of the file to save the queue to. */
+    private static final String fileName = "transcode_queue.yml";
+
+    /** Name of the directory proxies are kept in. */
+    private static final String PROXY_DIR = "proxies";
+
+    /** The most bytes of proxies to keep. */
+    private static final long PROXY_LIMIT = 4L * 1024 * 1024 * 1024;
+
+    /** The most finished jobs to remember. */
+    private static final int HISTORY_LIMIT = 100;
+
+    /** How often to check a running job for cancellation, in ms. */
+    private static final long POLL = 250;
+
+    /** Progress changes smaller than this are not reported. */
+    private static final float PROGRESS_STEP = 0.01f;
+
+    /** The width of proxy media. */
+    private static final int PROXY_WIDTH = 640;
+
+    /** Stream output for conversions, every frame a keyframe. */
+    private static final String CONVERT_SOUT = ":sout=#transcode{vcodec=h264,"
+        + "vb=1024,acodec=mp4a,ab=192,venc=x264{keyint=1,min-keyint=1,"
+        + "bframes=0}}:standard{mux=mp4,dst=%s,access=file}";
+
+    /** Stream output for proxies, small and every frame a keyframe. */
+    private static final String PROXY_SOUT = ":sout=#transcode{vcodec=h264,"
+        + "vb=800,width=" + PROXY_WIDTH + ",acodec=none,venc=x264{keyint=1,"
+        + "min-keyint=1,bframes=0}}:standard{mux=mp4,dst=%s,access=file}";
+
+    /** Stream output for audio extraction, 8 kHz mono PCM. */
+    private static final String AUDIO_SOUT = ":sout=#transcode{acodec=s16l,"
+        + "channels=1,samplerate=8000}:standard{mux=wav,dst=%s,access=file}";
+
+    /** Class logger. */
+    private static Logger LOGGER = UserMetrix.getLogger(TranscodeQueue.class);
+
+    /** The file to save the queue to. */
+    private final File queueFile;
+
+    /** The directory proxies are kept in. */
+    private final File proxyDir;
+
+    /** Every job, keyed by id, oldest first. */
+    private final Map<String, TranscodeJob> jobs =
+        new LinkedHashMap<String, TranscodeJob>();
+
+    /** Listeners notified of changes to jobs. */
+    private final Set<Listener> listeners =
+        new CopyOnWriteArraySet<Listener>();
+
+    /** Runs the jobs. */
+    private final ExecutorService workers;
+
+    /** Factory for the players doing the transcoding, created when needed. */
+    private MediaPlayerFactory factory;
+
+    private TranscodeQueue() {
+        LocalStorage storage = OpenSHAPA.getApplication().getContext()
+            .getLocalStorage();
+
+        queueFile = new File(storage.getDirectory(), fileName);
+        proxyDir = new File(storage.getDirectory(), PROXY_DIR);
+
+        workers = Executors.newFixedThreadPool(Configuration.getInstance()
+                .getTranscodeWorkers(), new ThreadFactory() {
+                    @Override public Thread newThread(final Runnable r) {
+                        Thread t = new Thread(r, "Transcoder");
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+
+                        return t;
+                    }
+                });
+
+        if (queueFile.exists()) {
+            load();
+        }
+
+        // Proxies of media that hasn't been opened for a while make way.
+        workers.execute(new Runnable() {
+                @Override public void run() {
+                    DiskCache.trim(proxyDir, PROXY_LIMIT);
+                }
+            });
+
+        // Start again from the beginning anything that was interrupted.
+        for (TranscodeJob job : getJobs()) {
+            if (!job.getState().isFinished()) {
+                job.setProgress(0);
+                job.setState(TranscodeJob.State.QUEUED);
+                schedule(job);
+            }
+        }
+    }
+
+    /**
+     * Loads the queue and restarts, from the beginning, any jobs that were
+     * interrupted when OpenSHAPA last exited.
+     */
+    public static void resume() {
+        // Loading the queue happens when it is first used.
+        LOGGER.event("Transcode queue holds " + getJobs().size() + " jobs");
+    }
+
+    /**
+     * Queues media to be converted to H.264 with every frame a keyframe.
+     *
+     * @param source The media to convert.
+     * @param target The file to write the converted media to.
+     *
+     * @return The job converting the media.
+     */
+    public static TranscodeJob convert(final File source, final File target) {
+        return INSTANCE.submit(TranscodeJob.Kind.CONVERT, source, target);
+    }
+
+    /**
+     * Queues the extraction of the audio of media to a WAV file.
+     *
+     * @param source The media to extract the audio of.
+     * @param target The WAV file to write the audio to.
+     *
+     * @return The job extracting the audio.
+     */
+    public static TranscodeJob extractAudio(final File source,
+                                            final File target) {
+        return INSTANCE.submit(TranscodeJob.Kind.AUDIO, source, target);
+    }
+
+    /**
+     * @param media Media that may have a proxy.
+     *
+     * @return The proxy for the media, or null if it has not been created.
+     * The proxy is marked as used, so that it is the last to be trimmed.
+     */
+    public static File getProxy(final File media) {
+        File proxy = INSTANCE.proxyFor(media);
+
+        if (!proxy.isFile()) {
+            return null;
+        }
+
+        DiskCache.touch(proxy);
+
+        return proxy;
+    }
+
+    /**
+     * Queues the creation of a proxy for media, unless it already has one or
+     * it is already queued.
+     *
+     * @param media The media to create a proxy for.
+     *
+     * @return The job creating the proxy, or null if it already exists.
+     */
+    public static TranscodeJob requestProxy(final File media) {
+        if (getProxy(media) != null) {
+            return null;
+        }
+
+        return INSTANCE.submit(TranscodeJob.Kind.PROXY, media,
+                INSTANCE.proxyFor(media));
+    }
+
+    /**
+     * Cancels a job. A running job is stopped and its output discarded.
+     *
+     * @param job The job to cancel.
+     */
+    public static void cancel(final TranscodeJob job) {
+        INSTANCE.setState(job, TranscodeJob.State.CANCELLED);
+    }
+
+    /**
+     * @return Every job, oldest first.
+     */
+    public static List<TranscodeJob> getJobs() {
+        synchronized (INSTANCE.jobs) {
+            return new ArrayList<TranscodeJob>(INSTANCE.jobs.values());
+        }
+    }
+
+    /**
+     * @param listener Listener to notify of changes to jobs.
+     */
+    public static void addListener(final Listener listener) {
+        INSTANCE.listeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to stop notifying.
+     */
+    public static void removeListener(final Listener listener) {
+        INSTANCE.listeners.remove(listener);
+    }
+
+    /**
+     * Queues a job, unless one writing the same target is already waiting or
+     * running.
+     *
+     * @param kind The kind of transcoding.
+     * @param source The media to transcode.
+     * @param target The file to write the transcoded media to.
+     *
+     * @return The job.
+     */
+    private TranscodeJob submit(final TranscodeJob.Kind kind,
+                                final File source,
+                                final File target) {
+        TranscodeJob job;
+
+        synchronized (jobs) {
+            for (TranscodeJob existing : jobs.values()) {
+                if (!existing.getState().isFinished()
+                        && existing.getTarget().equals(target)) {
+                    return existing;
+                }
+            }
+
+            job = TranscodeJob.create(kind, source, target);
+            jobs.put(job.getId(), job);
+            save();
+        }
+
+        LOGGER.event("Queued " + job);
+        notifyListeners(job);
+        schedule(job);
+
+        return job;
+    }
+
+    /**
+     * @param job The job to hand to a worker.
+     */
+    private void schedule(final TranscodeJob job) {
+        workers.execute(new Runnable() {
+                @Override public void run() {
+                    if (job.getState() == TranscodeJob.State.QUEUED) {
+                        transcode(job);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Runs a job. Called on a worker thread.
+     *
+     * @param job The job to run.
+     */
+    private void transcode(final TranscodeJob job) {
+        setState(job, TranscodeJob.State.RUNNING);
+
+        File target = job.getTarget();
+        File part = new File(target.getPath() + ".part");
+        target.getParentFile().mkdirs();
+        part.delete();
+
+        final CountDownLatch ended = new CountDownLatch(1);
+        final boolean[] failed = new boolean[1];
+
+        HeadlessMediaPlayer player = getFactory().newHeadlessMediaPlayer();
+        player.addMediaPlayerEventListener(new MediaPlayerEventAdapter() {
+                @Override public void positionChanged(
+                    final MediaPlayer mediaPlayer, final float newPosition) {
+                    if (newPosition - job.getProgress() >= PROGRESS_STEP) {
+                        job.setProgress(newPosition);
+                        notifyListeners(job);
+                    }
+                }
+
+                @Override public void finished(final MediaPlayer mediaPlayer) {
+                    ended.countDown();
+                }
+
+                @Override public void error(final MediaPlayer mediaPlayer) {
+                    failed[0] = true;
+                    ended.countDown();
+                }
+            });
+
+        String sout;
+        String video = ":sout-video";
+
+        switch (job.getKind()) {
+        case PROXY:
+            sout = PROXY_SOUT;
+            break;
+
+        case AUDIO:
+            sout = AUDIO_SOUT;
+            video = ":no-sout-video";
+            break;
+
+        default:
+            sout = CONVERT_SOUT;
+            break;
+        }
+
+        try {
+            if (!player.playMedia(job.getSource().getAbsolutePath(),
+                        String.format(sout, part.getAbsolutePath()),
+                        ":sout-keep", video)) {
+                failed[0] = true;
+                ended.countDown();
+            }
+
+            while (!ended.await(POLL, TimeUnit.MILLISECONDS)) {
+                if (job.getState() == TranscodeJob.State.CANCELLED) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed[0] = true;
+        } finally {
+            player.stop();
+            player.release();
+        }
+
+        if (job.getState() == TranscodeJob.State.CANCELLED) {
+            part.delete();
+            LOGGER.event("Cancelled " + job);
+
+            return;
+        }
+
+        if (failed[0] || !part.isFile() || (part.length() == 0)) {
+            part.delete();
+            LOGGER.error("Unable to transcode " + job.getSource());
+            setState(job, TranscodeJob.State.FAILED);
+
+            return;
+        }
+
+        target.delete();
+        if (!part.renameTo(target)) {
+            part.delete();
+            LOGGER.error("Unable to move transcoded media to " + target);
+            setState(job, TranscodeJob.State.FAILED);
+
+            return;
+        }
+
+        job.setProgress(1.0f);
+        LOGGER.event("Transcoded " + job);
+        setState(job, TranscodeJob.State.DONE);
+    }
+
+    /**
+     * Changes the state of a job, saving the queue and notifying listeners.
+     * Finished jobs never change state again.
+     *
+     * @param job The job to change.
+     * @param state The new state of the job.
+     */
+    private void setState(final TranscodeJob job,
+                          final TranscodeJob.State state) {
+        synchronized (jobs) {
+            if (job.getState().isFinished()) {
+                return;
+            }
+
+            job.setState(state);
+            trimHistory();
+            save();
+        }
+
+        notifyListeners(job);
+    }
+
+    /**
+     * Forgets the oldest finished jobs once there are too many. Must hold
+     * the jobs lock.
+     */
+    private void trimHistory() {
+        int finished = 0;
+        for (TranscodeJob job : jobs.values()) {
+            if (job.getState().isFinished()) {
+                finished++;
+            }
+        }
+
+        Iterator<TranscodeJob> it = jobs.values().iterator();
+        while ((finished > HISTORY_LIMIT) && it.hasNext()) {
+            if (it.next().getState().isFinished()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    /**
+     * @param job The job that changed.
+     */
+    private void notifyListeners(final TranscodeJob job) {
+        for (Listener listener : listeners) {
+            try {
+                listener.jobChanged(job);
+            } catch (RuntimeException e) {
+                LOGGER.error("Transcode listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * @param media Media that may have a proxy.
+     *
+     * @return Where the proxy for the media is kept. The name depends on the
+     * path, size and modification time of the media, so a proxy is never
+     * used for media that has changed.
+     */
+    private File proxyFor(final File media) {
+        return new File(proxyDir, HashUtils.mediaKey(media) + ".mp4");
+    }
+
+    /**
+     * @return The factory for the players doing the transcoding.
+     */
+    private synchronized MediaPlayerFactory getFactory() {
+        if (factory == null) {
+            VLCDiscovery.discover();
+            factory = new MediaPlayerFactory("--no-video-title-show");
+        }
+
+        return factory;
+    }
+
+    /**
+     * Save the queue to disk in YAML format. Must hold the jobs lock. The
+     * queue is written next to the old one and then renamed over it, so a
+     * crash while saving leaves the old queue intact.
+     */
+    private void save() {
+        List<Map<String, Object>> data = new ArrayList<Map<String, Object>>();
+        for (TranscodeJob job : jobs.values()) {
+            data.add(job.toMap());
+        }
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+
+        Yaml yaml = new Yaml(options);
+        File part = new File(queueFile.getPath() + ".part");
+        Writer fw = null;
+
+        try {
+            fw = new FileWriter(part);
+            yaml.dump(data, fw);
+            fw.close();
+            fw = null;
+
+            queueFile.delete();
+
+            if (!part.renameTo(queueFile)) {
+                throw new IOException("Unable to write " + queueFile);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Couldn't save transcode queue", e);
+        } finally {
+            IOUtils.closeQuietly(fw);
+            part.delete();
+        }
+    }
+
+    /**
+     * Load the queue from disk.
+     */
+    private void load() {
+        Yaml yaml = new Yaml();
+        Reader fr = null;
+
+        try {
+            fr = new FileReader(queueFile);
+
+            Object data = yaml.load(fr);
+            if (data instanceof List) {
+                for (Object o : (List) data) {
+                    if (o instanceof Map) {
+                        TranscodeJob job = TranscodeJob.fromMap((Map) o);
+
+                        if (job != null) {
+                            jobs.put(job.getId(), job);
+                        }
+                    }
+                }
+            }
+        } catch (FileNotFoundException e) {
+            ; // Function is only called if the file exists.
+        } catch (RuntimeException e) {
+            LOGGER.error("Couldn't load transcode queue", e);
+        } finally {
+            IOUtils.closeQuietly(fr);
+        }
+    }
+}
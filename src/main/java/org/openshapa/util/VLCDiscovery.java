@@ -0,0 +1,51 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import uk.co.caprica.vlcj.discovery.NativeDiscovery;
+
+/**
+ * Finds the VLC libraries, once. Several threads want VLC as OpenSHAPA starts
+ * up, so discovery is done by whichever asks first and the rest wait for it
+ * rather than searching for the libraries at the same time.
+ */
+public final class VLCDiscovery {
+
+    /** Has discovery been done? */
+    private static boolean discovered = false;
+
+    /** Were the VLC libraries found? */
+    private static boolean found = false;
+
+    /**
+     * Utility class.
+     */
+    private VLCDiscovery() {
+    }
+
+    /**
+     * Finds the VLC libraries, unless they have already been looked for.
+     *
+     * @return True if the VLC libraries were found.
+     */
+    public static synchronized boolean discover() {
+        if (!discovered) {
+            found = new NativeDiscovery().discover();
+            discovered = true;
+        }
+
+        return found;
+    }
+}
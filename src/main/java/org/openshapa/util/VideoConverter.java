@@ -4,39 +4,34 @@
  */
 package org.openshapa.util;
 
-import java.awt.BorderLayout;
-import java.awt.Canvas;
-import java.awt.Color;
 import java.io.File;
-import javax.swing.JFrame;
-import javax.swing.JPanel;
+import java.io.IOException;
 import javax.swing.JProgressBar;
 import javax.swing.SwingUtilities;
-import org.openshapa.views.VideoConverterV;
-import uk.co.caprica.vlcj.discovery.NativeDiscovery;
-import uk.co.caprica.vlcj.player.MediaPlayer;
-import uk.co.caprica.vlcj.player.MediaPlayerEventAdapter;
-import uk.co.caprica.vlcj.player.MediaPlayerFactory;
-import uk.co.caprica.vlcj.player.embedded.EmbeddedMediaPlayer;
-import uk.co.caprica.vlcj.player.embedded.videosurface.CanvasVideoSurface;
+import com.usermetrix.jclient.Logger;
+import com.usermetrix.jclient.UserMetrix;
 
 /**
+ * Converts media through the background {@link TranscodeQueue}, so that
+ * conversion carries on when the converter window is closed.
  *
  * @author jesse
  */
 public class VideoConverter {
 	
-	private JFrame frame;
-	private JPanel contentPane;
-	private Canvas canvas;
-	private MediaPlayerFactory factory;
-	private EmbeddedMediaPlayer mediaPlayer;
-	private CanvasVideoSurface videoSurface;
+	/** Class logger. */
+	private static Logger LOGGER = UserMetrix.getLogger(VideoConverter.class);
+	
+	/** The job converting the media, if one has been started. */
+	private TranscodeJob job;
+	
+	/** Updates the progress bar as the job progresses. */
+	private TranscodeQueue.Listener listener;
 	
 	static {
 		// Try to load VLC libraries.
 		// This discovery function is platform independent
-		new NativeDiscovery().discover();
+		VLCDiscovery.discover();
 	}
 	
 	public VideoConverter() {
@@ -44,78 +39,63 @@ public class VideoConverter {
 	}
 	
 	public void ConvertVideo(File infile, File outfile, final JProgressBar progressBar) {
-		String[] libvlcArgs = {":sout=#transcode{vcodec=h264,vb=1024,acodec=mp4"
-					+ "ab=192,max-keyint=1,keyint=1,min-keyint=1,idrint=1,bframes=1,fps=29.97}:standard{mux=mp4,dst=" 
-					+ outfile.getAbsolutePath() + ",access=file}"};
+		job = TranscodeQueue.convert(infile, outfile);
 		
-		canvas = new Canvas();
-		canvas.setBackground(Color.black);
-
-		contentPane = new JPanel();
-		contentPane.setBackground(Color.black);
-		contentPane.setLayout(new BorderLayout());
-		contentPane.add(canvas, BorderLayout.CENTER);
-
-		frame = new JFrame("Capture");
-		frame.setContentPane(contentPane);
-		frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
-		frame.setLocation(50, 50);
-		frame.setSize(800, 600);
-
-		factory = new MediaPlayerFactory("--no-video-title-show");
-		mediaPlayer = factory.newEmbeddedMediaPlayer();
-
-		videoSurface = factory.newVideoSurface(canvas);
-
-		mediaPlayer.setVideoSurface(videoSurface);
-		
-		frame.setVisible(true);
-		
-		mediaPlayer.addMediaPlayerEventListener(new MediaPlayerEventAdapter() {
-			
+		final TranscodeJob converting = job;
+		listener = new TranscodeQueue.Listener() {
 			@Override
-			public void positionChanged(MediaPlayer mediaPlayer, final float newPosition) {
-				if ( SwingUtilities.isEventDispatchThread() ) {
-					int value = Math.min(100, Math.round(newPosition * 100.0f));
-					progressBar.setValue(value);
+			public void jobChanged(final TranscodeJob changed) {
+				if (changed != converting) {
+					return;
 				}
-				else
-					SwingUtilities.invokeLater( new Runnable() {
-						@Override
-						public void run() {
-							int value = Math.min(100, Math.round(newPosition * 100.0f));
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (changed.getState() == TranscodeJob.State.DONE) {
+							progressBar.setValue(progressBar.getMaximum());
+						} else {
+							int value = Math.min(100, Math.round(changed.getProgress() * 100.0f));
 							progressBar.setValue(value);
 						}
-				} );
-			}
-			
-			@Override
-			public void finished(final MediaPlayer mediaPlayer) {
-				if ( SwingUtilities.isEventDispatchThread() ) {
-					progressBar.setValue(progressBar.getMaximum());
-					mediaPlayer.stop();
+					}
+				});
+				
+				if (changed.getState().isFinished()) {
+					TranscodeQueue.removeListener(this);
 				}
-				else
-					SwingUtilities.invokeLater( new Runnable() {
-						@Override
-						public void run() {
-							progressBar.setValue(progressBar.getMaximum());
-							mediaPlayer.stop();
-						}
-				} );
 			}
-		});
-
-		mediaPlayer.playMedia(infile.getAbsolutePath(), libvlcArgs);
-		
-		frame.setVisible(false);
+		};
+		TranscodeQueue.addListener(listener);
 	}
 	
 	public void StopConversion() {
-		mediaPlayer.stop();
+		if (job != null) {
+			TranscodeQueue.cancel(job);
+			TranscodeQueue.removeListener(listener);
+		}
 	}
 	
-	public void DetectIfNeedsConvert(File infile) {
-		
+	/**
+	 * Checks if media needs converting before it can be stepped through
+	 * frame by frame - that is, unless it is H.264 in an MP4 or QuickTime
+	 * file with every frame a keyframe.
+	 *
+	 * @param infile The media to check.
+	 *
+	 * @return True if the media should be converted.
+	 */
+	public static boolean DetectIfNeedsConvert(File infile) {
+		try {
+			MediaInspector.Inspection inspection = MediaInspector.inspect(infile);
+			
+			return (inspection == null)
+				|| !"avc1".equals(inspection.getCodec())
+				|| !inspection.isAllIntra();
+		} catch (IOException e) {
+			LOGGER.error("Unable to inspect " + infile, e);
+			
+			return true;
+		}
 	}
 }
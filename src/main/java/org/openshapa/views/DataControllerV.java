@@ -26,8 +26,11 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.SimpleTimeZone;
 
@@ -51,6 +54,10 @@ import org.openshapa.OpenSHAPA;
 
 import org.openshapa.OpenSHAPA.Platform;
 
+import org.openshapa.controllers.DriftController;
+import org.openshapa.controllers.JogController;
+import org.openshapa.controllers.PlaybackSync;
+import org.openshapa.controllers.ScrubController;
 import org.openshapa.controllers.CreateNewCellC;
 import org.openshapa.controllers.SetNewCellStopTimeC;
 import org.openshapa.controllers.SetSelectedCellStartTimeC;
@@ -73,9 +80,11 @@ import org.openshapa.models.id.Identifier;
 
 import org.openshapa.plugins.PluginManager;
 
+import org.openshapa.util.ClockText;
 import org.openshapa.util.ClockTimer;
 import org.openshapa.util.ClockTimer.ClockListener;
 import org.openshapa.util.FloatUtils;
+import org.openshapa.util.LatestTimeDispatcher;
 
 import org.openshapa.views.component.TrackPainter;
 
@@ -92,6 +101,7 @@ import javax.swing.JDialog;
 import javax.swing.JOptionPane;
 
 import org.openshapa.plugins.DataViewer;
+import org.openshapa.plugins.FrameNotifier;
 import org.openshapa.plugins.Plugin;
 
 
@@ -119,16 +129,6 @@ public final class DataControllerV extends OpenSHAPADialog
     /** Sequence of allowable shuttle rates. */
     private static final float[] SHUTTLE_RATES;
 
-    /**
-     * The threshold to use while synchronising viewers (augmented by rate).
-     */
-    private static final long SYNC_THRESH = 200;
-
-    /**
-     * How often to synchronise the viewers with the master clock.
-     */
-    private static final long SYNC_PULSE = 500;
-
     // Initialize SHUTTLE_RATES
     // values: [ (2^-5), ..., (2^0), ..., (2^5) ]
 
@@ -156,26 +156,11 @@ public final class DataControllerV extends OpenSHAPADialog
 
     /** Format for representing time. */
     private static final DateFormat CLOCK_FORMAT;
-    private static final DateFormat CLOCK_FORMAT_HTML;
 
     // initialize standard date format for clock display.
     static {
         CLOCK_FORMAT = new SimpleDateFormat("HH:mm:ss:SSS");
         CLOCK_FORMAT.setTimeZone(new SimpleTimeZone(0, "NO_ZONE"));
-
-        Color hoursColor = TimescaleConstants.HOURS_COLOR;
-        Color minutesColor = TimescaleConstants.MINUTES_COLOR;
-        Color secondsColor = TimescaleConstants.SECONDS_COLOR;
-        Color millisecondsColor = TimescaleConstants.MILLISECONDS_COLOR;
-
-        CLOCK_FORMAT_HTML = new SimpleDateFormat("'<html>" + "<font color=\""
-                + toRGBString(hoursColor) + "\">'HH'</font>':"
-                + "'<font color=\"" + toRGBString(minutesColor)
-                + "\">'mm'</font>':" + "'<font color=\""
-                + toRGBString(secondsColor) + "\">'ss'</font>':"
-                + "'<font color=\"" + toRGBString(millisecondsColor)
-                + "\">'SSS'</font>" + "</html>'");
-        CLOCK_FORMAT_HTML.setTimeZone(new SimpleTimeZone(0, "NO_ZONE"));
     }
 
     /**
@@ -235,9 +220,51 @@ public final class DataControllerV extends OpenSHAPADialog
     /** Clock timer. */
     private ClockTimer clock = new ClockTimer();
 
+    /** Keeps the playing viewers in sync with the clock. */
+    private final DriftController driftController = new DriftController();
+
+    /** Seeks the viewers while playback is being faked. */
+    private final ScrubController scrubController = new ScrubController();
+
+    /** Restarts the drift and scrub controllers when playback changes. */
+    private final PlaybackSync sync;
+
+    /** Merges jog and shuttle requests into what the viewers can show. */
+    private final JogController jogController = new JogController(clock);
+
+    /** Have the threads driving the viewers been stopped? */
+    private boolean disposed = false;
+
     /** Is the tracks panel currently shown? */
     private boolean tracksPanelEnabled = true;
 
+    /** Formats the time for the timestamp label. */
+    private final ClockText clockText = ClockText.plain();
+
+    /** Formats the time for the timestamp label, coloured by field. */
+    private final ClockText clockTextHtml = new ClockText("<html><font color=\""
+            + toRGBString(TimescaleConstants.HOURS_COLOR) + "\">",
+            "</font>:<font color=\""
+            + toRGBString(TimescaleConstants.MINUTES_COLOR) + "\">",
+            "</font>:<font color=\""
+            + toRGBString(TimescaleConstants.SECONDS_COLOR) + "\">",
+            "</font>:<font color=\""
+            + toRGBString(TimescaleConstants.MILLISECONDS_COLOR) + "\">",
+            "</font></html>");
+
+    /**
+     * Updates the timestamp label on the EDT with the latest time, however
+     * quickly the clock ticks.
+     */
+    private final LatestTimeDispatcher timestampUpdater =
+        new LatestTimeDispatcher(new LatestTimeDispatcher.Listener() {
+                @Override public void timeChanged(final long time) {
+                    timestampLabel.setText(tracksPanelEnabled
+                            ? clockTextHtml.format(time)
+                            : clockText.format(time));
+                }
+            });
+
     /** The controller for manipulating tracks. */
     private MixerController mixerController;
 
@@ -360,6 +387,8 @@ public final class DataControllerV extends OpenSHAPADialog
         playbackModel.setPauseRate(0);
         playbackModel.setLastSync(0);
         playbackModel.setMaxDuration(ViewportStateImpl.MINIMUM_MAX_END);
+        sync = new PlaybackSync(playbackModel, driftController,
+                scrubController);
 
         final int defaultEndTime = (int) MixerConstants.DEFAULT_DURATION;
 
@@ -454,7 +483,7 @@ public final class DataControllerV extends OpenSHAPADialog
      *            Current clock time in milliseconds.
      */
     public void clockStart(final long time) {
-        resetSync();
+        sync.restart();
 
         long playTime = time;
         final long windowPlayStart = playbackModel.getWindowPlayStart();
@@ -475,10 +504,58 @@ public final class DataControllerV extends OpenSHAPADialog
     }
 
     /**
-     * Reset the sync.
+     * @return A snapshot of how closely each playing viewer has been kept in
+     * sync with the master clock.
      */
-    private void resetSync() {
-        playbackModel.setLastSync(0);
+    public Map<DataViewer, DriftController.Statistics> getDriftStatistics() {
+        return driftController.getStatistics();
+    }
+
+    /**
+     * @return A snapshot of how quickly each viewer has been keeping up with
+     * seeks while playback is being faked.
+     */
+    public Map<DataViewer, ScrubController.Statistics> getScrubStatistics() {
+        return scrubController.getStatistics();
+    }
+
+    /**
+     * @return A snapshot of how quickly jogs have been shown.
+     */
+    public JogController.Statistics getJogStatistics() {
+        return jogController.getStatistics();
+    }
+
+    /**
+     * @return The master clock, whose tick metrics show how steadily it has
+     * been driving the viewers.
+     */
+    public ClockTimer getClock() {
+        return clock;
+    }
+
+    /**
+     * Stops the threads driving the viewers, logging how steadily the clock
+     * ticked, and disposes of the window. The data controller can not be used
+     * after this.
+     */
+    @Override public void dispose() {
+
+        if (!disposed) {
+            disposed = true;
+            LOGGER.event(String.format(
+                    "Clock ticks: %d, dropped: %d, overrun: %d, "
+                    + "mean jitter: %.2fms, max jitter: %.2fms",
+                    clock.getTickCount(), clock.getDroppedTicks(),
+                    clock.getOverrunTicks(), clock.getMeanJitter(),
+                    clock.getMaxJitter()));
+
+            clock.shutdown();
+            scrubController.shutdown();
+            jogController.shutdown();
+        }
+
+        super.dispose();
     }
 
     /**
@@ -498,56 +575,52 @@ public final class DataControllerV extends OpenSHAPADialog
                 for (DataViewer v : viewers) {
 
                     if ((time > v.getOffset()) && isWithinPlayRange(time, v)) {
-                        v.seekTo(time - v.getOffset());
+                        scrubController.scrubTo(v, time - v.getOffset());
                     }
                 }
 
                 // DataViewer is responsible for playing video.
             } else {
 
-                // Synchronise viewers only if we have exceeded our pulse time.
-                if ((time - playbackModel.getLastSync())
-                        > (SYNC_PULSE * clock.getRate())) {
-                    long thresh = (long) (SYNC_THRESH
-                            * Math.abs(clock.getRate()));
-                    playbackModel.setLastSync(time);
+                float rate = clock.getRate();
 
-                    for (DataViewer v : viewers) {
+                for (DataViewer v : viewers) {
 
-                        /*
-                         * Use offsets to determine if the video file should
-                         * start playing.
-                         */
+                    /*
+                     * Use offsets to determine if the video file should
+                     * start playing.
+                     */
 
-                        if (!v.isPlaying() && isWithinPlayRange(time, v)) {
-                            v.seekTo(time - v.getOffset());
-                            v.play();
-                        }
+                    if (!v.isPlaying() && isWithinPlayRange(time, v)) {
+                        v.seekTo(time - v.getOffset());
+                        v.play();
+                    }
 
-                        // BugzID:1797 - Viewers who are "playing" outside their
-                        // timeframe should be asked to stop.
-                        if (v.isPlaying() && !isWithinPlayRange(time, v)) {
-                            v.stop();
-                        }
+                    // BugzID:1797 - Viewers who are "playing" outside their
+                    // timeframe should be asked to stop.
+                    if (v.isPlaying() && !isWithinPlayRange(time, v)) {
+                        v.stop();
+                    }
 
-                        // For plugins with low data rate, use frame rate
-                        // to determine threshold.
-                        if ((0 < v.getFrameRate())
-                                && (v.getFrameRate() <= LOW_RATE)) {
-                            thresh = (long) (ONE_SECOND / v.getFrameRate()
-                                    / clock.getRate());
-                        }
+                    if (!v.isPlaying()) {
+                        continue;
+                    }
+
+                    // For plugins with low data rate, only seek once the
+                    // viewer is a whole frame out.
+                    if ((0 < v.getFrameRate())
+                            && (v.getFrameRate() <= LOW_RATE)) {
+                        long thresh = (long) (ONE_SECOND / v.getFrameRate()
+                                / rate);
 
-                        /*
-                         * Only synchronise the data viewers if we have a
-                         * noticable drift.
-                         */
-                        if (v.isPlaying()
-                                && (Math.abs(
-                                        v.getCurrentTime()
-                                        - (time - v.getOffset())) > thresh)) {
+                        if (Math.abs(v.getCurrentTime()
+                                    - (time - v.getOffset())) > thresh) {
                             v.seekTo(time - v.getOffset());
                         }
+
+                    // Keep all other viewers in line with the master clock.
+                    } else {
+                        driftController.synchronise(v, time, rate);
                     }
                 }
             }
@@ -599,7 +672,7 @@ public final class DataControllerV extends OpenSHAPADialog
      */
     public void clockStop(final long time) {
         clock.stop();
-        resetSync();
+        sync.restart();
         setCurrentTime(time);
 
         for (DataViewer viewer : viewers) {
@@ -616,7 +689,7 @@ public final class DataControllerV extends OpenSHAPADialog
      *            Current (updated) clock rate.
      */
     public void clockRate(final float rate) {
-        resetSync();
+        sync.restart();
         lblSpeed.setText(FloatUtils.doubleToFractionStr(new Double(rate)));
 
         long time = getCurrentTime();
@@ -655,15 +728,36 @@ public final class DataControllerV extends OpenSHAPADialog
      *            Current clock time in milliseconds.
      */
     public void clockStep(final long time) {
-        resetSync();
+        sync.restart();
         setCurrentTime(time);
 
+        Map<DataViewer, Long> seeks = new LinkedHashMap<DataViewer, Long>();
+        Map<DataViewer, Long> pending = new HashMap<DataViewer, Long>();
+
         for (DataViewer viewer : viewers) {
 
             if (isWithinPlayRange(time, viewer)) {
-                viewer.seekTo(time - viewer.getOffset());
+                seeks.put(viewer, time - viewer.getOffset());
+
+                // Viewers that seek in the background say when their frame
+                // is shown; the rest have shown it once seekTo returns.
+                if (viewer instanceof FrameNotifier) {
+                    pending.put(viewer, time - viewer.getOffset());
+                }
             }
         }
+
+        // Wait for the frames before seeking, as they may be shown before
+        // seekTo returns.
+        jogController.seeking(time, pending);
+
+        for (Map.Entry<DataViewer, Long> seek : seeks.entrySet()) {
+            seek.getKey().seekTo(seek.getValue());
+        }
+
+        if (pending.isEmpty()) {
+            jogController.shown(time);
+        }
     }
 
     /**
@@ -680,16 +774,14 @@ public final class DataControllerV extends OpenSHAPADialog
      *            The millisecond time.
      */
     public void setCurrentTime(final long milliseconds) {
-        resetSync();
+        sync.timeChanged();
         updateCurrentTimeLabel();
         mixerController.getMixerModel().getNeedleModel().setCurrentTime(
             milliseconds);
     }
 
     private void updateCurrentTimeLabel() {
-        timestampLabel.setText(tracksPanelEnabled
-                ? CLOCK_FORMAT_HTML.format(getCurrentTime())
-                : CLOCK_FORMAT.format(getCurrentTime()));
+        timestampUpdater.publish(getCurrentTime());
     }
 
     /**
@@ -735,6 +827,13 @@ public final class DataControllerV extends OpenSHAPADialog
 
         // Was the viewer removed.
         boolean removed = viewers.remove(viewer);
+        driftController.remove(viewer);
+        scrubController.remove(viewer);
+
+        if (viewer instanceof FrameNotifier) {
+            ((FrameNotifier) viewer).removeFrameListener(scrubController);
+            ((FrameNotifier) viewer).removeFrameListener(jogController);
+        }
 
         if (removed) {
 		
@@ -781,6 +880,13 @@ public final class DataControllerV extends OpenSHAPADialog
         }
 
         viewers.remove(viewer);
+        driftController.remove(viewer);
+        scrubController.remove(viewer);
+
+        if (viewer instanceof FrameNotifier) {
+            ((FrameNotifier) viewer).removeFrameListener(scrubController);
+            ((FrameNotifier) viewer).removeFrameListener(jogController);
+        }
 
         viewer.stop();
         viewer.clearDataFeed();
@@ -1512,6 +1618,11 @@ public final class DataControllerV extends OpenSHAPADialog
         // Add the QTDataViewer to the list of viewers we are controlling.
         viewers.add(viewer);
         viewer.setParentController(this);
+
+        if (viewer instanceof FrameNotifier) {
+            ((FrameNotifier) viewer).addFrameListener(scrubController);
+            ((FrameNotifier) viewer).addFrameListener(jogController);
+        }
         viewer.setOffset(offset);
 
         boolean visible = viewer.getParentJDialog().isVisible();
@@ -1521,12 +1632,7 @@ public final class DataControllerV extends OpenSHAPADialog
             viewer.getParentJDialog().setVisible(false);
         }
 
-        // adjust the overall frame rate.
-        float fps = viewer.getFrameRate();
-
-        if (fps > playbackModel.getCurrentFPS()) {
-            playbackModel.setCurrentFPS(fps);
-        }
+        updateFrameRate(viewer);
 
         // Update track viewer.
         long maxDuration = playbackModel.getMaxDuration();
@@ -1545,6 +1651,25 @@ public final class DataControllerV extends OpenSHAPADialog
             maxDuration, true);
     }
 
+    /**
+     * Adjusts the overall frame rate to that of a viewer, if it is faster.
+     * Viewers that only learn their frame rate after they are added call
+     * this once they know it.
+     *
+     * @param viewer
+     *            The viewer whose frame rate is known.
+     */
+    public void updateFrameRate(final DataViewer viewer) {
+        float fps = viewer.getFrameRate();
+
+        if (fps > playbackModel.getCurrentFPS()) {
+            playbackModel.setCurrentFPS(fps);
+
+            // Tick the clock once per frame of the fastest media.
+            clock.alignToFrameRate(fps);
+        }
+    }
+
     /**
      * Action to invoke when the user clicks the set cell onset button.
      */
@@ -1628,6 +1753,7 @@ public final class DataControllerV extends OpenSHAPADialog
             newTime = playbackModel.getWindowPlayEnd();
         }
 
+        jogController.cancel();
         clockStop(newTime);
         setCurrentTime(newTime);
         clock.setTime(newTime);
@@ -1847,6 +1973,7 @@ public final class DataControllerV extends OpenSHAPADialog
             // Pause views - store current playback rate.
         } else {
             playbackModel.setPauseRate(clock.getRate());
+            jogController.hold();
             clock.stop();
             lblSpeed.setText("["
                 + FloatUtils.doubleToFractionStr(
@@ -1859,6 +1986,7 @@ public final class DataControllerV extends OpenSHAPADialog
      */
     @Action public void stopAction() {
         LOGGER.event("Stop event");
+        jogController.hold();
         clock.stop();
         clock.setRate(0);
         playbackModel.setShuttleRate(0);
@@ -2066,11 +2194,14 @@ public final class DataControllerV extends OpenSHAPADialog
         long stepSize = ((-ONE_SECOND) / (long) playbackModel.getCurrentFPS());
         long nextTime = (long) (mul * stepSize);
 
+        // Step from where the previous jogs will leave the clock.
+        long time = jogController.getTarget();
+
         /* BugzID:1544 - Preserve precision - force jog to frame markers. */
-        nextTime = nextTime - (clock.getTime() % stepSize);
+        nextTime = nextTime - (time % stepSize);
 
         /* BugzID:1361 - Disallow jog to skip past the region boundaries. */
-        if ((clock.getTime() + nextTime) > playbackModel.getWindowPlayStart()) {
+        if ((time + nextTime) > playbackModel.getWindowPlayStart()) {
             jump(nextTime);
         } else {
             jumpTo(playbackModel.getWindowPlayStart());
@@ -2096,15 +2227,18 @@ public final class DataControllerV extends OpenSHAPADialog
         long stepSize = ((ONE_SECOND) / (long) playbackModel.getCurrentFPS());
         long nextTime = (long) (mul * stepSize);
 
+        // Step from where the previous jogs will leave the clock.
+        long time = jogController.getTarget();
+
         /* BugzID:1544 - Preserve precision - force jog to frame markers. */
-        long mod = (clock.getTime() % stepSize);
+        long mod = (time % stepSize);
 
         if (mod != 0) {
             nextTime = nextTime + stepSize - mod;
         }
 
         /* BugzID:1361 - Disallow jog to skip past the region boundaries. */
-        if ((clock.getTime() + nextTime) < playbackModel.getWindowPlayEnd()) {
+        if ((time + nextTime) < playbackModel.getWindowPlayEnd()) {
             jump(nextTime);
         } else {
             jumpTo(playbackModel.getWindowPlayEnd());
@@ -2165,8 +2299,7 @@ public final class DataControllerV extends OpenSHAPADialog
      *            Rate of shuttle.
      */
     private void shuttleAt(final float rate) {
-        clock.setRate(rate);
-        clock.start();
+        jogController.shuttleAt(rate);
     }
 
     /**
@@ -2174,13 +2307,11 @@ public final class DataControllerV extends OpenSHAPADialog
      *            Milliseconds to jump.
      */
     private void jump(final long step) {
-        clock.stop();
-        clock.setRate(0);
         playbackModel.setShuttleRate(0);
         playbackModel.setPauseRate(0);
         shuttleDirection = ShuttleDirection.UNDEFINED;
 
-        clock.stepTime(step);
+        jogController.jogTo(jogController.getTarget() + step);
     }
 
     /**
@@ -2188,8 +2319,15 @@ public final class DataControllerV extends OpenSHAPADialog
      *            Absolute time to jump to.
      */
     private void jumpTo(final long time) {
-        clock.stop();
-        clock.setTime(time);
+        jogController.jogTo(time);
+    }
+
+    /**
+     * Called when a jog key is released, so that the last position asked for
+     * is shown straight away.
+     */
+    public void jogReleased() {
+        jogController.release();
     }
 
     // -------------------------------------------------------------------------
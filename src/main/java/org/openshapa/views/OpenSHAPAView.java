@@ -412,6 +412,17 @@ public final class OpenSHAPAView extends FrameView
      */
     @Action public void save() {
 
+        // Viewers still being loaded would be left out of the project.
+        if (OpenSHAPA.getProjectController().isLoading()) {
+            OpenSHAPA.getProjectController().whenLoaded(new Runnable() {
+                    @Override public void run() {
+                        save();
+                    }
+                });
+
+            return;
+        }
+
         try {
             SaveC saveC = new SaveC();
 
@@ -471,7 +482,7 @@ public final class OpenSHAPAView extends FrameView
      * Action for saving the current project as a particular file.
      */
     @Action public void saveAs() {
-        OpenSHAPAFileChooser jd = new OpenSHAPAFileChooser();
+        final OpenSHAPAFileChooser jd = new OpenSHAPAFileChooser();
 
         jd.addChoosableFileFilter(MODBFilter.INSTANCE);
         jd.addChoosableFileFilter(CSVFilter.INSTANCE);
@@ -480,7 +491,11 @@ public final class OpenSHAPAView extends FrameView
         int result = jd.showSaveDialog(getComponent());
 
         if (result == JFileChooser.APPROVE_OPTION) {
-            save(jd);
+            OpenSHAPA.getProjectController().whenLoaded(new Runnable() {
+                    @Override public void run() {
+                        save(jd);
+                    }
+                });
         }
     }
     
@@ -488,7 +503,7 @@ public final class OpenSHAPAView extends FrameView
      * Action for exporting the current project as a particular file.
      */
     @Action public void exportFile() {
-        OpenSHAPAFileChooser jd = new OpenSHAPAFileChooser();
+        final OpenSHAPAFileChooser jd = new OpenSHAPAFileChooser();
 	
 	// Not fully implemented
 //	jd.addChoosableFileFilter(FrameCSVFilter.INSTANCE);
@@ -498,7 +513,11 @@ public final class OpenSHAPAView extends FrameView
         int result = jd.showSaveDialog(getComponent());
 
         if (result == JFileChooser.APPROVE_OPTION) {
-            exportToCSV(jd);
+            OpenSHAPA.getProjectController().whenLoaded(new Runnable() {
+                    @Override public void run() {
+                        exportToCSV(jd);
+                    }
+                });
         }
     }
     
@@ -967,6 +986,12 @@ public final class OpenSHAPAView extends FrameView
         // Create a freash spreadsheet component and redraw the component.
         panel.deregisterListeners();
         panel.removeFileDropEventListener(this);
+
+        // Cell tracks show the datastore being closed.
+        if (OpenSHAPA.getDataController() != null) {
+            OpenSHAPA.getDataController().getMixerController()
+                .removeAllCellTracks();
+        }
     }
 
     /**
@@ -996,6 +1021,21 @@ public final class OpenSHAPAView extends FrameView
         panel.clearCellSelection();
     }
 
+    /**
+     * Brings the spreadsheet up to date with the datastore. If the spreadsheet
+     * is already displaying the current datastore, only the columns and cells
+     * that have changed since the last render are rebuilt. Otherwise a fresh
+     * spreadsheet is built.
+     */
+    public void refreshSpreadsheet() {
+        if ((panel == null)
+                || (panel.getDatastore() != OpenSHAPA.getProjectController().getDB())) {
+            showSpreadsheet();
+        } else {
+            panel.refresh();
+        }
+    }
+
     /**
      * Action for invoking a script.
      */
@@ -1081,8 +1121,7 @@ public final class OpenSHAPAView extends FrameView
      * Action for removing cells from the database.
      */
     @Action public void deleteCells() {
-        List<Cell> selectedCells = OpenSHAPA.getProjectController()
-                                            .getDB().getSelectedCells();
+        List<Cell> selectedCells = panel.getSelectedCells();
 
         // record the effect
         UndoableEdit edit = new RemoveCellEdit(selectedCells);
@@ -1787,8 +1826,7 @@ public final class OpenSHAPAView extends FrameView
             changeVarNameMenuItem.setEnabled(false);
         }
 
-        List<Cell> selectedCells = OpenSHAPA.getProjectController().getDB()
-                                            .getSelectedCells();
+        List<Cell> selectedCells = panel.getSelectedCells();
 
         if (selectedCells.isEmpty()) {
             deleteCellMenuItem.setEnabled(false);
@@ -1852,8 +1890,7 @@ public final class OpenSHAPAView extends FrameView
     } // GEN-LAST:event_newCellLeftMenuItemActionPerformed
 
     public void newCellLeft() {
-        List<Cell> selectedCells = OpenSHAPA.getProjectController()
-                                            .getDB().getSelectedCells();
+        List<Cell> selectedCells = panel.getSelectedCells();
 
         new CreateNewCellC(selectedCells, ArrayDirection.LEFT);
     }
@@ -1871,8 +1908,7 @@ public final class OpenSHAPAView extends FrameView
     } // GEN-LAST:event_newCellRightMenuItemActionPerformed
 
     public void newCellRight() {
-        List<Cell> selectedCells = OpenSHAPA.getProjectController()
-                                            .getDB().getSelectedCells();
+        List<Cell> selectedCells = panel.getSelectedCells();
 
         new CreateNewCellC(selectedCells, ArrayDirection.RIGHT);
     }
@@ -108,7 +108,7 @@ public class UndoHistoryWindow extends OpenSHAPADialog {
         this.undoHistoryList.setCursor(new Cursor(Cursor.WAIT_CURSOR));
         undomanager.goTo((SpreadsheetEdit) undoHistoryList.getSelectedValue());
         OpenSHAPA.getView().refreshUndoRedo();
-        OpenSHAPA.getView().showSpreadsheet();
+        OpenSHAPA.getView().refreshSpreadsheet();
         this.rootPane.revalidate();
         this.rootPane.repaint();
         this.undoHistoryList.requestFocus();
@@ -437,7 +437,7 @@ public final class VocabEditorV extends OpenSHAPADialog {
             }
             updateDialogState();
             ((OpenSHAPAView) OpenSHAPA.getApplication().getMainView())
-                    .showSpreadsheet();
+                    .refreshSpreadsheet();
 
 
 
@@ -0,0 +1,205 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.component;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.awt.event.HierarchyEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.swing.JComponent;
+import javax.swing.RepaintManager;
+
+/**
+ * Repaint manager that keeps the cached images of {@link BackBuffered}
+ * components up to date. Every repaint request is passed on as usual, and
+ * also invalidates the matching part of the cache of any back buffered
+ * component it falls within - so a track that repaints itself is painted
+ * again, while the needle sliding over the top of it is not.
+ *
+ * It is only installed while a back buffered component is registered, and
+ * the previous repaint manager is put back once the last one goes. The back
+ * buffered component a component falls within is remembered, rather than
+ * looked for each time it repaints, until components are added or removed.
+ */
+public final class BackBufferRepaintManager extends RepaintManager {
+
+    /** Remembered for components that aren't within a back buffered one. */
+    private static final Object NONE = new Object();
+
+    /** The installed manager, null if not installed. */
+    private static BackBufferRepaintManager installed;
+
+    /** The repaint manager to put back when uninstalled. */
+    private static RepaintManager previous;
+
+    /** The back buffered components that are showing. */
+    private static final List<BackBuffered> REGISTERED =
+        new ArrayList<BackBuffered>();
+
+    /**
+     * The nearest back buffered component each component falls within,
+     * including the component itself, or {@link #NONE}.
+     */
+    private final Map<Component, Object> owners =
+        new WeakHashMap<Component, Object>();
+
+    /** Forgets the remembered owners whenever components are moved. */
+    private final AWTEventListener hierarchyListener = new AWTEventListener() {
+            @Override public void eventDispatched(final AWTEvent e) {
+                if ((((HierarchyEvent) e).getChangeFlags()
+                            & HierarchyEvent.PARENT_CHANGED) != 0) {
+                    forgetOwners();
+                }
+            }
+        };
+
+    /**
+     * Constructor.
+     */
+    private BackBufferRepaintManager() {
+    }
+
+    /**
+     * Registers a back buffered component, installing the back buffer
+     * repaint manager if it isn't already installed. Must be called on the
+     * EDT, when the component is added to a displayable hierarchy.
+     *
+     * @param owner The component to keep up to date.
+     */
+    public static void register(final BackBuffered owner) {
+        if (REGISTERED.contains(owner)) {
+            return;
+        }
+
+        REGISTERED.add(owner);
+
+        if (installed == null) {
+            previous = RepaintManager.currentManager(null);
+            installed = new BackBufferRepaintManager();
+            Toolkit.getDefaultToolkit().addAWTEventListener(
+                installed.hierarchyListener, AWTEvent.HIERARCHY_EVENT_MASK);
+            RepaintManager.setCurrentManager(installed);
+        }
+
+        installed.forgetOwners();
+    }
+
+    /**
+     * Unregisters a back buffered component, putting back the previous
+     * repaint manager if it was the last one. Must be called on the EDT, when
+     * the component is removed from a displayable hierarchy.
+     *
+     * @param owner The component that no longer needs keeping up to date.
+     */
+    public static void unregister(final BackBuffered owner) {
+        if (!REGISTERED.remove(owner) || (installed == null)) {
+            return;
+        }
+
+        installed.forgetOwners();
+
+        if (REGISTERED.isEmpty()) {
+            Toolkit.getDefaultToolkit().removeAWTEventListener(
+                installed.hierarchyListener);
+
+            // Leave alone a manager that has been installed since.
+            if (RepaintManager.currentManager(null) == installed) {
+                RepaintManager.setCurrentManager(previous);
+            }
+
+            installed = null;
+            previous = null;
+        }
+    }
+
+    @Override public void addDirtyRegion(final JComponent c,
+        final int x, final int y, final int w, final int h) {
+        super.addDirtyRegion(c, x, y, w, h);
+
+        int dx = 0;
+        int dy = 0;
+        Component from = c;
+        BackBuffered owner = ownerOf(c);
+
+        while (owner != null) {
+            Component o = (Component) owner;
+            Component p = from;
+
+            for (; (p != null) && (p != o); p = p.getParent()) {
+                dx += p.getX();
+                dy += p.getY();
+            }
+
+            // Moved since it was remembered.
+            if (p == null) {
+                forgetOwners();
+
+                return;
+            }
+
+            owner.invalidateBuffer(new Rectangle(x + dx, y + dy, w, h));
+
+            dx += o.getX();
+            dy += o.getY();
+            from = o.getParent();
+            owner = (from == null) ? null : ownerOf(from);
+        }
+    }
+
+    /**
+     * @param c The component to find the owner of.
+     *
+     * @return The nearest back buffered component that the supplied one falls
+     * within, including itself, or null if there is none.
+     */
+    private BackBuffered ownerOf(final Component c) {
+        synchronized (owners) {
+            Object owner = owners.get(c);
+
+            if (owner == null) {
+                owner = NONE;
+
+                for (Component p = c; p != null; p = p.getParent()) {
+                    if (p instanceof BackBuffered) {
+                        owner = p;
+
+                        break;
+                    }
+                }
+
+                owners.put(c, owner);
+            }
+
+            return (owner == NONE) ? null : (BackBuffered) owner;
+        }
+    }
+
+    /**
+     * Forgets the remembered owners, as components have been moved.
+     */
+    private void forgetOwners() {
+        synchronized (owners) {
+            owners.clear();
+        }
+    }
+}
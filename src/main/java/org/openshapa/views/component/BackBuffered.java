@@ -0,0 +1,33 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.component;
+
+import java.awt.Rectangle;
+
+/**
+ * A component that paints itself and its children from a cached image. The
+ * {@link BackBufferRepaintManager} tells it which parts of the image are stale
+ * whenever it, or anything inside it, asks to be repainted.
+ */
+public interface BackBuffered {
+
+    /**
+     * Marks part of the cached image as stale, it will be painted again the
+     * next time it is needed. May be called from any thread.
+     *
+     * @param area The stale area, in the coordinates of this component.
+     */
+    void invalidateBuffer(Rectangle area);
+}
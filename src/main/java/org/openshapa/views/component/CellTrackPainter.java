@@ -0,0 +1,232 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.component;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+
+import javax.swing.JComponent;
+
+import org.openshapa.models.component.CellTrackModel;
+import org.openshapa.models.component.IntervalIndex;
+import org.openshapa.models.component.MixerModel;
+import org.openshapa.models.component.ViewportState;
+import org.openshapa.models.db.Cell;
+
+
+/**
+ * Paints the cells of a variable as bars from their onsets to their offsets.
+ *
+ * Only the cells in the part of the viewport being painted are looked at.
+ * Bars that run into each other are painted as one, and the edges between
+ * cells are only drawn when the cells are wide enough to show them, so
+ * painting a variable with a hundred thousand cells zoomed all the way out
+ * costs about as much as painting one with a hundred.
+ */
+public final class CellTrackPainter extends JComponent {
+
+    /** Colour behind the bars. */
+    private static final Color BACKGROUND = new Color(237, 237, 237);
+
+    /** Colour of the bars. */
+    private static final Color BAR_COLOR = new Color(98, 130, 184);
+
+    /** Colour of the edges between cells. */
+    private static final Color EDGE_COLOR = new Color(49, 65, 92);
+
+    /** Colour of the highlighted cell. */
+    private static final Color HIGHLIGHT_COLOR = new Color(255, 190, 40);
+
+    /** Gap between the bars and the top and bottom of the track. */
+    private static final int INSET = 6;
+
+    /** The narrowest cell, in pixels, that has its edges drawn. */
+    private static final int MIN_EDGE_WIDTH = 4;
+
+    /** The cells to paint. */
+    private CellTrackModel cellTrackModel;
+
+    /** The mixer the track belongs to. */
+    private MixerModel mixer;
+
+    /** Paints the bars, reused between paints. */
+    private final BarPainter barPainter = new BarPainter();
+
+    /**
+     * @param mixer The mixer the track belongs to.
+     */
+    public void setMixerView(final MixerModel mixer) {
+        this.mixer = mixer;
+        repaint();
+    }
+
+    /**
+     * @param cellTrackModel The cells to paint.
+     */
+    public void setCellTrackModel(final CellTrackModel cellTrackModel) {
+        this.cellTrackModel = cellTrackModel;
+        repaint();
+    }
+
+    /**
+     * Repaints the part of the track covering an interval of time.
+     *
+     * @param onset The start of the interval, in milliseconds.
+     * @param end The end of the interval, in milliseconds.
+     */
+    public void repaintInterval(final long onset, final long end) {
+        if (mixer == null) {
+            repaint();
+
+            return;
+        }
+
+        final ViewportState viewport = mixer.getViewportModel().getViewport();
+
+        if ((end < viewport.getViewStart())
+                || (onset > viewport.getViewEnd())) {
+            return;
+        }
+
+        final int left = (int) Math.floor(viewport.computePixelXOffset(onset));
+        final int right = (int) Math.ceil(viewport.computePixelXOffset(end));
+        repaint(left - 1, 0, right - left + 3, getHeight());
+    }
+
+    @Override protected void paintComponent(final Graphics g) {
+        Rectangle clip = g.getClipBounds();
+
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+
+        g.setColor(BACKGROUND);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        if ((cellTrackModel == null) || (mixer == null)) {
+            return;
+        }
+
+        final ViewportState viewport = mixer.getViewportModel().getViewport();
+
+        if (Double.isNaN(viewport.getResolution())) {
+            return;
+        }
+
+        final long start = viewport.getViewStart()
+            + viewport.computeTimeFromXOffset(clip.x);
+        final long end = viewport.getViewStart()
+            + viewport.computeTimeFromXOffset(clip.x + clip.width + 1);
+
+        barPainter.begin(g, viewport);
+        cellTrackModel.getCells().visit(start, end, barPainter);
+        barPainter.finish();
+    }
+
+    /**
+     * Paints the bars of the cells it visits, joining bars that run into
+     * each other.
+     */
+    private final class BarPainter implements IntervalIndex.Visitor<Cell> {
+
+        /** The graphics to paint with. */
+        private Graphics g;
+
+        /** The viewport being painted. */
+        private ViewportState viewport;
+
+        /** The highlighted cell. */
+        private Cell highlighted;
+
+        /** Left of the run of bars not painted yet. */
+        private int runLeft;
+
+        /** Right of the run of bars not painted yet, below runLeft if none. */
+        private int runRight;
+
+        /** The top of the bars. */
+        private int top;
+
+        /** The height of the bars. */
+        private int height;
+
+        /**
+         * @param graphics The graphics to paint with.
+         * @param view The viewport being painted.
+         */
+        void begin(final Graphics graphics, final ViewportState view) {
+            g = graphics;
+            viewport = view;
+            highlighted = cellTrackModel.getHighlighted();
+            runLeft = 0;
+            runRight = -1;
+            top = INSET;
+            height = Math.max(1, getHeight() - (2 * INSET));
+        }
+
+        @Override public void visit(final Cell cell, final long onset,
+            final long end) {
+            final int left = (int) Math.floor(viewport.computePixelXOffset(
+                        onset));
+            final int right = Math.max(left,
+                    (int) Math.floor(viewport.computePixelXOffset(end)));
+
+            if (left > (runRight + 1)) {
+                flush();
+                runLeft = left;
+            }
+
+            runRight = Math.max(runRight, right);
+
+            if ((right - left) >= MIN_EDGE_WIDTH) {
+                flush();
+                g.setColor(EDGE_COLOR);
+                g.drawRect(left, top, right - left, height - 1);
+                runLeft = right + 1;
+            }
+
+            if (cell.equals(highlighted)) {
+                flush();
+                g.setColor(HIGHLIGHT_COLOR);
+                g.fillRect(left, top, right - left + 1, height);
+                g.setColor(EDGE_COLOR);
+                g.drawRect(left, top, right - left, height - 1);
+                runLeft = right + 1;
+            }
+        }
+
+        /**
+         * Paints the run of bars not painted yet.
+         */
+        private void flush() {
+            if (runRight >= runLeft) {
+                g.setColor(BAR_COLOR);
+                g.fillRect(runLeft, top, runRight - runLeft + 1, height);
+            }
+
+            runLeft = runRight + 1;
+        }
+
+        /**
+         * Paints what is left and lets go of the graphics.
+         */
+        void finish() {
+            flush();
+            g = null;
+            viewport = null;
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.awt.BasicStroke;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.GeneralPath;
 import java.beans.PropertyChangeEvent;
@@ -41,9 +42,27 @@ public final class NeedlePainter extends JComponent implements PropertyChangeLis
      */
     private static final long serialVersionUID = -6157748998316240030L;
 
+    /** Stroke for the needle line and the needle in the zoom indicator. */
+    private static final BasicStroke NEEDLE_STROKE = new BasicStroke(
+            (float) NeedleConstants.NEEDLE_WIDTH);
+
+    /** Stroke for the transition curve when the needle is in view. */
+    private static final BasicStroke TRANSITION_STROKE = new BasicStroke(
+            (float) NeedleConstants.NEEDLE_WIDTH / 2.0f);
+
+    /** Stroke for the transition curve when the needle is out of view. */
+    private static final BasicStroke FAINT_TRANSITION_STROKE =
+        new BasicStroke((float) NeedleConstants.NEEDLE_WIDTH / 5.0f);
+
+    /** Extra room around the painted needle for strokes and antialiasing. */
+    private static final int PAINT_MARGIN = 3;
+
     /** Polygon region for the needle marker */
     private GeneralPath needleMarker;
 
+    /** The area the needle was last painted in, null if not painted yet. */
+    private Rectangle paintedBounds;
+
     private NeedleModelImpl needleModel;
     private MixerModel mixer;
 
@@ -74,6 +93,56 @@ public final class NeedlePainter extends JComponent implements PropertyChangeLis
     	return getZoomWindowIndicatorTopY() - needleModel.getTimescaleTransitionHeight();
     }
     
+    /**
+     * Calculates the area the needle covers at a given time. This is the
+     * column of the needle head and line, and the box containing the
+     * transition curve down to the needle in the zoom indicator.
+     *
+     * @param viewport The viewport the needle is painted in.
+     * @param time The time of the needle.
+     *
+     * @return The area the needle covers.
+     */
+    private Rectangle getNeedleBounds(final ViewportState viewport,
+        final long time) {
+        final double needleHeadWidth = NeedleConstants.NEEDLE_HEAD_WIDTH;
+        final double needleX = viewport.computePixelXOffset(time)
+            + needleHeadWidth;
+        final double zoomX = ((double) time * viewport.getViewWidth()
+                / viewport.getMaxEnd()) + Math.ceil(needleHeadWidth);
+        final int transitionTop = (int) getTransitionAreaTopY();
+
+        Rectangle bounds = new Rectangle(
+                (int) Math.floor(needleX - needleHeadWidth) - PAINT_MARGIN, 0,
+                (int) Math.ceil(2 * needleHeadWidth) + (2 * PAINT_MARGIN),
+                transitionTop + PAINT_MARGIN);
+
+        final int left = (int) Math.floor(Math.min(needleX, zoomX));
+        final int right = (int) Math.ceil(Math.max(needleX, zoomX));
+        bounds.add(new Rectangle(left - PAINT_MARGIN,
+                transitionTop - PAINT_MARGIN,
+                right - left + (2 * PAINT_MARGIN),
+                getHeight() - transitionTop + (2 * PAINT_MARGIN)));
+
+        return bounds;
+    }
+
+    /**
+     * Repaints the area the needle was painted in, and the area it now
+     * covers, leaving the rest of the tracks area alone.
+     */
+    private void repaintNeedle() {
+        if ((paintedBounds == null) || (mixer == null)) {
+            repaint();
+
+            return;
+        }
+
+        final ViewportState viewport = mixer.getViewportModel().getViewport();
+        repaint(paintedBounds);
+        repaint(getNeedleBounds(viewport, needleModel.getCurrentTime()));
+    }
+
     @Override public void paintComponent(final Graphics g) {
 
         if ((needleModel == null) || (mixer == null)) {
@@ -81,6 +150,7 @@ public final class NeedlePainter extends JComponent implements PropertyChangeLis
         }
 
         ViewportState viewport = mixer.getViewportModel().getViewport();
+        paintedBounds = getNeedleBounds(viewport, needleModel.getCurrentTime());
 
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -120,7 +190,7 @@ public final class NeedlePainter extends JComponent implements PropertyChangeLis
 	        line.lineTo(x2, y2);
 	
 	        assert NeedleConstants.NEEDLE_WIDTH > 0;
-	        g2d.setStroke(new BasicStroke((float) NeedleConstants.NEEDLE_WIDTH));
+	        g2d.setStroke(NEEDLE_STROKE);
 	        g2d.draw(line);
         }
 
@@ -139,8 +209,7 @@ public final class NeedlePainter extends JComponent implements PropertyChangeLis
                 + (getZoomWindowIndicatorTopY() * transitionCurveBottomWeight))
             / (transitionCurveBottomWeight + 1), zoomWindowIndicatorX,
             getTransitionAreaTopY(), zoomWindowIndicatorX, getZoomWindowIndicatorTopY());
-        final float strokeWidth = (float) NeedleConstants.NEEDLE_WIDTH / (isNeedleInViewport ? 2.0f : 5.0f);
-        g2d.setStroke(new BasicStroke(strokeWidth));
+        g2d.setStroke(isNeedleInViewport ? TRANSITION_STROKE : FAINT_TRANSITION_STROKE);
         g2d.draw(shape);
         
         // paint the needle in the zoom window indicator
@@ -149,14 +218,14 @@ public final class NeedlePainter extends JComponent implements PropertyChangeLis
         needleMarker.moveTo(zoomWindowIndicatorX, getZoomWindowIndicatorTopY());
         needleMarker.lineTo(zoomWindowIndicatorX, getSize().height);
         
-        g2d.setStroke(new BasicStroke((float) NeedleConstants.NEEDLE_WIDTH));
+        g2d.setStroke(NEEDLE_STROKE);
         g2d.draw(needleMarker);        
     }
 
 	@Override
 	public void propertyChange(PropertyChangeEvent evt) {
 		if (evt.getSource() == needleModel) {
-			repaint();
+			repaintNeedle();
 			updateToolTipText();
 		}
 	}
@@ -44,6 +44,22 @@ public final class RegionView extends JComponent implements PropertyChangeListen
     /** Auto-generated by Eclipse. */
     private static final long serialVersionUID = 3570489696805853386L;
 
+    /** Width of the pen used to outline the markers. */
+    private static final float PEN_WIDTH = 1;
+
+    /** Pen used to outline the markers. */
+    private static final BasicStroke PEN_STROKE = new BasicStroke(PEN_WIDTH);
+
+    /** Fill colour of the region markers. */
+    private static final Color MARKER_FILL_COLOR = new Color(15, 135, 0, 100);
+
+    /** Outline colour of the region markers. */
+    private static final Color MARKER_OUTLINE_COLOR = new Color(15, 135, 0);
+
+    /** Colour used to dim the time outside of the region. */
+    private static final Color OUTSIDE_REGION_FILL_COLOR = new Color(63, 63,
+            63, 100);
+
     /** Polygon region for the start marker. */
     private GeneralPath startMarkerPolygon;
 
@@ -114,13 +130,13 @@ public final class RegionView extends JComponent implements PropertyChangeListen
         final long regionEnd = region.getRegionEnd();
 
         final float needleWidth = 1;
-        final float penWidth = 1;
+        final float penWidth = PEN_WIDTH;
 
-        final Color markerFillColor = new Color(15, 135, 0, 100);
-        final Color markerOutlineColor = new Color(15, 135, 0);
-        final Color outsideRegionFillColor = new Color(63, 63, 63, 100);
+        final Color markerFillColor = MARKER_FILL_COLOR;
+        final Color markerOutlineColor = MARKER_OUTLINE_COLOR;
+        final Color outsideRegionFillColor = OUTSIDE_REGION_FILL_COLOR;
 
-        g2d.setStroke(new BasicStroke(penWidth));
+        g2d.setStroke(PEN_STROKE);
 
         // If the left region marker is visible, paint the marker
         if (regionStart >= viewport.getViewStart()) {
@@ -41,6 +41,14 @@ public final class SnapMarkerPainter extends JComponent {
 
     private static final Color SNAP_MARKER_COLOR = new Color(169, 149, 202);
     private static final float SNAP_MARKER_WIDTH = 2.5f;
+    private static final BasicStroke SNAP_MARKER_STROKE = new BasicStroke(
+            SNAP_MARKER_WIDTH);
+
+    /** Extra room around the marker line for the stroke and antialiasing. */
+    private static final int PAINT_MARGIN = 3;
+
+    /** The x position the marker was last painted at, NaN if not painted. */
+    private double paintedX = Double.NaN;
     
     private SnapMarkerModel snapMarkerModel;
 
@@ -56,7 +64,38 @@ public final class SnapMarkerPainter extends JComponent {
 
     public void setSnapMarkerModel(final SnapMarkerModel snapMarkerModel) {
         this.snapMarkerModel = snapMarkerModel;
-        repaint();
+        repaintMarker();
+    }
+
+    /**
+     * Repaints the column the marker was painted in and the column it is now
+     * in, leaving the rest of the tracks area alone.
+     */
+    public void repaintMarker() {
+        if ((snapMarkerModel == null) || (mixer == null)) {
+            repaint();
+
+            return;
+        }
+
+        if (!Double.isNaN(paintedX)) {
+            repaintColumn(paintedX);
+        }
+
+        final ViewportState viewport = mixer.getViewportModel().getViewport();
+        final long markerTime = snapMarkerModel.getMarkerTime();
+
+        if (viewport.isTimeInViewport(markerTime)) {
+            repaintColumn(viewport.computePixelXOffset(markerTime));
+        }
+    }
+
+    /**
+     * @param x The position of a marker line to repaint.
+     */
+    private void repaintColumn(final double x) {
+        repaint((int) Math.floor(x) - PAINT_MARGIN, 0, 2 * PAINT_MARGIN + 1,
+            getHeight());
     }
 
     public void setMixerView(final MixerModel mixer) {
@@ -85,17 +124,20 @@ public final class SnapMarkerPainter extends JComponent {
         final long markerTime = snapMarkerModel.getMarkerTime();
 
         if (!viewport.isTimeInViewport(markerTime)) {
+            paintedX = Double.NaN;
+
             return;
         }
 
         final double markerX = viewport.computePixelXOffset(markerTime);
+        paintedX = markerX;
 
         GeneralPath snapMarker = new GeneralPath();
         snapMarker.moveTo(markerX, 0);
         snapMarker.lineTo(markerX, getHeight());
         
         g2d.setColor(SNAP_MARKER_COLOR);
-        g2d.setStroke(new BasicStroke(SNAP_MARKER_WIDTH));
+        g2d.setStroke(SNAP_MARKER_STROKE);
         g2d.draw(snapMarker);
     }
 }
@@ -18,13 +18,16 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
 
-
-import java.util.HashSet;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.swing.JComponent;
 
@@ -35,6 +38,11 @@ import org.openshapa.models.component.ViewportState;
 
 /**
  * This class is used to paint a timescale for a given range of times.
+ *
+ * The time interval markers are painted into image tiles of a fixed width,
+ * keyed by the zoom level and the position of the tile along the timeline.
+ * Scrolling the timescale only paints the tiles that have scrolled into view,
+ * and repainting the timescale under the needle just copies the tiles.
  */
 public final class TimescalePainter extends JComponent {
 
@@ -42,9 +50,82 @@ public final class TimescalePainter extends JComponent {
      * Auto generated by Eclipse
      */
     private static final long serialVersionUID = 1514199704893523855L;
+
+    /** Width of a marker tile in pixels. */
+    private static final int TILE_WIDTH = 256;
+
+    /** The most marker tiles to keep. */
+    private static final int MAX_TILES = 64;
+
+    /** Room either side of a tile for markers straddling its edges. */
+    private static final int TILE_OVERLAP = 2;
+
+    /** Stroke of the major marker lines, 3 pixels wide. */
+    private static final BasicStroke MAJOR_MARKER_STROKE = new BasicStroke(3f,
+            BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND);
+
+    /** Stroke of the minor marker lines, 0.75 pixels wide. */
+    private static final BasicStroke MINOR_MARKER_STROKE = new BasicStroke(
+            0.75f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND);
+
+    private static final long HOUR_INTERVAL = 60 * 60 * 1000;
+    private static final long MINUTE_INTERVAL = 60 * 1000;
+    private static final long SECOND_INTERVAL = 1000;
+
     private TimescaleModel timescaleModel;
     private MixerModel mixer;
 
+    /** Marker tiles, least recently used first. */
+    private final Map<TileKey, BufferedImage> tiles =
+        new LinkedHashMap<TileKey, BufferedImage>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(
+                final Map.Entry<TileKey, BufferedImage> eldest) {
+                return size() > MAX_TILES;
+            }
+        };
+
+    /** The height of the tiles in the cache. */
+    private int tileHeight = -1;
+
+    /** Reused when drawing marker lines. */
+    private final Line2D.Float markerLine = new Line2D.Float();
+
+    /**
+     * Identifies a marker tile by the zoom level and the position of the tile
+     * along the timeline.
+     */
+    private static final class TileKey {
+
+        /** The zoom level, in milliseconds per pixel. */
+        private final double resolution;
+
+        /** The position of the tile, in multiples of the tile width. */
+        private final long index;
+
+        TileKey(final double msPerPixel, final long tileIndex) {
+            resolution = msPerPixel;
+            index = tileIndex;
+        }
+
+        @Override public boolean equals(final Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+
+            TileKey other = (TileKey) obj;
+
+            return (Double.compare(resolution, other.resolution) == 0)
+                && (index == other.index);
+        }
+
+        @Override public int hashCode() {
+            long bits = Double.doubleToLongBits(resolution);
+
+            return (int) (bits ^ (bits >>> 32)) * 31
+                + (int) (index ^ (index >>> 32));
+        }
+    }
+
     public TimescalePainter() {
         super();
     }
@@ -55,6 +136,7 @@ public final class TimescalePainter extends JComponent {
 
     public void setTimescaleModel(final TimescaleModel timescaleModel) {
         this.timescaleModel = timescaleModel;
+        tiles.clear();
         this.repaint();
     }
 
@@ -126,12 +208,12 @@ public final class TimescalePainter extends JComponent {
             assert zoomWindowIndicatorX >= 0;
         }
 
-        // draw the background of the time scale
+        // draw the background of the time scale and the interval markers
         final Color backgroundColor =
             timescaleModel.getTimescaleBackgroundColor();
-        g2d.setColor(backgroundColor);
-        g2d.fillRect(0, 0, getWidth(), transitionAreaTop);
+        paintMarkerTiles(g2d, viewport, transitionAreaTop);
 
+        g2d.setColor(backgroundColor);
         g2d.fillRect(0, zoomWindowIndicatorTop, getWidth(),
             timescaleModel.getZoomWindowIndicatorHeight());
 
@@ -152,8 +234,6 @@ public final class TimescalePainter extends JComponent {
         zoomWindowIndicator.closePath();
         g2d.fill(zoomWindowIndicator);
 
-        g2d.setColor(Color.darkGray);
-
         // adjusts the shape of the curve from the zoom window indicator to the time scale (larger values will extend the curve downwards)
         final int transitionCurveBottomWeight = 10;
         assert transitionCurveBottomWeight >= 0;
@@ -177,12 +257,85 @@ public final class TimescalePainter extends JComponent {
             transitionAreaTop);
         shape.closePath();
         g2d.fill(shape);
+    }
 
-        // plot the time interval markers
-        final float majorMarkerWidth = 3f;
-        final float minorMarkerWidth = 0.75f;
+    /**
+     * Copies the marker tiles covering the part of the viewport being painted
+     * onto the timescale, painting any tiles that are not cached.
+     *
+     * @param g2d graphics object the timescale is painted with
+     * @param viewport the viewport being displayed
+     * @param height height of the area the markers are painted in
+     */
+    private void paintMarkerTiles(final Graphics2D g2d,
+        final ViewportState viewport, final int height) {
+        final double resolution = viewport.getResolution();
 
-        final Set<Long> plottedMarkers = new HashSet<Long>(1000);
+        if ((height <= 0) || !(resolution > 0)) {
+            return;
+        }
+
+        if (height != tileHeight) {
+            tiles.clear();
+            tileHeight = height;
+        }
+
+        // The position of the start of the viewport, in whole pixels from the
+        // start of the timeline. Tiles are placed from it, so neighbouring
+        // tiles always meet exactly.
+        final long origin = Math.round(viewport.getViewStart() / resolution);
+
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), height);
+        }
+
+        final long first = (long) Math.floor((origin + Math.max(clip.x, 0))
+                / (double) TILE_WIDTH);
+        final long last = (long) Math.floor((origin
+                    + Math.min(clip.x + clip.width, getWidth()))
+                / (double) TILE_WIDTH);
+
+        for (long index = first; index <= last; index++) {
+            TileKey key = new TileKey(resolution, index);
+            BufferedImage tile = tiles.get(key);
+
+            if (tile == null) {
+                tile = createTile(resolution, index, height);
+                tiles.put(key, tile);
+            }
+
+            g2d.drawImage(tile, (int) ((index * TILE_WIDTH) - origin), 0,
+                null);
+        }
+    }
+
+    /**
+     * Paints a tile of the timescale background and interval markers.
+     *
+     * @param resolution zoom level of the tile, in milliseconds per pixel
+     * @param index position of the tile, in multiples of the tile width
+     * @param height height of the tile
+     *
+     * @return the painted tile
+     */
+    private BufferedImage createTile(final double resolution, final long index,
+        final int height) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        BufferedImage tile = (gc != null)
+            ? gc.createCompatibleImage(TILE_WIDTH, height)
+            : new BufferedImage(TILE_WIDTH, height, BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D g2d = tile.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+            RenderingHints.VALUE_ANTIALIAS_ON);
+
+        final Color backgroundColor =
+            timescaleModel.getTimescaleBackgroundColor();
+        g2d.setColor(backgroundColor);
+        g2d.fillRect(0, 0, TILE_WIDTH, height);
+
+        // plot the time interval markers
         final int maxMarkerHeight = timescaleModel.getHeight()
             - timescaleModel.getZoomWindowIndicatorHeight()
             - timescaleModel.getZoomWindowToTrackTransitionHeight();
@@ -193,54 +346,71 @@ public final class TimescalePainter extends JComponent {
         final Color millisecondsColor =
             timescaleModel.getMillisecondsMarkerColor();
 
-        final long hourIntervalsInMS = 60 * 60 * 1000;
-        final long minuteIntervalsInMS = 60 * 1000;
-        final long secondIntervalsInMS = 1000;
-
         final int hourIntervalsMarkerHeight = maxMarkerHeight;
         final int minuteIntervalsMarkerHeight = hourIntervalsMarkerHeight - 10;
         final int secondIntervalsMarkerHeight = hourIntervalsMarkerHeight - 20;
         final int tenMillisecondIntervalsMarkerHeight =
             hourIntervalsMarkerHeight - 25;
 
-        paintMarkers(g2d, viewport, plottedMarkers, hourIntervalsInMS,
-            majorMarkerWidth, hourIntervalsMarkerHeight, 150000, 130000,
-            hoursColor, backgroundColor);
-        paintMarkers(g2d, viewport, plottedMarkers, 10 * minuteIntervalsInMS,
-            minorMarkerWidth, hourIntervalsMarkerHeight, 140000, 30000,
-            hoursColor, backgroundColor);
-        paintMarkers(g2d, viewport, plottedMarkers, minuteIntervalsInMS,
-            majorMarkerWidth, minuteIntervalsMarkerHeight, 15000, 2000,
-            minutesColor, backgroundColor);
-        paintMarkers(g2d, viewport, plottedMarkers, 10 * secondIntervalsInMS,
-            minorMarkerWidth, minuteIntervalsMarkerHeight, 4000, 900,
-            minutesColor, backgroundColor);
-        paintMarkers(g2d, viewport, plottedMarkers, secondIntervalsInMS,
-            majorMarkerWidth, secondIntervalsMarkerHeight, 400, 1, secondsColor,
-            backgroundColor);
-        paintMarkers(g2d, viewport, plottedMarkers, secondIntervalsInMS / 10,
-            minorMarkerWidth, secondIntervalsMarkerHeight, 60, 1, secondsColor,
+        final double tileStart = (double) index * TILE_WIDTH;
+
+        // Each interval is a multiple of the intervals after it, so markers
+        // already plotted for a longer interval are skipped by checking
+        // against the shortest interval plotted so far.
+        long plotted = 0;
+        plotted = paintMarkers(g2d, resolution, tileStart, plotted,
+                HOUR_INTERVAL, MAJOR_MARKER_STROKE, hourIntervalsMarkerHeight,
+                150000, 130000, hoursColor, backgroundColor);
+        plotted = paintMarkers(g2d, resolution, tileStart, plotted,
+                10 * MINUTE_INTERVAL, MINOR_MARKER_STROKE,
+                hourIntervalsMarkerHeight, 140000, 30000, hoursColor,
+                backgroundColor);
+        plotted = paintMarkers(g2d, resolution, tileStart, plotted,
+                MINUTE_INTERVAL, MAJOR_MARKER_STROKE,
+                minuteIntervalsMarkerHeight, 15000, 2000, minutesColor,
+                backgroundColor);
+        plotted = paintMarkers(g2d, resolution, tileStart, plotted,
+                10 * SECOND_INTERVAL, MINOR_MARKER_STROKE,
+                minuteIntervalsMarkerHeight, 4000, 900, minutesColor,
+                backgroundColor);
+        plotted = paintMarkers(g2d, resolution, tileStart, plotted,
+                SECOND_INTERVAL, MAJOR_MARKER_STROKE,
+                secondIntervalsMarkerHeight, 400, 1, secondsColor,
+                backgroundColor);
+        plotted = paintMarkers(g2d, resolution, tileStart, plotted,
+                SECOND_INTERVAL / 10, MINOR_MARKER_STROKE,
+                secondIntervalsMarkerHeight, 60, 1, secondsColor,
+                backgroundColor);
+        paintMarkers(g2d, resolution, tileStart, plotted,
+            SECOND_INTERVAL / 100, MINOR_MARKER_STROKE,
+            tenMillisecondIntervalsMarkerHeight, 5, 1, millisecondsColor,
             backgroundColor);
-        paintMarkers(g2d, viewport, plottedMarkers, secondIntervalsInMS / 100,
-            minorMarkerWidth, tenMillisecondIntervalsMarkerHeight, 5, 1,
-            millisecondsColor, backgroundColor);
+
+        g2d.dispose();
+
+        return tile;
     }
 
     /**
      * Draws the time interval markers for a specific time interval (hours,
-     * minutes, or seconds, etc).
+     * minutes, or seconds, etc) onto a tile.
      *
      * @param g2d
-     *            graphics object that the markers will be drawn with
-     * @param viewport
-     * @param plottedMarkers
-     *            set of markers (time in milliseconds) that have already been
-     *            drawn, and therefore should be omitted from being drawn again
+     *            graphics object of the tile the markers will be drawn on
+     * @param resolution
+     *            zoom level of the tile, in milliseconds per pixel
+     * @param tileStart
+     *            position of the left edge of the tile, in pixels from the
+     *            start of the timeline
+     * @param plottedInterval
+     *            the shortest interval that has already been drawn, or zero if
+     *            none have - markers at multiples of it are omitted from being
+     *            drawn again
      * @param intervalTime
      *            time interval (milliseconds) between markers to be drawn, e.g.
      *            1000 for seconds markers
-     * @param width
-     *            width of the marker lines in pixels
+     * @param stroke
+     *            stroke of the marker lines, once fully visible
      * @param intervalHeight
      *            height of the marker lines in pixels (bottom-aligned)
      * @param startFadeMsPerPx
@@ -256,25 +426,28 @@ public final class TimescalePainter extends JComponent {
      *            color of the markers
      * @param backgroundColor
      *            background color that the markers will fade in from
+     *
+     * @return the shortest interval drawn so far
      */
-    private void paintMarkers(final Graphics2D g2d, final ViewportState viewport,
-        final Set<Long> plottedMarkers, final long intervalTime,
-        final float width, final int intervalHeight,
+    private long paintMarkers(final Graphics2D g2d, final double resolution,
+        final double tileStart, final long plottedInterval,
+        final long intervalTime, final BasicStroke stroke,
+        final int intervalHeight,
         final double startFadeMsPerPx, final double stopFadeMsPerPx,
         final Color foregroundColor, final Color backgroundColor) {
         final int markerBottom = timescaleModel.getHeight()
             - timescaleModel.getZoomWindowIndicatorHeight()
             - timescaleModel.getZoomWindowToTrackTransitionHeight();
 
-        final double currentMsPerPx = viewport.getResolution();
+        final double currentMsPerPx = resolution;
 
-        if (viewport.getResolution() > startFadeMsPerPx) {
+        if (resolution > startFadeMsPerPx) {
 
             // the time scale is not zoomed in sufficiently for the markers to be visible yet
-            return;
+            return plottedInterval;
         }
 
-        float lineWidthRatio = 1;
+        BasicStroke lineStroke = stroke;
 
         if (currentMsPerPx >= stopFadeMsPerPx) {
 
@@ -282,34 +455,40 @@ public final class TimescalePainter extends JComponent {
             double x = (currentMsPerPx - startFadeMsPerPx)
                 / (stopFadeMsPerPx - startFadeMsPerPx);
             x = Math.pow(x, 3);
-            lineWidthRatio = (float) x;
+            lineStroke = new BasicStroke(stroke.getLineWidth() * (float) x,
+                    stroke.getEndCap(), stroke.getLineJoin());
         }
 
         g2d.setColor(foregroundColor);
-        g2d.setStroke(new BasicStroke(width * lineWidthRatio,
-                BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
+        g2d.setStroke(lineStroke);
+
+        // Markers just beyond the edges of the tile are drawn too, so that
+        // wide markers straddling two tiles are drawn in full.
+        final long startTime = Math.max(0,
+                (long) Math.floor((tileStart - TILE_OVERLAP) * resolution));
+        final long endTime = (long) Math.ceil((tileStart + TILE_WIDTH
+                    + TILE_OVERLAP) * resolution);
 
-        long leftPadTime = (intervalTime
-                - (viewport.getViewStart() % intervalTime)) % intervalTime;
+        long leftPadTime = (intervalTime - (startTime % intervalTime))
+            % intervalTime;
 
-        for (long plotTime = viewport.getViewStart() + leftPadTime;
-                plotTime <= viewport.getViewEnd(); plotTime += intervalTime) {
+        for (long plotTime = startTime + leftPadTime; plotTime <= endTime;
+                plotTime += intervalTime) {
 
-            if (plottedMarkers.contains(plotTime)) {
+            if ((plottedInterval != 0) && ((plotTime % plottedInterval) == 0)) {
 
                 // don't plot over existing markers
                 continue;
             }
 
-            plottedMarkers.add(plotTime);
-
-            // GeneralPath is used here to plot anti-aliased lines at sub-pixel resolution for the fading in/out effect
-            final float x = (float) viewport.computePixelXOffset(plotTime);
-            GeneralPath line = new GeneralPath();
-            line.moveTo(x, markerBottom - intervalHeight - 1);
-            line.lineTo(x, markerBottom);
-            g2d.draw(line);
+            // Lines are plotted at sub-pixel resolution for the fading in/out effect
+            final float x = (float) ((plotTime / resolution) - tileStart);
+            markerLine.setLine(x, markerBottom - intervalHeight - 1, x,
+                markerBottom);
+            g2d.draw(markerLine);
         }
+
+        return intervalTime;
     }
 
 }
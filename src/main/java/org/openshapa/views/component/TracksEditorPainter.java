@@ -16,6 +16,10 @@ package org.openshapa.views.component;
 
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
@@ -24,18 +28,93 @@ import org.openshapa.models.component.TimescaleConstants;
 import net.miginfocom.swing.MigLayout;
 
 
-public final class TracksEditorPainter extends JPanel {
+/**
+ * Paints the background of the tracks editor and the tracks within it. The
+ * tracks are painted into a cached image, so that repainting underneath the
+ * timing needle during playback is a copy from the cache rather than painting
+ * every track again. Only the parts of the cache that have been invalidated
+ * are painted again.
+ */
+public final class TracksEditorPainter extends JPanel implements BackBuffered {
 
     private static final Color PANEL_BG_COLOR = Color.WHITE;
 
     private static final Color TRACK_BG_COLOR = new Color(237, 237, 237);
 
+    /** The cached image of the panel and its tracks. */
+    private BufferedImage buffer;
+
+    /** The area of the cache that needs painting again, null if none. */
+    private Rectangle dirty;
+
     public TracksEditorPainter() {
         setLayout(new MigLayout("fillx, wrap, ins 0", "", ""));
         setOpaque(false);
     }
 
-    public void paint(final Graphics g) {
+    @Override public void addNotify() {
+        super.addNotify();
+        BackBufferRepaintManager.register(this);
+    }
+
+    @Override public void removeNotify() {
+        BackBufferRepaintManager.unregister(this);
+        super.removeNotify();
+    }
+
+    @Override public synchronized void invalidateBuffer(final Rectangle area) {
+        dirty = (dirty == null) ? new Rectangle(area) : dirty.union(area);
+    }
+
+    /**
+     * @return The area of the cache to paint again, clearing it.
+     */
+    private synchronized Rectangle takeDirty() {
+        Rectangle area = dirty;
+        dirty = null;
+
+        return area;
+    }
+
+    @Override public void paint(final Graphics g) {
+        final int width = getWidth();
+        final int height = getHeight();
+
+        if ((width <= 0) || (height <= 0)) {
+            return;
+        }
+
+        Rectangle stale = takeDirty();
+
+        if ((buffer == null) || (buffer.getWidth() != width)
+                || (buffer.getHeight() != height)) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            buffer = (gc != null) ? gc.createCompatibleImage(width, height)
+                                  : new BufferedImage(width, height,
+                                        BufferedImage.TYPE_INT_RGB);
+            stale = new Rectangle(0, 0, width, height);
+        }
+
+        if (stale != null) {
+            stale = stale.intersection(new Rectangle(0, 0, width, height));
+        }
+
+        if ((stale != null) && !stale.isEmpty()) {
+            Graphics2D bg = buffer.createGraphics();
+            bg.clip(stale);
+            paintContent(bg);
+            bg.dispose();
+        }
+
+        g.drawImage(buffer, 0, 0, null);
+    }
+
+    /**
+     * Paints the background and the tracks.
+     *
+     * @param g The graphics context to paint with.
+     */
+    private void paintContent(final Graphics g) {
         g.setColor(PANEL_BG_COLOR);
         g.fillRect(0, 0, getWidth(), getHeight());
 
@@ -0,0 +1,262 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openshapa.models.db.Cell;
+
+/**
+ * The cells selected within the spreadsheet, held as a list of ranges. Cells
+ * selected one at a time are held as ranges of a single cell. The selection
+ * only lives in the view - cells are shown as selected or deselected as they
+ * enter and leave the selection, and nothing is written to the datastore.
+ */
+final class CellSelection {
+
+    /**
+     * What the selection needs to know about the spreadsheet.
+     */
+    interface View {
+
+        /**
+         * @param member A cell within the column.
+         *
+         * @return The cells of the column holding the supplied cell, in the
+         * order of the current sheet layout. Empty if the cell is not shown.
+         */
+        List<Cell> getColumnCells(Cell member);
+
+        /**
+         * @param cell The cell to check.
+         *
+         * @return True if the cell is shown in the spreadsheet.
+         */
+        boolean isShown(Cell cell);
+
+        /**
+         * Shows the selection state of a cell.
+         *
+         * @param cell The cell whose selection state has changed.
+         * @param selected True if the cell is now selected.
+         */
+        void showSelected(Cell cell, boolean selected);
+    }
+
+    /** The spreadsheet holding the selection. */
+    private final View view;
+
+    /** The selected ranges, in the order they were selected. */
+    private final List<CellSelectionRange> ranges =
+        new ArrayList<CellSelectionRange>();
+
+    /**
+     * Constructor.
+     *
+     * @param sheet The spreadsheet holding the selection.
+     */
+    CellSelection(final View sheet) {
+        view = sheet;
+    }
+
+    /**
+     * Adds a single cell to the selection.
+     *
+     * @param cell The cell to add.
+     */
+    void add(final Cell cell) {
+        if (!isSingle(cell)) {
+            ranges.add(new CellSelectionRange(cell, cell));
+        }
+
+        view.showSelected(cell, true);
+    }
+
+    /**
+     * Forgets a single cell that was added to the selection. The cell is left
+     * selected if it is covered by a wider range.
+     *
+     * @param cell The cell to forget.
+     */
+    void remove(final Cell cell) {
+        for (Iterator<CellSelectionRange> i = ranges.iterator(); i.hasNext();) {
+            CellSelectionRange r = i.next();
+
+            if (r.isSingle() && r.getAnchor().equals(cell)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Replaces the selection within a column with the cells from one cell to
+     * another. Only the cells that enter or leave the selection are shown as
+     * changed.
+     *
+     * @param anchor The cell the selection was started from.
+     * @param end The cell the selection is extended to, within the same column
+     * as the anchor.
+     */
+    void extend(final Cell anchor, final Cell end) {
+        List<Cell> ordered = view.getColumnCells(anchor);
+        Set<Cell> column = new HashSet<Cell>(ordered);
+
+        List<CellSelectionRange> replaced = new ArrayList<CellSelectionRange>();
+        Set<Cell> before = new HashSet<Cell>();
+
+        for (CellSelectionRange r : ranges) {
+            if (column.contains(r.getAnchor())) {
+                replaced.add(r);
+                before.addAll(r.isSingle()
+                              ? Collections.singletonList(r.getAnchor())
+                              : r.getCells(ordered));
+            }
+        }
+
+        CellSelectionRange range = new CellSelectionRange(anchor, end);
+        List<Cell> after = range.getCells(ordered);
+        Set<Cell> afterSet = new HashSet<Cell>(after);
+
+        ranges.removeAll(replaced);
+        ranges.add(range);
+
+        for (Cell c : before) {
+            if (!afterSet.contains(c)) {
+                view.showSelected(c, false);
+            }
+        }
+
+        for (Cell c : after) {
+            if (!before.contains(c)) {
+                view.showSelected(c, true);
+            }
+        }
+    }
+
+    /**
+     * Empties the selection, showing each selected cell as deselected.
+     */
+    void clear() {
+        for (Cell c : getSelectedCells()) {
+            view.showSelected(c, false);
+        }
+
+        ranges.clear();
+    }
+
+    /**
+     * Forgets the selection without showing any changes, i.e. when the
+     * spreadsheet is being rebuilt.
+     */
+    void reset() {
+        ranges.clear();
+    }
+
+    /**
+     * @param cell The cell to check.
+     *
+     * @return True if the cell is selected, by itself or within a range.
+     */
+    boolean contains(final Cell cell) {
+        List<Cell> ordered = null;
+
+        for (CellSelectionRange r : ranges) {
+            if (r.isSingle()) {
+                if (r.getAnchor().equals(cell)) {
+                    return true;
+                }
+
+                continue;
+            }
+
+            // Only ranges within the column of the cell can cover it.
+            if (ordered == null) {
+                ordered = view.getColumnCells(cell);
+            }
+
+            if (r.getCells(ordered).contains(cell)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return True if no cells are selected.
+     */
+    boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * @return The selected ranges.
+     */
+    List<CellSelectionRange> getRanges() {
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Works out the selected cells from the ranges. Ranges that no longer
+     * cover any cells are dropped.
+     *
+     * @return The selected cells, with each range in layout order.
+     */
+    List<Cell> getSelectedCells() {
+        Set<Cell> result = new LinkedHashSet<Cell>();
+
+        for (Iterator<CellSelectionRange> i = ranges.iterator(); i.hasNext();) {
+            CellSelectionRange r = i.next();
+            List<Cell> cells;
+
+            if (r.isSingle()) {
+                cells = view.isShown(r.getAnchor())
+                        ? Collections.singletonList(r.getAnchor())
+                        : Collections.<Cell>emptyList();
+            } else {
+                cells = r.getCells(view.getColumnCells(r.getAnchor()));
+            }
+
+            if (cells.isEmpty()) {
+                i.remove();
+            }
+
+            result.addAll(cells);
+        }
+
+        return new ArrayList<Cell>(result);
+    }
+
+    /**
+     * @param cell The cell to check.
+     *
+     * @return True if the cell has been added to the selection by itself.
+     */
+    private boolean isSingle(final Cell cell) {
+        for (CellSelectionRange r : ranges) {
+            if (r.isSingle() && r.getAnchor().equals(cell)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -45,4 +45,13 @@ public interface CellSelectionListener {
      * Notifiers the listeners to clear all the currently selected cells.
      */
     void clearCellSelection();
+
+    /**
+     * Notifies the listener that the datastore has selected or deselected a
+     * cell by itself, rather than through the listener.
+     *
+     * @param cell The cell whose selection has changed.
+     * @param selected True if the cell is now selected.
+     */
+    void cellSelectionChanged(SpreadsheetCell cell, boolean selected);
 }
@@ -0,0 +1,125 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openshapa.models.db.Cell;
+
+/**
+ * A continuous selection of cells within a single column, stored as the cell
+ * the selection was started from and the cell it was extended to rather than
+ * as a collection of cells or as positions within the column. The cells in
+ * between are worked out from the column when needed, so the range stays
+ * correct as cells are inserted into or deleted from the column.
+ */
+public final class CellSelectionRange {
+
+    /** The cell that the selection was started from. */
+    private final Cell anchor;
+
+    /** The cell that the selection was extended to. */
+    private final Cell end;
+
+    /**
+     * Constructor.
+     *
+     * @param anchorCell The cell the selection was started from.
+     * @param endCell The cell the selection was extended to, may be either
+     * side of the anchor.
+     */
+    public CellSelectionRange(final Cell anchorCell, final Cell endCell) {
+        anchor = anchorCell;
+        end = endCell;
+    }
+
+    /**
+     * @return The cell that the selection was started from.
+     */
+    public Cell getAnchor() {
+        return anchor;
+    }
+
+    /**
+     * @return The cell that the selection was extended to.
+     */
+    public Cell getEnd() {
+        return end;
+    }
+
+    /**
+     * @return True if this range selects a single cell, false otherwise.
+     */
+    public boolean isSingle() {
+        return anchor.equals(end);
+    }
+
+    /**
+     * @param cell The cell to check.
+     *
+     * @return True if the supplied cell is one of the end points of this
+     * range, false otherwise.
+     */
+    public boolean isEndPoint(final Cell cell) {
+        return anchor.equals(cell) || end.equals(cell);
+    }
+
+    /**
+     * Works out the cells covered by this range in a single pass over the
+     * column.
+     *
+     * @param ordered The cells of the column holding the range, in the order
+     * of the current sheet layout.
+     *
+     * @return The cells covered by this range, in layout order. Empty if
+     * either end point is no longer in the column.
+     */
+    public List<Cell> getCells(final List<Cell> ordered) {
+        List<Cell> result = new ArrayList<Cell>();
+        boolean inside = false;
+        boolean closed = false;
+
+        for (Cell c : ordered) {
+            boolean endPoint = isEndPoint(c);
+
+            if (inside || endPoint) {
+                result.add(c);
+            }
+
+            if (endPoint) {
+                if (inside || isSingle()) {
+                    closed = true;
+
+                    break;
+                }
+
+                inside = true;
+            }
+        }
+
+        if (!closed) {
+            return Collections.emptyList();
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + anchor + ".." + end + "]";
+    }
+}
@@ -25,6 +25,8 @@ import java.awt.event.KeyEvent;
 
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -38,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import org.openshapa.models.db.Cell;
 import org.openshapa.models.db.Datastore;
+import org.openshapa.models.db.DatastoreChanges;
+import org.openshapa.models.db.MongoDatastore;
 import org.openshapa.models.db.Variable;
 import org.openshapa.util.Constants;
 
@@ -54,15 +58,43 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
     /** The model that this variable represents. */
     private Variable model;
 
+    /** The datastore holding the cells this panel represents. */
+    private Datastore datastore;
+
+    /** Have the SpreadsheetCells for this column been built? Hidden columns
+     * are left as empty placeholders until they are first shown. */
+    private boolean populated = false;
+
     /** The cell selection listener used for cells in this column. */
     private CellSelectionListener cellSelectionL;
 
+    /** The cells selected within the spreadsheet. */
+    private final CellSelection selection;
+
     /** Collection of the SpreadsheetCells held in by this data panel. */
     private List<SpreadsheetCell> cells;
 
     /** The mapping between the database and the spreadsheet cells. */
     private Map<Cell, SpreadsheetCell> viewMap;
 
+    /** The SpreadsheetCells in onset order, null until next asked for. */
+    private List<SpreadsheetCell> temporalCells;
+
+    /** Changes each time a cell is added, removed or moved in time. */
+    private int temporalVersion = 0;
+
+    /** Orders SpreadsheetCells by onset. */
+    private static final Comparator<SpreadsheetCell> BY_ONSET =
+        new Comparator<SpreadsheetCell>() {
+            @Override public int compare(final SpreadsheetCell a,
+                                         final SpreadsheetCell b) {
+                long onsetA = a.getOnsetTicks();
+                long onsetB = b.getOnsetTicks();
+
+                return (onsetA < onsetB) ? -1 : ((onsetA == onsetB) ? 0 : 1);
+            }
+        };
+
     /** The logger for this class. */
     private static final Logger LOGGER = UserMetrix.getLogger(ColumnDataPanel.class);
 
@@ -79,11 +111,13 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
      * @param width The width of the new column data panel in pixels.
      * @param variable The Data Column that this panel represents.
      * @param cellSelL Spreadsheet cell selection listener.
+     * @param cellSelection The cells selected within the spreadsheet.
      */
     public ColumnDataPanel(final Datastore db,
                            final int width,
                            final Variable variable,
-                           final CellSelectionListener cellSelL) {
+                           final CellSelectionListener cellSelL,
+                           final CellSelection cellSelection) {
         super();
 
         // Store member variables.
@@ -92,7 +126,9 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
         cells = new ArrayList<SpreadsheetCell>();
         viewMap = new HashMap<Cell, SpreadsheetCell>();
         cellSelectionL = cellSelL;
+        selection = cellSelection;
         model = variable;
+        datastore = db;
 
         setLayout(null);
         //setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
@@ -106,8 +142,30 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
         padding.setBorder(BorderFactory.createMatteBorder(0, 0, 0, Constants.BORDER_SIZE, new Color(175, 175, 175)));
         this.add(padding);
 
-        // Populate the data column with spreadsheet cells.
-        buildDataPanelCells(db, variable, cellSelL);
+        // Populate the data column with spreadsheet cells - hidden columns
+        // are populated when they are first shown.
+        if (!variable.isHidden()) {
+            populate();
+        }
+    }
+
+    /**
+     * Builds the SpreadsheetCells for this column if they have not already
+     * been built.
+     */
+    public void populate() {
+        if (!populated) {
+            populated = true;
+            buildDataPanelCells(datastore, model, cellSelectionL);
+        }
+    }
+
+    /**
+     * @return True if the SpreadsheetCells for this column have been built,
+     * false if this column is still a placeholder.
+     */
+    public boolean isPopulated() {
+        return populated;
     }
 
     /**
@@ -158,6 +216,7 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
 
         this.add(newCellButton);
         this.setSize(columnWidth, columnHeight);
+        cellTimesChanged();
     }
 
     /**
@@ -171,6 +230,169 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
 
         cells.clear();
         viewMap.clear();
+        cellTimesChanged();
+    }
+
+    /**
+     * Patches the cells held by this column data panel to reflect a set of
+     * changes made to the datastore. Only cells that have been inserted,
+     * removed or changed have their display components rebuilt.
+     *
+     * @param db The datastore holding the cells this column represents.
+     * @param variable The up to date variable this column represents.
+     * @param changes The changes made to the datastore since the last render.
+     */
+    public void refresh(final Datastore db,
+                        final Variable variable,
+                        final DatastoreChanges changes) {
+        model = variable;
+
+        // Placeholders build their cells from scratch when shown.
+        if (!populated) {
+            return;
+        }
+
+        boolean retyped = changes.isVariableRetyped(
+                MongoDatastore.getVariableID(variable));
+        Map<Cell, SpreadsheetCell> oldViews = new HashMap<Cell, SpreadsheetCell>(viewMap);
+        final List<SpreadsheetCell> created = new ArrayList<SpreadsheetCell>();
+        List<SpreadsheetCell> ordered = patchCells(variable.getCellsTemporally(),
+                oldViews, retyped, changes, new CellViewFactory() {
+                    @Override public SpreadsheetCell create(final Cell cell) {
+                        SpreadsheetCell sc = createCellView(db, cell);
+                        created.add(sc);
+
+                        return sc;
+                    }
+                });
+
+        // Anything left over has been rebuilt or no longer exists.
+        for (Map.Entry<Cell, SpreadsheetCell> old : oldViews.entrySet()) {
+            old.getKey().removeListener(old.getValue());
+            this.remove(old.getValue());
+
+            if (viewMap.get(old.getKey()) == old.getValue()) {
+                viewMap.remove(old.getKey());
+            }
+        }
+
+        cells.clear();
+        cells.addAll(ordered);
+        cellTimesChanged();
+
+        // Ranges are worked out from the cells of the column, so the new
+        // display components are only shown as selected once they are in it.
+        showSelection(created, selection);
+    }
+
+    /**
+     * Shows the selection and highlighting of newly built display components.
+     * Cells within a selected range are only selected in the view, so whether
+     * the datastore has the cell selected is only used for cells outside the
+     * selection - i.e. a new cell that starts off selected.
+     *
+     * @param views The newly built display components.
+     * @param cellSelection The cells selected within the spreadsheet.
+     */
+    static void showSelection(final List<SpreadsheetCell> views,
+                              final CellSelection cellSelection) {
+        for (SpreadsheetCell sc : views) {
+            Cell cell = sc.getCell();
+
+            if (cellSelection.contains(cell)) {
+                sc.showSelection(true);
+            } else {
+                sc.selectionChange(cell.isSelected());
+            }
+
+            sc.highlightingChange(cell.isHighlighted());
+        }
+    }
+
+    /**
+     * Builds the display component for a cell.
+     */
+    interface CellViewFactory {
+
+        /**
+         * @param cell The cell to display.
+         *
+         * @return The display component for the cell.
+         */
+        SpreadsheetCell create(Cell cell);
+    }
+
+    /**
+     * Works out the display components for the cells of a column, keeping
+     * those of the cells that are unchanged.
+     *
+     * @param ordered The cells of the column, in temporal order.
+     * @param views The display components currently shown, by cell. Those
+     * that are kept are removed, leaving the ones to discard.
+     * @param rebuild Should every cell have its display component rebuilt?
+     * @param changes The changes made to the datastore since the last render.
+     * @param factory Builds the display components of new and changed cells.
+     *
+     * @return The display components for the cells, in temporal order.
+     */
+    static List<SpreadsheetCell> patchCells(final List<Cell> ordered,
+                                            final Map<Cell, SpreadsheetCell> views,
+                                            final boolean rebuild,
+                                            final DatastoreChanges changes,
+                                            final CellViewFactory factory) {
+        List<SpreadsheetCell> result = new ArrayList<SpreadsheetCell>(ordered.size());
+
+        for (Cell cell : ordered) {
+            SpreadsheetCell sc = views.get(cell);
+
+            if ((sc == null) || rebuild || changes.isCellChanged(cell.getCellID())) {
+                sc = factory.create(cell);
+            } else {
+                views.remove(cell);
+            }
+
+            result.add(sc);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param changes The changes made to the datastore since the last render.
+     *
+     * @return True if any of the cells displayed in this column have changed.
+     */
+    public boolean hasChangedCells(final DatastoreChanges changes) {
+        if (!changes.hasCellChanges()) {
+            return false;
+        }
+
+        for (Cell cell : viewMap.keySet()) {
+            if (changes.isCellChanged(cell.getCellID())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates and adds the display component for a cell.
+     *
+     * @param db The datastore holding the cell.
+     * @param cell The cell to create the display component for.
+     *
+     * @return The display component for the supplied cell.
+     */
+    private SpreadsheetCell createCellView(final Datastore db, final Cell cell) {
+        SpreadsheetCell sc = new SpreadsheetCell(db, cell, cellSelectionL);
+        sc.setWidth(columnWidth);
+        cell.addListener(sc);
+
+        this.add(sc);
+        viewMap.put(cell, sc);
+
+        return sc;
     }
 
     /**
@@ -180,10 +402,16 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
      */
     public void deleteCell(final Cell cell) {
         SpreadsheetCell sCell = viewMap.get(cell);
+
+        if (sCell == null) {
+            return;
+        }
+
         cell.removeListener(sCell);
         this.remove(sCell);
         cells.remove(sCell);
         viewMap.remove(cell);
+        cellTimesChanged();
     }
 
     /**
@@ -199,6 +427,11 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
                            final Cell cell,
                            final CellSelectionListener cellSelL) {
 
+        // The cell will be built along with the rest when the column is shown.
+        if (!populated) {
+            return;
+        }
+
         SpreadsheetCell nCell = new SpreadsheetCell(ds, cell, cellSelL);
         nCell.setWidth(this.getWidth());
         cell.addListener(nCell);
@@ -207,6 +440,8 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
         this.add(nCell);
         this.cells.add(nCell);
         viewMap.put(cell, nCell);
+        cellTimesChanged();
+        showSelection(Collections.singletonList(nCell), selection);
         nCell.requestFocus();
     }
 
@@ -240,21 +475,62 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
         return this.padding;
     }
 
+    /**
+     * @param cell The cell to fetch the view for.
+     *
+     * @return The SpreadsheetCell displaying the supplied cell, or null if the
+     * cell does not belong to this column.
+     */
+    public SpreadsheetCell getSpreadsheetCell(final Cell cell) {
+        return viewMap.get(cell);
+    }
+
     public SpreadsheetCell getCellTemporally(final int index) {
-        return viewMap.get(model.getCellTemporally(index));
+        List<SpreadsheetCell> ordered = getCellsTemporally();
+
+        if (index < 0 || index >= ordered.size()) {
+            return null;
+        }
+
+        return ordered.get(index);
     }
 
     /**
+     * The order is worked out from the onsets last reported to each cell, and
+     * kept until a cell is added, removed or moved in time - so the datastore
+     * is not queried each time the column is laid out.
+     *
      * @return The SpreadsheetCells in this column temporally.
      */
     public List<SpreadsheetCell> getCellsTemporally() {
-        ArrayList<SpreadsheetCell> result = new ArrayList<SpreadsheetCell>();
+        if (!populated) {
+            return Collections.emptyList();
+        }
 
-        for (Cell c : model.getCellsTemporally()) {
-            result.add(viewMap.get(c));
+        if (temporalCells == null) {
+            List<SpreadsheetCell> ordered = new ArrayList<SpreadsheetCell>(cells);
+            Collections.sort(ordered, BY_ONSET);
+            temporalCells = Collections.unmodifiableList(ordered);
         }
 
-        return result;
+        return temporalCells;
+    }
+
+    /**
+     * @return A number that changes each time a cell is added to, removed
+     * from or moved in time within this column.
+     */
+    public int getTemporalVersion() {
+        return temporalVersion;
+    }
+
+    /**
+     * Forgets the temporal order of the cells, after a cell has been added,
+     * removed or had its onset or offset changed.
+     */
+    void cellTimesChanged() {
+        temporalCells = null;
+        temporalVersion++;
     }
 
     /**
@@ -277,8 +553,8 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
     public AbstractList<SpreadsheetCell> getSelectedCells() {
         AbstractList<SpreadsheetCell> selectedCells = new ArrayList<SpreadsheetCell>();
 
-        for (SpreadsheetCell c : selectedCells) {
-            if (c.getCell().isSelected()) {
+        for (SpreadsheetCell c : cells) {
+            if (c.isSelected()) {
                 selectedCells.add(c);
             }
         }
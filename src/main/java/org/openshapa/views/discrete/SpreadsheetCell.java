@@ -16,8 +16,10 @@ package org.openshapa.views.discrete;
 
 import com.usermetrix.jclient.Logger;
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
@@ -31,7 +33,9 @@ import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.Box.Filler;
+import javax.swing.text.JTextComponent;
 import javax.swing.border.Border;
 import javax.swing.border.CompoundBorder;
 import javax.swing.border.MatteBorder;
@@ -42,6 +46,9 @@ import org.jdesktop.application.ResourceMap;
 import org.openshapa.Configuration;
 import org.openshapa.OpenSHAPA;
 
+import org.openshapa.util.ClockText;
+
+import org.openshapa.views.discrete.datavalues.DataValueEditorFactory;
 import org.openshapa.views.discrete.datavalues.MatrixRootView;
 import org.openshapa.views.discrete.datavalues.TimeStampTextField;
 import org.openshapa.views.discrete.datavalues.TimeStampDataValueEditor.TimeStampSource;
@@ -54,7 +61,9 @@ import org.openshapa.models.db.Value;
 
 
 /**
- * Visual representation of a spreadsheet cell.
+ * Visual representation of a spreadsheet cell. Until the cell gets focus or is
+ * clicked on, it is painted by the SpreadsheetCellRenderer shared by all cells
+ * - the editor components are only built for cells that are being edited.
  */
 public class SpreadsheetCell extends JPanel
 implements MouseListener, FocusListener, CellListener {
@@ -62,6 +71,9 @@ implements MouseListener, FocusListener, CellListener {
     /** Width of spacer between onset and offset timestamps. */
     private static final int TIME_SPACER = 5;
 
+    /** Width of the cell until the column sets it. */
+    private static final int DEFAULT_WIDTH = 229;
+
     /** Border to use when a cell is highlighted. */
     private static final Border HIGHLIGHT_BORDER = new CompoundBorder(
             new MatteBorder(0, 0, 1, 0, Configuration.BORDER_COLOUR),
@@ -126,6 +138,33 @@ implements MouseListener, FocusListener, CellListener {
     /** The cell that this SpreadsheetCell represents. */
     private Cell model;
 
+    /** The ordinal of the cell within its column. */
+    private Integer ordinal;
+
+    /** The onset of the cell, as last reported by the model. */
+    private long onsetTicks;
+
+    /** The offset of the cell, as last reported by the model. */
+    private long offsetTicks;
+
+    /** The onset displayed by the renderer, null if it needs to be fetched. */
+    private String onsetText;
+
+    /** The offset displayed by the renderer, null if it needs to be fetched. */
+    private String offsetText;
+
+    /** The value displayed by the renderer, null if it needs to be fetched. */
+    private String valueText;
+
+    /** The width of the cell. */
+    private int cellWidth = DEFAULT_WIDTH;
+
+    /** The size of the cell as last calculated by the renderer. */
+    private Dimension rendererSize;
+
+    /** The data font the renderer size was calculated with. */
+    private Font rendererFont;
+
     boolean isLaid = false;
 
     /** Component that sets the width of the cell. */
@@ -140,6 +179,15 @@ implements MouseListener, FocusListener, CellListener {
     /** The spreadsheet cell selection listener. */
     private CellSelectionListener cellSelL;
 
+    /** The selection state of the cell, as last reported by the model. */
+    private boolean selected = false;
+
+    /** The highlighting state of the cell, as last reported by the model. */
+    private boolean highlighted = false;
+
+    /** The selection display needs refreshing the next time it is painted. */
+    private boolean selectionDisplayStale = false;
+
     /** Onset has been processed and layout position calculated. */
     private boolean onsetProcessed = false;
     
@@ -161,23 +209,46 @@ implements MouseListener, FocusListener, CellListener {
                            final CellSelectionListener listener) {
 
         model = cell;
+        onsetTicks = cell.getOnset();
+        offsetTicks = cell.getOffset();
         setName(this.getClass().getSimpleName());
 
-        ResourceMap rMap = Application.getInstance(OpenSHAPA.class).getContext()
-                                      .getResourceMap(SpreadsheetCell.class);
-
         // Check the selected state of the datacell
         // If it is already selected in the database, we need to inform
         // the selector, but not trigger a selection change or deselect others.
         cellSelL = listener;
 
+        // The editor components are built when the cell is first edited, until
+        // then clicks on the cell are handled here.
+        setLayout(new BorderLayout());
+        addMouseListener(this);
+    }
+
+    /**
+     * @return True if the editor components of this cell have been built,
+     * false if the cell is painted by the shared renderer.
+     */
+    public boolean isEditing() {
+        return cellPanel != null;
+    }
+
+    /**
+     * Builds the editor components for this cell, if they don't already exist.
+     */
+    private void buildEditor() {
+        if (isEditing()) {
+            return;
+        }
+
+        ResourceMap rMap = Application.getInstance(OpenSHAPA.class).getContext()
+                                      .getResourceMap(SpreadsheetCell.class);
+
         cellPanel = new JPanel();
         cellPanel.addMouseListener(this);
         strut = new Filler(new Dimension(0, 0),
                            new Dimension(0, 0),
                            new Dimension(Short.MAX_VALUE, 0));
 
-        setLayout(new BorderLayout());
         this.add(strut, BorderLayout.NORTH);
         this.add(cellPanel, BorderLayout.CENTER);
 
@@ -190,6 +261,7 @@ implements MouseListener, FocusListener, CellListener {
         ord.setToolTipText(rMap.getString("ord.tooltip"));
         ord.addMouseListener(this);
         ord.setFocusable(true);
+        ord.setText(getOrdinalText());
 
         onset = new TimeStampTextField(model, TimeStampSource.Onset);
         onset.setFont(Configuration.getInstance().getSSLabelFont());
@@ -207,7 +279,7 @@ implements MouseListener, FocusListener, CellListener {
         offset.addMouseListener(this);
         offset.setName("offsetTextField");
 
-        dataPanel = new MatrixRootView(model, cell.getValue());
+        dataPanel = new MatrixRootView(model, model.getValue());
         dataPanel.setFont(Configuration.getInstance().getSSDataFont());
         dataPanel.setForeground(Configuration.getInstance().getSSForegroundColour());
 
@@ -217,9 +289,8 @@ implements MouseListener, FocusListener, CellListener {
         dataPanel.setName("cellValue");
 
         // Set the appearance of the spreadsheet cell.
-        cellPanel.setBackground(Configuration.getInstance().getSSBackgroundColour());
-        // Cell is highlighted by default.
-        cellPanel.setBorder(NORMAL_BORDER);
+        cellPanel.setBorder(getCellBorder());
+        cellPanel.setBackground(getCellBackground());
         cellPanel.setLayout(new BorderLayout());
 
         // Set the apperance of the top panel and add child elements (ord, onset
@@ -246,9 +317,42 @@ implements MouseListener, FocusListener, CellListener {
         // the actual data of the panel.
         cellPanel.add(dataPanel, BorderLayout.CENTER);
 
-        Dimension d = new Dimension(229, 0);
+        Dimension d = new Dimension(cellWidth, 0);
         stretcher = new Filler(d, d, d);
         cellPanel.add(stretcher, BorderLayout.SOUTH);
+
+        // Lay the editor out straight away, so that it can be given focus and
+        // have carets positioned within it.
+        validate();
+    }
+
+    /**
+     * Discards the editor components for this cell once it has lost focus,
+     * handing the painting of the cell back to the shared renderer.
+     */
+    private void releaseEditor() {
+        if (!isEditing() || isFocusOwner() || ord.isFocusOwner()) {
+            return;
+        }
+
+        removeAll();
+        cellPanel = null;
+        topPanel = null;
+        dataPanel = null;
+        ord = null;
+        onset = null;
+        offset = null;
+        stretcher = null;
+        strut = null;
+
+        // The value may have been edited, fetch it again when next painted.
+        onsetText = null;
+        offsetText = null;
+        valueText = null;
+        rendererSize = null;
+
+        revalidate();
+        repaint();
     }
 
     /**
@@ -300,6 +404,8 @@ implements MouseListener, FocusListener, CellListener {
      * @return onset view
      */
     public TimeStampTextField getOnset() {
+        buildEditor();
+
         return onset;
     }
 
@@ -307,6 +413,8 @@ implements MouseListener, FocusListener, CellListener {
      * @return offset view
      */
     public TimeStampTextField getOffset() {
+        buildEditor();
+
         return offset;
     }
 
@@ -316,7 +424,83 @@ implements MouseListener, FocusListener, CellListener {
      * @param ord The new ordinal value to use with this cell.
      */
     public void setOrdinal(final Integer ordInt) {
-        ord.setText(ordInt.toString());
+        if (ordInt.equals(ordinal)) {
+            return;
+        }
+
+        ordinal = ordInt;
+
+        if (isEditing()) {
+            ord.setText(ordInt.toString());
+        } else {
+            repaint();
+        }
+    }
+
+    /**
+     * @return The ordinal to display for this cell.
+     */
+    String getOrdinalText() {
+        return (ordinal == null) ? "" : ordinal.toString();
+    }
+
+    /**
+     * @return The onset to display for this cell.
+     */
+    String getOnsetText() {
+        if (onsetText == null) {
+            onsetText = ClockText.timestamp(onsetTicks);
+        }
+
+        return onsetText;
+    }
+
+    /**
+     * @return The offset to display for this cell.
+     */
+    String getOffsetText() {
+        if (offsetText == null) {
+            offsetText = ClockText.timestamp(offsetTicks);
+        }
+
+        return offsetText;
+    }
+
+    /**
+     * @return The value to display for this cell.
+     */
+    String getValueText() {
+        if (valueText == null) {
+            valueText = DataValueEditorFactory.buildText(model.getValue());
+        }
+
+        return valueText;
+    }
+
+    /**
+     * @return The border to draw around the cell for its current selection and
+     * overlap state.
+     */
+    Border getCellBorder() {
+        if (highlighted) {
+            return cellOverlap ? HIGHLIGHT_OVERLAP_BORDER : HIGHLIGHT_BORDER;
+        } else if (selected) {
+            return cellOverlap ? FILL_OVERLAP_BORDER : FILL_BORDER;
+        } else {
+            return cellOverlap ? OVERLAP_BORDER : NORMAL_BORDER;
+        }
+    }
+
+    /**
+     * @return The background colour of the cell for its current selection
+     * state.
+     */
+    Color getCellBackground() {
+        if (selected && !highlighted) {
+            return Configuration.getInstance().getSSSelectedColour();
+        }
+
+        return Configuration.getInstance().getSSBackgroundColour();
     }
 
     /**
@@ -325,7 +509,7 @@ implements MouseListener, FocusListener, CellListener {
      * @return Onset time as a long.
      */
     public long getOnsetTicks() {
-        return model.getOnset();
+        return onsetTicks;
     }
 
     /**
@@ -334,10 +518,7 @@ implements MouseListener, FocusListener, CellListener {
      * @return Offset ticks as a long.
      */
     public long getOffsetTicks() {
-        if(model.getOffset() < model.getOnset()) {
-            return model.getOnset();
-        }
-        return model.getOffset();
+        return Math.max(offsetTicks, onsetTicks);
     }
 
     /**
@@ -346,8 +527,13 @@ implements MouseListener, FocusListener, CellListener {
      * @param width New width of the SpreadsheetCell.
      */
     public void setWidth(final int width) {
-        Dimension d = new Dimension(width, 0);
-        stretcher.changeShape(d, d, d);
+        cellWidth = width;
+        rendererSize = null;
+
+        if (isEditing()) {
+            Dimension d = new Dimension(width, 0);
+            stretcher.changeShape(d, d, d);
+        }
     }
 
     /**
@@ -368,33 +554,28 @@ implements MouseListener, FocusListener, CellListener {
             // this cell just now.
             OpenSHAPA.getProjectController().setLastCreatedCell(model);
             OpenSHAPA.getProjectController().setLastSelectedCell(model);
-            OpenSHAPA.getDataController().setFindTime(model.getOnset());
-            OpenSHAPA.getDataController().setFindOffsetField(model.getOffset());
+            OpenSHAPA.getDataController().setFindTime(onsetTicks);
+            OpenSHAPA.getDataController().setFindOffsetField(offsetTicks);
         }
     }
 
     /**
      * Set the border of the cell.
      *
-     * @param overlap true if the cell overlaps with the following cell, false
-     * otherwise.
+     * @param overlap true if the cell overlaps with another cell in its
+     * column, false otherwise.
      */
     public void setOverlapBorder(final boolean overlap) {
-        cellOverlap = overlap;
+        if (cellOverlap == overlap) {
+            return;
+        }
 
-        if (cellOverlap) {
+        cellOverlap = overlap;
 
-            if (model.isHighlighted()) {
-                cellPanel.setBorder(HIGHLIGHT_OVERLAP_BORDER);
-            } else {
-                cellPanel.setBorder(OVERLAP_BORDER);
-            }
+        if (isEditing()) {
+            cellPanel.setBorder(getCellBorder());
         } else {
-            if (model.isHighlighted()) {
-                cellPanel.setBorder(HIGHLIGHT_BORDER);
-            } else {
-                cellPanel.setBorder(NORMAL_BORDER);
-            }
+            repaint();
         }
     }
 
@@ -402,10 +583,13 @@ implements MouseListener, FocusListener, CellListener {
      * @return The MatrixRootView of this cell.
      */
     public final MatrixRootView getDataView() {
+        buildEditor();
+
         return dataPanel;
     }
 
     public void selectOnset() {
+        buildEditor();
         onset.selectAll();
         offset.select(0,0);
         dataPanel.select(0,0);
@@ -413,6 +597,7 @@ implements MouseListener, FocusListener, CellListener {
     }
 
     public void selectOffset() {
+        buildEditor();
         offset.selectAll();
         onset.select(0,0);
         dataPanel.select(0,0);
@@ -420,40 +605,69 @@ implements MouseListener, FocusListener, CellListener {
     }
 
     public void selectVal() {
+        buildEditor();
         dataPanel.selectAll();
         onset.select(0,0);
         offset.select(0,0);
         dataPanel.requestFocusInWindow();
     }
 
-    private void updateSelectionDisplay() {
-        if (model.isHighlighted()) {
-            if (cellOverlap) {
-                cellPanel.setBorder(HIGHLIGHT_OVERLAP_BORDER);
-            } else {
-                cellPanel.setBorder(HIGHLIGHT_BORDER);
-            }
-        } else if (model.isSelected() && !model.isHighlighted()) {
-            if (cellOverlap) {
-                cellPanel.setBorder(FILL_OVERLAP_BORDER);
-            } else {
-                cellPanel.setBorder(FILL_BORDER);
-            }
+    /**
+     * @return True if the cell is shown as selected.
+     */
+    public boolean isSelected() {
+        return selected;
+    }
+
+    /**
+     * Shows the cell as selected or deselected on behalf of the spreadsheet,
+     * without changing the selection state held in the datastore.
+     *
+     * @param isSelected True if the cell is to be shown as selected.
+     */
+    void showSelection(final boolean isSelected) {
+        if (selected == isSelected) {
+            return;
+        }
+
+        selected = isSelected;
+
+        if (!isSelected) {
+            highlighted = false;
+        }
 
-            cellPanel.setBackground(Configuration.getInstance().getSSSelectedColour());
+        selectionDisplayChanged();
+    }
+
+    /**
+     * Refreshes the selection display of the cell. Cells that are outside of
+     * the viewport are only marked as stale and refresh when next painted, so
+     * that changing the selection of a large number of cells only repaints
+     * what is visible.
+     */
+    private void selectionDisplayChanged() {
+        if (!isShowing() || getVisibleRect().isEmpty()) {
+            selectionDisplayStale = true;
         } else {
-            dataPanel.select(0, 0);
+            updateSelectionDisplay();
+        }
+    }
 
-            if (cellOverlap) {
-                cellPanel.setBorder(OVERLAP_BORDER);
-            } else {
-                cellPanel.setBorder(NORMAL_BORDER);
-            }
+    private void updateSelectionDisplay() {
+        selectionDisplayStale = false;
 
-            cellPanel.setBackground(Configuration.getInstance().getSSBackgroundColour());
+        if (!isEditing()) {
+            repaint();
+
+            return;
         }
 
-//        this.revalidate();
+        if (!highlighted && !selected) {
+            dataPanel.select(0, 0);
+        }
+
+        cellPanel.setBorder(getCellBorder());
+        cellPanel.setBackground(getCellBackground());
     }
 
     // *************************************************************************
@@ -461,37 +675,102 @@ implements MouseListener, FocusListener, CellListener {
     // *************************************************************************
     @Override
     public void offsetChanged(final long newOffset) {
-        offset.setValue();
-	if(model.isSelected()) {
+        offsetTicks = newOffset;
+        timesChanged();
+
+        if (isEditing()) {
+            offset.setValue();
+        } else {
+            offsetText = ClockText.timestamp(newOffset);
+            repaint();
+        }
+
+	if(selected) {
 	    // Update the find windows to the newly selected cell's values
-	    OpenSHAPA.getDataController().setFindTime(model.getOnset());
-            OpenSHAPA.getDataController().setFindOffsetField(model.getOffset());
+	    OpenSHAPA.getDataController().setFindTime(onsetTicks);
+            OpenSHAPA.getDataController().setFindOffsetField(offsetTicks);
 	}
     }
 
     @Override
     public void onsetChanged(final long newOnset) {
-        onset.setValue();
-	if(model.isSelected()) {
-	    OpenSHAPA.getDataController().setFindTime(model.getOnset());
-	    OpenSHAPA.getDataController().setFindOffsetField(model.getOffset());
+        onsetTicks = newOnset;
+        timesChanged();
+
+        if (isEditing()) {
+            onset.setValue();
+        } else {
+            onsetText = ClockText.timestamp(newOnset);
+            repaint();
+        }
+
+	if(selected) {
+	    OpenSHAPA.getDataController().setFindTime(onsetTicks);
+	    OpenSHAPA.getDataController().setFindOffsetField(offsetTicks);
 	}
     }
 
+    /**
+     * Lets the column know that this cell has moved in time.
+     */
+    private void timesChanged() {
+        if (getParent() instanceof ColumnDataPanel) {
+            ((ColumnDataPanel) getParent()).cellTimesChanged();
+        }
+    }
+
     @Override
     public void highlightingChange(final boolean isHighlighted) {
-        updateSelectionDisplay();
+        boolean wasSelected = selected;
+        highlighted = isHighlighted;
+
+        // A highlighted cell is always selected.
+        if (isHighlighted) {
+            selected = true;
+        }
+
+        selectionDisplayChanged();
+        selectionChanged(wasSelected);
     }
 
     @Override
     public void selectionChange(final boolean isSelected) {
-        updateSelectionDisplay();
+        boolean wasSelected = selected;
+        selected = isSelected;
+
+        // A deselected cell can not be highlighted.
+        if (!isSelected) {
+            highlighted = false;
+        }
+
+        selectionDisplayChanged();
+        selectionChanged(wasSelected);
+    }
+
+    /**
+     * Lets the spreadsheet know when the datastore has changed whether the
+     * cell is selected.
+     *
+     * @param wasSelected True if the cell was selected before the change.
+     */
+    private void selectionChanged(final boolean wasSelected) {
+        if ((wasSelected != selected) && (cellSelL != null)) {
+            cellSelL.cellSelectionChanged(this, selected);
+        }
     }
 
     @Override
     public void valueChange(final Value newValue) {
         //dataPanel.setMatrix(newValue);
         //revalidate();
+        valueText = (newValue == null) ? null
+                                       : DataValueEditorFactory.buildText(newValue);
+        rendererSize = null;
+
+        if (!isEditing()) {
+            revalidate();
+            repaint();
+        }
     }
 
     // *************************************************************************
@@ -507,6 +786,23 @@ implements MouseListener, FocusListener, CellListener {
 
     @Override
     public void mousePressed(final MouseEvent me) {
+        // The cell has been painted by the renderer - swap the editor in and
+        // pass the click on to whichever editor component is under it.
+        if (me.getSource() == this && !isEditing()) {
+            buildEditor();
+
+            Component target = SwingUtilities.getDeepestComponentAt(this,
+                                                                    me.getX(),
+                                                                    me.getY());
+
+            if (target instanceof JTextComponent) {
+                target.dispatchEvent(SwingUtilities.convertMouseEvent(this, me,
+                                                                      target));
+
+                return;
+            }
+        }
+
         int keyMask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
         boolean groupSel = (me.getModifiers() & keyMask) != 0;
         boolean contSel = (me.getModifiers() & ActionEvent.SHIFT_MASK) != 0;
@@ -520,9 +816,9 @@ implements MouseListener, FocusListener, CellListener {
         if (!isEditorSrc && !groupSel && !contSel) {
             ord.requestFocus();
             cellSelL.clearCellSelection();
-            model.setHighlighted(!model.isSelected());
+            model.setHighlighted(!isSelected());
 
-            if (model.isSelected()) {
+            if (isSelected()) {
                 cellSelL.addCellToSelection(this);
             }
 	    
@@ -530,9 +826,9 @@ implements MouseListener, FocusListener, CellListener {
         // this cell to the current selection.
         } else if (groupSel && !contSel) {
             ord.requestFocus();
-            model.setHighlighted(!model.isSelected());
+            model.setHighlighted(!isSelected());
 
-            if (model.isSelected()) {
+            if (isSelected()) {
                 cellSelL.addCellToSelection(this);
             }
 
@@ -546,7 +842,7 @@ implements MouseListener, FocusListener, CellListener {
         // cell needs to be highlighted.
         } else {
             // Only change selection if not selected.
-            if (!model.isHighlighted()) {
+            if (!highlighted) {
                 // BugzID:320 - Deselect cells before selected cell contents.
                 cellSelL.clearCellSelection();
                 model.setHighlighted(true);
@@ -555,8 +851,8 @@ implements MouseListener, FocusListener, CellListener {
         }
 	
 	// Update the find windows to the newly selected cell's values
-	OpenSHAPA.getDataController().setFindTime(model.getOnset());
-        OpenSHAPA.getDataController().setFindOffsetField(model.getOffset());
+	OpenSHAPA.getDataController().setFindTime(onsetTicks);
+        OpenSHAPA.getDataController().setFindOffsetField(offsetTicks);
     }
 
     @Override
@@ -572,7 +868,7 @@ implements MouseListener, FocusListener, CellListener {
     // *************************************************************************
     @Override
     public void focusGained(final FocusEvent e) {
-        if (model.isHighlighted() && (cellPanel.getBorder().equals(NORMAL_BORDER)
+        if (highlighted && (cellPanel.getBorder().equals(NORMAL_BORDER)
                             || cellPanel.getBorder().equals(OVERLAP_BORDER))) {
             model.setSelected(true);
         }
@@ -580,26 +876,74 @@ implements MouseListener, FocusListener, CellListener {
 
     @Override
     public void focusLost(final FocusEvent e) {
+        // Focus may just be moving between the editors of this cell.
+        Component opposite = e.getOppositeComponent();
+
+        if (opposite == null || !SwingUtilities.isDescendingFrom(opposite, this)) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    releaseEditor();
+                }
+            });
+        }
     }
 
     @Override
     public boolean isFocusOwner() {
+        if (!isEditing()) {
+            return false;
+        }
+
         return (onset.isFocusOwner() || offset.isFocusOwner() || dataPanel.isFocusOwner());
     }
 
     @Override
     public void requestFocus() {
+        buildEditor();
         dataPanel.requestFocus();
     }
 
     // *************************************************************************
     // Parent Class Overrides
     // *************************************************************************
+    @Override
+    public Dimension getPreferredSize() {
+        if (isEditing()) {
+            return super.getPreferredSize();
+        }
+
+        // Only ask the renderer to lay out the cell again if something that
+        // effects its size has changed.
+        Font font = Configuration.getInstance().getSSDataFont();
+
+        if (rendererSize == null || !font.equals(rendererFont)) {
+            rendererSize = SpreadsheetCellRenderer.getInstance()
+                                                  .getPreferredSize(this,
+                                                                    cellWidth);
+            rendererFont = font;
+        }
+
+        return new Dimension(rendererSize);
+    }
+
     @Override
     public void paint(final Graphics g) {
+        if (!isEditing()) {
+            selectionDisplayStale = false;
+            SpreadsheetCellRenderer.getInstance().paint(g, this);
+
+            return;
+        }
+
         // BugzID:474 - Set the size at paint time - somewhere else may have
         // altered the font.
         dataPanel.setFont(Configuration.getInstance().getSSDataFont());
+
+        if (selectionDisplayStale) {
+            updateSelectionDisplay();
+        }
+
         super.paint(g);
     }
 }
@@ -0,0 +1,177 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Insets;
+
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.CellRendererPane;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+
+import org.openshapa.Configuration;
+
+/**
+ * Paints spreadsheet cells that are not being edited. Much like the renderers
+ * used by JTable, a single set of components is shared between all the cells
+ * of the spreadsheet - it is configured from the cell about to be painted and
+ * then stamped onto the screen. A SpreadsheetCell only builds its own editor
+ * components once it gets focus or is clicked on.
+ */
+final class SpreadsheetCellRenderer {
+
+    /** Width of spacer between onset and offset timestamps. */
+    private static final int TIME_SPACER = 5;
+
+    /** The renderer shared by all the spreadsheet cells. */
+    private static final SpreadsheetCellRenderer INSTANCE =
+            new SpreadsheetCellRenderer();
+
+    /** Pane used to stamp the renderer components onto a cell. */
+    private final CellRendererPane rendererPane;
+
+    /** The panel that displays the cell. */
+    private final JPanel cellPanel;
+
+    /** The Ordinal display component. */
+    private final JLabel ord;
+
+    /** The Onset display component. */
+    private final JTextField onset;
+
+    /** The Offset display component. */
+    private final JTextField offset;
+
+    /** The value display component. */
+    private final JTextArea value;
+
+    /**
+     * @return The renderer shared by all the spreadsheet cells.
+     */
+    static SpreadsheetCellRenderer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Constructor. Lays out the renderer components in the same way as the
+     * editor components of a SpreadsheetCell, so that a cell does not change
+     * size when swapping between the two.
+     */
+    private SpreadsheetCellRenderer() {
+        Configuration config = Configuration.getInstance();
+        rendererPane = new CellRendererPane();
+
+        ord = new JLabel();
+        ord.setFont(config.getSSLabelFont());
+        ord.setForeground(config.getSSOrdinalColour());
+
+        onset = createTimeStampField();
+        offset = createTimeStampField();
+
+        value = new JTextArea();
+        value.setLineWrap(true);
+        value.setWrapStyleWord(true);
+        value.setOpaque(false);
+        value.setForeground(config.getSSForegroundColour());
+
+        JPanel topPanel = new JPanel();
+        topPanel.setOpaque(false);
+        topPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 2, 0));
+        topPanel.setLayout(new BoxLayout(topPanel, BoxLayout.X_AXIS));
+        topPanel.add(ord);
+        topPanel.add(Box.createHorizontalStrut(TIME_SPACER));
+        topPanel.add(Box.createGlue());
+        topPanel.add(onset);
+        topPanel.add(Box.createHorizontalStrut(TIME_SPACER));
+        topPanel.add(offset);
+
+        cellPanel = new JPanel();
+        cellPanel.setLayout(new BorderLayout());
+        cellPanel.add(topPanel, BorderLayout.NORTH);
+        cellPanel.add(value, BorderLayout.CENTER);
+    }
+
+    /**
+     * @return A non-editable text field for displaying a timestamp, with the
+     * same appearance as a TimeStampTextField.
+     */
+    private JTextField createTimeStampField() {
+        JTextField field = new JTextField();
+        field.setFont(Configuration.getInstance().getSSLabelFont());
+        field.setForeground(Configuration.getInstance().getSSTimestampColour());
+        field.setBorder(null);
+        field.setOpaque(false);
+
+        return field;
+    }
+
+    /**
+     * Configures the renderer components to display the supplied cell.
+     *
+     * @param cell The cell to display.
+     * @param width The width available to display the cell.
+     */
+    private void configure(final SpreadsheetCell cell, final int width) {
+        ord.setText(cell.getOrdinalText());
+        onset.setText(cell.getOnsetText());
+        offset.setText(cell.getOffsetText());
+
+        // BugzID:474 - Set the font at paint time - somewhere else may have
+        // altered the font.
+        value.setFont(Configuration.getInstance().getSSDataFont());
+        value.setText(cell.getValueText());
+
+        cellPanel.setBorder(cell.getCellBorder());
+        cellPanel.setBackground(cell.getCellBackground());
+
+        // The value wraps, so its preferred height depends on its width.
+        Insets insets = cellPanel.getInsets();
+        value.setSize(Math.max(width - insets.left - insets.right, 1),
+                      Short.MAX_VALUE);
+    }
+
+    /**
+     * Calculates the size a cell needs to display its contents.
+     *
+     * @param cell The cell to calculate the size of.
+     * @param width The width of the cell.
+     *
+     * @return The preferred size of the cell.
+     */
+    Dimension getPreferredSize(final SpreadsheetCell cell, final int width) {
+        configure(cell, width);
+
+        return new Dimension(width, cellPanel.getPreferredSize().height);
+    }
+
+    /**
+     * Paints a cell that is not currently being edited.
+     *
+     * @param g The graphics context to paint the cell with.
+     * @param cell The cell to paint.
+     */
+    void paint(final Graphics g, final SpreadsheetCell cell) {
+        configure(cell, cell.getWidth());
+        rendererPane.paintComponent(g, cellPanel, cell, 0, 0,
+                                    cell.getWidth(), cell.getHeight(), true);
+    }
+}
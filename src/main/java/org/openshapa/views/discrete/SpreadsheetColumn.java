@@ -42,6 +42,7 @@ import org.jdesktop.application.Action;
 import org.openshapa.Configuration;
 import org.openshapa.OpenSHAPA;
 import org.openshapa.models.db.Datastore;
+import org.openshapa.models.db.DatastoreChanges;
 import org.openshapa.models.db.Variable;
 
 import org.openshapa.models.db.Cell;
@@ -117,11 +118,13 @@ implements VariableListener,
      * @param colID the variable this column displays.
      * @param cellSelL Spreadsheet cell selection listener to notify
      * @param colSelL Column selection listener to notify.
+     * @param cellSelection The cells selected within the spreadsheet.
      */
     public SpreadsheetColumn(final Datastore db,
                              final Variable var,
                              final CellSelectionListener cellSelL,
-                             final ColumnSelectionListener colSelL) {
+                             final ColumnSelectionListener colSelL,
+                             final CellSelection cellSelection) {
         this.datastore = db;
         this.variable = var;
         this.cellSelList = cellSelL;
@@ -136,7 +139,8 @@ implements VariableListener,
         setMaximumSize(this.getHeaderSize());
         setText(var.getName() + "  (" + var.getVariableType().type + ")");
 
-        datapanel = new ColumnDataPanel(db, width, var, cellSelL);
+        datapanel = new ColumnDataPanel(db, width, var, cellSelL,
+                                        cellSelection);
         this.setVisible(!var.isHidden());
         datapanel.setVisible(!var.isHidden());
     }
@@ -293,6 +297,28 @@ implements VariableListener,
         return new Dimension(getWidth(), DEFAULT_HEADER_HEIGHT);
     }
 
+    /**
+     * Patches the spreadsheet column to reflect a set of changes made to the
+     * datastore.
+     *
+     * @param var The up to date variable that this column displays.
+     * @param changes The changes made to the datastore since the last render.
+     */
+    public void refresh(final Variable var, final DatastoreChanges changes) {
+        variable.removeListener(this);
+        variable = var;
+        variable.addListener(this);
+
+        setText(var.getName() + "  (" + var.getVariableType().type + ")");
+        if (!var.isHidden()) {
+            datapanel.populate();
+        }
+
+        setVisible(!var.isHidden());
+        datapanel.setVisible(!var.isHidden());
+        datapanel.refresh(datastore, var, changes);
+    }
+
     /**
      * Clears the display components from the spreadsheet column.
      */
@@ -424,7 +450,7 @@ implements VariableListener,
             throw new UserWarningException();
         }
 
-        OpenSHAPA.getView().showSpreadsheet();
+        OpenSHAPA.getView().refreshSpreadsheet();
     }
 
     // *************************************************************************
@@ -455,6 +481,10 @@ implements VariableListener,
 
     @Override
     public void visibilityChanged(final boolean isHidden) {
+        if (!isHidden) {
+            datapanel.populate();
+        }
+
         setVisible(!isHidden);
         this.datapanel.setVisible(!isHidden);
     }
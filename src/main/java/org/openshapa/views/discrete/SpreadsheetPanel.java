@@ -22,6 +22,7 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.KeyEventDispatcher;
 import java.awt.KeyboardFocusManager;
+import java.awt.Rectangle;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 import java.awt.datatransfer.UnsupportedFlavorException;
@@ -68,9 +69,14 @@ import org.openshapa.views.discrete.layouts.SheetLayoutFactory.SheetLayoutType;
 import com.usermetrix.jclient.UserMetrix;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.openshapa.models.db.Cell;
 import org.openshapa.models.db.Datastore;
+import org.openshapa.models.db.DatastoreChanges;
 import org.openshapa.models.db.DatastoreListener;
+import org.openshapa.models.db.MongoDatastore;
 import org.openshapa.models.db.Variable;
 import org.openshapa.util.Constants;
 import org.openshapa.views.discrete.layouts.SheetLayoutFactory;
@@ -119,6 +125,16 @@ implements DatastoreListener,
     /** Last selected cell - used as an end point for continous selections. */
     private SpreadsheetCell lastSelectedCell;
 
+    /** The cells selected within the spreadsheet. */
+    private CellSelection selection;
+
+    /**
+     * True while the panel is changing the selection state of cells in the
+     * datastore itself, so those changes are not mirrored back into the
+     * selection.
+     */
+    private boolean updatingSelection;
+
     /** The layout that is currently being used. */
     private SheetLayoutType currentLayoutType;
 
@@ -144,6 +160,7 @@ implements DatastoreListener,
         headerView.setName("headerView");
 
         columns = new ArrayList<SpreadsheetColumn>();
+        selection = new CellSelection(new SelectionView());
         scrollPane = new JScrollPane();
         scrollPane.setDoubleBuffered(true);
         this.add(scrollPane, BorderLayout.CENTER);
@@ -181,8 +198,10 @@ implements DatastoreListener,
                        SpreadsheetColumn.DEFAULT_HEADER_HEIGHT);
         headerView.add(newVar);
 
-        // set the database and layout the columns
+        // set the database and layout the columns - we are building from
+        // scratch, so any pending changes are already accounted for.
         setDatabase(db);
+        MongoDatastore.takeChanges();
         buildColumns();
 
         // Enable drag and drop support.
@@ -230,7 +249,8 @@ implements DatastoreListener,
         headerView.remove(newVar);
 
         // Create the spreadsheet column and register it.
-        SpreadsheetColumn col = new SpreadsheetColumn(db, var, this, this);
+        SpreadsheetColumn col = new SpreadsheetColumn(db, var, this, this,
+                                                      selection);
         col.registerListeners();
 
         // add the datapanel to the scrollpane viewport
@@ -246,6 +266,57 @@ implements DatastoreListener,
         columns.add(col);
     }
 
+    /**
+     * Patches the spreadsheet to reflect the changes made to the datastore
+     * since the last render. Columns are added and removed for new and deleted
+     * variables, and only the cells that have been inserted, removed or
+     * changed have their display components rebuilt.
+     */
+    public void refresh() {
+        DatastoreChanges changes = MongoDatastore.takeChanges();
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // Columns are matched to variables by ID, as a renamed variable no
+        // longer equals the copy held by its column.
+        Map<String, Variable> variables = new LinkedHashMap<String, Variable>();
+
+        for (Variable var : datastore.getAllVariables()) {
+            variables.put(MongoDatastore.getVariableID(var), var);
+        }
+
+        Map<String, SpreadsheetColumn> shown =
+            new HashMap<String, SpreadsheetColumn>();
+
+        for (SpreadsheetColumn col : new ArrayList<SpreadsheetColumn>(columns)) {
+            String id = MongoDatastore.getVariableID(col.getVariable());
+
+            if (variables.containsKey(id)) {
+                shown.put(id, col);
+            } else {
+                col.deregisterListeners();
+                col.clear();
+                removeColumn(col.getVariable());
+            }
+        }
+
+        for (Map.Entry<String, Variable> entry : variables.entrySet()) {
+            SpreadsheetColumn col = shown.get(entry.getKey());
+
+            if (col == null) {
+                addColumn(datastore, entry.getValue());
+            } else if (changes.isVariableChanged(entry.getKey())
+                    || col.getDataPanel().hasChangedCells(changes)) {
+                col.refresh(entry.getValue(), changes);
+            }
+        }
+
+        revalidate();
+        repaint();
+    }
+
     /**
      * Remove all the columns from the spreadsheet panel.
      */
@@ -259,6 +330,7 @@ implements DatastoreListener,
         }
 
         columns.clear();
+        selection.reset();
     }
 
     /**
@@ -290,7 +362,7 @@ implements DatastoreListener,
      * Deselect all selected items in the Spreadsheet.
      */
     public void deselectAll() {
-        datastore.clearCellSelection();
+        clearCellSelection();
         datastore.clearVariableSelection();
     }
 
@@ -346,7 +418,15 @@ implements DatastoreListener,
 
     @Override
     public void variableVisible(final Variable visibleVariable) {
-        // Do nothing.
+        // Hidden columns are placeholders - build them now they are needed.
+        for (SpreadsheetColumn col : columns) {
+            if (col.getVariable().equals(visibleVariable)) {
+                col.getDataPanel().populate();
+                revalidate();
+
+                break;
+            }
+        }
     }
 
     @Override
@@ -452,7 +532,7 @@ implements DatastoreListener,
     public int getAdjacentSelectedCells(final ArrayDirection dir) {
         int result = 0;
 
-        for (Cell cell : datastore.getSelectedCells()) {
+        for (Cell cell : getSelectedCells()) {
             for (int i = 0; i < datastore.getAllVariables().size(); i++) {
                 if (datastore.getAllVariables().get(i).equals(datastore.getVariable(cell))) {
                     // We have at least one column to the left of the cells.
@@ -489,6 +569,35 @@ implements DatastoreListener,
         }
     }
 
+    /**
+     * Selects a cell on its own and scrolls the spreadsheet to it. Cells of
+     * hidden columns are selected, but there is nothing to scroll to.
+     *
+     * @param cell The cell to show.
+     */
+    public void showCell(final Cell cell) {
+        final Variable var = datastore.getVariable(cell);
+
+        for (SpreadsheetColumn col : getColumns()) {
+            if (!col.getVariable().equals(var)) {
+                continue;
+            }
+
+            SpreadsheetCell sc = col.getDataPanel().getSpreadsheetCell(cell);
+            clearCellSelection();
+
+            if (sc == null) {
+                cell.setHighlighted(true);
+            } else {
+                setHighlightedCell(sc);
+                sc.scrollRectToVisible(new Rectangle(0, 0, sc.getWidth(),
+                        sc.getHeight()));
+            }
+
+            return;
+        }
+    }
+
     /**
      * Set the layout type for the spreadsheet.
      *
@@ -634,62 +743,85 @@ implements DatastoreListener,
     }
 
     /**
-     * Adds a series of cells as a continuous selection.
+     * Adds a series of cells as a continuous selection. The selection is held
+     * as a range from the last selected cell to the supplied cell; the cells
+     * in between are only shown as selected, nothing is written to the
+     * datastore for them.
      *
      * @param cell The cell to use as the end point for the selection.
      */
     @Override
     public void addCellToContinousSelection(final SpreadsheetCell cell) {
-        if (lastSelectedCell != null) {
-            Cell c1 = lastSelectedCell.getCell();
-            Variable v1 = datastore.getVariable(c1);
-
-            Cell c2 = cell.getCell();
-            Variable v2 = datastore.getVariable(c2);
-
-            // We can only do continous selections in a single column at
-            // at the moment.
-            if (v1.equals(v2)) {
-
-                // Deselect the highlighted cell.
-                if (highlightedCell != null) {
-                    highlightedCell.getCell().setHighlighted(false);
-                    highlightedCell.getCell().setSelected(true);
-                    highlightedCell = null;
-                }
+        if (lastSelectedCell == null) {
+            lastSelectedCell = cell;
 
-                for (SpreadsheetColumn col : getColumns()) {
+            return;
+        }
 
-                    if (v1.equals(col.getVariable())) {
+        // We can only do continous selections in a single column at
+        // at the moment.
+        SpreadsheetColumn col = getColumn(lastSelectedCell.getCell());
 
-                        // Perform continous selection.
-                        boolean addToSelection = false;
+        if ((col == null) || (col != getColumn(cell.getCell()))) {
+            return;
+        }
 
-                        for (SpreadsheetCell c : getOrderedCells(col)) {
+        // The highlighted cell stays selected, as part of the range or on its
+        // own in another column.
+        unhighlight();
+        selection.extend(lastSelectedCell.getCell(), cell.getCell());
+    }
 
-                            if (!addToSelection) {
-                                c.getCell().setSelected(false);
-                            }
+    /**
+     * @return The ranges of cells currently selected in the spreadsheet.
+     * Cells selected one at a time are ranges of a single cell.
+     */
+    public List<CellSelectionRange> getSelectionRanges() {
+        return selection.getRanges();
+    }
 
-                            if (c.equals(cell) || c.equals(lastSelectedCell)) {
-                                addToSelection = !addToSelection;
+    /**
+     * @param cell The cell to find the column for.
+     *
+     * @return The column that shows the supplied cell, or null if the cell is
+     * not shown in any column of this spreadsheet.
+     */
+    private SpreadsheetColumn getColumn(final Cell cell) {
+        for (SpreadsheetColumn col : columns) {
+            if (col.getDataPanel().getSpreadsheetCell(cell) != null) {
+                return col;
+            }
+        }
 
-                                // We always include start and end cells.
-                                c.getCell().setSelected(true);
-                            }
+        return null;
+    }
 
-                            if (addToSelection) {
-                                c.getCell().setSelected(true);
-                            }
-                        }
+    /**
+     * @param cell The cell to find the view for.
+     *
+     * @return The spreadsheet cell showing the supplied cell, or null if the
+     * cell is not shown.
+     */
+    private SpreadsheetCell getSpreadsheetCell(final Cell cell) {
+        for (SpreadsheetColumn col : columns) {
+            SpreadsheetCell sc = col.getDataPanel().getSpreadsheetCell(cell);
 
-                        break;
-                    }
-                }
+            if (sc != null) {
+                return sc;
             }
-        } else {
-            lastSelectedCell = cell;
         }
+
+        return null;
+    }
+
+    /**
+     * Returns the currently selected cells, as held by the spreadsheet. Cells
+     * covered by a continuous selection are returned in layout order.
+     *
+     * @return The currently selected cells.
+     */
+    public List<Cell> getSelectedCells() {
+        return selection.getSelectedCells();
     }
 
     /**
@@ -700,13 +832,8 @@ implements DatastoreListener,
     @Override
     public void addCellToSelection(final SpreadsheetCell cell) {
         clearColumnSelection();
-
-        if (highlightedCell != null) {
-            highlightedCell.getCell().setSelected(true);
-            highlightedCell.getCell().setHighlighted(false);
-            highlightedCell = null;
-        }
-
+        unhighlight();
+        selection.add(cell.getCell());
         lastSelectedCell = cell;
     }
 
@@ -717,17 +844,45 @@ implements DatastoreListener,
      */
     @Override
     public void setHighlightedCell(final SpreadsheetCell cell) {
-        if (highlightedCell != null) {
-            highlightedCell.getCell().setSelected(false);
-            highlightedCell.invalidate();
+        updatingSelection = true;
+
+        try {
+            if (highlightedCell != null) {
+                highlightedCell.getCell().setSelected(false);
+                selection.remove(highlightedCell.getCell());
+                highlightedCell.invalidate();
+            }
+
+            highlightedCell = cell;
+            lastSelectedCell = cell;
+            highlightedCell.getCell().setHighlighted(true);
+            selection.add(cell.getCell());
+        } finally {
+            updatingSelection = false;
         }
 
-        highlightedCell = cell;
-        lastSelectedCell = cell;
-        highlightedCell.getCell().setHighlighted(true);
         clearColumnSelection();
     }
 
+    /**
+     * Stops highlighting the highlighted cell, leaving it selected.
+     */
+    private void unhighlight() {
+        if (highlightedCell == null) {
+            return;
+        }
+
+        updatingSelection = true;
+
+        try {
+            highlightedCell.getCell().setHighlighted(false);
+            selection.add(highlightedCell.getCell());
+            highlightedCell = null;
+        } finally {
+            updatingSelection = false;
+        }
+    }
+
     /**
      * Clears the current cell selection.
      */
@@ -735,8 +890,75 @@ implements DatastoreListener,
     public void clearCellSelection() {
         highlightedCell = null;
         lastSelectedCell = null;
+        updatingSelection = true;
 
-        datastore.clearCellSelection();
+        try {
+            selection.clear();
+
+            // Only the cells that have been highlighted are selected in the
+            // datastore.
+            datastore.clearCellSelection();
+        } finally {
+            updatingSelection = false;
+        }
+    }
+
+    /**
+     * Mirrors a change to the selection made through the datastore (i.e. a
+     * newly created cell that starts off highlighted) into the selection
+     * held by the spreadsheet.
+     *
+     * @param cell The cell whose selection has changed.
+     * @param selected True if the cell is now selected.
+     */
+    @Override
+    public void cellSelectionChanged(final SpreadsheetCell cell,
+                                     final boolean selected) {
+        if (updatingSelection) {
+            return;
+        }
+
+        if (selected) {
+            selection.add(cell.getCell());
+        } else {
+            selection.remove(cell.getCell());
+        }
+    }
+
+    /**
+     * Lets the selection find and show cells within the spreadsheet.
+     */
+    private final class SelectionView implements CellSelection.View {
+
+        @Override
+        public List<Cell> getColumnCells(final Cell member) {
+            SpreadsheetColumn col = getColumn(member);
+            List<Cell> result = new ArrayList<Cell>();
+
+            if (col != null) {
+                for (SpreadsheetCell sc : getOrderedCells(col)) {
+                    if (sc != null) {
+                        result.add(sc.getCell());
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public boolean isShown(final Cell cell) {
+            return getColumn(cell) != null;
+        }
+
+        @Override
+        public void showSelected(final Cell cell, final boolean selected) {
+            SpreadsheetCell sc = getSpreadsheetCell(cell);
+
+            if (sc != null) {
+                sc.showSelection(selected);
+            }
+        }
     }
 
     /**
@@ -31,6 +31,15 @@ import org.openshapa.views.discrete.EditorComponent;
  */
 public class DataValueEditorFactory {
 
+    /** Text opening the arguments of a matrix. */
+    private static final String MATRIX_OPEN = "(";
+
+    /** Text between the arguments of a matrix. */
+    private static final String MATRIX_SEPARATOR = ", ";
+
+    /** Text closing the arguments of a matrix. */
+    private static final String MATRIX_CLOSE = ")";
+
     /**
      * Constructor.
      */
@@ -50,34 +59,66 @@ public class DataValueEditorFactory {
                                                     final Cell c) {
 
         List<EditorComponent> eds = new ArrayList<EditorComponent>();
+        Value value = c.getValue();
 
-        if (c.getValue() != null) {
-            if (c.getValue() instanceof MatrixValue) {
-                MatrixValue mv = (MatrixValue) c.getValue();
-                eds.add(new FixedText(ta, "("));
+        if (value != null) {
+            if (value instanceof MatrixValue) {
+                List<Value> args = ((MatrixValue) value).getArguments();
+                eds.add(new FixedText(ta, MATRIX_OPEN));
 
-                for (int i = 0; i < mv.getArguments().size(); i++) {
+                for (int i = 0; i < args.size(); i++) {
                     // TODO update.
-                    eds.add(buildMatrixArg(ta, mv.getArguments().get(i)));
+                    eds.add(buildMatrixArg(ta, args.get(i)));
 
-                    if ((mv.getArguments().size() > 1) && (i < (mv.getArguments().size() - 1))) {
-                        eds.add(new FixedText(ta, ", "));
+                    if (i < (args.size() - 1)) {
+                        eds.add(new FixedText(ta, MATRIX_SEPARATOR));
                     }
                 }
 
-                eds.add(new FixedText(ta, ")"));
+                eds.add(new FixedText(ta, MATRIX_CLOSE));
 
-            } else if (c.getValue() instanceof TextValue) {
-                eds.add(buildTextString(ta, (TextValue) c.getValue()));
+            } else if (value instanceof TextValue) {
+                eds.add(buildTextString(ta, (TextValue) value));
 
             } else {
-                eds.add(buildNominal(ta, (NominalValue) c.getValue()));
+                eds.add(buildNominal(ta, (NominalValue) value));
             }
         }
 
         return eds;
     }
 
+    /**
+     * Builds the text that the editor components for a value display, without
+     * building the editors themselves.
+     *
+     * @param value The value of a data cell, may be null.
+     *
+     * @return The text the MatrixRootView for the value would display.
+     */
+    public static String buildText(final Value value) {
+        if (value == null) {
+            return "";
+        }
+
+        if (!(value instanceof MatrixValue)) {
+            return value.toString();
+        }
+
+        List<Value> args = ((MatrixValue) value).getArguments();
+        StringBuilder text = new StringBuilder(MATRIX_OPEN);
+
+        for (int i = 0; i < args.size(); i++) {
+            text.append(args.get(i).toString());
+
+            if (i < (args.size() - 1)) {
+                text.append(MATRIX_SEPARATOR);
+            }
+        }
+
+        return text.append(MATRIX_CLOSE).toString();
+    }
+
     /**
      * Creates a vector of editor components to represent an argument of a
      * data cell's matrix.
@@ -53,8 +53,7 @@ public final class SheetLayoutFactory {
             case WeakTemporal:
                 return new SheetLayoutWeakTemporal(Constants.BORDER_SIZE);
             case StrongTemporal:
-                // Using the same layout for now.
-                return new SheetLayoutWeakTemporal(Constants.BORDER_SIZE);
+                return new SheetLayoutStrongTemporal(Constants.BORDER_SIZE);
             default:
                 throw new IllegalArgumentException("Unknown layout - " + type);
         }
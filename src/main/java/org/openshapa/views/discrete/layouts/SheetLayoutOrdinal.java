@@ -98,7 +98,7 @@ public class SheetLayoutOrdinal extends SheetLayout {
 			continue;
 		    }
                     Dimension d = cell.getPreferredSize();
-                    if (cell.getCell().isSelected() && currentHeight != cell.getBounds().y) {
+                    if (cell.isSelected() && currentHeight != cell.getBounds().y) {
                         selectedHeight = currentHeight;
                     }
 
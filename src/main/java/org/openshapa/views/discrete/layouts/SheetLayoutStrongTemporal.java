@@ -0,0 +1,660 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete.layouts;
+
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import org.openshapa.Configuration;
+import org.openshapa.views.discrete.SpreadsheetCell;
+import org.openshapa.views.discrete.SpreadsheetColumn;
+import org.openshapa.views.discrete.SpreadsheetView;
+
+/**
+ * SheetLayoutStrongTemporal - positions cells so that their vertical position
+ * and height are proportional to their onsets and offsets, on a common time
+ * scale across all the columns of the spreadsheet.
+ *
+ * Each column keeps a snapshot of the onsets and offsets of its cells, which
+ * is only taken again once a cell in the column has been added, removed or
+ * moved in time. The time scale is stretched wherever cells are too close
+ * together to be given the minimum cell height, by the same amount in every
+ * column so that they stay aligned. Only the cells that fall within the
+ * viewport are positioned - the rest are collapsed to zero height so that
+ * they are neither painted nor laid out. Scrolling only positions the cells
+ * that have moved into the viewport, from the extents already calculated.
+ */
+public class SheetLayoutStrongTemporal extends SheetLayout {
+
+    /** The number of milliseconds in a second. */
+    private static final double MS_PER_SECOND = 1000.0;
+
+    /** The smallest vertical scale, in pixels per second. */
+    private static final double MIN_PIXELS_PER_SECOND = 0.001;
+
+    /** The largest vertical scale, in pixels per second. */
+    private static final double MAX_PIXELS_PER_SECOND = 100000.0;
+
+    /** The smallest minimum cell height, in pixels. */
+    private static final int MIN_CELL_HEIGHT = 1;
+
+    /** The largest minimum cell height, in pixels. */
+    private static final int MAX_CELL_HEIGHT = 1000;
+
+    /** The size of the right hand margin. */
+    private final int marginSize;
+
+    /** The vertical scrollbar we are listening to. */
+    private JScrollBar scrollBar;
+
+    /** Positions the cells in the viewport when it is scrolled vertically. */
+    private final ScrollListener scrollListener = new ScrollListener();
+
+    /**
+     * Snapshot of the temporal extents of the cells within a column.
+     */
+    static final class ColumnExtents {
+
+        /** The cells of the column, in onset order. */
+        List<SpreadsheetCell> cells = Collections.emptyList();
+
+        /** The version of the column the snapshot was taken from. */
+        int version = -1;
+
+        /** The width to give the cells, in pixels. */
+        int width;
+
+        /** The number of cells in the column. */
+        int size;
+
+        /** The onset of each cell, in milliseconds. */
+        long[] onsets = new long[0];
+
+        /** The offset of each cell, in milliseconds. */
+        long[] offsets = new long[0];
+
+        /** The index of the onset of each cell within the time scale. */
+        int[] scaleIndexes = new int[0];
+
+        /** The top of each cell, in pixels. */
+        int[] tops = new int[0];
+
+        /** The height of each cell, in pixels. */
+        int[] heights = new int[0];
+
+        /** Does each cell overlap another cell in the column? */
+        boolean[] overlaps = new boolean[0];
+
+        /** The bottom of the lowest cell in the column, in pixels. */
+        int bottom;
+
+        /**
+         * Takes a snapshot of the extents of the supplied cells.
+         *
+         * @param ordered The cells of the column, in onset order.
+         */
+        void snapshot(final List<SpreadsheetCell> ordered) {
+            reset(ordered.size());
+            cells = new ArrayList<SpreadsheetCell>(ordered.size());
+
+            for (SpreadsheetCell cell : ordered) {
+
+                // We may have a race condition where a cell got deleted but
+                // we don't know about it yet.
+                if (cell != null) {
+                    cells.add(cell);
+                    add(cell.getOnsetTicks(), cell.getOffsetTicks());
+                }
+            }
+        }
+
+        /**
+         * Clears the snapshot, ensuring there is room for the supplied number
+         * of cells.
+         *
+         * @param capacity The number of cells to make room for.
+         */
+        void reset(final int capacity) {
+            size = 0;
+            bottom = 0;
+
+            if (onsets.length < capacity) {
+                onsets = new long[capacity];
+                offsets = new long[capacity];
+                scaleIndexes = new int[capacity];
+                tops = new int[capacity];
+                heights = new int[capacity];
+                overlaps = new boolean[capacity];
+            }
+        }
+
+        /**
+         * Adds a cell to the end of the snapshot, cells must be added in
+         * onset order.
+         *
+         * @param onset The onset of the cell in milliseconds.
+         * @param offset The offset of the cell in milliseconds.
+         */
+        void add(final long onset, final long offset) {
+            onsets[size] = onset;
+            offsets[size] = Math.max(onset, offset);
+            size++;
+        }
+
+        /**
+         * Positions every cell in the snapshot on the supplied time scale.
+         * Cells are never shorter than the minimum height, and never cover
+         * the top of the next cell. Cells that start at the same time are
+         * stacked.
+         *
+         * @param scale The time scale shared by all the columns, calculated
+         * with this column among them.
+         * @param minHeight The minimum height of a cell in pixels.
+         */
+        void calculate(final TimeScale scale, final int minHeight) {
+            long latestOffset = Long.MIN_VALUE;
+            bottom = 0;
+
+            for (int i = 0; i < size; i++) {
+                tops[i] = scale.getPosition(scaleIndexes[i]);
+
+                if (i > 0) {
+                    tops[i] = Math.max(tops[i], tops[i - 1] + minHeight);
+                }
+
+                // Cells overlap any earlier cell that hasn't finished yet.
+                overlaps[i] = latestOffset > onsets[i];
+                latestOffset = Math.max(latestOffset, offsets[i]);
+
+                if (i > 0 && offsets[i - 1] > onsets[i]) {
+                    overlaps[i - 1] = true;
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+                int height = Math.max(scale.toPixels(offsets[i],
+                                                      scaleIndexes[i])
+                                      - tops[i], minHeight);
+
+                if (i + 1 < size) {
+                    height = Math.min(height, tops[i + 1] - tops[i]);
+                }
+
+                heights[i] = height;
+                bottom = Math.max(bottom, tops[i] + height);
+            }
+        }
+
+        /**
+         * @param y A vertical position in pixels.
+         *
+         * @return The index of the first cell whose top is at or below the
+         * supplied position. Tops are in onset order, so are sorted.
+         */
+        int firstTopAtOrBelow(final int y) {
+            int low = 0;
+            int high = size;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+
+                if (tops[mid] < y) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    /**
+     * Converts times to vertical positions, on a scale shared by all the
+     * columns. The scale is proportional, except that it is stretched where
+     * cells are too close together to be given the minimum height. It only
+     * ever stretches at an onset, so it is built from the onsets alone and
+     * an offset is placed proportionally from the onset before it.
+     */
+    static final class TimeScale {
+
+        /** Every distinct onset in the spreadsheet, in order. */
+        private long[] times = new long[0];
+
+        /** The vertical position of each onset, in pixels. */
+        private int[] positions = new int[0];
+
+        /** The number of distinct onsets. */
+        private int size;
+
+        /** The earliest onset, which is at the top of the scale. */
+        private long origin;
+
+        /** The vertical scale in pixels per millisecond. */
+        private double scale;
+
+        /** The next onset of each column to merge into the scale. */
+        private int[] next = new int[0];
+
+        /**
+         * The index within the scale of the last onset merged from each
+         * column, -1 if none have been.
+         */
+        private int[] last = new int[0];
+
+        /**
+         * Builds the time scale for a set of columns, merging the onsets of
+         * the columns - which are already in order - in a single pass. The
+         * index of each onset within the scale is recorded in its column.
+         *
+         * @param columns The snapshots of the visible columns.
+         * @param pixelsPerMs The vertical scale in pixels per millisecond.
+         * @param minHeight The minimum height of a cell in pixels.
+         */
+        void calculate(final List<ColumnExtents> columns,
+                       final double pixelsPerMs,
+                       final int minHeight) {
+            int count = 0;
+            for (ColumnExtents ext : columns) {
+                count += ext.size;
+            }
+
+            if (times.length < count) {
+                times = new long[count];
+                positions = new int[count];
+            }
+
+            if (next.length < columns.size()) {
+                next = new int[columns.size()];
+                last = new int[columns.size()];
+            }
+
+            Arrays.fill(next, 0);
+            Arrays.fill(last, -1);
+            scale = pixelsPerMs;
+            origin = Long.MAX_VALUE;
+            size = 0;
+
+            for (ColumnExtents ext : columns) {
+                if (ext.size > 0) {
+                    origin = Math.min(origin, ext.onsets[0]);
+                }
+            }
+
+            while (true) {
+
+                // The column with the earliest onset still to merge.
+                int c = -1;
+                long time = Long.MAX_VALUE;
+
+                for (int i = 0; i < columns.size(); i++) {
+                    ColumnExtents ext = columns.get(i);
+
+                    if ((next[i] < ext.size)
+                            && ((c < 0) || (ext.onsets[next[i]] < time))) {
+                        c = i;
+                        time = ext.onsets[next[i]];
+                    }
+                }
+
+                if (c < 0) {
+                    break;
+                }
+
+                if ((size == 0) || (times[size - 1] != time)) {
+                    times[size] = time;
+                    positions[size] = (size == 0)
+                                      ? 0
+                                      : clamp((long) positions[size - 1]
+                                              + proportional(time)
+                                              - proportional(times[size - 1]));
+                    size++;
+                }
+
+                // Each onset is at least the minimum height below the
+                // previous onset in its column.
+                int k = size - 1;
+
+                if ((last[c] >= 0) && (last[c] < k)) {
+                    positions[k] = clamp(Math.max((long) positions[k],
+                                                  (long) positions[last[c]]
+                                                  + minHeight));
+                }
+
+                columns.get(c).scaleIndexes[next[c]] = k;
+                last[c] = k;
+                next[c]++;
+            }
+        }
+
+        /**
+         * @param index The index of an onset within the scale.
+         *
+         * @return The vertical position of the onset, in pixels.
+         */
+        int getPosition(final int index) {
+            return positions[index];
+        }
+
+        /**
+         * @param time A time no earlier than the onset at the supplied index.
+         * @param from The index within the scale of an onset at or before the
+         * time, i.e. the onset of the cell the time belongs to.
+         *
+         * @return The vertical position of the time, in pixels.
+         */
+        int toPixels(final long time, final int from) {
+
+            // Gallop forward to the last onset at or before the time - it is
+            // usually close to the onset it is searched from.
+            int low = from;
+            int high = from + 1;
+            int step = 1;
+
+            while ((high < size) && (times[high] <= time)) {
+                low = high;
+                step <<= 1;
+                high = from + step;
+            }
+
+            high = Math.min(high, size);
+
+            while (high - low > 1) {
+                int mid = (low + high) >>> 1;
+
+                if (times[mid] <= time) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return clamp((long) positions[low] + proportional(time)
+                         - proportional(times[low]));
+        }
+
+        /**
+         * @param time A time in milliseconds.
+         *
+         * @return The position of the time on an unstretched scale, in
+         * pixels.
+         */
+        private int proportional(final long time) {
+            return clamp(Math.round((time - origin) * scale));
+        }
+
+        /**
+         * @param pixels A position in pixels.
+         *
+         * @return The position, clamped to the largest position that can be
+         * given to a component.
+         */
+        private static int clamp(final long pixels) {
+            return (int) Math.min(pixels, Integer.MAX_VALUE / 2);
+        }
+    }
+
+    /** Snapshots of each column, reused between layouts. */
+    private final Map<SpreadsheetColumn, ColumnExtents> snapshots =
+        new IdentityHashMap<SpreadsheetColumn, ColumnExtents>();
+
+    /** Snapshots of the visible columns, as of the last layout. */
+    private final List<ColumnExtents> extents = new ArrayList<ColumnExtents>();
+
+    /** The time scale shared by the visible columns. */
+    private final TimeScale timeScale = new TimeScale();
+
+    /** The scale the extents were last calculated with. */
+    private double laidPixelsPerMs = Double.NaN;
+
+    /** The minimum cell height the extents were last calculated with. */
+    private int laidMinHeight = -1;
+
+    /** The cells that were positioned within the viewport last layout. */
+    private Set<SpreadsheetCell> showing = Collections.emptySet();
+
+    /** Has this layout been applied to the spreadsheet yet? */
+    private boolean laidOnce = false;
+
+    /**
+     * SheetLayoutStrongTemporal constructor.
+     *
+     * @param margin The size of the margin used for this layout.
+     */
+    public SheetLayoutStrongTemporal(final int margin) {
+        marginSize = margin;
+    }
+
+    @Override
+    public void syncWithScrollPane(final JScrollPane sp) {
+        super.syncWithScrollPane(sp);
+
+        if (scrollBar != null) {
+            scrollBar.removeAdjustmentListener(scrollListener);
+        }
+
+        scrollBar = sp.getVerticalScrollBar();
+        scrollBar.addAdjustmentListener(scrollListener);
+    }
+
+    @Override
+    public void layoutContainer(final Container parent) {
+        super.layoutContainer(parent);
+
+        // This layout must be applied to a Spreadsheet panel.
+        JScrollPane pane = (JScrollPane) parent;
+        SpreadsheetView mainView = (SpreadsheetView) pane.getViewport()
+                                                         .getView();
+
+        // The scale and cell height are set by hand in the configuration, so
+        // are kept to sizes that lay cells out in order.
+        double pixelsPerSecond = Configuration.getInstance()
+                                              .getSSPixelsPerSecond();
+        if (Double.isNaN(pixelsPerSecond)
+                || (pixelsPerSecond < MIN_PIXELS_PER_SECOND)) {
+            pixelsPerSecond = MIN_PIXELS_PER_SECOND;
+        }
+
+        double pixelsPerMs = Math.min(pixelsPerSecond, MAX_PIXELS_PER_SECOND)
+                             / MS_PER_SECOND;
+        int minHeight = Math.max(MIN_CELL_HEIGHT,
+                                 Math.min(Configuration.getInstance()
+                                                       .getSSMinCellHeight(),
+                                          MAX_CELL_HEIGHT));
+
+        // Only take a new snapshot of the columns that have changed since the
+        // last layout.
+        List<SpreadsheetColumn> columns = new ArrayList<SpreadsheetColumn>();
+        List<ColumnExtents> visible = new ArrayList<ColumnExtents>();
+        List<ColumnExtents> retaken = new ArrayList<ColumnExtents>();
+        boolean changed = (pixelsPerMs != laidPixelsPerMs)
+                          || (minHeight != laidMinHeight);
+
+        for (SpreadsheetColumn col : mainView.getColumns()) {
+            if (!col.isVisible()) {
+                continue;
+            }
+
+            ColumnExtents ext = snapshots.get(col);
+            if (ext == null) {
+                ext = new ColumnExtents();
+                snapshots.put(col, ext);
+            }
+
+            int version = col.getDataPanel().getTemporalVersion();
+            if (ext.version != version) {
+                ext.snapshot(col.getCellsTemporally());
+                ext.version = version;
+                retaken.add(ext);
+                changed = true;
+            }
+
+            ext.width = col.getWidth() - marginSize;
+            columns.add(col);
+            visible.add(ext);
+        }
+
+        snapshots.keySet().retainAll(columns);
+
+        if (changed || !visible.equals(extents)) {
+            calculate(visible, pixelsPerMs, minHeight);
+        }
+
+        // Cells that are new to the layout are collapsed so that they are not
+        // painted; after that only the cells that were in the viewport last
+        // time need checking.
+        for (ColumnExtents ext : retaken) {
+            for (int i = 0; i < ext.size; i++) {
+                SpreadsheetCell cell = ext.cells.get(i);
+
+                if (!showing.contains(cell)) {
+                    cell.setBounds(0, ext.tops[i], ext.width, 0);
+                }
+            }
+        }
+
+        laidOnce = true;
+        layoutViewport(pane.getViewport().getViewRect());
+
+        // Put the new cell button at the end of each column.
+        int maxHeight = parent.getHeight();
+
+        for (int c = 0; c < columns.size(); c++) {
+            SpreadsheetColumn col = columns.get(c);
+            ColumnExtents ext = extents.get(c);
+
+            Dimension d = col.getDataPanel().getNewCellButton()
+                             .getPreferredSize();
+            col.getDataPanel().getNewCellButton().setBounds(0,
+                                                            ext.bottom,
+                                                            parent.getWidth(),
+                                                            (int) d.getHeight());
+            col.setWorkingHeight(ext.bottom + (int) d.getHeight());
+            maxHeight = Math.max(maxHeight, col.getWorkingHeight());
+        }
+
+        // Pad the columns out at the bottom.
+        for (SpreadsheetColumn col : columns) {
+            int colHeight = col.getWorkingHeight();
+
+            col.getDataPanel().setHeight(maxHeight);
+            col.getDataPanel().getPadding().setBounds(0,
+                                                      colHeight,
+                                                      col.getWidth(),
+                                                      (maxHeight - colHeight));
+        }
+    }
+
+    /**
+     * Calculates the extents of the cells in the visible columns, on a time
+     * scale shared by the columns.
+     *
+     * @param visible The snapshots of the visible columns.
+     * @param pixelsPerMs The vertical scale in pixels per millisecond.
+     * @param minHeight The minimum height of a cell in pixels.
+     */
+    void calculate(final List<ColumnExtents> visible,
+                   final double pixelsPerMs,
+                   final int minHeight) {
+        timeScale.calculate(visible, pixelsPerMs, minHeight);
+
+        for (ColumnExtents ext : visible) {
+            ext.calculate(timeScale, minHeight);
+        }
+
+        extents.clear();
+        extents.addAll(visible);
+        laidPixelsPerMs = pixelsPerMs;
+        laidMinHeight = minHeight;
+    }
+
+    /**
+     * Positions the cells that fall within the viewport, and collapses the
+     * cells that were in the viewport last time but have since left it. Uses
+     * the extents from the last full layout.
+     *
+     * @param view The area of the spreadsheet visible in the viewport.
+     */
+    void layoutViewport(final Rectangle view) {
+        Set<SpreadsheetCell> nowShowing = Collections.newSetFromMap(
+                new IdentityHashMap<SpreadsheetCell, Boolean>());
+
+        for (ColumnExtents ext : extents) {
+
+            // Cells that start above the viewport may still reach into it, so
+            // step back over any cells that overlap the top of the view.
+            int first = ext.firstTopAtOrBelow(view.y);
+            while (first > 0
+                   && ext.tops[first - 1] + ext.heights[first - 1] > view.y) {
+                first--;
+            }
+
+            int last = ext.firstTopAtOrBelow(view.y + view.height);
+
+            for (int i = first; i < last; i++) {
+                SpreadsheetCell cell = ext.cells.get(i);
+                cell.setBounds(0, ext.tops[i], ext.width, ext.heights[i]);
+                cell.setOrdinal(i + 1);
+                cell.setOverlapBorder(ext.overlaps[i]);
+                nowShowing.add(cell);
+            }
+        }
+
+        // Collapse the cells that have scrolled out of the viewport.
+        for (SpreadsheetCell cell : showing) {
+            if (!nowShowing.contains(cell)) {
+                cell.setBounds(cell.getX(), cell.getY(), cell.getWidth(), 0);
+            }
+        }
+
+        showing = nowShowing;
+    }
+
+    /**
+     * Positions the cells that have moved into the viewport when the
+     * spreadsheet is scrolled. Nothing else about the layout changes, so the
+     * spreadsheet is not laid out again.
+     */
+    private final class ScrollListener implements AdjustmentListener {
+        @Override
+        public void adjustmentValueChanged(final AdjustmentEvent e) {
+            JScrollPane pane = (JScrollPane) scrollBar.getParent();
+
+            // This layout has been replaced - stop listening.
+            if (pane == null || pane.getLayout() != SheetLayoutStrongTemporal.this) {
+                scrollBar.removeAdjustmentListener(this);
+
+                return;
+            }
+
+            if (laidOnce) {
+                layoutViewport(pane.getViewport().getViewRect());
+            } else {
+                pane.revalidate();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers;
+
+import org.openshapa.plugins.DataViewer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.anyFloat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for keeping data viewers in sync with the master clock.
+ */
+public class DriftControllerTest {
+
+    private DriftController controller;
+
+    private DataViewer viewer;
+
+    @BeforeMethod
+    public void setUp() {
+        controller = new DriftController();
+        viewer = mock(DataViewer.class);
+        when(viewer.getOffset()).thenReturn(1000L);
+    }
+
+    @Test
+    public void testLargeDriftSeeks() throws Exception {
+        when(viewer.getCurrentTime()).thenReturn(5000L);
+        controller.synchronise(viewer, 2000L, 1F);
+
+        verify(viewer).seekTo(1000L);
+        verify(viewer).setPlaybackSpeed(1F);
+
+        DriftController.Statistics stats = controller.getStatistics().get(viewer);
+        assertEquals(1, stats.getSeeks());
+        assertEquals(4000.0, stats.getLastDrift());
+    }
+
+    @Test
+    public void testSmallDriftNudgesSpeed() throws Exception {
+        // Viewer is 100ms behind the clock - it should be sped up.
+        when(viewer.getCurrentTime()).thenReturn(900L);
+        controller.synchronise(viewer, 2000L, 1F);
+
+        verify(viewer, never()).seekTo(anyLong());
+        verify(viewer).setPlaybackSpeed(1.05F);
+
+        DriftController.Statistics stats = controller.getStatistics().get(viewer);
+        assertEquals(0, stats.getSeeks());
+        assertEquals(1, stats.getSpeedAdjustments());
+        assertTrue(stats.getCorrection() > 0);
+    }
+
+    @Test
+    public void testInSyncKeepsRate() throws Exception {
+        when(viewer.getCurrentTime()).thenReturn(1002L);
+        controller.synchronise(viewer, 2000L, 2F);
+
+        verify(viewer, never()).seekTo(anyLong());
+        verify(viewer).setPlaybackSpeed(2F);
+        assertEquals(0, controller.getStatistics().get(viewer).getSpeedAdjustments());
+    }
+
+    @Test
+    public void testStoppedClockIgnored() throws Exception {
+        controller.synchronise(viewer, 2000L, 0F);
+
+        verify(viewer, never()).setPlaybackSpeed(anyFloat());
+        assertTrue(controller.getStatistics().isEmpty());
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openshapa.plugins.DataViewer;
+import org.openshapa.util.ClockTimer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for merging jogs into what the viewers can show.
+ */
+public class JogControllerTest {
+
+    private ClockTimer clock;
+
+    private JogController controller;
+
+    /** The number of positions the slow viewer has been moved to. */
+    private AtomicInteger seeks;
+
+    @BeforeMethod
+    public void setUp() {
+        clock = new ClockTimer();
+        controller = new JogController(clock);
+        seeks = new AtomicInteger();
+
+        // A viewer that takes 20ms to show each position.
+        clock.registerListener(new ClockTimer.ClockListener() {
+                @Override public void clockTick(final long time) {
+                }
+
+                @Override public void clockStart(final long time) {
+                }
+
+                @Override public void clockStop(final long time) {
+                }
+
+                @Override public void clockRate(final float rate) {
+                }
+
+                @Override public void clockStep(final long time) {
+                    seeks.incrementAndGet();
+
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    controller.shown(time);
+                }
+            });
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        controller.shutdown();
+    }
+
+    /**
+     * Waits for the viewer to show a position.
+     */
+    private void awaitShown(final long time) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+
+        while ((clock.getTime() != time)
+                || (controller.getStatistics().getShown() == 0)
+                || (controller.getTarget() != time)) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+
+        // Let anything still queued play out.
+        Thread.sleep(100);
+    }
+
+    @Test
+    public void testHeldJogStopsOnLastFrame() throws Exception {
+
+        // Key repeat faster than the viewer can seek.
+        for (int i = 1; i <= 100; i++) {
+            controller.jogTo(controller.getTarget() + 40);
+            Thread.sleep(2);
+        }
+
+        controller.release();
+        awaitShown(4000);
+
+        assertEquals(4000, clock.getTime());
+        assertTrue(clock.isStopped());
+
+        JogController.Statistics stats = controller.getStatistics();
+        assertEquals(100, stats.getRequested());
+        assertTrue(stats.getCoalesced() > 50);
+        assertEquals(seeks.get(), (int) stats.getShown());
+        assertTrue(stats.getShown() < 50);
+        assertTrue(stats.getMaxLatency() >= 20);
+    }
+
+    @Test
+    public void testShuttlePlaysFromJoggedPosition() throws Exception {
+        controller.jogTo(1000);
+        controller.shuttleAt(2F);
+        controller.shuttleAt(4F);
+
+        long deadline = System.currentTimeMillis() + 2000;
+
+        while (clock.isStopped()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+
+        assertEquals(4.0, (double) clock.getRate());
+        assertTrue(clock.getTime() >= 1000);
+        assertEquals(1, seeks.get());
+
+        JogController.Statistics stats = controller.getStatistics();
+        assertEquals(3, stats.getRequested());
+        assertEquals(1, stats.getCoalesced());
+    }
+
+    @Test
+    public void testWaitsForAsynchronousViewer() throws Exception {
+        final ClockTimer asyncClock = new ClockTimer();
+        final JogController jog = new JogController(asyncClock);
+        final DataViewer viewer = mock(DataViewer.class);
+        final AtomicInteger steps = new AtomicInteger();
+
+        // A viewer whose seekTo returns straight away, and which displays the
+        // frame 30ms later - after first reporting a stale frame.
+        asyncClock.registerListener(new ClockTimer.ClockListener() {
+                @Override public void clockTick(final long time) {
+                }
+
+                @Override public void clockStart(final long time) {
+                }
+
+                @Override public void clockStop(final long time) {
+                }
+
+                @Override public void clockRate(final float rate) {
+                }
+
+                @Override public void clockStep(final long time) {
+                    steps.incrementAndGet();
+                    jog.seeking(time,
+                        Collections.singletonMap(viewer, time - 100));
+
+                    new Thread() {
+                        @Override public void run() {
+                            try {
+                                jog.frameShown(viewer, time - 140);
+                                Thread.sleep(30);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+
+                            jog.frameShown(viewer, time - 100);
+                        }
+                    }.start();
+                }
+            });
+
+        try {
+
+            for (int i = 1; i <= 20; i++) {
+                jog.jogTo(jog.getTarget() + 40);
+                Thread.sleep(2);
+            }
+
+            jog.release();
+
+            long deadline = System.currentTimeMillis() + 2000;
+
+            while ((asyncClock.getTime() != 800)
+                    || (jog.getTarget() != 800)) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+
+            Thread.sleep(100);
+
+            JogController.Statistics stats = jog.getStatistics();
+            assertEquals(steps.get(), (int) stats.getShown());
+            assertEquals(0, stats.getTimedOut());
+            assertTrue(stats.getMaxLatency() >= 30);
+        } finally {
+            jog.shutdown();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.openshapa.models.PlaybackModel;
+import org.openshapa.plugins.DataViewer;
+import org.openshapa.plugins.FrameNotifier;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.anyFloat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that the drift and scrub controllers carry on across clock ticks.
+ */
+public class PlaybackSyncTest {
+
+    private DriftController drift;
+
+    private ScrubController scrub;
+
+    private PlaybackSync sync;
+
+    @BeforeMethod
+    public void setUp() {
+        drift = new DriftController();
+        scrub = new ScrubController();
+        sync = new PlaybackSync(new PlaybackModel(), drift, scrub);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        scrub.shutdown();
+    }
+
+    /**
+     * What a playback controller does on each tick of the clock.
+     */
+    private void tick(final DataViewer viewer, final long time)
+        throws Exception {
+        sync.timeChanged();
+        drift.synchronise(viewer, time, 1F);
+
+        // Longer than the drift control period.
+        Thread.sleep(110);
+    }
+
+    @Test
+    public void testDriftLoopRunsAcrossTicks() throws Exception {
+
+        // A viewer running 5ms behind, within the dead band.
+        DataViewer viewer = mock(DataViewer.class);
+        when(viewer.getCurrentTime()).thenReturn(1995L);
+
+        tick(viewer, 2000);
+        tick(viewer, 2000);
+        tick(viewer, 2000);
+        double integral = drift.getStatistics().get(viewer).getIntegral();
+        tick(viewer, 2000);
+        tick(viewer, 2000);
+
+        verify(viewer, times(1)).setPlaybackSpeed(anyFloat());
+
+        DriftController.Statistics stats = drift.getStatistics().get(viewer);
+        assertEquals(5, stats.getSamples());
+        assertTrue(integral > 0);
+        assertTrue(stats.getIntegral() > integral);
+
+        // A change in playback starts the loop again.
+        sync.restart();
+        assertEquals(0.0, drift.getStatistics().get(viewer).getIntegral());
+        tick(viewer, 2000);
+        verify(viewer, times(2)).setPlaybackSpeed(anyFloat());
+    }
+
+    @Test
+    public void testScrubsAreMergedAcrossTicks() throws Exception {
+
+        // A viewer that only shows its frame when told to.
+        final DataViewer viewer = mock(DataViewer.class,
+                withSettings().extraInterfaces(FrameNotifier.class));
+        final long[] seeked = { -1 };
+        doAnswer(new Answer<Object>() {
+                @Override public Object answer(final InvocationOnMock call) {
+                    synchronized (seeked) {
+                        seeked[0] = (Long) call.getArguments()[0];
+                        seeked.notifyAll();
+                    }
+
+                    return null;
+                }
+            }).when(viewer).seekTo(anyLong());
+
+        sync.timeChanged();
+        scrub.scrubTo(viewer, 1000);
+        awaitSeek(seeked, 1000);
+
+        // Ticks while the first seek is landing.
+        for (long position = 1100; position <= 1300; position += 100) {
+            sync.timeChanged();
+            scrub.scrubTo(viewer, position);
+        }
+
+        scrub.frameShown(viewer, 1000);
+        awaitSeek(seeked, 1300);
+        scrub.frameShown(viewer, 1300);
+        Thread.sleep(50);
+
+        verify(viewer, never()).seekTo(1100L);
+        verify(viewer, never()).seekTo(1200L);
+
+        ScrubController.Statistics stats = scrub.getStatistics().get(viewer);
+        assertEquals(4, stats.getRequested());
+        assertEquals(2, stats.getCoalesced());
+        assertEquals(2, stats.getCompleted());
+    }
+
+    /**
+     * Waits for a viewer to be seeked to a position.
+     */
+    private static void awaitSeek(final long[] seeked, final long position)
+        throws InterruptedException {
+        long end = System.currentTimeMillis() + 1000;
+
+        synchronized (seeked) {
+            while ((seeked[0] != position)
+                    && (System.currentTimeMillis() < end)) {
+                seeked.wait(50);
+            }
+        }
+
+        assertEquals(position, seeked[0]);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.openshapa.plugins.DataViewer;
+import org.openshapa.plugins.FrameNotifier;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for seeking viewers while playback is being faked.
+ */
+public class ScrubControllerTest {
+
+    private ScrubController controller;
+
+    @BeforeMethod
+    public void setUp() {
+        controller = new ScrubController();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        controller.shutdown();
+    }
+
+    /**
+     * @return The statistics of a viewer once its seeks have finished.
+     */
+    private ScrubController.Statistics settle(final DataViewer viewer)
+        throws Exception {
+        Thread.sleep(150);
+
+        return controller.getStatistics().get(viewer);
+    }
+
+    @Test
+    public void testSeekLandsWhenFrameIsShown() throws Exception {
+
+        // A viewer that displays the frame 50ms after being asked.
+        final DataViewer viewer = mock(DataViewer.class,
+                withSettings().extraInterfaces(FrameNotifier.class));
+        doAnswer(new Answer<Object>() {
+                @Override public Object answer(final InvocationOnMock call) {
+                    final long position = (Long) call.getArguments()[0];
+
+                    new Thread() {
+                        @Override public void run() {
+                            try {
+                                Thread.sleep(50);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+
+                            controller.frameShown(viewer, position);
+                        }
+                    }.start();
+
+                    return null;
+                }
+            }).when(viewer).seekTo(anyLong());
+
+        controller.scrubTo(viewer, 1000);
+
+        ScrubController.Statistics stats = settle(viewer);
+        assertEquals(1, stats.getCompleted());
+        assertEquals(0, stats.getTimedOut());
+
+        // The latency is measured to the frame, not to the request.
+        assertTrue(stats.getLatency() > 20);
+        verify(viewer, never()).getCurrentTime();
+    }
+
+    @Test
+    public void testUnreadableTimeIsNotCompleted() throws Exception {
+        DataViewer viewer = mock(DataViewer.class);
+        when(viewer.getCurrentTime()).thenThrow(new Exception("closed"));
+
+        controller.scrubTo(viewer, 1000);
+
+        ScrubController.Statistics stats = settle(viewer);
+        assertEquals(0, stats.getCompleted());
+        assertEquals(0.0, stats.getEffectiveFrameRate());
+    }
+
+    @Test
+    public void testScrubbingResumesAfterViewerFails() throws Exception {
+        DataViewer viewer = mock(DataViewer.class);
+        when(viewer.getCurrentTime()).thenReturn(2000L);
+        doThrow(new IllegalStateException("closed")).doNothing().when(viewer)
+            .seekTo(anyLong());
+
+        controller.scrubTo(viewer, 1000);
+        settle(viewer);
+        controller.scrubTo(viewer, 2000);
+
+        ScrubController.Statistics stats = settle(viewer);
+        verify(viewer).seekTo(2000L);
+        assertEquals(1, stats.getCompleted());
+    }
+}
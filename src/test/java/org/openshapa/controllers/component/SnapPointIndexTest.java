@@ -0,0 +1,105 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers.component;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.openshapa.models.id.ID;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the snap point index used when dragging tracks.
+ */
+public class SnapPointIndexTest {
+
+    private static final ID MOVING = new ID(1);
+
+    private static final ID OTHER = new ID(2);
+
+    private static final long[] NO_FIXED = new long[0];
+
+    private SnapPointIndex index;
+
+    @BeforeMethod
+    public void setUp() {
+        index = new SnapPointIndex();
+        index.update(OTHER, 0, 1000, Arrays.asList(500L), 4000);
+    }
+
+    @Test
+    public void testSnapsToEarlierPointFirst() {
+        // The start of the moving track (1480) is between the other track's
+        // bookmark (1500) and start (1000), the end is near its end (5000).
+        index.update(MOVING, 0, 1480, Collections.<Long>emptyList(), 3550);
+
+        assertTrue(index.snap(MOVING, 1480, 100, NO_FIXED, 0));
+        assertEquals(20, index.getSnapOffset());
+        assertEquals(1500, index.getSnapPosition());
+
+        assertTrue(index.snap(MOVING, 5030, 100, NO_FIXED, 0));
+        assertEquals(-30, index.getSnapOffset());
+        assertEquals(5000, index.getSnapPosition());
+    }
+
+    @Test
+    public void testOutsideThreshold() {
+        index.update(MOVING, 0, 1200, Collections.<Long>emptyList(), 1000);
+
+        assertFalse(index.snap(MOVING, 1200, 100, NO_FIXED, 0));
+    }
+
+    @Test
+    public void testFixedPoints() {
+        index.update(MOVING, 0, 2950, Collections.<Long>emptyList(), 500);
+
+        assertTrue(index.snap(MOVING, 2950, 100, new long[] {3000}, 1));
+        assertEquals(50, index.getSnapOffset());
+        assertEquals(3000, index.getSnapPosition());
+    }
+
+    @Test
+    public void testIgnoresOwnPoints() {
+        index.update(MOVING, 0, 10000, Arrays.asList(20L), 1000);
+
+        assertFalse(index.snap(MOVING, 10000, 100, NO_FIXED, 0));
+    }
+
+    @Test
+    public void testFollowsOffsetAndBookmarkChanges() {
+        index.update(MOVING, 0, 10000, Collections.<Long>emptyList(), 1000);
+
+        // Moving the other track next to the moving one.
+        index.update(OTHER, 0, 5990, Arrays.asList(500L), 4000);
+        assertTrue(index.snap(MOVING, 10000, 100, NO_FIXED, 0));
+        assertEquals(-10, index.getSnapOffset());
+
+        // Bookmarks are only re-read when the version changes.
+        index.update(OTHER, 0, 20000, Arrays.asList(50L), 4000);
+        assertFalse(index.snap(MOVING, 10000, 100, NO_FIXED, 0));
+
+        index.update(OTHER, 1, 10000, Arrays.asList(1050L), 4000);
+        assertTrue(index.snap(MOVING, 11000, 100, NO_FIXED, 0));
+        assertEquals(11050, index.getSnapPosition());
+
+        index.remove(OTHER);
+        assertFalse(index.snap(MOVING, 11000, 100, NO_FIXED, 0));
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.controllers.project;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for finding media that has moved.
+ */
+public class MediaIndexTest {
+
+    private File root;
+
+    private File indexFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        root = File.createTempFile("mediaindex", "");
+        root.delete();
+        root.mkdirs();
+        indexFile = new File(root, "index.yml");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root);
+    }
+
+    private File write(final String path, final String content)
+        throws IOException {
+        File file = new File(root, path);
+        FileUtils.writeStringToFile(file, content);
+
+        return file;
+    }
+
+    @Test
+    public void testFindsMovedFile() throws IOException {
+        File moved = write("project/videos/a.mov", "a");
+
+        MediaIndex index = new MediaIndex(indexFile);
+        index.addRoot(new File(root, "project"), true);
+
+        MediaIndex.Match match = index.locate("/old/place/a.mov");
+        assertEquals(moved, match.getFile());
+        assertFalse(match.isAmbiguous());
+
+        assertNull(index.locate("/old/place/b.mov").getFile());
+    }
+
+    @Test
+    public void testFingerprintNarrowsCandidates() throws IOException {
+        File original = write("old/a.mov", "original");
+        MediaIndex index = new MediaIndex(indexFile);
+        index.remember(original);
+
+        File copy = write("project/one/a.mov", "original");
+        write("project/two/a.mov", "imposter");
+        write("project/three/a.mov", "different size");
+        original.delete();
+
+        index.addRoot(new File(root, "project"), true);
+
+        MediaIndex.Match match = index.locate(original.getPath());
+        assertEquals(copy, match.getFile());
+        assertFalse(match.isAmbiguous());
+    }
+
+    @Test
+    public void testAmbiguousPrefersClosestPath() throws IOException {
+        write("project/one/a.mov", "a");
+        File closest = write("project/session/a.mov", "b");
+
+        MediaIndex index = new MediaIndex(indexFile);
+        index.addRoot(new File(root, "project"), true);
+
+        MediaIndex.Match match = index.locate("/old/session/a.mov");
+        assertTrue(match.isAmbiguous());
+        assertEquals(2, match.getCandidates().size());
+        assertEquals(closest, match.getFile());
+    }
+
+    @Test
+    public void testReloadsRoots() throws IOException {
+        File moved = write("project/a.mov", "a");
+
+        MediaIndex index = new MediaIndex(indexFile);
+        index.addRoot(new File(root, "project"), false);
+        index.flush();
+
+        MediaIndex reloaded = new MediaIndex(indexFile);
+        assertEquals(moved, reloaded.locate("/elsewhere/a.mov").getFile());
+    }
+
+    @Test
+    public void testSavesOnlyChangesOnFlush() throws IOException {
+        File media = write("project/videos/a.mov", "a");
+        write("project/notes/readme.txt", "notes");
+
+        MediaIndex index = new MediaIndex(indexFile);
+        index.addRoot(new File(root, "project"), true);
+        index.remember(media);
+        index.locate("/old/place/a.mov");
+        assertFalse(indexFile.exists());
+
+        index.flush();
+        assertTrue(indexFile.exists());
+
+        // The directory listings are saved with the roots.
+        assertTrue(FileUtils.readFileToString(indexFile).contains(
+                "readme.txt"));
+
+        // Nothing has changed, so there is nothing to save.
+        indexFile.delete();
+        index.remember(media);
+        index.locate("/old/place/a.mov");
+        index.flush();
+        assertFalse(indexFile.exists());
+    }
+
+    @Test
+    public void testPrefersNearestDepth() throws IOException {
+        File near = write("project/one/a.mov", "a");
+        write("project/two/deeper/a.mov", "a");
+
+        MediaIndex index = new MediaIndex(indexFile);
+        index.addRoot(new File(root, "project"), true);
+
+        MediaIndex.Match match = index.locate("/old/place/a.mov");
+        assertEquals(near, match.getFile());
+        assertTrue(match.isAmbiguous());
+    }
+
+    @Test
+    public void testReusesSavedCatalogue() throws IOException {
+        File dir = new File(root, "project");
+        write("project/a.mov", "a");
+
+        MediaIndex index = new MediaIndex(indexFile);
+        index.addRoot(dir, false);
+        index.locate("/old/a.mov");
+        index.flush();
+
+        // Only listing the directory again would find the new file.
+        long modified = dir.lastModified();
+        new File(dir, "a.mov").delete();
+        write("project/b.mov", "b");
+        dir.setLastModified(modified);
+
+        MediaIndex reloaded = new MediaIndex(indexFile);
+        MediaIndex.Match match = reloaded.locate("/old/b.mov");
+        assertNull(match.getFile());
+        assertTrue(match.isComplete());
+    }
+
+    @Test
+    public void testRelistsChangedDirectory() throws IOException {
+        File dir = new File(root, "project");
+        write("project/a.mov", "a");
+
+        MediaIndex index = new MediaIndex(indexFile);
+        index.addRoot(dir, false);
+        index.locate("/old/a.mov");
+        index.flush();
+
+        long modified = dir.lastModified();
+        File moved = write("project/b.mov", "b");
+        dir.setLastModified(modified + 2000);
+
+        MediaIndex reloaded = new MediaIndex(indexFile);
+        assertEquals(moved, reloaded.locate("/old/b.mov").getFile());
+    }
+
+    @Test
+    public void testReportsIncompleteSearch() throws IOException {
+        File moved = write("project/one/a.mov", "a");
+
+        MediaIndex index = new MediaIndex(indexFile, 1);
+        index.addRoot(new File(root, "project"), true);
+
+        MediaIndex.Match match = index.locate("/old/a.mov");
+        assertNull(match.getFile());
+        assertFalse(match.isComplete());
+
+        // Each refresh carries on from the directories already listed.
+        match = index.locate("/old/a.mov");
+        assertEquals(moved, match.getFile());
+        assertTrue(match.isComplete());
+    }
+
+    @Test
+    public void testSkipsMalformedEntries() throws IOException {
+        File moved = write("project/a.mov", "a");
+        FileUtils.writeStringToFile(indexFile, "roots:\n  "
+            + new File(root, "project").getAbsolutePath() + ": true\n"
+            + "  7: true\n  other: maybe\nfingerprints:\n  x: 3\n"
+            + "directories:\n  x: 3\n  y:\n    modified: soon\n"
+            + "    files: []\n    dirs: []\n");
+
+        MediaIndex index = new MediaIndex(indexFile);
+        assertEquals(moved, index.locate("/elsewhere/a.mov").getFile());
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.models.component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the temporal index of intervals used by cell tracks.
+ */
+public class IntervalIndexTest {
+
+    private IntervalIndex<String> index;
+
+    @BeforeMethod
+    public void setUp() {
+        index = new IntervalIndex<String>();
+        index.put("a", 0, 999);
+        index.put("b", 1000, 1999);
+        index.put("long", 500, 10000);
+        index.put("c", 3000, 3500);
+        index.put("point", 5000, 0);
+    }
+
+    /**
+     * @return The items overlapping a window, in onset order.
+     */
+    private List<String> visit(final long start, final long end) {
+        final List<String> found = new ArrayList<String>();
+        index.visit(start, end, new IntervalIndex.Visitor<String>() {
+                @Override public void visit(final String item,
+                    final long onset, final long end) {
+                    found.add(item);
+                }
+            });
+
+        return found;
+    }
+
+    @Test
+    public void testVisitsOverlappingInOnsetOrder() {
+        assertEquals("[a, long, b]", visit(900, 1000).toString());
+        assertEquals("[long, c]", visit(3200, 4000).toString());
+        assertEquals("[long, point]", visit(5000, 5000).toString());
+        assertEquals("[]", visit(10001, 20000).toString());
+    }
+
+    @Test
+    public void testFindsLatestStartingInterval() {
+        assertEquals("b", index.find(1500, 1500));
+        assertEquals("long", index.find(2500, 2600));
+        assertEquals("point", index.find(4990, 5010));
+        assertNull(index.find(10001, 10002));
+    }
+
+    @Test
+    public void testMovesAndRemoves() {
+        index.put("c", 100, 200);
+        assertEquals(5, index.size());
+        assertEquals("[a, c]", visit(0, 400).toString());
+        assertEquals("[long]", visit(3200, 4000).toString());
+
+        assertTrue(index.remove("long"));
+        assertFalse(index.remove("long"));
+        assertFalse(index.contains("long"));
+        assertEquals("[]", visit(3200, 4000).toString());
+        assertEquals("[b]", visit(1000, 1000).toString());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void testMatchesScanAfterRandomEdits() {
+        final int count = 2000;
+        final long[] onsets = new long[count];
+        final long[] ends = new long[count];
+        final Random random = new Random(46);
+        IntervalIndex<Integer> cells = new IntervalIndex<Integer>();
+
+        for (int i = 0; i < 10000; i++) {
+            int cell = random.nextInt(count);
+            onsets[cell] = random.nextInt(100000);
+            ends[cell] = onsets[cell] + random.nextInt(random.nextBoolean()
+                    ? 100 : 5000);
+            cells.put(cell, onsets[cell], ends[cell]);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            final long start = random.nextInt(100000);
+            final long end = start + random.nextInt(2000);
+            final boolean[] seen = new boolean[count];
+
+            cells.visit(start, end, new IntervalIndex.Visitor<Integer>() {
+                    @Override public void visit(final Integer item,
+                        final long onset, final long itemEnd) {
+                        seen[item] = true;
+                    }
+                });
+
+            for (int cell = 0; cell < count; cell++) {
+                boolean overlaps = cells.contains(cell)
+                    && (onsets[cell] <= end) && (ends[cell] >= start);
+                assertEquals(overlaps, seen[cell]);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.models.db;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the changes recorded by the datastore for the views.
+ */
+public class DatastoreChangesTest {
+
+    /** The datastore recording the changes. */
+    private Datastore ds;
+
+    /** The variable being changed. */
+    private Variable var;
+
+    @BeforeMethod
+    public void setUp() throws UserWarningException {
+        ds = DatastoreFactory.newDatastore();
+        var = ds.createVariable("test", Argument.Type.MATRIX);
+    }
+
+    @Test
+    public void testTakeEmptiesChanges() {
+        DatastoreChanges changes = new DatastoreChanges();
+        changes.variableRetyped("var");
+        changes.cellChanged("cell");
+
+        DatastoreChanges taken = changes.take();
+        assertTrue(changes.isEmpty());
+        assertTrue(taken.isVariableChanged("var"));
+        assertTrue(taken.isVariableRetyped("var"));
+        assertTrue(taken.isCellChanged("cell"));
+        assertFalse(taken.isCellChanged("var"));
+    }
+
+    @Test
+    public void testCellChangesAreRecorded() {
+        Cell cell = var.createCell();
+        String varID = MongoDatastore.getVariableID(var);
+        assertTrue(MongoDatastore.takeChanges().isVariableChanged(varID));
+
+        cell.setOnset(1000L);
+
+        DatastoreChanges changes = MongoDatastore.takeChanges();
+        assertTrue(changes.isCellChanged(cell.getCellID()));
+        assertFalse(changes.isVariableChanged(varID));
+        assertTrue(MongoDatastore.takeChanges().isEmpty());
+    }
+
+    @Test
+    public void testArgumentChangesAreRecordedAgainstCell() {
+        Cell cell = var.createCell();
+        MongoDatastore.takeChanges();
+
+        ((MatrixValue) cell.getValue()).getArguments().get(0).set("a");
+
+        assertTrue(MongoDatastore.takeChanges().isCellChanged(cell.getCellID()));
+    }
+
+    @Test
+    public void testRenameIsRecordedAgainstVariable()
+    throws UserWarningException {
+        String varID = MongoDatastore.getVariableID(var);
+        MongoDatastore.takeChanges();
+
+        var.setName("renamed");
+
+        Variable renamed = ds.getVariable("renamed");
+        assertEquals(varID, MongoDatastore.getVariableID(renamed));
+        assertTrue(MongoDatastore.takeChanges().isVariableChanged(varID));
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins;
+
+import java.awt.Frame;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.ImageIcon;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for remembering plugins between sessions, and loading them lazily.
+ */
+public class PluginIndexTest {
+
+    /** The number of times the test plugin has been instantiated. */
+    private static int instances;
+
+    /** A plugin that counts its instances. */
+    public static final class CountingPlugin implements Plugin {
+
+        public CountingPlugin() {
+            instances++;
+        }
+
+        @Override public String getClassifier() {
+            return "counting";
+        }
+
+        @Override public Filter[] getFilters() {
+            return new Filter[0];
+        }
+
+        @Override public DataViewer getNewDataViewer(final Frame parent,
+            final boolean modal) {
+            return null;
+        }
+
+        @Override public String getPluginName() {
+            return "Counting";
+        }
+
+        @Override public ImageIcon getTypeIcon() {
+            return null;
+        }
+
+        @Override public Class<? extends DataViewer> getViewerClass() {
+            return null;
+        }
+    }
+
+    private File dir;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dir = File.createTempFile("pluginindex", "");
+        dir.delete();
+        dir.mkdir();
+        instances = 0;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+
+        dir.delete();
+    }
+
+    @Test
+    public void testSavesAndLoads() {
+        File file = new File(dir, PluginIndex.FILE_NAME);
+        PluginIndex index = new PluginIndex(file);
+        index.put("abc", Arrays.asList(new PluginIndex.Descriptor("a.Plugin",
+                    "A", "aplugin", "a.Viewer")));
+        index.put("def", Arrays.asList(new PluginIndex.Descriptor("d.Plugin",
+                    "D", "dplugin", null)));
+        index.save();
+
+        PluginIndex loaded = new PluginIndex(file);
+        List<PluginIndex.Descriptor> a = loaded.get("abc");
+        assertEquals(1, a.size());
+        assertEquals("a.Plugin", a.get(0).className);
+        assertEquals("A", a.get(0).name);
+        assertEquals("aplugin", a.get(0).classifier);
+        assertEquals("a.Viewer", a.get(0).viewerClass);
+        assertNull(loaded.get("def").get(0).viewerClass);
+
+        // Jars that have gone are forgotten.
+        loaded.retain(Collections.singleton("def"));
+        loaded.save();
+        assertNull(new PluginIndex(file).get("abc"));
+    }
+
+    @Test
+    public void testChecksumFollowsContents() throws Exception {
+        File jar = new File(dir, "plugin.jar");
+        write(jar, "one");
+
+        String first = PluginIndex.checksum(jar);
+        assertEquals(first, PluginIndex.checksum(jar));
+
+        write(jar, "two");
+        assertFalse(first.equals(PluginIndex.checksum(jar)));
+    }
+
+    @Test
+    public void testKnownPluginIsNotInstantiatedUntilNeeded() {
+        PluginIndex.Descriptor d = new PluginIndex.Descriptor(
+                CountingPlugin.class.getName(), "Counting", "counting", null);
+        LazyPlugin p = new LazyPlugin(d.className, getClass().getClassLoader(),
+                d);
+
+        assertEquals("Counting", p.getPluginName());
+        assertEquals("counting", p.getClassifier());
+        assertEquals(0, instances);
+
+        assertEquals(0, p.getFilters().length);
+        p.getFilters();
+        assertEquals(1, instances);
+    }
+
+    @Test
+    public void testUnknownPluginIsDescribed() {
+        LazyPlugin p = new LazyPlugin(CountingPlugin.class.getName(),
+                getClass().getClassLoader(), null);
+        assertEquals("Counting", p.describe().name);
+        assertEquals(1, instances);
+
+        LazyPlugin missing = new LazyPlugin("no.such.Plugin",
+                getClass().getClassLoader(), null);
+        assertNull(missing.describe());
+        assertNull(missing.getNewDataViewer(null, false));
+        assertTrue(missing.getFilters().length == 0);
+    }
+
+    private static void write(final File file, final String text)
+        throws Exception {
+        FileWriter w = new FileWriter(file);
+        w.write(text);
+        w.close();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.sensor;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for converting and querying sensor data.
+ */
+public class SensorDataTest {
+
+    private File root;
+
+    private File cache;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        root = File.createTempFile("sensordata", "");
+        root.delete();
+        root.mkdirs();
+        cache = new File(root, "cache");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root);
+    }
+
+    /**
+     * Writes a CSV of a saw tooth sampled at 1 kHz.
+     */
+    private File sawTooth(final int rows) throws IOException {
+        StringBuilder csv = new StringBuilder("time (s),saw,\"flat\"\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(i / 1000.0).append(',').append(i % 100).append(",1\n");
+        }
+
+        File file = new File(root, "data.csv");
+        FileUtils.writeStringToFile(file, csv.toString());
+
+        return file;
+    }
+
+    @Test
+    public void testConvertsColumns() throws IOException {
+        SensorData data = SensorData.open(sawTooth(5000), cache);
+
+        assertEquals(2, data.getChannelCount());
+        assertEquals("saw", data.getChannelName(0));
+        assertEquals("flat", data.getChannelName(1));
+        assertEquals(5000, data.getRowCount());
+        assertEquals(4999, data.getDuration());
+        assertEquals(1000, Math.round(data.getSampleRate()));
+        assertEquals(1234, data.getTime(1234));
+        assertEquals(34, Math.round(data.getValue(0, 1234)));
+
+        assertEquals(1234, data.rowAt(1234));
+        assertEquals(5000, data.rowAt(6000));
+    }
+
+    @Test
+    public void testMinMaxMatchesScan() throws IOException {
+        SensorData data = SensorData.open(sawTooth(5000), cache);
+        float[] extent = new float[2];
+
+        int[][] ranges = { { 0, 5000 }, { 17, 18 }, { 5, 95 }, { 250, 4321 },
+            { 4090, 4100 }, { 3, 3 } };
+
+        for (int[] range : ranges) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int row = range[0]; row < range[1]; row++) {
+                min = Math.min(min, data.getValue(0, row));
+                max = Math.max(max, data.getValue(0, row));
+            }
+
+            data.minMax(0, range[0], range[1], extent);
+            assertEquals(min, extent[0], 0.0);
+            assertEquals(max, extent[1], 0.0);
+        }
+    }
+
+    @Test
+    public void testMillisecondsAndGaps() throws IOException {
+        File csv = new File(root, "gaps.csv");
+        FileUtils.writeStringToFile(csv, "t (ms),a\n100,1\n150,\n200,3\n");
+
+        SensorData data = SensorData.open(csv, cache);
+        assertEquals(3, data.getRowCount());
+        assertEquals(100, data.getDuration());
+        assertTrue(Float.isNaN(data.getValue(0, 1)));
+
+        float[] extent = new float[2];
+        data.minMax(0, 0, 3, extent);
+        assertEquals(1f, extent[0], 0.0);
+        assertEquals(3f, extent[1], 0.0);
+
+        // Opening again uses the converted copy.
+        SensorData.open(csv, cache);
+        assertEquals(1, cache.listFiles().length);
+    }
+
+    @Test
+    public void testQuotedCommas() throws IOException {
+        File csv = new File(root, "quoted.csv");
+        FileUtils.writeStringToFile(csv,
+            "time (s),\"x, raw\",\"say \"\"hi\"\"\"\n0,1,2\n\"0.5\",3,4\n");
+
+        SensorData data = SensorData.open(csv, cache);
+        assertEquals(2, data.getChannelCount());
+        assertEquals("x, raw", data.getChannelName(0));
+        assertEquals("say \"hi\"", data.getChannelName(1));
+        assertEquals(2, data.getRowCount());
+        assertEquals(500, data.getDuration());
+        assertEquals(4, Math.round(data.getValue(1, 1)));
+    }
+}
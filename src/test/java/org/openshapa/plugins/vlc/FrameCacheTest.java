@@ -0,0 +1,109 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the ring of decoded frames.
+ */
+public class FrameCacheTest {
+
+    /** 25 frames per second. */
+    private static final long INTERVAL = 40;
+
+    /**
+     * Decodes a frame into the cache.
+     *
+     * @param cache The cache to decode into.
+     * @param time The time of the frame.
+     */
+    private void decode(final FrameCache cache, final long time) {
+        int slot = cache.claim(time);
+        cache.pixelsOf(slot)[0] = (int) time;
+        cache.commit(slot, time);
+    }
+
+    @Test
+    public void testFrameLookup() {
+        FrameCache cache = new FrameCache(4, 2, 2);
+        decode(cache, 0);
+        decode(cache, 40);
+        decode(cache, 80);
+
+        int[] frame = new int[4];
+        assertTrue(cache.copy(50, INTERVAL, frame));
+        assertEquals(40, frame[0]);
+        assertTrue(cache.copy(80, INTERVAL, frame));
+        assertEquals(80, frame[0]);
+        assertFalse(cache.copy(120, INTERVAL, frame));
+    }
+
+    @Test
+    public void testCopiedFrameIsNotRecycled() {
+        FrameCache cache = new FrameCache(1, 1, 1);
+        decode(cache, 40);
+
+        int[] frame = new int[1];
+        assertTrue(cache.copy(40, INTERVAL, frame));
+
+        // Decoding into the only slot leaves the copy being painted alone.
+        decode(cache, 80);
+        assertEquals(40, frame[0]);
+        assertFalse(cache.copy(40, INTERVAL, frame));
+    }
+
+    @Test
+    public void testEvictsFurthestFromNeedle() {
+        FrameCache cache = new FrameCache(3, 1, 1);
+        decode(cache, 0);
+        decode(cache, 40);
+        decode(cache, 80);
+
+        // Jogging near the end, so the first frame is evicted.
+        int[] frame = new int[1];
+        cache.copy(80, INTERVAL, frame);
+        decode(cache, 120);
+
+        assertFalse(cache.copy(0, INTERVAL, frame));
+        assertTrue(cache.copy(120, INTERVAL, frame));
+        assertTrue(cache.copy(40, INTERVAL, frame));
+    }
+
+    @Test
+    public void testFirstGap() {
+        FrameCache cache = new FrameCache(8, 1, 1);
+        decode(cache, 0);
+        decode(cache, 40);
+        decode(cache, 120);
+
+        assertEquals(80, cache.firstGap(0, 160, INTERVAL));
+        assertEquals(-1, cache.firstGap(0, 79, INTERVAL));
+        assertEquals(-1, cache.firstGap(120, 159, INTERVAL));
+        assertEquals(1000, cache.firstGap(1000, 1100, INTERVAL));
+    }
+
+    @Test
+    public void testCapacity() {
+        assertEquals(16, FrameCache.capacityFor(1000, 640, 480, 16, 240));
+        assertEquals(240, FrameCache.capacityFor(1L << 40, 640, 480, 16, 240));
+        assertEquals(54, FrameCache.capacityFor(64L * 1024 * 1024, 640, 480,
+                                                16, 240));
+    }
+}
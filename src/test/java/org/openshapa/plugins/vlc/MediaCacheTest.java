@@ -0,0 +1,125 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the saved properties of probed media.
+ */
+public class MediaCacheTest {
+
+    private File dir;
+
+    private File media;
+
+    private File cacheFile;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dir = File.createTempFile("mediacache", "");
+        dir.delete();
+        dir.mkdir();
+        media = new File(dir, "movie.mov");
+        FileUtils.writeStringToFile(media, "movie", "UTF-8");
+        cacheFile = new File(dir, "media_cache.yml");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testRememberedBetweenSessions() {
+        new MediaCache(cacheFile, 10).remember(media,
+            new MediaInfo(25, 60000, 320, 240, "h264", true));
+
+        MediaInfo info = new MediaCache(cacheFile, 10).lookup(media);
+        assertNotNull(info);
+        assertEquals(25f, info.getFrameRate(), 0f);
+        assertEquals(60000, info.getDuration());
+        assertEquals(320, info.getDimension().width);
+        assertEquals("h264", info.getCodec());
+        assertTrue(info.needsProxy());
+    }
+
+    @Test
+    public void testChangedMediaIsForgotten() throws Exception {
+        MediaCache cache = new MediaCache(cacheFile, 10);
+        cache.remember(media,
+            new MediaInfo(25, 60000, 320, 240, "h264", false));
+
+        FileUtils.writeStringToFile(media, "a longer movie", "UTF-8");
+        assertNull(cache.lookup(media));
+    }
+
+    @Test
+    public void testIncompleteResultsAreNotRemembered() {
+        MediaCache cache = new MediaCache(cacheFile, 10);
+        cache.remember(media,
+            new MediaInfo(0, 60000, 320, 240, "h264", false));
+
+        assertNull(cache.lookup(media));
+    }
+
+    @Test
+    public void testDamagedFileIsSkipped() throws Exception {
+        FileUtils.writeStringToFile(cacheFile, "1: [a, b]\n"
+            + "other: text\n"
+            + media.getAbsolutePath() + ":\n"
+            + "  1: one\n"
+            + "  size: " + media.length() + "\n"
+            + "  modified: " + media.lastModified() + "\n"
+            + "  fps: 25.0\n"
+            + "  duration: 1000\n"
+            + "  width: 16\n"
+            + "  height: 9\n"
+            + "  codec: mp4v\n"
+            + "  proxy: true\n", "UTF-8");
+
+        MediaInfo info = new MediaCache(cacheFile, 10).lookup(media);
+        assertNotNull(info);
+        assertEquals(1000, info.getDuration());
+
+        FileUtils.writeStringToFile(cacheFile, "- not a map\n", "UTF-8");
+        assertNull(new MediaCache(cacheFile, 10).lookup(media));
+    }
+
+    @Test
+    public void testEntriesWithoutProxyAreProbedAgain() throws Exception {
+        FileUtils.writeStringToFile(cacheFile, media.getAbsolutePath() + ":\n"
+            + "  size: " + media.length() + "\n"
+            + "  modified: " + media.lastModified() + "\n"
+            + "  fps: 25.0\n"
+            + "  duration: 1000\n"
+            + "  width: 16\n"
+            + "  height: 9\n"
+            + "  codec: mp4v\n", "UTF-8");
+
+        assertNull(new MediaCache(cacheFile, 10).lookup(media));
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.swing.SwingUtilities;
+
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for telling viewers the properties of probed media.
+ */
+public class MediaProbeTest {
+
+    /** The properties handed to the callbacks. */
+    private final List<MediaInfo> told = new ArrayList<MediaInfo>();
+
+    /** Records the properties it is told, checking it is on the EDT. */
+    private final MediaProbe.Callback callback = new MediaProbe.Callback() {
+            @Override public void probed(final MediaInfo info) {
+                assertTrue(SwingUtilities.isEventDispatchThread());
+                told.add(info);
+            }
+        };
+
+    @Test
+    public void testCallbackToldOnceProbed() throws Exception {
+        final MediaInfo info = new MediaInfo(25, 1000, 16, 9, "h264",
+                false);
+        MediaProbe.Probe probe = new MediaProbe.Probe(
+                new Callable<MediaInfo>() {
+                    @Override public MediaInfo call() {
+                        return info;
+                    }
+                });
+
+        probe.addCallback(callback);
+        flush();
+        assertEquals(0, told.size());
+
+        new Thread(probe).start();
+        probe.get();
+        flush();
+        assertEquals(1, told.size());
+        assertSame(info, told.get(0));
+    }
+
+    @Test
+    public void testCallbackToldStraightAwayOnEdt() throws Exception {
+        final MediaInfo info = new MediaInfo(25, 1000, 16, 9, "h264",
+                false);
+        final MediaProbe.Probe probe = new MediaProbe.Probe(
+                new Callable<MediaInfo>() {
+                    @Override public MediaInfo call() {
+                        return info;
+                    }
+                });
+        probe.run();
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+                @Override public void run() {
+                    probe.addCallback(callback);
+                    assertEquals(1, told.size());
+                }
+            });
+    }
+
+    @Test
+    public void testFailedProbeTellsNull() throws Exception {
+        MediaProbe.Probe probe = new MediaProbe.Probe(
+                new Callable<MediaInfo>() {
+                    @Override public MediaInfo call() throws IOException {
+                        throw new IOException("Unable to open media");
+                    }
+                });
+        probe.run();
+        probe.addCallback(callback);
+        flush();
+
+        assertEquals(1, told.size());
+        assertNull(told.get(0));
+    }
+
+    /**
+     * Waits for the EDT to run everything posted to it so far.
+     */
+    private static void flush() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+                @Override public void run() {
+                }
+            });
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.plugins.vlc;
+
+import java.awt.image.BufferedImage;
+
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the thumbnails held in memory.
+ */
+public class ThumbnailStoreTest {
+
+    private static BufferedImage image() {
+        return new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Test
+    public void testKeptUnderFrameTime() {
+        ThumbnailStore store = new ThumbnailStore(8);
+        BufferedImage thumbnail = image();
+
+        // Asked for at 400ms, the frame shown was at 450ms.
+        store.put(400, 450, thumbnail);
+
+        assertSame(thumbnail, store.get(450, 0));
+        assertSame(thumbnail, store.get(400, 50));
+        assertNull(store.get(400, 49));
+        assertNull(store.get(500, 40));
+        assertTrue(store.isDecoded(400));
+        assertFalse(store.isDecoded(450));
+    }
+
+    @Test
+    public void testNearestFrameWins() {
+        ThumbnailStore store = new ThumbnailStore(8);
+        BufferedImage early = image();
+        BufferedImage late = image();
+        store.put(0, 0, early);
+        store.put(1000, 1000, late);
+
+        assertSame(early, store.get(400, 500));
+        assertSame(late, store.get(600, 500));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDropped() {
+        ThumbnailStore store = new ThumbnailStore(2);
+        BufferedImage first = image();
+        store.put(0, 0, first);
+        store.put(100, 100, image());
+
+        // Using the first thumbnail keeps it over the second.
+        store.get(0, 0);
+        store.put(200, 200, image());
+
+        assertEquals(2, store.size());
+        assertSame(first, store.get(0, 0));
+        assertNull(store.get(100, 0));
+    }
+}
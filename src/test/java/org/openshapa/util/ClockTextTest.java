@@ -0,0 +1,68 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.SimpleTimeZone;
+
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+/**
+ * Tests for the clock display formatter.
+ */
+public class ClockTextTest {
+
+    @Test
+    public void testMatchesDateFormat() {
+        DateFormat format = new SimpleDateFormat("HH:mm:ss:SSS");
+        format.setTimeZone(new SimpleTimeZone(0, "NO_ZONE"));
+
+        ClockText text = ClockText.plain();
+        long[] times = {
+            0, 7, 999, 1000, 61001, 3723004, 86399999, 86400000, 90061001, -1
+        };
+
+        for (long time : times) {
+            assertEquals(format.format(new Date(time)), text.format(time));
+        }
+    }
+
+    @Test
+    public void testSeparators() {
+        ClockText text = new ClockText("<b>", "h", "m", "s", "</b>");
+
+        assertEquals("<b>01h02m03s004</b>", text.format(3723004));
+    }
+
+    @Test
+    public void testReusesUnchangedText() {
+        ClockText text = ClockText.plain();
+        String first = text.format(1234);
+
+        assertSame(first, text.format(1234));
+        assertEquals("00:00:01:235", text.format(1235));
+    }
+
+    @Test
+    public void testCellTimestampDoesNotWrap() {
+        assertEquals("01:02:03:004", ClockText.timestamp(3723004));
+        assertEquals("25:01:01:001", ClockText.timestamp(90061001));
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openshapa.util.ClockTimer.ClockListener;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+
+public class ClockTimerTest {
+
+    private ClockTimer clock;
+
+    @BeforeMethod public void setUp() {
+        clock = new ClockTimer(1000L);
+    }
+
+    @AfterMethod public void tearDown() {
+        clock.shutdown();
+    }
+
+    @Test public void stepAndSetWhileStopped() {
+        assertTrue(clock.isStopped());
+        assertEquals(1000L, clock.getTime());
+
+        clock.stepTime(500L);
+        assertEquals(1500L, clock.getTime());
+
+        clock.stepTime(-5000L);
+        assertEquals(0L, clock.getTime());
+
+        clock.setTime(42L);
+        assertEquals(42L, clock.getTime());
+    }
+
+    @Test public void setTimeWhileRunningStops() {
+        clock.start();
+        assertFalse(clock.isStopped());
+
+        clock.setTime(5000L);
+        assertTrue(clock.isStopped());
+        assertEquals(0F, clock.getRate());
+        assertTrue(clock.getTime() < 5000L);
+    }
+
+    @Test public void stoppedClockDoesNotAdvance() throws Exception {
+        clock.setRate(2F);
+        clock.start();
+        Thread.sleep(50);
+        clock.stop();
+
+        long stoppedAt = clock.getTime();
+        assertTrue(stoppedAt >= 1100L);
+
+        Thread.sleep(50);
+        assertEquals(stoppedAt, clock.getTime());
+    }
+
+    @Test public void tickPeriodAlignsToFrameRate() {
+        clock.alignToFrameRate(25);
+        assertEquals(40L, clock.getTickPeriod());
+
+        clock.alignToFrameRate(1000);
+        assertEquals(5L, clock.getTickPeriod());
+    }
+
+    @Test public void listenersNotifiedAsynchronously() throws Exception {
+        final CountDownLatch stepped = new CountDownLatch(1);
+        final CountDownLatch ticked = new CountDownLatch(3);
+
+        clock.registerListener(new ClockListener() {
+                public void clockTick(final long time) {
+                    ticked.countDown();
+                }
+
+                public void clockStart(final long time) {
+                }
+
+                public void clockStop(final long time) {
+                }
+
+                public void clockRate(final float rate) {
+                }
+
+                public void clockStep(final long time) {
+                    assertEquals(2000L, time);
+                    stepped.countDown();
+                }
+            });
+
+        clock.setTime(2000L);
+        assertTrue(stepped.await(1, TimeUnit.SECONDS));
+
+        clock.start();
+        assertTrue(ticked.await(1, TimeUnit.SECONDS));
+        assertTrue(clock.getTickCount() >= 3);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for trimming caches kept in local storage.
+ */
+public class DiskCacheTest {
+
+    private File dir;
+
+    private long now;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        dir = File.createTempFile("diskcache", "");
+        dir.delete();
+        dir.mkdirs();
+        now = System.currentTimeMillis();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private File entry(final String name, final int size, final long used)
+        throws IOException {
+        File file = new File(dir, name);
+        FileUtils.writeByteArrayToFile(file, new byte[size]);
+        file.setLastModified(used);
+
+        return file;
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRemovedFirst() throws IOException {
+        File oldest = entry("a", 100, now - 30000);
+        File older = entry("b", 100, now - 20000);
+        File newest = entry("c", 100, now - 10000);
+
+        DiskCache.trim(dir, 150, now);
+
+        assertFalse(oldest.exists());
+        assertFalse(older.exists());
+        assertTrue(newest.exists());
+    }
+
+    @Test
+    public void testStaleRemovedWithinLimit() throws IOException {
+        File stale = entry("a", 1, now - DiskCache.STALE - 1000);
+        File fresh = entry("b", 1, now - 1000);
+
+        DiskCache.trim(dir, 1000, now);
+
+        assertFalse(stale.exists());
+        assertTrue(fresh.exists());
+    }
+
+    @Test
+    public void testEntriesUsedThisSessionKept() throws IOException {
+        File old = entry("a", 100, now - 20000);
+        File inUse = entry("b", 100, now - 20000);
+        DiskCache.touch(inUse);
+
+        DiskCache.trim(dir, 50, now - 10000);
+
+        assertFalse(old.exists());
+        assertTrue(inUse.exists());
+    }
+}
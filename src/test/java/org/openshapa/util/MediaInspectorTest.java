@@ -0,0 +1,154 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for reading the keyframe layout of MP4 files.
+ */
+public class MediaInspectorTest {
+
+    private File media;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        media = File.createTempFile("inspector", ".mp4");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        media.delete();
+    }
+
+    private static byte[] box(final String type, final byte[]... children)
+        throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] child : children) {
+            content.write(child);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(content.size() + 8);
+        out.writeBytes(type);
+        content.writeTo(out);
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] ints(final int... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] track(final String handler, final String codec,
+                                final int frames, final byte[] stss)
+        throws IOException {
+        byte[] hdlr = box("hdlr", ints(0, 0), handler.getBytes("US-ASCII"),
+                ints(0, 0, 0));
+        byte[] stsd = box("stsd", ints(0, 1, 16), codec.getBytes("US-ASCII"),
+                ints(0, 0));
+        byte[] stsz = box("stsz", ints(0, 100, frames));
+        byte[] stbl = (stss == null) ? box("stbl", stsd, stsz)
+                                     : box("stbl", stsd, stsz, stss);
+
+        return box("trak", box("mdia", hdlr, box("minf", stbl)));
+    }
+
+    private void write(final byte[]... tracks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(box("ftyp", "isom".getBytes("US-ASCII"), ints(0)));
+        bytes.write(box("moov", tracks));
+        FileUtils.writeByteArrayToFile(media, bytes.toByteArray());
+    }
+
+    @Test
+    public void testKeyframeIntervals() throws IOException {
+        byte[] stss = box("stss", ints(0, 3, 1, 13, 25));
+        write(track("soun", "mp4a", 500, null),
+            track("vide", "avc1", 30, stss));
+
+        MediaInspector.Inspection inspection = MediaInspector.inspect(media);
+        assertEquals("avc1", inspection.getCodec());
+        assertEquals(30, inspection.getFrameCount());
+        assertEquals(3, inspection.getKeyframeCount());
+        assertEquals(12, inspection.getMaxKeyframeInterval());
+        assertFalse(inspection.isAllIntra());
+    }
+
+    @Test
+    public void testLongSyncTable() throws IOException {
+
+        // Every other frame a keyframe, bar one gap late in the table.
+        int[] samples = new int[10002];
+        samples[1] = 10000;
+        for (int i = 0; i < 10000; i++) {
+            samples[i + 2] = (i * 2) + 1 + ((i >= 9000) ? 3 : 0);
+        }
+
+        write(track("vide", "avc1", 20003, box("stss", ints(samples))));
+
+        MediaInspector.Inspection inspection = MediaInspector.inspect(media);
+        assertEquals(10000, inspection.getKeyframeCount());
+        assertEquals(5, inspection.getMaxKeyframeInterval());
+    }
+
+    @Test
+    public void testNoSyncTableIsAllIntra() throws IOException {
+        write(track("vide", "mp4v", 30, null));
+
+        MediaInspector.Inspection inspection = MediaInspector.inspect(media);
+        assertEquals("mp4v", inspection.getCodec());
+        assertEquals(1, inspection.getMaxKeyframeInterval());
+        assertTrue(inspection.isAllIntra());
+    }
+
+    @Test
+    public void testNotIsoMedia() throws IOException {
+        FileUtils.writeStringToFile(media, "RIFF this is not an mp4 file");
+
+        assertNull(MediaInspector.inspect(media));
+        assertFalse(MediaInspector.hasNoAudio(media));
+    }
+
+    @Test
+    public void testSoundTrack() throws IOException {
+        write(track("vide", "avc1", 30, null));
+        assertTrue(MediaInspector.hasNoAudio(media));
+
+        write(track("vide", "avc1", 30, null),
+            track("soun", "mp4a", 500, null));
+        assertFalse(MediaInspector.hasNoAudio(media));
+    }
+}
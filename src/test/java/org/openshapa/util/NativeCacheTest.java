@@ -0,0 +1,161 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the cache of unpacked native libraries and applications.
+ */
+public class NativeCacheTest {
+
+    private File dir;
+
+    private File root;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dir = File.createTempFile("nativecache", "");
+        dir.delete();
+        dir.mkdir();
+        root = new File(dir, "cache");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testUnchangedArchiveIsReused() throws Exception {
+        File jar = jar("mongodb-test.jar", "bin/mongod", "one");
+        NativeCache cache = new NativeCache(root);
+
+        File first = cache.unpack(jar);
+        assertEquals("one", read(new File(first, "bin/mongod")));
+
+        // Anything dropped into the entry survives, as it isn't unpacked again.
+        File marker = new File(first, "marker");
+        marker.createNewFile();
+        assertEquals(first, cache.unpack(jar));
+        assertTrue(marker.exists());
+    }
+
+    @Test
+    public void testChangedArchiveReplacesOldVersion() throws Exception {
+        File jar = jar("mongodb-test.jar", "bin/mongod", "one");
+        NativeCache cache = new NativeCache(root);
+        File first = cache.unpack(jar);
+        cache.release();
+
+        jar = jar("mongodb-test.jar", "bin/mongod", "two");
+        jar.setLastModified(jar.lastModified() + 2000);
+
+        File second = new NativeCache(root).unpack(jar);
+        assertFalse(first.equals(second));
+        assertFalse(first.exists());
+        assertEquals("two", read(new File(second, "bin/mongod")));
+    }
+
+    @Test
+    public void testOldVersionIsKeptWhileInUse() throws Exception {
+        File jar = jar("mongodb-test.jar", "bin/mongod", "one");
+        NativeCache running = new NativeCache(root);
+        File first = running.unpack(jar);
+
+        // An archive with a similar name is not a version of this one.
+        NativeCache other = new NativeCache(root);
+        File similar = other.unpack(jar("mongodb-test-x.jar", "bin/mongod",
+                    "x"));
+        other.release();
+
+        jar = jar("mongodb-test.jar", "bin/mongod", "two");
+        jar.setLastModified(jar.lastModified() + 2000);
+
+        NativeCache later = new NativeCache(root);
+        File second = later.unpack(jar);
+        assertTrue(first.isDirectory());
+        assertTrue(similar.isDirectory());
+
+        // Once the session using it ends, the old version goes.
+        running.release();
+        assertEquals(second, later.unpack(jar));
+        assertFalse(first.exists());
+        assertTrue(second.isDirectory());
+    }
+
+    @Test
+    public void testLeftoversAreCollected() throws Exception {
+        NativeCache cache = new NativeCache(root);
+        File tmp = new File(root, "mongodb-other-abc" + NativeCache.TMP + "1");
+        tmp.mkdirs();
+
+        // A session that crashed without removing its folder.
+        File crashed = new File(root, NativeCache.RUN + "crashed");
+        crashed.mkdirs();
+        new File(crashed, NativeCache.LOCK_FILE).createNewFile();
+
+        File lib = cache.store("libtest.jnilib",
+                new ByteArrayInputStream("lib".getBytes("UTF-8")));
+        assertEquals("lib", read(lib));
+        assertFalse(tmp.exists());
+        assertFalse(crashed.exists());
+    }
+
+    @Test
+    public void testRunFolderIsKeptWhileInUse() throws Exception {
+        NativeCache cache = new NativeCache(root);
+        File run = cache.getRunFolder();
+        assertTrue(run.isDirectory());
+
+        // Another instance sharing the cache leaves it alone.
+        new NativeCache(root).store("a.dll",
+            new ByteArrayInputStream(new byte[] { 1 }));
+        assertTrue(run.isDirectory());
+
+        cache.release();
+        assertFalse(run.exists());
+    }
+
+    private File jar(final String name, final String entry,
+        final String contents) throws Exception {
+        File jar = new File(dir, name);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        out.putNextEntry(new JarEntry(entry));
+        out.write(contents.getBytes("UTF-8"));
+        out.closeEntry();
+        out.close();
+
+        return jar;
+    }
+
+    private static String read(final File file) throws Exception {
+        return FileUtils.readFileToString(file, "UTF-8");
+    }
+}
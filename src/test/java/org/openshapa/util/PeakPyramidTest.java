@@ -0,0 +1,161 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests for the peaks of audio.
+ */
+public class PeakPyramidTest {
+
+    private static PeakPyramid ramp(final int samples) {
+        PeakPyramid.Builder builder = new PeakPyramid.Builder(1000, 4);
+        for (int i = 0; i < samples; i++) {
+            int amplitude = (i % 128) * 256;
+            builder.add((i % 2 == 0) ? amplitude : -amplitude);
+        }
+
+        return builder.build();
+    }
+
+    @Test
+    public void testLevelsHalve() {
+        PeakPyramid peaks = ramp(40);
+
+        // 10, 5, 3, 2 buckets.
+        assertEquals(4, peaks.getLevelCount());
+        assertEquals(10, peaks.getBucketCount(0));
+        assertEquals(5, peaks.getBucketCount(1));
+        assertEquals(2, peaks.getBucketCount(3));
+
+        assertEquals(-3, peaks.getMin(0, 0));
+        assertEquals(2, peaks.getMax(0, 0));
+        assertEquals(-7, peaks.getMin(1, 0));
+        assertEquals(6, peaks.getMax(1, 0));
+
+        // The odd bucket on the end carries up on its own.
+        assertEquals(-39, peaks.getMin(2, 2));
+        assertEquals(38, peaks.getMax(2, 2));
+    }
+
+    @Test
+    public void testLevelForZoom() {
+        PeakPyramid peaks = ramp(40);
+
+        assertEquals(4.0, peaks.getBucketDuration(0), 0.0001);
+        assertEquals(0, peaks.levelFor(1.0));
+        assertEquals(0, peaks.levelFor(7.9));
+        assertEquals(1, peaks.levelFor(8.0));
+        assertEquals(2, peaks.levelFor(20.0));
+        assertEquals(3, peaks.levelFor(1000000.0));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        PeakPyramid peaks = ramp(1000);
+        File file = File.createTempFile("peaks", ".peaks");
+
+        try {
+            peaks.write(file);
+
+            PeakPyramid read = PeakPyramid.read(file);
+            assertEquals(peaks.getLevelCount(), read.getLevelCount());
+
+            for (int level = 0; level < peaks.getLevelCount(); level++) {
+                assertEquals(peaks.getBucketCount(level),
+                    read.getBucketCount(level));
+
+                for (int i = 0; i < peaks.getBucketCount(level); i++) {
+                    assertEquals(peaks.getMin(level, i), read.getMin(level, i));
+                    assertEquals(peaks.getMax(level, i), read.getMax(level, i));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDamagedCountIsRejected() throws IOException {
+        File file = File.createTempFile("peaks", ".peaks");
+
+        try {
+            ramp(1000).write(file);
+
+            // Overwrite the bucket count of the first level.
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+            try {
+                raf.seek(20);
+                raf.writeInt(Integer.MAX_VALUE);
+            } finally {
+                raf.close();
+            }
+
+            try {
+                PeakPyramid.read(file);
+                fail("Damaged count was read");
+            } catch (IOException e) {
+                // Expected.
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFromStereoWav() throws IOException,
+        UnsupportedAudioFileException {
+        AudioFormat format = new AudioFormat(8000, 16, 2, true, false);
+        byte[] pcm = new byte[8 * 4];
+
+        // Left channel full scale, right channel silent.
+        for (int i = 0; i < 8; i++) {
+            short left = (short) ((i < 4) ? 32767 : -32768);
+            pcm[(4 * i)] = (byte) left;
+            pcm[(4 * i) + 1] = (byte) (left >> 8);
+        }
+
+        File wav = File.createTempFile("peaks", ".wav");
+
+        try {
+            AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(
+                        pcm), format, 8), AudioFileFormat.Type.WAVE, wav);
+
+            PeakPyramid peaks = PeakPyramid.fromWav(wav, 4);
+            assertEquals(2, peaks.getBucketCount(0));
+            assertEquals(63, peaks.getMax(0, 0));
+            assertEquals(-64, peaks.getMin(0, 1));
+            assertEquals(0.5, peaks.getBucketDuration(0), 0.0001);
+        } finally {
+            wav.delete();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests for running the steps of starting up as a graph of tasks.
+ */
+public class StartupTasksTest {
+
+    /**
+     * @return A task that sleeps and then notes that it ran.
+     */
+    private static Runnable step(final List<String> log, final String name,
+        final long sleep) {
+        return new Runnable() {
+                @Override public void run() {
+                    try {
+                        Thread.sleep(sleep);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    log.add(name);
+                }
+            };
+    }
+
+    @Test
+    public void testDependentsWaitAndOthersOverlap() {
+        List<String> log = new CopyOnWriteArrayList<String>();
+        StartupTasks startup = new StartupTasks(3);
+
+        long start = System.currentTimeMillis();
+        StartupTasks.Task mongo = startup.add("mongo",
+                step(log, "mongo", 100));
+        startup.add("scripting", step(log, "scripting", 100));
+        StartupTasks.Task project = startup.add("project",
+                step(log, "project", 10), mongo);
+
+        startup.await(project);
+        long took = System.currentTimeMillis() - start;
+
+        assertTrue(log.indexOf("mongo") < log.indexOf("project"));
+        assertTrue(mongo.isDone());
+
+        // The scripting ran alongside mongo rather than before or after it.
+        assertTrue(took < 190);
+    }
+
+    @Test
+    public void testDependentsOfFailuresAreSkipped() {
+        List<String> log = new CopyOnWriteArrayList<String>();
+        StartupTasks startup = new StartupTasks(2);
+
+        final IllegalStateException noMongo =
+            new IllegalStateException("no mongo");
+        StartupTasks.Task broken = startup.add("broken", new Runnable() {
+                    @Override public void run() {
+                        throw noMongo;
+                    }
+                });
+        StartupTasks.Task after = startup.add("after", step(log, "after", 0),
+                broken);
+        StartupTasks.Task last = startup.add("last", step(log, "last", 0),
+                after);
+
+        try {
+            startup.await(last);
+            fail("The failure should be passed on");
+        } catch (IllegalStateException e) {
+            assertSame(noMongo, e);
+        }
+
+        assertSame(noMongo, broken.getFailure());
+        assertTrue(after.isSkipped());
+        assertTrue(last.isSkipped());
+        assertEquals(0, log.size());
+
+        // Tasks added after the failure are skipped too.
+        StartupTasks.Task late = startup.add("late", step(log, "late", 0),
+                broken);
+
+        try {
+            startup.await(late);
+            fail("The failure should be passed on");
+        } catch (IllegalStateException e) {
+            assertSame(noMongo, e);
+        }
+
+        assertEquals(0, log.size());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRunPassesOnExceptions() {
+        new StartupTasks(1).run("view", new Runnable() {
+                @Override public void run() {
+                    throw new IllegalArgumentException();
+                }
+            });
+    }
+
+    @Test
+    public void testReportListsEachTask() {
+        List<String> log = new CopyOnWriteArrayList<String>();
+        StartupTasks startup = new StartupTasks(1);
+        StartupTasks.Task a = startup.add("plugins", step(log, "a", 0));
+        startup.await(a);
+        startup.run("main view", step(log, "b", 20));
+        startup.seal();
+
+        String report;
+
+        synchronized (startup) {
+            report = startup.report();
+        }
+
+        assertTrue(report.startsWith("Startup took "));
+        assertTrue(report.indexOf("plugins") < report.indexOf("main view"));
+        assertTrue(report.contains("main view"));
+    }
+}
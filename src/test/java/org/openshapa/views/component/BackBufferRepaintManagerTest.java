@@ -0,0 +1,127 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.component;
+
+import java.awt.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JPanel;
+import javax.swing.RepaintManager;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for keeping back buffers up to date as components repaint.
+ */
+public class BackBufferRepaintManagerTest {
+
+    /** A panel recording the areas of its buffer invalidated. */
+    private static final class Buffered extends JPanel implements BackBuffered {
+        private final List<Rectangle> invalidated = new ArrayList<Rectangle>();
+
+        @Override public void invalidateBuffer(final Rectangle area) {
+            invalidated.add(area);
+        }
+    }
+
+    private RepaintManager original;
+
+    private Buffered outer;
+
+    private Buffered inner;
+
+    private JPanel leaf;
+
+    @BeforeMethod
+    public void setUp() {
+        original = RepaintManager.currentManager(null);
+
+        outer = new Buffered();
+        outer.setBounds(0, 0, 200, 200);
+
+        JPanel middle = new JPanel(null);
+        middle.setBounds(5, 7, 150, 150);
+        outer.setLayout(null);
+        outer.add(middle);
+
+        inner = new Buffered();
+        inner.setLayout(null);
+        inner.setBounds(10, 20, 100, 100);
+        middle.add(inner);
+
+        leaf = new JPanel();
+        leaf.setBounds(1, 2, 50, 50);
+        inner.add(leaf);
+
+        BackBufferRepaintManager.register(outer);
+        BackBufferRepaintManager.register(inner);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        BackBufferRepaintManager.unregister(inner);
+        BackBufferRepaintManager.unregister(outer);
+        RepaintManager.setCurrentManager(original);
+    }
+
+    @Test
+    public void testInvalidatesEnclosingBuffers() {
+        RepaintManager.currentManager(leaf).addDirtyRegion(leaf, 3, 4, 5, 6);
+
+        assertEquals(1, inner.invalidated.size());
+        assertEquals(new Rectangle(4, 6, 5, 6), inner.invalidated.get(0));
+        assertEquals(1, outer.invalidated.size());
+        assertEquals(new Rectangle(19, 33, 5, 6), outer.invalidated.get(0));
+    }
+
+    @Test
+    public void testFollowsMovedComponents() {
+        JPanel other = new JPanel(null);
+        other.setBounds(0, 0, 100, 100);
+        other.add(leaf);
+
+        // Outside any back buffered component, nothing is invalidated.
+        RepaintManager.currentManager(leaf).addDirtyRegion(leaf, 0, 0, 5, 5);
+        assertTrue(inner.invalidated.isEmpty());
+        assertTrue(outer.invalidated.isEmpty());
+
+        // The owner remembered for the leaf is forgotten when it is added.
+        inner.add(leaf);
+        RepaintManager.currentManager(leaf).addDirtyRegion(leaf, 0, 0, 5, 5);
+        assertEquals(new Rectangle(1, 2, 5, 5), inner.invalidated.get(0));
+        assertEquals(1, outer.invalidated.size());
+    }
+
+    @Test
+    public void testPutsBackPreviousManager() {
+        assertTrue(RepaintManager.currentManager(null)
+            instanceof BackBufferRepaintManager);
+
+        BackBufferRepaintManager.unregister(inner);
+        assertTrue(RepaintManager.currentManager(null)
+            instanceof BackBufferRepaintManager);
+
+        BackBufferRepaintManager.unregister(outer);
+        assertSame(original, RepaintManager.currentManager(null));
+    }
+}
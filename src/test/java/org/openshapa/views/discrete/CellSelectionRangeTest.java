@@ -0,0 +1,139 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openshapa.models.db.Cell;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for continuous cell selections.
+ */
+public class CellSelectionRangeTest {
+
+    /** The cells of the column, in layout order. */
+    private List<Cell> column;
+
+    /** The selection state shown for each cell. */
+    private Map<Cell, Boolean> shown;
+
+    /** The selection under test. */
+    private CellSelection selection;
+
+    @BeforeMethod
+    public void setUp() {
+        column = new ArrayList<Cell>();
+
+        for (int i = 0; i < 6; i++) {
+            column.add(mock(Cell.class));
+        }
+
+        shown = new HashMap<Cell, Boolean>();
+        selection = new CellSelection(new CellSelection.View() {
+                @Override public List<Cell> getColumnCells(final Cell member) {
+                    return column.contains(member) ? column
+                                                   : new ArrayList<Cell>();
+                }
+
+                @Override public boolean isShown(final Cell cell) {
+                    return column.contains(cell);
+                }
+
+                @Override public void showSelected(final Cell cell,
+                                                   final boolean selected) {
+                    shown.put(cell, selected);
+                }
+            });
+    }
+
+    @Test
+    public void testBackwardRange() {
+        CellSelectionRange range = new CellSelectionRange(column.get(4),
+                                                          column.get(1));
+
+        assertEquals(column.subList(1, 5), range.getCells(column));
+        assertTrue(range.isEndPoint(column.get(4)));
+        assertFalse(range.isSingle());
+    }
+
+    @Test
+    public void testSingleCell() {
+        CellSelectionRange range = new CellSelectionRange(column.get(3),
+                                                          column.get(3));
+
+        assertTrue(range.isSingle());
+        assertEquals(Arrays.asList(column.get(3)), range.getCells(column));
+    }
+
+    @Test
+    public void testRangeMakesNoDatastoreWrites() {
+        selection.add(column.get(1));
+        selection.extend(column.get(1), column.get(4));
+
+        assertEquals(column.subList(1, 5), selection.getSelectedCells());
+
+        for (Cell c : column) {
+            verify(c, never()).setSelected(anyBoolean());
+            verify(c, never()).setHighlighted(anyBoolean());
+        }
+
+        assertEquals(Boolean.TRUE, shown.get(column.get(3)));
+        assertFalse(shown.containsKey(column.get(5)));
+
+        // Shrinking the range only shows the cells that leave it.
+        shown.clear();
+        selection.extend(column.get(1), column.get(2));
+        assertEquals(2, shown.size());
+        assertEquals(Boolean.FALSE, shown.get(column.get(3)));
+        assertEquals(Boolean.FALSE, shown.get(column.get(4)));
+
+        selection.clear();
+        assertTrue(selection.isEmpty());
+        assertEquals(Boolean.FALSE, shown.get(column.get(1)));
+    }
+
+    @Test
+    public void testRangeSurvivesInsertAndDelete() {
+        selection.extend(column.get(1), column.get(3));
+
+        // A cell inserted within the range is covered by it.
+        Cell inserted = mock(Cell.class);
+        column.add(2, inserted);
+        assertEquals(Arrays.asList(column.get(1), inserted, column.get(3),
+                                   column.get(4)),
+                     selection.getSelectedCells());
+
+        // A cell inserted before the range is not.
+        column.add(0, mock(Cell.class));
+        assertEquals(4, selection.getSelectedCells().size());
+        assertTrue(selection.getSelectedCells().contains(inserted));
+
+        // Deleting a cell within the range leaves the rest selected.
+        column.remove(inserted);
+        assertEquals(3, selection.getSelectedCells().size());
+        assertFalse(selection.getSelectedCells().contains(inserted));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openshapa.models.db.Cell;
+import org.openshapa.models.db.DatastoreChanges;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for patching the cells of a column after a batch of edits.
+ */
+public class ColumnDataPanelTest {
+
+    /** The cells of the column, in temporal order. */
+    private List<Cell> column;
+
+    /** The display components currently shown. */
+    private Map<Cell, SpreadsheetCell> views;
+
+    /** The cells that have had display components built. */
+    private List<Cell> built;
+
+    /** Builds display components. */
+    private ColumnDataPanel.CellViewFactory factory;
+
+    @BeforeMethod
+    public void setUp() {
+        column = new ArrayList<Cell>();
+        views = new HashMap<Cell, SpreadsheetCell>();
+        built = new ArrayList<Cell>();
+
+        for (int i = 0; i < 3; i++) {
+            Cell cell = mock(Cell.class);
+            when(cell.getCellID()).thenReturn("cell" + i);
+            when(cell.getOnset()).thenReturn(i * 1000L);
+            column.add(cell);
+        }
+
+        factory = new ColumnDataPanel.CellViewFactory() {
+                @Override public SpreadsheetCell create(final Cell cell) {
+                    built.add(cell);
+
+                    return new SpreadsheetCell(null, cell, null);
+                }
+            };
+    }
+
+    @Test
+    public void testInsertedCellsKeepTemporalOrder() {
+        SpreadsheetCell first = new SpreadsheetCell(null, column.get(0), null);
+        SpreadsheetCell last = new SpreadsheetCell(null, column.get(2), null);
+        views.put(column.get(0), first);
+        views.put(column.get(2), last);
+
+        List<SpreadsheetCell> result = ColumnDataPanel.patchCells(column,
+                views, false, new DatastoreChanges(), factory);
+
+        assertEquals(3, result.size());
+        assertSame(first, result.get(0));
+        assertSame(column.get(1), result.get(1).getCell());
+        assertSame(last, result.get(2));
+        assertEquals(Arrays.asList(column.get(1)), built);
+        assertTrue(views.isEmpty());
+    }
+
+    @Test
+    public void testRemovedCellsAreLeftOver() {
+        Cell removed = mock(Cell.class);
+        when(removed.getCellID()).thenReturn("removed");
+        SpreadsheetCell removedView = new SpreadsheetCell(null, removed, null);
+        views.put(removed, removedView);
+
+        for (Cell cell : column) {
+            views.put(cell, new SpreadsheetCell(null, cell, null));
+        }
+
+        List<SpreadsheetCell> result = ColumnDataPanel.patchCells(column,
+                views, false, new DatastoreChanges(), factory);
+
+        assertEquals(3, result.size());
+        assertTrue(built.isEmpty());
+        assertEquals(1, views.size());
+        assertSame(removedView, views.get(removed));
+    }
+
+    @Test
+    public void testRetypedColumnIsRebuilt() {
+        SpreadsheetCell old = new SpreadsheetCell(null, column.get(1), null);
+        views.put(column.get(1), old);
+
+        List<SpreadsheetCell> result = ColumnDataPanel.patchCells(column,
+                views, true, new DatastoreChanges(), factory);
+
+        assertEquals(column, built);
+        assertNotSame(old, result.get(1));
+        assertSame(old, views.get(column.get(1)));
+        assertFalse(result.contains(old));
+    }
+
+    @Test
+    public void testRefreshKeepsRangeSelection() {
+        CellSelection selection = new CellSelection(new CellSelection.View() {
+                @Override public List<Cell> getColumnCells(final Cell member) {
+                    return column;
+                }
+
+                @Override public boolean isShown(final Cell cell) {
+                    return true;
+                }
+
+                @Override public void showSelected(final Cell cell,
+                                                   final boolean selected) {
+                }
+            });
+        selection.extend(column.get(0), column.get(2));
+
+        for (Cell cell : column) {
+            views.put(cell, new SpreadsheetCell(null, cell, null));
+        }
+
+        // The cell in the middle of the range is not selected in the
+        // datastore, only in the view.
+        List<SpreadsheetCell> result = ColumnDataPanel.patchCells(column,
+                views, true, new DatastoreChanges(), factory);
+        ColumnDataPanel.showSelection(result, selection);
+
+        for (SpreadsheetCell sc : result) {
+            assertTrue(sc.isSelected());
+        }
+
+        selection.extend(column.get(0), column.get(1));
+        result = ColumnDataPanel.patchCells(column, views, true,
+                new DatastoreChanges(), factory);
+        ColumnDataPanel.showSelection(result, selection);
+
+        assertTrue(result.get(1).isSelected());
+        assertFalse(result.get(2).isSelected());
+    }
+}
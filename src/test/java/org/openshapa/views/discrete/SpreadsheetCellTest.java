@@ -0,0 +1,85 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete;
+
+import org.openshapa.models.db.Cell;
+import org.openshapa.models.db.TextValue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the spreadsheet cell, while it is painted by the renderer.
+ */
+public class SpreadsheetCellTest {
+
+    /** The model of the cell. */
+    private Cell cell;
+
+    /** The cell under test. */
+    private SpreadsheetCell view;
+
+    @BeforeMethod
+    public void setUp() {
+        cell = mock(Cell.class);
+        when(cell.getOnset()).thenReturn(1000L);
+        when(cell.getOffset()).thenReturn(2000L);
+
+        view = new SpreadsheetCell(null, cell, null);
+    }
+
+    @Test
+    public void testTimesFromModel() {
+        assertEquals(1000L, view.getOnsetTicks());
+        assertEquals(2000L, view.getOffsetTicks());
+        assertEquals("00:00:01:000", view.getOnsetText());
+        assertEquals("00:00:02:000", view.getOffsetText());
+    }
+
+    @Test
+    public void testTimeChangesUseSuppliedTimes() {
+        view.onsetChanged(3723004L);
+        view.offsetChanged(3725000L);
+
+        assertEquals(3723004L, view.getOnsetTicks());
+        assertEquals(3725000L, view.getOffsetTicks());
+        assertEquals("01:02:03:004", view.getOnsetText());
+        assertEquals("01:02:05:000", view.getOffsetText());
+
+        verify(cell, never()).getFreshCell();
+        verify(cell, never()).getOnsetString();
+        verify(cell, never()).getOffsetString();
+    }
+
+    @Test
+    public void testOffsetBeforeOnset() {
+        view.offsetChanged(500L);
+
+        assertEquals(1000L, view.getOffsetTicks());
+    }
+
+    @Test
+    public void testValueTextMatchesEditor() {
+        TextValue value = mock(TextValue.class);
+        when(value.toString()).thenReturn("text");
+
+        view.valueChange(value);
+
+        assertEquals("text", view.getValueText());
+        verify(cell, never()).getValue();
+    }
+}
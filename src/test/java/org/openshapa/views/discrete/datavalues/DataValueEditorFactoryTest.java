@@ -0,0 +1,85 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete.datavalues;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.JTextArea;
+
+import org.openshapa.models.db.Cell;
+import org.openshapa.models.db.MatrixValue;
+import org.openshapa.models.db.NominalValue;
+import org.openshapa.models.db.TextValue;
+import org.openshapa.models.db.Value;
+import org.openshapa.views.discrete.EditorComponent;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the data value editor factory.
+ */
+public class DataValueEditorFactoryTest {
+
+    @Test
+    public void testMatrixTextMatchesEditors() {
+        TextValue text = mock(TextValue.class);
+        when(text.toString()).thenReturn("moo");
+
+        NominalValue empty = mock(NominalValue.class);
+        when(empty.toString()).thenReturn("<arg1>");
+
+        MatrixValue matrix = mock(MatrixValue.class);
+        when(matrix.getArguments())
+            .thenReturn(Arrays.<Value>asList(text, empty));
+
+        assertEquals("(moo, <arg1>)", DataValueEditorFactory.buildText(matrix));
+        assertEquals(editorText(matrix),
+                     DataValueEditorFactory.buildText(matrix));
+    }
+
+    @Test
+    public void testSingleValueText() {
+        NominalValue nominal = mock(NominalValue.class);
+        when(nominal.toString()).thenReturn("cow");
+
+        assertEquals("cow", DataValueEditorFactory.buildText(nominal));
+        assertEquals(editorText(nominal),
+                     DataValueEditorFactory.buildText(nominal));
+        assertEquals("", DataValueEditorFactory.buildText(null));
+    }
+
+    /**
+     * @param value The value to build editors for.
+     *
+     * @return The text the editors for the value display.
+     */
+    private static String editorText(final Value value) {
+        Cell cell = mock(Cell.class);
+        when(cell.getValue()).thenReturn(value);
+
+        List<EditorComponent> eds =
+            DataValueEditorFactory.buildMatrix(new JTextArea(), cell);
+        StringBuilder text = new StringBuilder();
+
+        for (EditorComponent ed : eds) {
+            text.append(ed.getText());
+        }
+
+        return text.toString();
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openshapa.views.discrete.layouts;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openshapa.models.db.Cell;
+import org.openshapa.views.discrete.SpreadsheetCell;
+import org.openshapa.views.discrete.layouts.SheetLayoutStrongTemporal.ColumnExtents;
+import org.openshapa.views.discrete.layouts.SheetLayoutStrongTemporal.TimeScale;
+import org.testng.annotations.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for the cell extents calculated by the strong temporal layout.
+ */
+public class SheetLayoutStrongTemporalTest {
+
+    /** 10 pixels per second. */
+    private static final double SCALE = 0.01;
+
+    @Test
+    public void testProportionalExtents() {
+        ColumnExtents ext = new ColumnExtents();
+        ext.reset(2);
+        ext.add(1000, 4000);
+        ext.add(6000, 9000);
+        calculate(5, ext);
+
+        assertEquals(0, ext.tops[0]);
+        assertEquals(30, ext.heights[0]);
+        assertEquals(50, ext.tops[1]);
+        assertEquals(30, ext.heights[1]);
+        assertEquals(80, ext.bottom);
+    }
+
+    @Test
+    public void testMinimumHeight() {
+        ColumnExtents ext = new ColumnExtents();
+        ext.reset(3);
+        ext.add(0, 100);
+        ext.add(500, 600);
+        ext.add(10000, 10000);
+        calculate(20, ext);
+
+        // The scale is stretched so the first cell gets the minimum height.
+        assertEquals(0, ext.tops[0]);
+        assertEquals(20, ext.tops[1]);
+        assertEquals(115, ext.tops[2]);
+        assertEquals(20, ext.heights[0]);
+        assertEquals(20, ext.heights[1]);
+        assertEquals(20, ext.heights[2]);
+        assertEquals(135, ext.bottom);
+    }
+
+    @Test
+    public void testDenseCellsStack() {
+        ColumnExtents ext = new ColumnExtents();
+        ext.reset(4);
+        ext.add(0, 0);
+        ext.add(0, 0);
+        ext.add(0, 50);
+        ext.add(1, 2);
+        calculate(20, ext);
+
+        for (int i = 0; i < ext.size; i++) {
+            assertEquals(20 * i, ext.tops[i]);
+            assertEquals(20, ext.heights[i]);
+        }
+    }
+
+    @Test
+    public void testColumnsShareStretchedScale() {
+        ColumnExtents dense = new ColumnExtents();
+        dense.reset(4);
+        dense.add(0, 100);
+        dense.add(100, 200);
+        dense.add(200, 300);
+        dense.add(1000, 2000);
+
+        ColumnExtents sparse = new ColumnExtents();
+        sparse.reset(1);
+        sparse.add(1000, 2000);
+
+        calculate(20, dense, sparse);
+
+        assertEquals(20, dense.tops[1]);
+        assertEquals(40, dense.tops[2]);
+        assertEquals(60, dense.tops[3]);
+        assertEquals(dense.tops[3], sparse.tops[0]);
+        assertEquals(20, sparse.heights[0]);
+    }
+
+    @Test
+    public void testScaleReusedWithFewerColumns() {
+        ColumnExtents dense = new ColumnExtents();
+        dense.reset(3);
+        dense.add(0, 100);
+        dense.add(100, 200);
+        dense.add(200, 300);
+
+        ColumnExtents sparse = new ColumnExtents();
+        sparse.reset(2);
+        sparse.add(1000, 2000);
+        sparse.add(5000, 5500);
+
+        TimeScale scale = new TimeScale();
+        scale.calculate(Arrays.asList(dense, sparse), SCALE, 20);
+        scale.calculate(Arrays.asList(sparse), SCALE, 20);
+        sparse.calculate(scale, 20);
+
+        assertEquals(0, sparse.tops[0]);
+        assertEquals(20, sparse.heights[0]);
+        assertEquals(40, sparse.tops[1]);
+        assertEquals(20, sparse.heights[1]);
+    }
+
+    @Test
+    public void testOverlapAndCulling() {
+        ColumnExtents ext = new ColumnExtents();
+        ext.reset(3);
+        ext.add(0, 2000);
+        ext.add(1000, 3000);
+        ext.add(5000, 6000);
+        calculate(5, ext);
+
+        assertTrue(ext.overlaps[0]);
+        assertTrue(ext.overlaps[1]);
+        assertFalse(ext.overlaps[2]);
+
+        assertEquals(0, ext.firstTopAtOrBelow(0));
+        assertEquals(1, ext.firstTopAtOrBelow(5));
+        assertEquals(2, ext.firstTopAtOrBelow(11));
+        assertEquals(3, ext.firstTopAtOrBelow(51));
+    }
+
+    @Test
+    public void testOverlapBeyondNextCell() {
+        ColumnExtents ext = new ColumnExtents();
+        ext.reset(3);
+        ext.add(0, 5000);
+        ext.add(1000, 1500);
+        ext.add(2000, 3000);
+        calculate(5, ext);
+
+        assertTrue(ext.overlaps[0]);
+        assertTrue(ext.overlaps[1]);
+        assertTrue(ext.overlaps[2]);
+    }
+
+    @Test
+    public void testViewportLayout() {
+        List<SpreadsheetCell> cells = new ArrayList<SpreadsheetCell>();
+        for (int i = 0; i < 10; i++) {
+            cells.add(cell(i * 10000L, i * 10000L + 5000L));
+        }
+
+        ColumnExtents ext = new ColumnExtents();
+        ext.snapshot(cells);
+        ext.width = 200;
+
+        SheetLayoutStrongTemporal layout = new SheetLayoutStrongTemporal(0);
+        layout.calculate(Arrays.asList(ext), SCALE, 20);
+
+        // Cells are 100 pixels apart, only the first two are in view.
+        layout.layoutViewport(new Rectangle(0, 0, 200, 150));
+        assertEquals(new Rectangle(0, 0, 200, 50), cells.get(0).getBounds());
+        assertEquals(new Rectangle(0, 100, 200, 50), cells.get(1).getBounds());
+        assertEquals(0, cells.get(2).getHeight());
+
+        // Scrolling positions the cells that come into view and collapses
+        // the ones that leave it.
+        layout.layoutViewport(new Rectangle(0, 520, 200, 150));
+        assertEquals(0, cells.get(0).getHeight());
+        assertEquals(0, cells.get(1).getHeight());
+        assertEquals(new Rectangle(0, 500, 200, 50), cells.get(5).getBounds());
+        assertEquals(new Rectangle(0, 600, 200, 50), cells.get(6).getBounds());
+        assertEquals(0, cells.get(7).getHeight());
+    }
+
+    /**
+     * Calculates the extents of a set of columns, on a shared time scale.
+     *
+     * @param minHeight The minimum height of a cell in pixels.
+     * @param columns The columns to calculate.
+     */
+    private static void calculate(final int minHeight,
+                                  final ColumnExtents... columns) {
+        TimeScale scale = new TimeScale();
+        scale.calculate(Arrays.asList(columns), SCALE, minHeight);
+
+        for (ColumnExtents ext : columns) {
+            ext.calculate(scale, minHeight);
+        }
+    }
+
+    /**
+     * @param onset The onset of the cell.
+     * @param offset The offset of the cell.
+     *
+     * @return A spreadsheet cell with the supplied extents.
+     */
+    private static SpreadsheetCell cell(final long onset, final long offset) {
+        Cell model = mock(Cell.class);
+        when(model.getOnset()).thenReturn(onset);
+        when(model.getOffset()).thenReturn(offset);
+
+        return new SpreadsheetCell(null, model, null);
+    }
+}